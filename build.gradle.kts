@@ -107,6 +107,8 @@ tasks {
 	test {
 		useJUnitPlatform()
 		testLogging { showStandardStreams = true }
+		// Benchmarks are skipped unless run with -Dbenchmark=true
+		systemProperty("benchmark", System.getProperty("benchmark", "false"))
 	}
 
 	javadoc {
@@ -78,7 +78,7 @@ public class Main {
 				return;
 			}
 
-			final Main main = new Main(Objects.requireNonNull(mainArguments.rootPath), mainArguments.webserverPort, mainArguments.threadedSimulation, mainArguments.threadedFileLoading, null, Objects.requireNonNull(mainArguments.dimensions));
+			final Main main = new Main(Objects.requireNonNull(mainArguments.rootPath), mainArguments.webserverPort, mainArguments.threadedSimulation, mainArguments.threadedFileLoading, mainArguments.parallelVehicleSimulation, mainArguments.virtualThreadWebserver, mainArguments.segmentFileStorage, null, Objects.requireNonNull(mainArguments.dimensions));
 			main.readConsoleInput();
 		} catch (ParameterException e) {
 			commandLine.usage(System.out);
@@ -101,17 +101,65 @@ public class Main {
 	 * @param dimensions               one or more dimension identifiers to load
 	 */
 	public Main(Path rootPath, int webserverPort, boolean threadedSimulation, boolean threadedFileLoading, @Nullable Consumer<Webserver> additionalWebserverSetup, String... dimensions) {
+		this(rootPath, webserverPort, threadedSimulation, threadedFileLoading, false, additionalWebserverSetup, dimensions);
+	}
+
+	/**
+	 * Construct and start the simulator, optionally with parallel vehicle simulation.
+	 *
+	 * @param rootPath                  directory under which each dimension's data lives
+	 * @param webserverPort             Jetty listen port; {@code 0} or negative disables the webserver
+	 * @param threadedSimulation        if {@code true}, each {@link Simulator} ticks on its own scheduled thread
+	 * @param threadedFileLoading       if {@code true}, file loading parallelises across dimensions
+	 * @param parallelVehicleSimulation if {@code true}, each {@link Simulator} splits vehicle simulation of independent rail networks across a fork-join pool
+	 * @param additionalWebserverSetup  optional hook letting the embedder register extra servlets before {@link Webserver#start()} is called
+	 * @param dimensions                one or more dimension identifiers to load
+	 */
+	public Main(Path rootPath, int webserverPort, boolean threadedSimulation, boolean threadedFileLoading, boolean parallelVehicleSimulation, @Nullable Consumer<Webserver> additionalWebserverSetup, String... dimensions) {
+		this(rootPath, webserverPort, threadedSimulation, threadedFileLoading, parallelVehicleSimulation, false, additionalWebserverSetup, dimensions);
+	}
+
+	/**
+	 * Construct and start the simulator, optionally with parallel vehicle simulation and a virtual-thread webserver.
+	 *
+	 * @param rootPath                  directory under which each dimension's data lives
+	 * @param webserverPort             Jetty listen port; {@code 0} or negative disables the webserver
+	 * @param threadedSimulation        if {@code true}, each {@link Simulator} ticks on its own scheduled thread
+	 * @param threadedFileLoading       if {@code true}, file loading parallelises across dimensions
+	 * @param parallelVehicleSimulation if {@code true}, each {@link Simulator} splits vehicle simulation of independent rail networks across a fork-join pool
+	 * @param virtualThreadWebserver    if {@code true}, Jetty handles requests on virtual threads
+	 * @param additionalWebserverSetup  optional hook letting the embedder register extra servlets before {@link Webserver#start()} is called
+	 * @param dimensions                one or more dimension identifiers to load
+	 */
+	public Main(Path rootPath, int webserverPort, boolean threadedSimulation, boolean threadedFileLoading, boolean parallelVehicleSimulation, boolean virtualThreadWebserver, @Nullable Consumer<Webserver> additionalWebserverSetup, String... dimensions) {
+		this(rootPath, webserverPort, threadedSimulation, threadedFileLoading, parallelVehicleSimulation, virtualThreadWebserver, false, additionalWebserverSetup, dimensions);
+	}
+
+	/**
+	 * Construct and start the simulator, optionally with parallel vehicle simulation, a virtual-thread webserver and segment file storage.
+	 *
+	 * @param rootPath                  directory under which each dimension's data lives
+	 * @param webserverPort             Jetty listen port; {@code 0} or negative disables the webserver
+	 * @param threadedSimulation        if {@code true}, each {@link Simulator} ticks on its own scheduled thread
+	 * @param threadedFileLoading       if {@code true}, file loading parallelises across dimensions
+	 * @param parallelVehicleSimulation if {@code true}, each {@link Simulator} splits vehicle simulation of independent rail networks across a fork-join pool
+	 * @param virtualThreadWebserver    if {@code true}, Jetty handles requests on virtual threads
+	 * @param segmentFileStorage        if {@code true}, each data type is stored in append-only segment files instead of one file per entity
+	 * @param additionalWebserverSetup  optional hook letting the embedder register extra servlets before {@link Webserver#start()} is called
+	 * @param dimensions                one or more dimension identifiers to load
+	 */
+	public Main(Path rootPath, int webserverPort, boolean threadedSimulation, boolean threadedFileLoading, boolean parallelVehicleSimulation, boolean virtualThreadWebserver, boolean segmentFileStorage, @Nullable Consumer<Webserver> additionalWebserverSetup, String... dimensions) {
 		final ObjectArrayList<Simulator> tempSimulators = new ObjectArrayList<>();
 
 		log.info("Loading files...");
 		for (final String dimension : dimensions) {
-			tempSimulators.add(new Simulator(dimension, dimensions, rootPath, threadedFileLoading));
+			tempSimulators.add(new Simulator(dimension, dimensions, rootPath, threadedFileLoading, parallelVehicleSimulation, segmentFileStorage));
 		}
 
 		simulators = new ObjectImmutableList<>(tempSimulators);
 
 		if (webserverPort > 0) {
-			webserver = new Webserver(webserverPort);
+			webserver = new Webserver(webserverPort, virtualThreadWebserver);
 			webserver.addServlet(new ServletHolder(new MainWebServlet(WebserverResources::get, "/")), "/");
 			webserver.addServlet(new ServletHolder(new SystemMapServlet(simulators)), "/mtr/api/map/*");
 			webserver.addServlet(new ServletHolder(new OBAServlet(simulators)), "/oba/api/where/*");
@@ -146,12 +194,20 @@ public class Main {
 	 *
 	 * @param worldIndex  0-based dimension index, or {@code null} to broadcast to every simulator
 	 * @param queueObject opaque message payload, dispatched onto the target simulator's thread
+	 * @return whether the message was queued by every target simulator, or {@code false} if the world index is out of range or a queue was
+	 * full, in which case the callback of {@code queueObject} will not be run by the simulators that dropped it
 	 */
-	public void sendMessageC2S(@Nullable Integer worldIndex, QueueObject queueObject) {
+	public boolean sendMessageC2S(@Nullable Integer worldIndex, QueueObject queueObject) {
 		if (worldIndex == null) {
-			simulators.forEach(simulator -> simulator.sendMessageC2S(queueObject));
+			boolean queued = true;
+			for (final Simulator simulator : simulators) {
+				queued &= simulator.sendMessageC2S(queueObject);
+			}
+			return queued;
 		} else if (worldIndex >= 0 && worldIndex < simulators.size()) {
-			simulators.get(worldIndex).sendMessageC2S(queueObject);
+			return simulators.get(worldIndex).sendMessageC2S(queueObject);
+		} else {
+			return false;
 		}
 	}
 
@@ -246,6 +302,15 @@ public class Main {
 		@Option(names = "--threaded-file-loading", negatable = true, defaultValue = "true", description = "Load dimension data in parallel at startup (default: ${DEFAULT-VALUE})")
 		private boolean threadedFileLoading = true;
 
+		@Option(names = "--parallel-vehicle-simulation", negatable = true, defaultValue = "false", description = "Simulate vehicles of independent rail networks in parallel (default: ${DEFAULT-VALUE})")
+		private boolean parallelVehicleSimulation = false;
+
+		@Option(names = "--virtual-thread-webserver", negatable = true, defaultValue = "false", description = "Handle webserver requests on virtual threads (default: ${DEFAULT-VALUE})")
+		private boolean virtualThreadWebserver = false;
+
+		@Option(names = "--segment-file-storage", negatable = true, defaultValue = "false", description = "Store data in append-only segment files instead of one file per object; existing data is migrated to the chosen storage on load (default: ${DEFAULT-VALUE})")
+		private boolean segmentFileStorage = false;
+
 		@Parameters(arity = "1..*", paramLabel = "<dimension>", description = "One or more dimension identifiers to load")
 		private String @Nullable [] dimensions;
 	}
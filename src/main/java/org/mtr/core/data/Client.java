@@ -4,12 +4,14 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.objects.ObjectAVLTreeSet;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.jspecify.annotations.Nullable;
 import org.mtr.core.generated.data.ClientSchema;
 import org.mtr.core.operation.DynamicDataResponse;
 import org.mtr.core.operation.PlayerPresentResponse;
+import org.mtr.core.operation.VehicleDelta;
 import org.mtr.core.operation.VehicleUpdate;
 import org.mtr.core.serializer.ReaderBase;
-import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.servlet.OperationProcessor;
 import org.mtr.core.simulation.Simulator;
 
@@ -24,7 +26,11 @@ public class Client extends ClientSchema {
 
 	private final LongAVLTreeSet existingVehicleIds = new LongAVLTreeSet();
 	private final LongAVLTreeSet keepVehicleIds = new LongAVLTreeSet();
-	private final Long2ObjectAVLTreeMap<VehicleUpdate> vehicleUpdates = new Long2ObjectAVLTreeMap<>();
+	private final Long2ObjectAVLTreeMap<VehicleFrame> vehicleFrames = new Long2ObjectAVLTreeMap<>();
+	/**
+	 * What was last sent for each vehicle the client has, so that later updates can be sent as {@link VehicleDelta}s
+	 */
+	private final Long2ObjectAVLTreeMap<VehicleBaseline> vehicleBaselines = new Long2ObjectAVLTreeMap<>();
 
 	private final LongAVLTreeSet existingLiftIds = new LongAVLTreeSet();
 	private final LongAVLTreeSet keepLiftIds = new LongAVLTreeSet();
@@ -38,6 +44,16 @@ public class Client extends ClientSchema {
 	private final LongAVLTreeSet keepPassengerIds = new LongAVLTreeSet();
 	private final Long2ObjectAVLTreeMap<Passenger> passengerUpdates = new Long2ObjectAVLTreeMap<>();
 
+	/**
+	 * Whether the client declared that it can rebuild vehicles from {@link VehicleDelta}s; older clients would drop vehicles sent that way
+	 */
+	private boolean supportsVehicleDeltas;
+
+	/**
+	 * Send a full vehicle update after this many deltas so that anything a delta doesn't carry is eventually refreshed.
+	 */
+	private static final int MAX_DELTAS_PER_FULL_UPDATE = 20;
+
 	/**
 	 * Create a new client with the given unique identifier.
 	 *
@@ -79,20 +95,43 @@ public class Client extends ClientSchema {
 		this.updateRadius = updateRadius;
 	}
 
+	/**
+	 * @param supportsVehicleDeltas whether the client can rebuild vehicles from {@link VehicleDelta}s, as declared in its data request
+	 */
+	public void setSupportsVehicleDeltas(boolean supportsVehicleDeltas) {
+		this.supportsVehicleDeltas = supportsVehicleDeltas;
+	}
+
 	/**
 	 * Send pending vehicle / lift / passenger / signal-block updates to the client via the
-	 * server-to-client message queue.
+	 * server-to-client message queue. If the queue is full, the update is lost, so everything is sent in full next time.
 	 */
 	public void sendUpdates(Simulator simulator) {
 		final DynamicDataResponse dynamicDataResponse = new DynamicDataResponse(uuid, simulator);
-		final boolean hasUpdate1 = process(vehicleUpdates, existingVehicleIds, keepVehicleIds, dynamicDataResponse::addVehicleToUpdate, dynamicDataResponse::addVehicleToKeep);
+		final boolean hasUpdate1 = process(vehicleFrames, existingVehicleIds, keepVehicleIds, vehicleFrame -> {
+			if (vehicleFrame.vehicleUpdate != null) {
+				dynamicDataResponse.addVehicleToUpdate(vehicleFrame.vehicleUpdate);
+			}
+			if (vehicleFrame.vehicleDelta != null) {
+				dynamicDataResponse.addVehicleDelta(vehicleFrame.vehicleDelta);
+			}
+			if (supportsVehicleDeltas) {
+				vehicleBaselines.put(vehicleFrame.vehicleBaseline.vehicleId, vehicleFrame.vehicleBaseline);
+			}
+		}, dynamicDataResponse::addVehicleToKeep);
+		vehicleBaselines.keySet().retainAll(existingVehicleIds);
 		final boolean hasUpdate2 = process(liftUpdates, existingLiftIds, keepLiftIds, dynamicDataResponse::addLiftToUpdate, dynamicDataResponse::addLiftToKeep);
 		final boolean hasUpdate3 = process(signalBlockUpdates, existingRailIds, keepRailIds, dynamicDataResponse::addSignalBlockUpdate, railId -> {
 		});
 		final boolean hasUpdate4 = process(passengerUpdates, existingPassengerIds, keepPassengerIds, dynamicDataResponse::addPassengerToUpdate, dynamicDataResponse::addPassengerToKeep);
 
-		if (hasUpdate1 || hasUpdate2 || hasUpdate3 || hasUpdate4) {
-			simulator.sendMessageS2C(OperationProcessor.VEHICLES_LIFTS, dynamicDataResponse, playerPresentResponse -> playerPresentResponse.verify(simulator, uuid), PlayerPresentResponse.class);
+		if ((hasUpdate1 || hasUpdate2 || hasUpdate3 || hasUpdate4) && !simulator.sendMessageS2C(OperationProcessor.VEHICLES_LIFTS, dynamicDataResponse, playerPresentResponse -> playerPresentResponse.verify(simulator, uuid), PlayerPresentResponse.class)) {
+			// The client never gets this update, so later deltas and keeps would build on state it doesn't have
+			existingVehicleIds.clear();
+			vehicleBaselines.clear();
+			existingLiftIds.clear();
+			existingRailIds.clear();
+			existingPassengerIds.clear();
 		}
 	}
 
@@ -106,11 +145,44 @@ public class Client extends ClientSchema {
 	 * @param pathUpdateIndex index into the vehicle's path data for partial updates
 	 */
 	public void update(Vehicle vehicle, boolean needsUpdate, int pathUpdateIndex) {
+		applyVehicleFrame(vehicle.getId(), createVehicleFrame(vehicle, needsUpdate, pathUpdateIndex));
+	}
+
+	/**
+	 * First half of {@link #update(Vehicle, boolean, int)}: snapshot the vehicle if it needs an
+	 * update. If the client already has the vehicle and supports deltas, only the fields that change
+	 * along the path are sent as a {@link VehicleDelta}, with a full update every
+	 * {@value #MAX_DELTAS_PER_FULL_UPDATE} deltas or whenever anything else has changed. Only reads client state, so it is safe to call
+	 * from vehicle simulation workers.
+	 *
+	 * @return the snapshot to send, or {@code null} if the vehicle only needs to be kept alive
+	 */
+	@Nullable
+	public VehicleFrame createVehicleFrame(Vehicle vehicle, boolean needsUpdate, int pathUpdateIndex) {
 		final long vehicleId = vehicle.getId();
-		if (needsUpdate || !existingVehicleIds.contains(vehicleId)) {
-			vehicleUpdates.put(vehicleId, new VehicleUpdate(vehicle, vehicle.vehicleExtraData.copy(pathUpdateIndex)));
+		final boolean existing = existingVehicleIds.contains(vehicleId);
+		if (!needsUpdate && existing) {
+			return null;
+		}
+
+		final int pathUpdateEndIndex = vehicle.vehicleExtraData.getPathUpdateEndIndex(pathUpdateIndex);
+		final VehicleBaseline vehicleBaseline = existing && supportsVehicleDeltas ? vehicleBaselines.get(vehicleId) : null;
+		if (vehicleBaseline != null && vehicleBaseline.canSendDelta(vehicle, pathUpdateIndex, pathUpdateEndIndex)) {
+			return new VehicleFrame(null, new VehicleDelta(vehicle, vehicleBaseline.pathEndIndex, pathUpdateEndIndex), vehicleBaseline.withDelta(pathUpdateEndIndex));
+		} else {
+			return new VehicleFrame(new VehicleUpdate(vehicle, vehicle.getVehicleExtraDataSnapshot(pathUpdateIndex)), null, new VehicleBaseline(vehicle, pathUpdateIndex, pathUpdateEndIndex));
+		}
+	}
+
+	/**
+	 * Second half of {@link #update(Vehicle, boolean, int)}: record the result of
+	 * {@link #createVehicleFrame(Vehicle, boolean, int)} for the next {@link #sendUpdates} cycle.
+	 */
+	public void applyVehicleFrame(long vehicleId, @Nullable VehicleFrame vehicleFrame) {
+		if (vehicleFrame != null) {
+			vehicleFrames.put(vehicleId, vehicleFrame);
 			keepVehicleIds.remove(vehicleId);
-		} else if (!vehicleUpdates.containsKey(vehicleId)) {
+		} else if (!vehicleFrames.containsKey(vehicleId)) {
 			keepVehicleIds.add(vehicleId);
 		}
 	}
@@ -165,7 +237,7 @@ public class Client extends ClientSchema {
 		}
 	}
 
-	private static <T, U extends SerializedDataBase> boolean process(Map<T, U> dataUpdates, Set<T> existingIds, Set<T> keepIds, Consumer<U> addDataToUpdate, Consumer<T> addDataToKeep) {
+	private static <T, U> boolean process(Map<T, U> dataUpdates, Set<T> existingIds, Set<T> keepIds, Consumer<U> addDataToUpdate, Consumer<T> addDataToKeep) {
 		dataUpdates.forEach((id, data) -> {
 			addDataToUpdate.accept(data);
 			existingIds.remove(id);
@@ -187,4 +259,80 @@ public class Client extends ClientSchema {
 		keepIds.clear();
 		return hasUpdate;
 	}
+
+	/**
+	 * A pending vehicle update for a client: either a full update or a delta, and what the client will have once it is sent.
+	 */
+	public static final class VehicleFrame {
+
+		@Nullable
+		private final VehicleUpdate vehicleUpdate;
+		@Nullable
+		private final VehicleDelta vehicleDelta;
+		private final VehicleBaseline vehicleBaseline;
+
+		private VehicleFrame(@Nullable VehicleUpdate vehicleUpdate, @Nullable VehicleDelta vehicleDelta, VehicleBaseline vehicleBaseline) {
+			this.vehicleUpdate = vehicleUpdate;
+			this.vehicleDelta = vehicleDelta;
+			this.vehicleBaseline = vehicleBaseline;
+		}
+	}
+
+	/**
+	 * The path segments a client has for a vehicle (from {@code pathStartIndex} inclusive to {@code pathEndIndex} exclusive) and the fields
+	 * that deltas do not carry.
+	 */
+	private record VehicleBaseline(
+		long vehicleId,
+		ObjectImmutableList<PathData> path,
+		int pathStartIndex,
+		int pathEndIndex,
+		long thisRouteId,
+		long thisPlatformId,
+		long nextPlatformId,
+		long departureIndex,
+		boolean reversed,
+		long ridingEntitiesVersion,
+		int deltaCount
+	) {
+
+		private VehicleBaseline(Vehicle vehicle, int pathStartIndex, int pathEndIndex) {
+			this(
+				vehicle.getId(),
+				vehicle.vehicleExtraData.immutablePath,
+				pathStartIndex,
+				pathEndIndex,
+				vehicle.vehicleExtraData.getThisRouteId(),
+				vehicle.vehicleExtraData.getThisPlatformId(),
+				vehicle.vehicleExtraData.getNextPlatformId(),
+				vehicle.getDepartureIndex(),
+				vehicle.getReversed(),
+				vehicle.vehicleExtraData.getRidingEntitiesVersion(),
+				0
+			);
+		}
+
+		/**
+		 * A delta can be sent if only the fields it carries have changed and the new path segments follow on from the ones the client has.
+		 * Full updates that reach the end of the path also resend the first segment, so they can't be replaced by a delta.
+		 */
+		private boolean canSendDelta(Vehicle vehicle, int newPathStartIndex, int newPathEndIndex) {
+			final VehicleExtraData vehicleExtraData = vehicle.vehicleExtraData;
+			return deltaCount < MAX_DELTAS_PER_FULL_UPDATE &&
+				path == vehicleExtraData.immutablePath &&
+				newPathStartIndex >= pathStartIndex &&
+				newPathEndIndex >= pathEndIndex &&
+				newPathEndIndex < path.size() &&
+				thisRouteId == vehicleExtraData.getThisRouteId() &&
+				thisPlatformId == vehicleExtraData.getThisPlatformId() &&
+				nextPlatformId == vehicleExtraData.getNextPlatformId() &&
+				departureIndex == vehicle.getDepartureIndex() &&
+				reversed == vehicle.getReversed() &&
+				ridingEntitiesVersion == vehicleExtraData.getRidingEntitiesVersion();
+		}
+
+		private VehicleBaseline withDelta(int newPathEndIndex) {
+			return new VehicleBaseline(vehicleId, path, pathStartIndex, newPathEndIndex, thisRouteId, thisPlatformId, nextPlatformId, departureIndex, reversed, ridingEntitiesVersion, deltaCount + 1);
+		}
+	}
 }
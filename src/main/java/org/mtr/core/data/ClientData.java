@@ -11,6 +11,16 @@ public class ClientData extends Data {
 	@Override
 	public void sync() {
 		super.sync();
+		writeSimplifiedRouteIds();
+	}
+
+	@Override
+	public void sync(DataChangeSet dataChangeSet) {
+		super.sync(dataChangeSet);
+		writeSimplifiedRouteIds();
+	}
+
+	private void writeSimplifiedRouteIds() {
 		simplifiedRouteIds.clear();
 		simplifiedRoutes.forEach(simplifiedRoute -> simplifiedRouteIds.add(simplifiedRoute.getId()));
 	}
@@ -54,6 +54,11 @@ public abstract class Data {
 	public final ObjectOpenHashSet<Position> runwaysOutbound = new ObjectOpenHashSet<>();
 	public final Long2ObjectOpenHashMap<Position> platformIdToPosition = new Long2ObjectOpenHashMap<>();
 
+	private static final long STATION_GRID_SIZE = 500;
+
+	/**
+	 * Rebuild every cache from scratch. Used on startup and as a periodic consistency check; edits should use {@link #sync(DataChangeSet)}.
+	 */
 	public void sync() {
 		try {
 			// clear rail connections
@@ -66,28 +71,7 @@ public abstract class Data {
 			// write runways
 			runwaysInbound.clear();
 			runwaysOutbound.clear();
-			rails.forEach(rail -> {
-				if (rail.canConnectRemotely()) {
-					final Position position1 = rail.getPosition1();
-					final Position position2 = rail.getPosition2();
-					if (rail.speedLimit1MetersPerMillisecond > 0) {
-						if (positionsToRail.get(position1).size() == 1) {
-							runwaysInbound.put(position1, rail);
-						}
-						if (positionsToRail.get(position2).size() == 1) {
-							runwaysOutbound.add(position2);
-						}
-					}
-					if (rail.speedLimit2MetersPerMillisecond > 0) {
-						if (positionsToRail.get(position2).size() == 1) {
-							runwaysInbound.put(position2, rail);
-						}
-						if (positionsToRail.get(position1).size() == 1) {
-							runwaysOutbound.add(position1);
-						}
-					}
-				}
-			});
+			rails.forEach(this::writeRunwayCache);
 
 			if (this instanceof Simulator) {
 				platforms.removeIf(SavedRailBase::isInvalidSavedRail);
@@ -107,102 +91,100 @@ public abstract class Data {
 			mapAreasAndSavedRails(platforms, stations);
 			mapAreasAndSavedRails(sidings, depots);
 
-			// clear platform routes
-			// clear platform route colors
-			// clear platform to position
-			// write platform to position
-			platformIdToPosition.clear();
-			platforms.forEach(platform -> {
-				platform.routes.clear();
-				platform.routeColors.clear();
-				platformIdToPosition.put(platform.getId(), platform.getMidPosition());
-			});
+			writeRouteCache();
+			writeStationConnections();
+			updateMaps();
+		} catch (Exception e) {
+			log.error("Failed to sync data after simulation tick", e);
+		}
+	}
 
-			// clear route depots
-			// write route platforms
-			// write route platform routes
-			// write route platform colors
-			routes.forEach(route -> {
-				route.depots.clear();
-				route.getRoutePlatforms().forEach(routePlatformData -> routePlatformData.writePlatformCache(route, platformIdMap));
-				route.getRoutePlatforms().removeIf(routePlatformData -> routePlatformData.platform == null);
-			});
+	/**
+	 * Patch only the caches affected by the given changes. The entity sets must already reflect the changes; this only brings the caches
+	 * in line with them.
+	 */
+	public void sync(DataChangeSet dataChangeSet) {
+		try {
+			final boolean railsChanged = !dataChangeSet.rails.isEmpty();
 
-			// clear depot routes
-			// write route depots
-			// write depot routes
-			// clear all platforms in route
-			// write all platforms in route
-			// write path data cache
-			depots.forEach(depot -> {
-				depot.writeRouteCache(routeIdMap);
-				depot.writePathCache();
-			});
+			if (railsChanged) {
+				// patch rail connections and runways around every rail end that changed
+				final ObjectArraySet<Position> affectedPositions = new ObjectArraySet<>();
+				dataChangeSet.rails.updated.forEach(rail -> {
+					// A replaced rail shares its positions with the new rail, so it is simply overwritten here
+					rail.writePositionsToRailCache(positionsToRail);
+					rail.writePositions(affectedPositions);
+					railIdMap.put(rail.getHexId(), rail);
+				});
+				dataChangeSet.rails.removed.forEach(rail -> {
+					removePositionsToRailCache(rail, rail.getPosition1(), rail.getPosition2());
+					removePositionsToRailCache(rail, rail.getPosition2(), rail.getPosition1());
+					rail.writePositions(affectedPositions);
+					railIdMap.remove(rail.getHexId(), rail);
+				});
 
-			// clear station connections
-			// write station connections using spatial grid for efficiency
-			final long gridSize = 500;
-			final Long2ObjectOpenHashMap<ObjectArrayList<Station>> stationGrid = new Long2ObjectOpenHashMap<>();
-			stations.forEach(station -> {
-				station.connectedStations.clear();
-				if (!SimpleAreaBase.validCorners(station)) {
-					return;
-				}
-				final long minCellX = Math.floorDiv(station.getMinX(), gridSize);
-				final long maxCellX = Math.floorDiv(station.getMaxX(), gridSize);
-				final long minCellZ = Math.floorDiv(station.getMinZ(), gridSize);
-				final long maxCellZ = Math.floorDiv(station.getMaxZ(), gridSize);
-				for (long cx = minCellX; cx <= maxCellX; cx++) {
-					for (long cz = minCellZ; cz <= maxCellZ; cz++) {
-						stationGrid.computeIfAbsent((cx << 32) | (cz & 0xFFFFFFFFL), key -> new ObjectArrayList<>()).add(station);
-					}
-				}
-			});
-			stations.forEach(station1 -> {
-				if (!SimpleAreaBase.validCorners(station1)) {
-					return;
-				}
-				final long minCellX = Math.floorDiv(station1.getMinX(), gridSize);
-				final long maxCellX = Math.floorDiv(station1.getMaxX(), gridSize);
-				final long minCellZ = Math.floorDiv(station1.getMinZ(), gridSize);
-				final long maxCellZ = Math.floorDiv(station1.getMaxZ(), gridSize);
-				for (long cx = minCellX; cx <= maxCellX; cx++) {
-					for (long cz = minCellZ; cz <= maxCellZ; cz++) {
-						final ObjectArrayList<Station> cell = stationGrid.get((cx << 32) | (cz & 0xFFFFFFFFL));
-						if (cell != null) {
-							cell.forEach(station2 -> {
-								if (station1 != station2 && station1.intersecting(station2)) {
-									station1.connectedStations.add(station2);
-								}
-							});
-						}
+				final ObjectOpenHashSet<Rail> affectedRails = new ObjectOpenHashSet<>();
+				affectedPositions.forEach(position -> {
+					runwaysInbound.remove(position);
+					runwaysOutbound.remove(position);
+					final Object2ObjectOpenHashMap<Position, Rail> railsAtPosition = positionsToRail.get(position);
+					if (railsAtPosition != null) {
+						affectedRails.addAll(railsAtPosition.values());
 					}
-				}
-			});
+				});
+				affectedRails.forEach(rail -> {
+					rail.writeConnectedRailsCacheFromMap(positionsToRail);
+					writeRunwayCache(rail);
+				});
 
-			if (this instanceof final Simulator simulator) {
-				try {
-					UpdateSquaremap.updateSquaremap(simulator);
-				} catch (NoClassDefFoundError e) {
-					// Squaremap is an optional compile-only dependency — ignore at debug level if absent.
-					log.debug("Squaremap classes not on the classpath; skipping integration", e);
-				} catch (Exception e) {
-					log.error("Failed to update Squaremap integration", e);
-				}
-				try {
-					UpdateDynmap.updateDynmap(simulator);
-				} catch (NoClassDefFoundError e) {
-					// Dynmap is an optional compile-only dependency — ignore at debug level if absent.
-					log.debug("Dynmap classes not on the classpath; skipping integration", e);
-				} catch (Exception e) {
-					log.error("Failed to update Dynmap integration", e);
-				}
+				// saved rails on changed rails may have become invalid
+				removeInvalidSavedRails(platforms, affectedPositions, dataChangeSet.platforms);
+				removeInvalidSavedRails(sidings, affectedPositions, dataChangeSet.sidings);
+			}
+
+			patchIds(stationIdMap, dataChangeSet.stations);
+			patchIds(platformIdMap, dataChangeSet.platforms);
+			patchIds(sidingIdMap, dataChangeSet.sidings);
+			patchIds(routeIdMap, dataChangeSet.routes);
+			patchIds(depotIdMap, dataChangeSet.depots);
+			patchIds(liftIdMap, dataChangeSet.lifts);
+			patchIds(homeIdMap, dataChangeSet.homes);
+			patchIds(landmarkIdMap, dataChangeSet.landmarks);
+
+			patchAreasAndSavedRails(platforms, stations, dataChangeSet.platforms, dataChangeSet.stations);
+			patchAreasAndSavedRails(sidings, depots, dataChangeSet.sidings, dataChangeSet.depots);
+
+			if (railsChanged || !dataChangeSet.platforms.isEmpty() || !dataChangeSet.sidings.isEmpty() || !dataChangeSet.routes.isEmpty() || !dataChangeSet.depots.isEmpty()) {
+				writeRouteCache();
+			}
+
+			if (!dataChangeSet.stations.isEmpty()) {
+				patchStationConnections(dataChangeSet.stations);
+			}
+
+			if (!dataChangeSet.stations.isEmpty() || !dataChangeSet.depots.isEmpty()) {
+				updateMaps();
 			}
 		} catch (Exception e) {
-			log.error("Failed to sync data after simulation tick", e);
+			log.error("Failed to sync data changes", e);
 		}
 	}
 
+	/**
+	 * Run a full {@link #sync()} and check that the caches patched by {@link #sync(DataChangeSet)} were the same as the rebuilt ones.
+	 *
+	 * @return whether the caches were consistent
+	 */
+	public boolean syncAndCheckConsistency() {
+		final DataCacheSnapshot dataCacheSnapshot = new DataCacheSnapshot(this);
+		sync();
+		final boolean consistent = dataCacheSnapshot.equals(new DataCacheSnapshot(this));
+		if (!consistent) {
+			log.warn("Incrementally synced caches did not match a full sync; caches have been rebuilt");
+		}
+		return consistent;
+	}
+
 	public final long getCurrentMillis() {
 		return currentMillis;
 	}
@@ -262,6 +244,176 @@ public abstract class Data {
 		newInnerMap.put(key2, putValue.apply(newInnerMap.get(key2)));
 	}
 
+	private void writeRunwayCache(Rail rail) {
+		if (rail.canConnectRemotely()) {
+			final Position position1 = rail.getPosition1();
+			final Position position2 = rail.getPosition2();
+			if (rail.speedLimit1MetersPerMillisecond > 0) {
+				if (positionsToRail.get(position1).size() == 1) {
+					runwaysInbound.put(position1, rail);
+				}
+				if (positionsToRail.get(position2).size() == 1) {
+					runwaysOutbound.add(position2);
+				}
+			}
+			if (rail.speedLimit2MetersPerMillisecond > 0) {
+				if (positionsToRail.get(position2).size() == 1) {
+					runwaysInbound.put(position2, rail);
+				}
+				if (positionsToRail.get(position1).size() == 1) {
+					runwaysOutbound.add(position1);
+				}
+			}
+		}
+	}
+
+	private void removePositionsToRailCache(Rail rail, Position position1, Position position2) {
+		final Object2ObjectOpenHashMap<Position, Rail> railsAtPosition = positionsToRail.get(position1);
+		if (railsAtPosition != null && railsAtPosition.remove(position2, rail) && railsAtPosition.isEmpty()) {
+			positionsToRail.remove(position1);
+		}
+	}
+
+	private <U extends SavedRailBase<U, ?>> void removeInvalidSavedRails(ObjectArraySet<U> savedRails, ObjectArraySet<Position> affectedPositions, DataChangeSet.Changes<U> changes) {
+		savedRails.removeIf(savedRail -> {
+			if (affectedPositions.stream().anyMatch(savedRail::containsPos)) {
+				if (savedRail.isInvalidSavedRail() && this instanceof Simulator) {
+					changes.remove(savedRail);
+					return true;
+				} else {
+					changes.update(savedRail);
+				}
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * Clear and write platform routes, route platforms, route depots, depot routes and depot path caches.
+	 */
+	private void writeRouteCache() {
+		// clear platform routes
+		// clear platform route colors
+		// clear platform to position
+		// write platform to position
+		platformIdToPosition.clear();
+		platforms.forEach(platform -> {
+			platform.routes.clear();
+			platform.routeColors.clear();
+			platformIdToPosition.put(platform.getId(), platform.getMidPosition());
+		});
+
+		// clear route depots
+		// write route platforms
+		// write route platform routes
+		// write route platform colors
+		routes.forEach(route -> {
+			route.depots.clear();
+			route.getRoutePlatforms().forEach(routePlatformData -> routePlatformData.writePlatformCache(route, platformIdMap));
+			route.getRoutePlatforms().removeIf(routePlatformData -> routePlatformData.platform == null);
+		});
+
+		// clear depot routes
+		// write route depots
+		// write depot routes
+		// clear all platforms in route
+		// write all platforms in route
+		// write path data cache
+		depots.forEach(depot -> {
+			depot.writeRouteCache(routeIdMap);
+			depot.writePathCache();
+		});
+	}
+
+	/**
+	 * Clear and write station connections using a spatial grid for efficiency.
+	 */
+	private void writeStationConnections() {
+		final Long2ObjectOpenHashMap<ObjectArrayList<Station>> stationGrid = new Long2ObjectOpenHashMap<>();
+		stations.forEach(station -> {
+			station.connectedStations.clear();
+			if (!SimpleAreaBase.validCorners(station)) {
+				return;
+			}
+			final long minCellX = Math.floorDiv(station.getMinX(), STATION_GRID_SIZE);
+			final long maxCellX = Math.floorDiv(station.getMaxX(), STATION_GRID_SIZE);
+			final long minCellZ = Math.floorDiv(station.getMinZ(), STATION_GRID_SIZE);
+			final long maxCellZ = Math.floorDiv(station.getMaxZ(), STATION_GRID_SIZE);
+			for (long cx = minCellX; cx <= maxCellX; cx++) {
+				for (long cz = minCellZ; cz <= maxCellZ; cz++) {
+					stationGrid.computeIfAbsent((cx << 32) | (cz & 0xFFFFFFFFL), key -> new ObjectArrayList<>()).add(station);
+				}
+			}
+		});
+		stations.forEach(station1 -> {
+			if (!SimpleAreaBase.validCorners(station1)) {
+				return;
+			}
+			final long minCellX = Math.floorDiv(station1.getMinX(), STATION_GRID_SIZE);
+			final long maxCellX = Math.floorDiv(station1.getMaxX(), STATION_GRID_SIZE);
+			final long minCellZ = Math.floorDiv(station1.getMinZ(), STATION_GRID_SIZE);
+			final long maxCellZ = Math.floorDiv(station1.getMaxZ(), STATION_GRID_SIZE);
+			for (long cx = minCellX; cx <= maxCellX; cx++) {
+				for (long cz = minCellZ; cz <= maxCellZ; cz++) {
+					final ObjectArrayList<Station> cell = stationGrid.get((cx << 32) | (cz & 0xFFFFFFFFL));
+					if (cell != null) {
+						cell.forEach(station2 -> {
+							if (station1 != station2 && station1.intersecting(station2)) {
+								station1.connectedStations.add(station2);
+							}
+						});
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Detach changed and removed stations from their old neighbours, then connect changed stations to every station they now intersect.
+	 */
+	private void patchStationConnections(DataChangeSet.Changes<Station> changes) {
+		final ObjectOpenHashSet<Station> stationsToDetach = new ObjectOpenHashSet<>();
+		stationsToDetach.addAll(changes.updated);
+		stationsToDetach.addAll(changes.removed);
+		stationsToDetach.forEach(station -> {
+			// Names may have changed in place, so the sorted sets can't be searched; match by identity instead
+			station.connectedStations.forEach(connectedStation -> connectedStation.connectedStations.removeIf(checkStation -> checkStation == station));
+			station.connectedStations.clear();
+		});
+
+		changes.updated.forEach(station1 -> {
+			if (SimpleAreaBase.validCorners(station1)) {
+				stations.forEach(station2 -> {
+					if (station1 != station2 && SimpleAreaBase.validCorners(station2) && station1.intersecting(station2)) {
+						station1.connectedStations.add(station2);
+						station2.connectedStations.add(station1);
+					}
+				});
+			}
+		});
+	}
+
+	private void updateMaps() {
+		if (this instanceof final Simulator simulator) {
+			try {
+				UpdateSquaremap.updateSquaremap(simulator);
+			} catch (NoClassDefFoundError e) {
+				// Squaremap is an optional compile-only dependency — ignore at debug level if absent.
+				log.debug("Squaremap classes not on the classpath; skipping integration", e);
+			} catch (Exception e) {
+				log.error("Failed to update Squaremap integration", e);
+			}
+			try {
+				UpdateDynmap.updateDynmap(simulator);
+			} catch (NoClassDefFoundError e) {
+				// Dynmap is an optional compile-only dependency — ignore at debug level if absent.
+				log.debug("Dynmap classes not on the classpath; skipping integration", e);
+			} catch (Exception e) {
+				log.error("Failed to update Dynmap integration", e);
+			}
+		}
+	}
+
 	private static <U extends NameColorDataBase> void mapIds(Long2ObjectMap<U> map, ObjectSet<U> source) {
 		map.clear();
 		source.forEach(data -> map.put(data.getId(), data));
@@ -272,19 +424,92 @@ public abstract class Data {
 		source.forEach(data -> map.put(data.getHexId(), data));
 	}
 
+	private static <U extends NameColorDataBase> void patchIds(Long2ObjectMap<U> map, DataChangeSet.Changes<U> changes) {
+		changes.updated.forEach(data -> map.put(data.getId(), data));
+		changes.removed.forEach(data -> map.remove(data.getId(), data));
+	}
+
+	/**
+	 * If any area changed, every saved rail may belong to a different area, so everything is remapped. Otherwise, only the changed saved rails are moved.
+	 */
+	private static <U extends SavedRailBase<U, V>, V extends AreaBase<V, U>> void patchAreasAndSavedRails(ObjectArraySet<U> savedRails, ObjectArraySet<V> areas, DataChangeSet.Changes<U> savedRailChanges, DataChangeSet.Changes<V> areaChanges) {
+		if (!areaChanges.isEmpty()) {
+			mapAreasAndSavedRails(savedRails, areas);
+		} else {
+			savedRailChanges.removed.forEach(savedRail -> {
+				if (savedRail.area != null) {
+					savedRail.area.savedRails.remove(savedRail);
+					savedRail.area = null;
+				}
+			});
+			savedRailChanges.updated.forEach(savedRail -> {
+				if (savedRail.area != null) {
+					savedRail.area.savedRails.remove(savedRail);
+				}
+				mapAreaAndSavedRail(savedRail, areas);
+			});
+		}
+	}
+
 	private static <U extends SavedRailBase<U, V>, V extends AreaBase<V, U>> void mapAreasAndSavedRails(ObjectArraySet<U> savedRails, ObjectArraySet<V> areas) {
 		areas.forEach(area -> area.savedRails.clear());
-		savedRails.forEach(savedRail -> {
-			savedRail.area = null;
-			final Position pos = savedRail.getMidPosition();
-			for (final V area : areas) {
-				if (area.isTransportMode(savedRail) && area.inArea(pos)) {
-					savedRail.area = area;
-					area.savedRails.add(savedRail);
-					break;
-				}
+		savedRails.forEach(savedRail -> mapAreaAndSavedRail(savedRail, areas));
+	}
+
+	private static <U extends SavedRailBase<U, V>, V extends AreaBase<V, U>> void mapAreaAndSavedRail(U savedRail, ObjectArraySet<V> areas) {
+		savedRail.area = null;
+		final Position pos = savedRail.getMidPosition();
+		for (final V area : areas) {
+			if (area.isTransportMode(savedRail) && area.inArea(pos)) {
+				savedRail.area = area;
+				area.savedRails.add(savedRail);
+				break;
 			}
-			savedRail.updateRailCache();
-		});
+		}
+		savedRail.updateRailCache();
+	}
+
+	/**
+	 * A copy of every cache written by {@link #sync()}, compared by value to check that incremental syncing kept the caches consistent.
+	 */
+	private record DataCacheSnapshot(
+		Object2ObjectOpenHashMap<Position, Object2ObjectOpenHashMap<Position, Rail>> positionsToRail,
+		Object2ObjectOpenHashMap<Position, Rail> runwaysInbound,
+		ObjectOpenHashSet<Position> runwaysOutbound,
+		ObjectArrayList<Object> idMaps,
+		Object2ObjectOpenHashMap<Object, @Nullable Object> savedRailAreas,
+		Object2ObjectOpenHashMap<Object, ObjectOpenHashSet<Object>> areaSavedRails,
+		Object2ObjectOpenHashMap<Station, ObjectOpenHashSet<Station>> stationConnections,
+		Long2ObjectOpenHashMap<Position> platformIdToPosition
+	) {
+
+		private DataCacheSnapshot(Data data) {
+			this(
+				new Object2ObjectOpenHashMap<>(),
+				new Object2ObjectOpenHashMap<>(data.runwaysInbound),
+				new ObjectOpenHashSet<>(data.runwaysOutbound),
+				ObjectArrayList.of(
+					new Long2ObjectOpenHashMap<>(data.stationIdMap),
+					new Long2ObjectOpenHashMap<>(data.platformIdMap),
+					new Long2ObjectOpenHashMap<>(data.sidingIdMap),
+					new Long2ObjectOpenHashMap<>(data.routeIdMap),
+					new Long2ObjectOpenHashMap<>(data.depotIdMap),
+					new Long2ObjectOpenHashMap<>(data.liftIdMap),
+					new Object2ObjectOpenHashMap<>(data.railIdMap),
+					new Long2ObjectOpenHashMap<>(data.homeIdMap),
+					new Long2ObjectOpenHashMap<>(data.landmarkIdMap)
+				),
+				new Object2ObjectOpenHashMap<>(),
+				new Object2ObjectOpenHashMap<>(),
+				new Object2ObjectOpenHashMap<>(),
+				new Long2ObjectOpenHashMap<>(data.platformIdToPosition)
+			);
+			data.positionsToRail.forEach((position, railsAtPosition) -> positionsToRail.put(position, new Object2ObjectOpenHashMap<>(railsAtPosition)));
+			data.platforms.forEach(platform -> savedRailAreas.put(platform, platform.area));
+			data.sidings.forEach(siding -> savedRailAreas.put(siding, siding.area));
+			data.stations.forEach(station -> areaSavedRails.put(station, new ObjectOpenHashSet<>(station.savedRails)));
+			data.depots.forEach(depot -> areaSavedRails.put(depot, new ObjectOpenHashSet<>(depot.savedRails)));
+			data.stations.forEach(station -> stationConnections.put(station, new ObjectOpenHashSet<>(station.connectedStations)));
+		}
 	}
 }
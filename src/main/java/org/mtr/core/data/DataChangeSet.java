@@ -0,0 +1,126 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import org.mtr.core.serializer.SerializedDataBase;
+import org.mtr.core.serializer.SerializedDataBaseWithId;
+
+import java.util.function.Consumer;
+
+/**
+ * The entities added, changed or removed by an edit, passed to {@link Data#sync(DataChangeSet)} so that only the affected caches are patched.
+ *
+ * <p>Rails are immutable, so a changed rail is recorded as the new rail only; the rail it replaces is found through its positions. Syncing
+ * may add platforms and sidings to this change set if they were affected by rail changes.</p>
+ */
+public final class DataChangeSet {
+
+	final Changes<Station> stations = new Changes<>();
+	final Changes<Platform> platforms = new Changes<>();
+	final Changes<Siding> sidings = new Changes<>();
+	final Changes<Route> routes = new Changes<>();
+	final Changes<Depot> depots = new Changes<>();
+	final Changes<Lift> lifts = new Changes<>();
+	final Changes<Rail> rails = new Changes<>();
+	final Changes<Home> homes = new Changes<>();
+	final Changes<Landmark> landmarks = new Changes<>();
+
+	/**
+	 * Record an entity that was added or changed in place.
+	 */
+	public DataChangeSet update(SerializedDataBase data) {
+		switch (data) {
+			case Station station -> stations.update(station);
+			case Platform platform -> platforms.update(platform);
+			case Siding siding -> sidings.update(siding);
+			case Route route -> routes.update(route);
+			case Depot depot -> depots.update(depot);
+			case Lift lift -> lifts.update(lift);
+			case Rail rail -> rails.update(rail);
+			case Home home -> homes.update(home);
+			case Landmark landmark -> landmarks.update(landmark);
+			default -> {
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Record an entity that was removed.
+	 */
+	public DataChangeSet remove(SerializedDataBase data) {
+		switch (data) {
+			case Station station -> stations.remove(station);
+			case Platform platform -> platforms.remove(platform);
+			case Siding siding -> sidings.remove(siding);
+			case Route route -> routes.remove(route);
+			case Depot depot -> depots.remove(depot);
+			case Lift lift -> lifts.remove(lift);
+			case Rail rail -> rails.remove(rail);
+			case Home home -> homes.remove(home);
+			case Landmark landmark -> landmarks.remove(landmark);
+			default -> {
+			}
+		}
+		return this;
+	}
+
+	public <T extends SerializedDataBase> DataChangeSet updateAll(Iterable<T> dataCollection) {
+		dataCollection.forEach(this::update);
+		return this;
+	}
+
+	public <T extends SerializedDataBase> DataChangeSet removeAll(Iterable<T> dataCollection) {
+		dataCollection.forEach(this::remove);
+		return this;
+	}
+
+	/**
+	 * Iterate every entity that was added or changed, including the platforms and sidings added by syncing.
+	 */
+	public void iterateUpdated(Consumer<SerializedDataBaseWithId> consumer) {
+		stations.updated.forEach(consumer);
+		platforms.updated.forEach(consumer);
+		sidings.updated.forEach(consumer);
+		routes.updated.forEach(consumer);
+		depots.updated.forEach(consumer);
+		lifts.updated.forEach(consumer);
+		rails.updated.forEach(consumer);
+		homes.updated.forEach(consumer);
+		landmarks.updated.forEach(consumer);
+	}
+
+	/**
+	 * @return whether any platforms or routes were changed, which the directions graph is built from
+	 */
+	public boolean hasPlatformOrRouteChanges() {
+		return !platforms.isEmpty() || !routes.isEmpty();
+	}
+
+	public boolean isEmpty() {
+		return stations.isEmpty() && platforms.isEmpty() && sidings.isEmpty() && routes.isEmpty() && depots.isEmpty() && lifts.isEmpty() && rails.isEmpty() && homes.isEmpty() && landmarks.isEmpty();
+	}
+
+	static final class Changes<T> {
+
+		/**
+		 * Kept in insertion order so that a later rail replaces an earlier one at the same positions, as with a full sync
+		 */
+		final ObjectLinkedOpenHashSet<T> updated = new ObjectLinkedOpenHashSet<>();
+		final ObjectLinkedOpenHashSet<T> removed = new ObjectLinkedOpenHashSet<>();
+
+		void update(T data) {
+			if (!removed.contains(data)) {
+				updated.add(data);
+			}
+		}
+
+		void remove(T data) {
+			updated.remove(data);
+			removed.add(data);
+		}
+
+		boolean isEmpty() {
+			return updated.isEmpty() && removed.isEmpty();
+		}
+	}
+}
@@ -269,7 +269,8 @@ public final class Depot extends DepotSchema implements Utilities {
 
 	/**
 	 * Mark a siding's path generation as complete. When all sidings are done the departure
-	 * timetable is regenerated.
+	 * timetable is regenerated. Route durations were rewritten along with the paths, so the
+	 * directions graph is rebuilt too.
 	 *
 	 * @param sidingId the siding whose path generation finished
 	 */
@@ -282,6 +283,9 @@ public final class Depot extends DepotSchema implements Utilities {
 				updateGenerationStatus(GeneratedStatus.SUCCESSFUL, 0, 0, "Path generation complete for %s");
 			}
 			generatePlatformDirectionsAndWriteDeparturesToSidings();
+			if (data instanceof Simulator simulator) {
+				simulator.directionsFinder.invalidateGraph();
+			}
 		}
 	}
 
@@ -435,6 +439,9 @@ public final class Depot extends DepotSchema implements Utilities {
 		this.lastGeneratedStatus = lastGeneratedStatus;
 		this.lastGeneratedFailedStartId = lastGeneratedFailedStartId;
 		this.lastGeneratedFailedEndId = lastGeneratedFailedEndId;
+		if (data instanceof Simulator simulator) {
+			simulator.markDirty(this);
+		}
 	}
 
 	long getRepeatDepartures() {
@@ -76,14 +76,16 @@ public final class Home extends HomeSchema {
 				adjustments++;
 			}
 
-			passengers.forEach(passenger -> {
+			boolean anyDirty = adjustments > 0;
+			for (final Passenger passenger : passengers) {
 				final boolean dirty = passenger.tick(this, simulator);
-				simulator.clients.forEach(client -> {
-					if (passenger.closeTo(client.getPosition(), client.getUpdateRadius())) {
-						client.update(passenger, dirty);
-					}
-				});
-			});
+				passenger.iterateNearbyClients(simulator, client -> client.update(passenger, dirty));
+				anyDirty |= dirty;
+			}
+
+			if (anyDirty) {
+				simulator.markDirty(this);
+			}
 		}
 	}
 
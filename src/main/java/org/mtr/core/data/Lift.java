@@ -55,6 +55,9 @@ public class Lift extends LiftSchema implements Utilities {
 	}
 
 	public void tick(long millisElapsed) {
+		// A lift that is stopped with nothing to do doesn't change
+		final boolean moving = stoppingCoolDown > 0 || speed != 0 || !instructions.isEmpty();
+
 		if (stoppingCoolDown > 0) {
 			stoppingCoolDown = Math.max(stoppingCoolDown - millisElapsed, 0);
 			if (stoppingCoolDown == 0) {
@@ -91,12 +94,15 @@ public class Lift extends LiftSchema implements Utilities {
 		}
 
 		if (data instanceof final Simulator simulator) {
-			simulator.clients.forEach(client -> {
+			simulator.clientGrid.iterateClients(minPosition, maxPosition, client -> {
 				if (Utilities.isBetween(client.getPosition(), minPosition, maxPosition, client.getUpdateRadius())) {
 					client.update(this, needsUpdate);
 				}
 			});
 
+			if (moving || needsUpdate) {
+				simulator.markDirty(this);
+			}
 			needsUpdate = false;
 		}
 	}
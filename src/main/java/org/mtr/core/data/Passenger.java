@@ -14,6 +14,7 @@ import org.mtr.core.simulation.Simulator;
 import org.mtr.core.tool.Utilities;
 
 import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * A single passenger agent that moves through the transit network via a state-machine tick loop.
@@ -392,6 +393,31 @@ public final class Passenger extends PassengerSchema {
 		}
 	}
 
+	/**
+	 * Find the clients that should be sent this passenger, as decided by {@link #closeTo(Position, double)}, looking only at clients near
+	 * the home, the current landmark and the current platforms.
+	 */
+	void iterateNearbyClients(Simulator simulator, Consumer<Client> consumer) {
+		if (home == null) {
+			return;
+		}
+
+		// Everything checked in closeTo (including the platform mid positions and the home centre) lies within these areas
+		final long[] bounds = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+		writeBounds(bounds, home);
+		writeBounds(bounds, currentLandmark);
+		writeBounds(bounds, currentStartPlatform);
+		writeBounds(bounds, currentEndPlatform);
+
+		if (bounds[0] <= bounds[2] && bounds[1] <= bounds[3]) {
+			simulator.clientGrid.iterateClients(bounds[0], bounds[1], bounds[2], bounds[3], client -> {
+				if (closeTo(client.getPosition(), client.getUpdateRadius())) {
+					consumer.accept(client);
+				}
+			});
+		}
+	}
+
 	boolean closeTo(Position position, double padding) {
 		if (home == null) {
 			return false;
@@ -409,7 +435,7 @@ public final class Passenger extends PassengerSchema {
 	/**
 	 * Resolve {@link #currentSiding} and {@link #currentVehicle} from the persisted
 	 * {@code sidingId} / {@code vehicleId}. When the fast ID-based lookup fails and
-	 * {@code vehicleId != 0}, a fallback scan across all sidings is performed.
+	 * {@code vehicleId != 0}, the siding is looked up from {@link Simulator#vehicleIdToSiding} instead.
 	 *
 	 * <p>This method is <strong>not</strong> used in state 4 (boarding) because that state
 	 * needs a platform/route-based lookup rather than an ID-based one.</p>
@@ -446,13 +472,12 @@ public final class Passenger extends PassengerSchema {
 		}
 
 		if (vehicleId != 0 && currentVehicle == null) {
-			for (final Siding siding : simulator.sidings) {
-				currentVehicle = siding.getVehicleById(vehicleId);
-				if (currentVehicle != null) {
-					sidingId = siding.getId();
-					currentSiding = siding;
-					return;
-				}
+			final Siding siding = simulator.vehicleIdToSiding.get(vehicleId);
+			currentVehicle = siding == null ? null : siding.getVehicleById(vehicleId);
+			if (siding != null && currentVehicle != null) {
+				sidingId = siding.getId();
+				currentSiding = siding;
+				return;
 			}
 		}
 
@@ -649,16 +674,20 @@ public final class Passenger extends PassengerSchema {
 
 	private void waitForVehicle(Simulator simulator) {
 		if (currentRoute != null && currentStartPlatform != null) {
-			for (final Siding siding : simulator.sidings) {
-				final ObjectBooleanImmutablePair<@Nullable Vehicle> vehicleDetails = siding.getVehicleDetailsAtPlatform(currentRoute.getId(), currentStartPlatform.getId());
-				final Vehicle vehicle = vehicleDetails.left();
-				if (vehicleDetails.rightBoolean() && vehicle != null) {
-					sidingId = siding.getId();
-					currentSiding = siding;
-					vehicleId = vehicle.getId();
-					currentVehicle = vehicle;
-					vehicleCarNumber = -1;
-					return;
+			// Only sidings whose depot serves the route can have a vehicle running on it
+			final ObjectArrayList<Siding> sidingsForRoute = simulator.routeIdToSidings.get(currentRoute.getId());
+			if (sidingsForRoute != null) {
+				for (final Siding siding : sidingsForRoute) {
+					final ObjectBooleanImmutablePair<@Nullable Vehicle> vehicleDetails = siding.getVehicleDetailsAtPlatform(currentRoute.getId(), currentStartPlatform.getId());
+					final Vehicle vehicle = vehicleDetails.left();
+					if (vehicleDetails.rightBoolean() && vehicle != null) {
+						sidingId = siding.getId();
+						currentSiding = siding;
+						vehicleId = vehicle.getId();
+						currentVehicle = vehicle;
+						vehicleCarNumber = -1;
+						return;
+					}
 				}
 			}
 
@@ -720,4 +749,25 @@ public final class Passenger extends PassengerSchema {
 			return immutableVehicleCars.size() - 1;
 		}
 	}
+
+	private static void writeBounds(long[] bounds, @Nullable SimpleAreaBase simpleAreaBase) {
+		if (SimpleAreaBase.validCorners(simpleAreaBase)) {
+			writeBounds(bounds, simpleAreaBase.getMinX(), simpleAreaBase.getMinZ(), simpleAreaBase.getMaxX(), simpleAreaBase.getMaxZ());
+		}
+	}
+
+	private static void writeBounds(long[] bounds, @Nullable Platform platform) {
+		if (platform != null) {
+			final Position minPosition = platform.getMinPosition();
+			final Position maxPosition = platform.getMaxPosition();
+			writeBounds(bounds, minPosition.getX(), minPosition.getZ(), maxPosition.getX(), maxPosition.getZ());
+		}
+	}
+
+	private static void writeBounds(long[] bounds, long minX, long minZ, long maxX, long maxZ) {
+		bounds[0] = Math.min(bounds[0], minX);
+		bounds[1] = Math.min(bounds[1], minZ);
+		bounds[2] = Math.max(bounds[2], maxX);
+		bounds[3] = Math.max(bounds[3], maxZ);
+	}
 }
@@ -304,7 +304,7 @@ public final class Rail extends RailSchema {
 
 	public void tick1(Simulator simulator) {
 		final boolean needsUpdate = Utilities.differentItems(preBlockedVehicleIds.keySet(), preBlockedVehicleIdsOld.keySet()) || Utilities.differentItems(currentlyBlockedVehicleIds.keySet(), currentlyBlockedVehicleIdsOld.keySet());
-		simulator.clients.forEach(client -> {
+		simulator.clientGrid.iterateClients(railMath.minX, railMath.minZ, railMath.maxX, railMath.maxZ, client -> {
 			if (closeTo(client.getPosition(), client.getUpdateRadius())) {
 				client.update(this, needsUpdate);
 			}
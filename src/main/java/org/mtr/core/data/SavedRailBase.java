@@ -47,6 +47,20 @@ public abstract class SavedRailBase<T extends SavedRailBase<T, U>, U extends Are
 		return new Position(offsetPosition.getX() / 2, offsetPosition.getY() / 2, offsetPosition.getZ() / 2);
 	}
 
+	/**
+	 * @return the corner of the bounding box of the two positions with the smallest coordinates
+	 */
+	public Position getMinPosition() {
+		return new Position(Math.min(position1.getX(), position2.getX()), Math.min(position1.getY(), position2.getY()), Math.min(position1.getZ(), position2.getZ()));
+	}
+
+	/**
+	 * @return the corner of the bounding box of the two positions with the largest coordinates
+	 */
+	public Position getMaxPosition() {
+		return new Position(Math.max(position1.getX(), position2.getX()), Math.max(position1.getY(), position2.getY()), Math.max(position1.getZ(), position2.getZ()));
+	}
+
 	public boolean isInvalidSavedRail() {
 		updateRailCache();
 		return rail == null || this instanceof Platform && !rail.isPlatform() || this instanceof Siding && !rail.isSiding();
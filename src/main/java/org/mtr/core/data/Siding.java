@@ -13,6 +13,7 @@ import org.mtr.core.path.SidingPathFinder;
 import org.mtr.core.serializer.ReaderBase;
 import org.mtr.core.serializer.WriterBase;
 import org.mtr.core.simulation.Simulator;
+import org.mtr.core.simulation.VehicleSimulationWorker;
 import org.mtr.core.tool.ConditionalList;
 import org.mtr.core.tool.Utilities;
 import org.mtr.legacy.data.DataFixer;
@@ -37,6 +38,7 @@ public final class Siding extends SidingSchema implements Utilities {
 	@Nullable
 	private PathData defaultPathData;
 	private double timeOffsetForRepeating;
+	private int pathVersion;
 
 	private final ObjectArrayList<SidingPathFinder<Depot, Siding, Station, Platform>> sidingPathFinderSidingToMainRoute = new ObjectArrayList<>();
 	private final ObjectArrayList<SidingPathFinder<Station, Platform, Depot, Siding>> sidingPathFinderMainRouteToSiding = new ObjectArrayList<>();
@@ -69,6 +71,10 @@ public final class Siding extends SidingSchema implements Utilities {
 	 * Mapping of departure indices to real time vehicle times
 	 */
 	private final Long2ObjectOpenHashMap<LongObjectImmutablePair<Vehicle>> vehicleTimesAlongRoute = new Long2ObjectOpenHashMap<>();
+	/**
+	 * Mapping of platform ID to route ID to the vehicle currently at that platform, filled in lazily by passengers and cleared every tick
+	 */
+	private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<ObjectBooleanImmutablePair<@Nullable Vehicle>>> vehiclesAtPlatforms = new Long2ObjectOpenHashMap<>();
 
 	public static final double ACCELERATION_DEFAULT = 1D / 250000;
 	public static final double MAX_ACCELERATION = 1D / 50000;
@@ -77,6 +83,7 @@ public final class Siding extends SidingSchema implements Utilities {
 	private static final String KEY_PATH_SIDING_TO_MAIN_ROUTE = "pathSidingToMainRoute";
 	private static final String KEY_PATH_MAIN_ROUTE_TO_SIDING = "pathMainRouteToSiding";
 	private static final String KEY_VEHICLES = "vehicles";
+	private static final ObjectBooleanImmutablePair<@Nullable Vehicle> NO_VEHICLE_AT_PLATFORM = new ObjectBooleanImmutablePair<>(null, false);
 
 	public Siding(Position position1, Position position2, double railLength, TransportMode transportMode, Data data) {
 		super(getRailLength(railLength), position1, position2, transportMode, data);
@@ -291,15 +298,49 @@ public final class Siding extends SidingSchema implements Utilities {
 		}
 	}
 
-	public void initVehiclePositions(Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>> vehiclePositions) {
+	/**
+	 * A counter that changes whenever this siding's paths are regenerated.
+	 */
+	public int getPathVersion() {
+		return pathVersion;
+	}
+
+	/**
+	 * Iterate every position this siding's vehicles can occupy: the siding itself and both ends of each segment of its paths.
+	 */
+	public void iteratePathPositions(Consumer<Position> consumer) {
+		consumer.accept(position1);
+		consumer.accept(position2);
+		final Consumer<PathData> pathDataConsumer = pathData -> {
+			consumer.accept(pathData.getOrderedPosition1());
+			consumer.accept(pathData.getOrderedPosition2());
+		};
+		if (defaultPathData != null) {
+			pathDataConsumer.accept(defaultPathData);
+		}
+		pathSidingToMainRoute.forEach(pathDataConsumer);
+		pathMainRoute.forEach(pathDataConsumer);
+		pathMainRouteToSiding.forEach(pathDataConsumer);
+	}
+
+	public void initVehiclePositions(VehiclePositionIndex vehiclePositions) {
 		vehicleIdMap.values().forEach(vehicle -> vehicle.initVehiclePositions(vehiclePositions));
 	}
 
 	/**
 	 * Simulate this siding's vehicles for one tick and refresh runtime vehicle ID caches used by passenger boarding and arrivals payload enrichment.
 	 */
-	public void simulateVehicles(long millisElapsed, @Nullable ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions) {
+	public void simulateVehicles(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions) {
+		simulateVehicles(millisElapsed, vehiclePositions, null);
+	}
+
+	/**
+	 * Same as {@link #simulateVehicles(long, VehiclePositionIndex)}, but when running on a parallel vehicle simulation worker, shared simulator
+	 * state is written to the {@code vehicleSimulationWorker} instead.
+	 */
+	public void simulateVehicles(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions, @Nullable VehicleSimulationWorker vehicleSimulationWorker) {
 		vehicleTimesAlongRoute.clear();
+		vehiclesAtPlatforms.clear();
 
 		if (area == null) {
 			vehicleIdMap.clear();
@@ -315,7 +356,7 @@ public final class Siding extends SidingSchema implements Utilities {
 		final ObjectArraySet<Vehicle> trainsToRemove = new ObjectArraySet<>();
 		final LongOpenHashSet visitedDepartureIndices = new LongOpenHashSet();
 		for (final Vehicle vehicle : vehicleIdMap.values()) {
-			vehicle.simulate(millisElapsed, vehiclePositions, vehicleTimesAlongRoute);
+			vehicle.simulate(millisElapsed, vehiclePositions, vehicleTimesAlongRoute, vehicleSimulationWorker);
 
 			if (vehicle.closeToDepot()) {
 				spawnTrain = false;
@@ -587,19 +628,21 @@ public final class Siding extends SidingSchema implements Utilities {
 
 	/**
 	 * Used by passengers to find a vehicle currently at the platform running on a specified route.
+	 * Arrivals at a platform are only scanned once per tick; every route's result is kept for other passengers waiting at the same platform.
 	 *
 	 * @return a pair containing the vehicle (null if continuous movement) and whether an arrival was found
 	 */
 	ObjectBooleanImmutablePair<@Nullable Vehicle> getVehicleDetailsAtPlatform(long routeId, long platformId) {
-		final @Nullable Vehicle[] tempVehicles = {null};
-		final boolean[] hasArrival = {false};
-		iterateArrivals(data.getCurrentMillis(), platformId, 0, 0, (vehicle, trip, tripStopIndex, stopTime, scheduledArrivalTime, scheduledDepartureTime, predicted, deviation, departureIndex, departureOffset) -> {
-			if (trip.route.getId() == routeId) {
-				tempVehicles[0] = vehicle;
-				hasArrival[0] = true;
-			}
-		});
-		return new ObjectBooleanImmutablePair<>(tempVehicles[0], hasArrival[0]);
+		return vehiclesAtPlatforms.computeIfAbsent(platformId, this::getVehiclesAtPlatform).getOrDefault(routeId, NO_VEHICLE_AT_PLATFORM);
+	}
+
+	/**
+	 * @return a mapping of route ID to the last arrival found at the platform for that route
+	 */
+	private Long2ObjectOpenHashMap<ObjectBooleanImmutablePair<@Nullable Vehicle>> getVehiclesAtPlatform(long platformId) {
+		final Long2ObjectOpenHashMap<ObjectBooleanImmutablePair<@Nullable Vehicle>> vehiclesAtPlatform = new Long2ObjectOpenHashMap<>();
+		iterateArrivals(data.getCurrentMillis(), platformId, 0, 0, (vehicle, trip, tripStopIndex, stopTime, scheduledArrivalTime, scheduledDepartureTime, predicted, deviation, departureIndex, departureOffset) -> vehiclesAtPlatform.put(trip.route.getId(), new ObjectBooleanImmutablePair<>(vehicle, true)));
+		return vehiclesAtPlatform;
 	}
 
 	/**
@@ -771,6 +814,7 @@ public final class Siding extends SidingSchema implements Utilities {
 	 * After a path is set, generate the distance and time values. Should only be called during initialisation and after a path is generated.
 	 */
 	private void generatePathDistancesAndTimeSegments() {
+		pathVersion++;
 		vehicleIdMap.clear();
 		pathMainRoute.clear();
 		trips.clear();
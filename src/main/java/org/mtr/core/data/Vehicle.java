@@ -13,10 +13,13 @@ import org.mtr.core.generated.data.VehicleSchema;
 import org.mtr.core.path.SidingPathFinder;
 import org.mtr.core.serializer.ReaderBase;
 import org.mtr.core.simulation.Simulator;
+import org.mtr.core.simulation.VehicleSimulationWorker;
 import org.mtr.core.tool.Utilities;
 import org.mtr.core.tool.Vector;
 
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * A single train / boat / cable car / airplane consist running along a {@link Siding}.
@@ -45,6 +48,12 @@ public class Vehicle extends VehicleSchema implements Utilities {
 	 * Last simulator timestamp at which this vehicle moved; used by jam detection.
 	 */
 	private long lastMovementMillis;
+	/**
+	 * The copy of {@link #vehicleExtraData} sent to every client updated in the same tick. Cleared every time the vehicle is simulated.
+	 */
+	@Nullable
+	private VehicleExtraData vehicleExtraDataSnapshot;
+	private int vehicleExtraDataSnapshotPathUpdateIndex;
 
 	public final VehicleExtraData vehicleExtraData;
 	@Nullable
@@ -107,15 +116,43 @@ public class Vehicle extends VehicleSchema implements Utilities {
 		return reversed;
 	}
 
+	public double getRailProgress() {
+		return railProgress;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public long getElapsedDwellTime() {
+		return elapsedDwellTime;
+	}
+
+	public long getNextStoppingIndexAto() {
+		return nextStoppingIndexAto;
+	}
+
+	public long getNextStoppingIndexManual() {
+		return nextStoppingIndexManual;
+	}
+
 	public boolean closeToDepot() {
 		return !getIsOnRoute() || railProgress < vehicleExtraData.getTotalVehicleLength() + vehicleExtraData.getRailLength();
 	}
 
-	public void initVehiclePositions(Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>> vehiclePositions) {
-		writeVehiclePositions(Utilities.getIndexFromConditionalList(vehicleExtraData.immutablePath, railProgress), vehiclePositions);
+	public void initVehiclePositions(VehiclePositionIndex vehiclePositions) {
+		writeVehiclePositions(Utilities.getIndexFromConditionalList(vehicleExtraData.immutablePath, railProgress), vehiclePositions, null);
+	}
+
+	public void simulate(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions, @Nullable Long2ObjectOpenHashMap<LongObjectImmutablePair<Vehicle>> vehicleTimesAlongRoute) {
+		simulate(millisElapsed, vehiclePositions, vehicleTimesAlongRoute, null);
 	}
 
-	public void simulate(long millisElapsed, @Nullable ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions, @Nullable Long2ObjectOpenHashMap<LongObjectImmutablePair<Vehicle>> vehicleTimesAlongRoute) {
+	/**
+	 * @param vehicleSimulationWorker if not {@code null}, jammed routes and client updates are recorded on the worker instead of being written to the simulator directly
+	 */
+	public void simulate(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions, @Nullable Long2ObjectOpenHashMap<LongObjectImmutablePair<Vehicle>> vehicleTimesAlongRoute, @Nullable VehicleSimulationWorker vehicleSimulationWorker) {
+		vehicleExtraDataSnapshot = null;
 		final int currentIndex;
 		final BooleanBooleanImmutablePair containsDriverAndDoorOverride = vehicleExtraData.containsDriverAndDoorOverride();
 		manualCooldown = vehicleExtraData.getIsManualAllowed() && containsDriverAndDoorOverride.leftBoolean() ? vehicleExtraData.getManualToAutomaticTime() : Math.max(0, manualCooldown - millisElapsed);
@@ -149,8 +186,8 @@ public class Vehicle extends VehicleSchema implements Utilities {
 
 		stoppingCooldown = Math.max(0, stoppingCooldown - millisElapsed);
 
-		if (vehiclePositions != null && vehiclePositions.size() > 1) {
-			writeVehiclePositions(currentIndex, vehiclePositions.get(1));
+		if (vehiclePositions != null) {
+			writeVehiclePositions(currentIndex, vehiclePositions, vehicleSimulationWorker);
 		}
 
 		if (vehicleTimesAlongRoute != null) {
@@ -167,9 +204,10 @@ public class Vehicle extends VehicleSchema implements Utilities {
 
 				// Check jam status
 				if (simulator.getCurrentMillis() - lastMovementMillis >= JAM_THRESHOLD) {
-					simulator.markRouteJammed(vehicleExtraData.getPreviousRouteId());
-					simulator.markRouteJammed(vehicleExtraData.getThisRouteId());
-					simulator.markRouteJammed(vehicleExtraData.getNextRouteId());
+					final LongConsumer markRouteJammed = vehicleSimulationWorker == null ? simulator::markRouteJammed : vehicleSimulationWorker::markRouteJammed;
+					markRouteJammed.accept(vehicleExtraData.getPreviousRouteId());
+					markRouteJammed.accept(vehicleExtraData.getThisRouteId());
+					markRouteJammed.accept(vehicleExtraData.getNextRouteId());
 				}
 			}
 
@@ -213,6 +251,18 @@ public class Vehicle extends VehicleSchema implements Utilities {
 		}
 	}
 
+	/**
+	 * A copy of {@link #vehicleExtraData} as returned by {@link VehicleExtraData#copy(int)}, shared by every client that needs it in the
+	 * same tick. The copy is never modified, so it is safe to serialise later.
+	 */
+	public VehicleExtraData getVehicleExtraDataSnapshot(int pathUpdateIndex) {
+		if (vehicleExtraDataSnapshot == null || vehicleExtraDataSnapshotPathUpdateIndex != pathUpdateIndex) {
+			vehicleExtraDataSnapshot = vehicleExtraData.copy(pathUpdateIndex);
+			vehicleExtraDataSnapshotPathUpdateIndex = pathUpdateIndex;
+		}
+		return vehicleExtraDataSnapshot;
+	}
+
 	public long getDepartureIndex() {
 		return departureIndex;
 	}
@@ -308,7 +358,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 		}
 	}
 
-	private void simulateStopped(long millisElapsed, @Nullable ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions, int currentIndex) {
+	private void simulateStopped(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions, int currentIndex) {
 		if (isClientside) {
 			return;
 		}
@@ -393,7 +443,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 		}
 	}
 
-	private void simulateMoving(long millisElapsed, @Nullable ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions, int currentIndex) {
+	private void simulateMoving(long millisElapsed, @Nullable VehiclePositionIndex vehiclePositions, int currentIndex) {
 		// Tracks the distance
 		final double stoppingPoint;
 		// Tracks the speed
@@ -565,7 +615,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 	 * <li>New stopping index or blocked rail</li>
 	 * </ul>
 	 */
-	private void writeVehiclePositions(int currentIndex, Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>> vehiclePositions) {
+	private void writeVehiclePositions(int currentIndex, VehiclePositionIndex vehiclePositions, @Nullable VehicleSimulationWorker vehicleSimulationWorker) {
 		final @Nullable Position[] minMaxPositions = {null, null};
 		int index = currentIndex;
 
@@ -584,11 +634,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 				final DoubleDoubleImmutablePair blockedBounds = getBlockedBounds(pathData, railProgress - vehicleExtraData.getTotalVehicleLength(), railProgress - 0.01);
 				if (blockedBounds.rightDouble() - blockedBounds.leftDouble() > 0.01) {
 					if (getIsOnRoute() && index > 0) {
-						Data.put(vehiclePositions, position1, position2, vehiclePosition -> {
-							final VehiclePosition newVehiclePosition = vehiclePosition == null ? new VehiclePosition() : vehiclePosition;
-							newVehiclePosition.addSegment(blockedBounds.leftDouble(), blockedBounds.rightDouble(), id);
-							return newVehiclePosition;
-						}, Object2ObjectAVLTreeMap::new);
+						vehiclePositions.getOrCreateCurrent(position1, position2).addSegment(blockedBounds.leftDouble(), blockedBounds.rightDouble(), id);
 						pathData.isSignalBlocked(id, Rail.BlockReservation.CURRENTLY_RESERVE);
 					}
 				}
@@ -602,13 +648,39 @@ public class Vehicle extends VehicleSchema implements Utilities {
 				final boolean needsUpdate = vehicleExtraData.checkForUpdate();
 				// TODO for continuous movement, maybe only send the path once rather than sending the entire path for each vehicle
 				final int pathUpdateIndex = transportMode.continuousMovement ? 0 : Math.max(0, index + 1);
-				simulator.clients.forEach(client -> {
-					final Position position = client.getPosition();
-					final double updateRadius = client.getUpdateRadius();
-					if ((minMaxPositions[0] == null || minMaxPositions[1] == null) ? siding.area.inArea(position, updateRadius) : Utilities.isBetween(position, minMaxPositions[0], minMaxPositions[1], updateRadius) || !closeToDepot() && vehicleExtraData.hasRidingEntity(client.uuid)) {
+				final Consumer<Client> updateClient = client -> {
+					if (vehicleSimulationWorker == null) {
 						client.update(this, needsUpdate, pathUpdateIndex);
+					} else {
+						vehicleSimulationWorker.updateClient(client, this, needsUpdate, pathUpdateIndex);
 					}
-				});
+				};
+
+				if (minMaxPositions[0] == null || minMaxPositions[1] == null) {
+					if (SimpleAreaBase.validCorners(siding.area)) {
+						simulator.clientGrid.iterateClients(siding.area.getMinX(), siding.area.getMinZ(), siding.area.getMaxX(), siding.area.getMaxZ(), client -> {
+							if (siding.area.inArea(client.getPosition(), client.getUpdateRadius())) {
+								updateClient.accept(client);
+							}
+						});
+					}
+				} else {
+					simulator.clientGrid.iterateClients(minMaxPositions[0], minMaxPositions[1], client -> {
+						if (Utilities.isBetween(client.getPosition(), minMaxPositions[0], minMaxPositions[1], client.getUpdateRadius())) {
+							updateClient.accept(client);
+						}
+					});
+
+					// Riding clients are updated wherever they are, so look them up directly rather than through the grid
+					if (!closeToDepot()) {
+						vehicleExtraData.iterateRidingEntities(vehicleRidingEntity -> {
+							final Client client = simulator.clientGrid.getClient(vehicleRidingEntity.uuid);
+							if (client != null && !Utilities.isBetween(client.getPosition(), minMaxPositions[0], minMaxPositions[1], client.getUpdateRadius())) {
+								updateClient.accept(client);
+							}
+						});
+					}
+				}
 			}
 
 			vehicleExtraData.setRoutePlatformInfo(siding.area, currentIndex);
@@ -620,7 +692,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 	 *
 	 * @return the distance until the rail is blocked or -1 if there is nothing in front
 	 */
-	private double railBlockedDistance(int currentIndex, double checkRailProgress, double checkDistance, @Nullable ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions, boolean reserveRail, boolean secondPass) {
+	private double railBlockedDistance(int currentIndex, double checkRailProgress, double checkDistance, @Nullable VehiclePositionIndex vehiclePositions, boolean reserveRail, boolean secondPass) {
 		int index = currentIndex;
 
 		while (vehiclePositions != null && index < vehicleExtraData.immutablePath.size()) {
@@ -638,7 +710,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 			} else if (Utilities.isIntersecting(pathData.getStartDistance(), pathData.getEndDistance(), checkRailProgress, checkRailProgressEnd)) {
 				final DoubleDoubleImmutablePair blockedBounds = getBlockedBounds(pathData, checkRailProgress, checkRailProgressEnd);
 				for (int i = 0; i < 2; i++) {
-					final VehiclePosition vehiclePosition = Data.tryGet(vehiclePositions.get(i), pathData.getOrderedPosition1(), pathData.getOrderedPosition2());
+					final VehiclePosition vehiclePosition = i == 0 ? vehiclePositions.getPrevious(pathData.getOrderedPosition1(), pathData.getOrderedPosition2()) : vehiclePositions.getCurrent(pathData.getOrderedPosition1(), pathData.getOrderedPosition2());
 					if (vehiclePosition != null) {
 						final double closestOverlap = vehiclePosition.getClosestOverlap(blockedBounds.leftDouble(), blockedBounds.rightDouble(), pathData.reversePositions, id);
 						if (closestOverlap >= 0) {
@@ -659,7 +731,7 @@ public class Vehicle extends VehicleSchema implements Utilities {
 	 *
 	 * @return if the vehicle should stop
 	 */
-	private boolean checkAndBlockSignal(int currentIndex, ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositions, boolean reserveRail, boolean secondPass) {
+	private boolean checkAndBlockSignal(int currentIndex, VehiclePositionIndex vehiclePositions, boolean reserveRail, boolean secondPass) {
 		final PathData firstPathData = vehicleExtraData.immutablePath.get(currentIndex);
 
 		if (secondPass) {
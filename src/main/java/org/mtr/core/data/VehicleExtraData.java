@@ -13,7 +13,6 @@ import org.mtr.core.serializer.JsonReader;
 import org.mtr.core.serializer.ReaderBase;
 import org.mtr.core.tool.Utilities;
 
-import java.util.UUID;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -28,6 +27,7 @@ public class VehicleExtraData extends VehicleExtraDataSchema {
 	private double oldSpeedTarget;
 	private boolean oldIsCurrentlyManual;
 	private boolean hasRidingEntityUpdate;
+	private long ridingEntitiesVersion;
 
 	public final ObjectImmutableList<PathData> immutablePath;
 	public final ObjectImmutableList<VehicleCar> immutableVehicleCars;
@@ -55,24 +55,103 @@ public class VehicleExtraData extends VehicleExtraDataSchema {
 		passengers = new ObjectImmutableList<>(vehicleCars.stream().map(vehicleCar -> new ObjectArraySet<Passenger>()).toList());
 	}
 
+	/**
+	 * Copy every field directly rather than through serialisation. The lists are copied, but their elements are shared since they are only
+	 * ever replaced, never modified.
+	 */
+	private VehicleExtraData(VehicleExtraData vehicleExtraData, ObjectArrayList<PathData> path) {
+		this(
+			vehicleExtraData.depotId,
+			vehicleExtraData.sidingId,
+			vehicleExtraData.railLength,
+			vehicleExtraData.totalVehicleLength,
+			vehicleExtraData.repeatIndex1,
+			vehicleExtraData.repeatIndex2,
+			vehicleExtraData.acceleration,
+			vehicleExtraData.deceleration,
+			vehicleExtraData.isManualAllowed,
+			vehicleExtraData.maxManualSpeed,
+			vehicleExtraData.manualToAutomaticTime,
+			vehicleExtraData.totalDistance,
+			vehicleExtraData.defaultPosition,
+			vehicleExtraData.vehicleCars,
+			path
+		);
+
+		previousRouteId = vehicleExtraData.previousRouteId;
+		previousPlatformId = vehicleExtraData.previousPlatformId;
+		previousStationId = vehicleExtraData.previousStationId;
+		previousRouteColor = vehicleExtraData.previousRouteColor;
+		previousRouteName = vehicleExtraData.previousRouteName;
+		previousRouteNumber = vehicleExtraData.previousRouteNumber;
+		previousRouteType = vehicleExtraData.previousRouteType;
+		previousRouteCircularState = vehicleExtraData.previousRouteCircularState;
+		previousStationName = vehicleExtraData.previousStationName;
+		previousRouteDestination = vehicleExtraData.previousRouteDestination;
+
+		thisRouteId = vehicleExtraData.thisRouteId;
+		thisPlatformId = vehicleExtraData.thisPlatformId;
+		thisStationId = vehicleExtraData.thisStationId;
+		thisRouteColor = vehicleExtraData.thisRouteColor;
+		thisRouteName = vehicleExtraData.thisRouteName;
+		thisRouteNumber = vehicleExtraData.thisRouteNumber;
+		thisRouteType = vehicleExtraData.thisRouteType;
+		thisRouteCircularState = vehicleExtraData.thisRouteCircularState;
+		thisStationName = vehicleExtraData.thisStationName;
+		thisRouteDestination = vehicleExtraData.thisRouteDestination;
+
+		nextRouteId = vehicleExtraData.nextRouteId;
+		nextPlatformId = vehicleExtraData.nextPlatformId;
+		nextStationId = vehicleExtraData.nextStationId;
+		nextRouteColor = vehicleExtraData.nextRouteColor;
+		nextRouteName = vehicleExtraData.nextRouteName;
+		nextRouteNumber = vehicleExtraData.nextRouteNumber;
+		nextRouteType = vehicleExtraData.nextRouteType;
+		nextRouteCircularState = vehicleExtraData.nextRouteCircularState;
+		nextStationName = vehicleExtraData.nextStationName;
+		nextRouteDestination = vehicleExtraData.nextRouteDestination;
+
+		isTerminating = vehicleExtraData.isTerminating;
+		interchangeColorsForStationNameList.addAll(vehicleExtraData.interchangeColorsForStationNameList);
+		stoppingPoint = vehicleExtraData.stoppingPoint;
+		powerLevel = vehicleExtraData.powerLevel;
+		speedTarget = vehicleExtraData.speedTarget;
+		doorTarget = vehicleExtraData.doorTarget;
+		isCurrentlyManual = vehicleExtraData.isCurrentlyManual;
+		ridingEntities.addAll(vehicleExtraData.ridingEntities);
+	}
+
 	public VehicleExtraData copy(int pathUpdateIndex) {
-		final VehicleExtraData newVehicleExtraData = new VehicleExtraData(new JsonReader(Utilities.getJsonObjectFromData(this)));
-		newVehicleExtraData.path.clear();
+		final int pathUpdateEndIndex = getPathUpdateEndIndex(pathUpdateIndex);
+		final ObjectArrayList<PathData> newPath = new ObjectArrayList<>(pathUpdateEndIndex - pathUpdateIndex + 1);
 
-		for (int i = pathUpdateIndex; i <= path.size(); i++) {
-			if (i == path.size() && !path.isEmpty()) {
-				newVehicleExtraData.path.add(0, path.getFirst());
-			} else {
-				final PathData pathData = path.get(i);
-				if (i == pathUpdateIndex || pathData.getStartDistance() <= stoppingPoint) {
-					newVehicleExtraData.path.add(pathData);
-				} else {
-					break;
-				}
+		// If the rest of the path is sent, the first path segment is sent again at the start
+		if (pathUpdateEndIndex == path.size() && !path.isEmpty()) {
+			newPath.add(path.getFirst());
+		}
+
+		newPath.addAll(path.subList(pathUpdateIndex, pathUpdateEndIndex));
+		return new VehicleExtraData(this, newPath);
+	}
+
+	/**
+	 * @return the end (exclusive) of the path segments sent by {@link #copy(int)}: the segment at {@code pathUpdateIndex} and every following
+	 * segment starting at or before the stopping point
+	 */
+	public int getPathUpdateEndIndex(int pathUpdateIndex) {
+		for (int i = pathUpdateIndex + 1; i < path.size(); i++) {
+			if (path.get(i).getStartDistance() > stoppingPoint) {
+				return i;
 			}
 		}
+		return Math.max(pathUpdateIndex, path.size());
+	}
 
-		return newVehicleExtraData;
+	/**
+	 * Incremented whenever an entity starts or stops riding, so that a client can tell if the riding entities it was sent are out of date.
+	 */
+	public long getRidingEntitiesVersion() {
+		return ridingEntitiesVersion;
 	}
 
 	public long getDepotId() {
@@ -433,19 +512,17 @@ public class VehicleExtraData extends VehicleExtraDataSchema {
 	void removeRidingEntitiesIf(Predicate<VehicleRidingEntity> predicate) {
 		if (ridingEntities.removeIf(predicate)) {
 			hasRidingEntityUpdate = true;
+			ridingEntitiesVersion++;
 		}
 	}
 
 	void addRidingEntities(ObjectOpenHashSet<VehicleRidingEntity> vehicleRidingEntitiesToAdd) {
 		if (ridingEntities.addAll(vehicleRidingEntitiesToAdd)) {
 			hasRidingEntityUpdate = true;
+			ridingEntitiesVersion++;
 		}
 	}
 
-	boolean hasRidingEntity(UUID uuid) {
-		return ridingEntities.stream().anyMatch(vehicleRidingEntity -> vehicleRidingEntity.uuid.equals(uuid));
-	}
-
 	public static VehicleExtraData create(
 		long depotId, long sidingId, double railLength, ObjectArrayList<VehicleCar> vehicleCars,
 		ObjectArrayList<PathData> pathSidingToMainRoute, ObjectArrayList<PathData> pathMainRoute, ObjectArrayList<PathData> pathMainRouteToSiding, PathData defaultPathData,
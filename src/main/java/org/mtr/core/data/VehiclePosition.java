@@ -1,26 +1,37 @@
 package org.mtr.core.data;
 
-import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.mtr.core.tool.Utilities;
 
+/**
+ * The portions of a single rail segment occupied by vehicles in one tick. Segments are stored in parallel primitive lists so that
+ * instances can be cleared and reused by {@link VehiclePositionIndex} without allocating.
+ */
 public class VehiclePosition {
 
-	private final ObjectArrayList<BlockedSegment> blockedSegments = new ObjectArrayList<>();
+	private final DoubleArrayList startDistances = new DoubleArrayList();
+	private final DoubleArrayList endDistances = new DoubleArrayList();
+	private final LongArrayList ids = new LongArrayList();
 
 	public void addSegment(double startDistance, double endDistance, long id) {
-		blockedSegments.add(new BlockedSegment(startDistance, endDistance, id));
+		startDistances.add(startDistance);
+		endDistances.add(endDistance);
+		ids.add(id);
 	}
 
 	public double getClosestOverlap(double startDistance, double endDistance, boolean reversePositions, long id) {
 		double closestOverlap = Double.MAX_VALUE;
 		boolean valueSet = false;
 
-		for (final BlockedSegment blockedSegment : blockedSegments) {
-			if (id != blockedSegment.id && Utilities.isIntersecting(startDistance, endDistance, blockedSegment.startDistance, blockedSegment.endDistance)) {
+		for (int i = 0; i < ids.size(); i++) {
+			final double blockedStartDistance = startDistances.getDouble(i);
+			final double blockedEndDistance = endDistances.getDouble(i);
+			if (id != ids.getLong(i) && Utilities.isIntersecting(startDistance, endDistance, blockedStartDistance, blockedEndDistance)) {
 				if (reversePositions) {
-					closestOverlap = Utilities.clampSafe(endDistance - blockedSegment.endDistance, 0, closestOverlap);
+					closestOverlap = Utilities.clampSafe(endDistance - blockedEndDistance, 0, closestOverlap);
 				} else {
-					closestOverlap = Utilities.clampSafe(blockedSegment.startDistance - startDistance, 0, closestOverlap);
+					closestOverlap = Utilities.clampSafe(blockedStartDistance - startDistance, 0, closestOverlap);
 				}
 				valueSet = true;
 			}
@@ -29,6 +40,15 @@ public class VehiclePosition {
 		return valueSet ? closestOverlap : -1;
 	}
 
-	private record BlockedSegment(double startDistance, double endDistance, long id) {
+	void addSegments(VehiclePosition vehiclePosition) {
+		startDistances.addAll(vehiclePosition.startDistances);
+		endDistances.addAll(vehiclePosition.endDistances);
+		ids.addAll(vehiclePosition.ids);
+	}
+
+	void clear() {
+		startDistances.clear();
+		endDistances.clear();
+		ids.clear();
 	}
 }
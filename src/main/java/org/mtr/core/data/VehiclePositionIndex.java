@@ -0,0 +1,210 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jspecify.annotations.Nullable;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Rail segment occupancy for one transport mode, replacing the nested {@code Position -> Position -> VehiclePosition} tree maps.
+ *
+ * <p>Two frames are kept: the previous tick's frame, which is only read, and the current tick's frame, which vehicles write to while
+ * they are being simulated. {@link #rotate()} swaps the two and clears the new current frame in place, so the backing arrays and the
+ * {@link VehiclePosition} instances are reused from tick to tick instead of being reallocated.</p>
+ *
+ * <p>Each frame is an open addressing hash table keyed by the two ordered positions of a rail segment. The positions are packed into
+ * primitive {@code long} keys for hashing and probing; the positions themselves are only compared on a key match, so lookups stay exact
+ * even for coordinates outside the packed range.</p>
+ */
+public final class VehiclePositionIndex {
+
+	private Frame previousFrame = new Frame();
+	private Frame currentFrame = new Frame();
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int X_BITS = 26;
+	private static final int Y_BITS = 12;
+	private static final int Z_BITS = 26;
+	private static final long X_MASK = (1L << X_BITS) - 1;
+	private static final long Y_MASK = (1L << Y_BITS) - 1;
+	private static final long Z_MASK = (1L << Z_BITS) - 1;
+
+	/**
+	 * Start a new tick: the current frame becomes the previous frame and the old previous frame is cleared for reuse.
+	 */
+	public void rotate() {
+		final Frame oldPreviousFrame = previousFrame;
+		previousFrame = currentFrame;
+		currentFrame = oldPreviousFrame;
+		currentFrame.clear();
+	}
+
+	/**
+	 * Prepare this index as a private scratch index for a vehicle simulation worker: the previous frame of {@code vehiclePositionIndex} is
+	 * shared (it is only read while vehicles are simulated) and the current frame of this index is cleared.
+	 */
+	public void resetFrom(VehiclePositionIndex vehiclePositionIndex) {
+		previousFrame = vehiclePositionIndex.previousFrame;
+		currentFrame.clear();
+	}
+
+	/**
+	 * Copy every occupied segment in the current frame of this index into the current frame of {@code vehiclePositionIndex}.
+	 */
+	public void mergeInto(VehiclePositionIndex vehiclePositionIndex) {
+		currentFrame.forEach((slot, vehiclePosition) -> vehiclePositionIndex.currentFrame.getOrCreate(currentFrame.positions1[slot], currentFrame.positions2[slot]).addSegments(vehiclePosition));
+	}
+
+	/**
+	 * Iterate the ordered position pairs of every occupied segment in the current frame.
+	 */
+	public void iterateCurrent(BiConsumer<Position, Position> consumer) {
+		currentFrame.forEach((slot, vehiclePosition) -> consumer.accept(currentFrame.positions1[slot], currentFrame.positions2[slot]));
+	}
+
+	@Nullable
+	VehiclePosition getPrevious(Position position1, Position position2) {
+		return previousFrame.get(position1, position2);
+	}
+
+	@Nullable
+	VehiclePosition getCurrent(Position position1, Position position2) {
+		return currentFrame.get(position1, position2);
+	}
+
+	VehiclePosition getOrCreateCurrent(Position position1, Position position2) {
+		return currentFrame.getOrCreate(position1, position2);
+	}
+
+	private static long pack(Position position) {
+		return ((position.getX() & X_MASK) << (Y_BITS + Z_BITS)) | ((position.getY() & Y_MASK) << Z_BITS) | (position.getZ() & Z_MASK);
+	}
+
+	private static final class Frame {
+
+		private int mask;
+		private long[] keys1;
+		private long[] keys2;
+		private @Nullable Position[] positions1;
+		private @Nullable Position[] positions2;
+		/**
+		 * Kept even after a slot is cleared so that the instance can be reused by the next segment hashed to the same slot.
+		 */
+		private @Nullable VehiclePosition[] vehiclePositions;
+		private final IntArrayList usedSlots = new IntArrayList();
+
+		private Frame() {
+			allocate(INITIAL_CAPACITY);
+		}
+
+		@Nullable
+		private VehiclePosition get(Position position1, Position position2) {
+			final long key1 = pack(position1);
+			final long key2 = pack(position2);
+			int slot = getStartSlot(key1, key2);
+			while (positions1[slot] != null) {
+				if (matches(slot, key1, key2, position1, position2)) {
+					return vehiclePositions[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private VehiclePosition getOrCreate(Position position1, Position position2) {
+			final long key1 = pack(position1);
+			final long key2 = pack(position2);
+			int slot = getStartSlot(key1, key2);
+			while (positions1[slot] != null) {
+				if (matches(slot, key1, key2, position1, position2)) {
+					return vehiclePositions[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			// Keep the load factor at or below one half
+			if ((usedSlots.size() + 1) * 2 > keys1.length) {
+				grow();
+				return getOrCreate(position1, position2);
+			}
+
+			keys1[slot] = key1;
+			keys2[slot] = key2;
+			positions1[slot] = position1;
+			positions2[slot] = position2;
+			usedSlots.add(slot);
+			final VehiclePosition vehiclePosition = vehiclePositions[slot];
+			if (vehiclePosition == null) {
+				final VehiclePosition newVehiclePosition = new VehiclePosition();
+				vehiclePositions[slot] = newVehiclePosition;
+				return newVehiclePosition;
+			} else {
+				return vehiclePosition;
+			}
+		}
+
+		private void forEach(SlotConsumer consumer) {
+			for (int i = 0; i < usedSlots.size(); i++) {
+				final int slot = usedSlots.getInt(i);
+				consumer.accept(slot, vehiclePositions[slot]);
+			}
+		}
+
+		private void clear() {
+			for (int i = 0; i < usedSlots.size(); i++) {
+				final int slot = usedSlots.getInt(i);
+				positions1[slot] = null;
+				positions2[slot] = null;
+				vehiclePositions[slot].clear();
+			}
+			usedSlots.clear();
+		}
+
+		private boolean matches(int slot, long key1, long key2, Position position1, Position position2) {
+			return keys1[slot] == key1 && keys2[slot] == key2 && position1.equals(positions1[slot]) && position2.equals(positions2[slot]);
+		}
+
+		private int getStartSlot(long key1, long key2) {
+			return (int) HashCommon.mix(key1 ^ Long.rotateLeft(key2, Long.SIZE / 2)) & mask;
+		}
+
+		private void grow() {
+			final long[] oldKeys1 = keys1;
+			final long[] oldKeys2 = keys2;
+			final Position[] oldPositions1 = positions1;
+			final Position[] oldPositions2 = positions2;
+			final VehiclePosition[] oldVehiclePositions = vehiclePositions;
+			final int[] oldUsedSlots = usedSlots.toIntArray();
+
+			allocate(oldKeys1.length * 2);
+			usedSlots.clear();
+			for (final int oldSlot : oldUsedSlots) {
+				int slot = getStartSlot(oldKeys1[oldSlot], oldKeys2[oldSlot]);
+				while (positions1[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys1[slot] = oldKeys1[oldSlot];
+				keys2[slot] = oldKeys2[oldSlot];
+				positions1[slot] = oldPositions1[oldSlot];
+				positions2[slot] = oldPositions2[oldSlot];
+				vehiclePositions[slot] = oldVehiclePositions[oldSlot];
+				usedSlots.add(slot);
+			}
+		}
+
+		private void allocate(int capacity) {
+			mask = capacity - 1;
+			keys1 = new long[capacity];
+			keys2 = new long[capacity];
+			positions1 = new Position[capacity];
+			positions2 = new Position[capacity];
+			vehiclePositions = new VehiclePosition[capacity];
+		}
+	}
+
+	@FunctionalInterface
+	private interface SlotConsumer {
+		void accept(int slot, VehiclePosition vehiclePosition);
+	}
+}
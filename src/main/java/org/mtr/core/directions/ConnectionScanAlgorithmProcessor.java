@@ -1,148 +1,210 @@
 package org.mtr.core.directions;
 
-import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.data.PassengerDirection;
-import org.mtr.core.data.Platform;
-import org.mtr.core.data.Position;
-import org.mtr.core.data.Station;
-import org.mtr.core.map.DirectionsConnection;
-import org.mtr.core.map.DirectionsRequest;
+import org.mtr.core.data.Route;
 import org.mtr.core.map.DirectionsResponse;
-import org.mtr.core.simulation.Simulator;
-import org.mtr.core.tool.RefreshableObject;
 
-public final class ConnectionScanAlgorithmProcessor extends RefreshableObject<Object> {
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the connection scan algorithm for a batch of directions requests. Only reads from a {@link DirectionsSnapshot} and the
+ * {@link Graph} and {@link Timetable} built from it, so it can run on any thread, but only one batch may be processed at a time.
+ *
+ * <p>Platforms are referred to by the dense indices of the snapshot so that the per-request label tables are plain arrays. Each request
+ * is scanned independently against the same read-only timetable, so large batches are split into shards of requests that are scanned in
+ * parallel on the given {@link ForkJoinPool}, one shard per worker. The results are the same whether a batch is sharded or not.</p>
+ */
+public final class ConnectionScanAlgorithmProcessor {
 
 	private Request[] requests = new Request[0];
+	private int shardCount;
 
-	public final ObjectArrayList<DirectionsRequest> directionsRequests = new ObjectArrayList<>();
+	private final DirectionsSnapshot directionsSnapshot;
 	private final Graph graph;
-	private final Arrivals arrivals;
-	private final Simulator simulator;
+	private final Timetable timetable;
+	private final ForkJoinPool forkJoinPool;
+	private final int minimumRequestsPerShard;
+
+	static final long START_PLATFORM_ID = -1;
+	static final long END_PLATFORM_ID = -2;
+	/**
+	 * Sharding a small batch costs more in task overhead than it saves.
+	 */
+	private static final int MINIMUM_REQUESTS_PER_SHARD = 16;
 
-	private static final long START_PLATFORM_ID = -1;
-	private static final long END_PLATFORM_ID = -2;
+	/**
+	 * @param directionsSnapshot the snapshot that {@code graph} and {@code timetable} were built from
+	 * @param graph              the time-independent connections
+	 * @param timetable          the time-dependent connections
+	 * @param forkJoinPool       the pool to scan shards of large batches on, which should not be shared with the simulator tick
+	 */
+	public ConnectionScanAlgorithmProcessor(DirectionsSnapshot directionsSnapshot, Graph graph, Timetable timetable, ForkJoinPool forkJoinPool) {
+		this(directionsSnapshot, graph, timetable, forkJoinPool, MINIMUM_REQUESTS_PER_SHARD);
+	}
 
-	public ConnectionScanAlgorithmProcessor(Graph graph, Arrivals arrivals, Simulator simulator) {
-		super(new ObjectArrayList<>(), 0);
+	ConnectionScanAlgorithmProcessor(DirectionsSnapshot directionsSnapshot, Graph graph, Timetable timetable, ForkJoinPool forkJoinPool, int minimumRequestsPerShard) {
+		this.directionsSnapshot = directionsSnapshot;
 		this.graph = graph;
-		this.arrivals = arrivals;
-		this.simulator = simulator;
+		this.timetable = timetable;
+		this.forkJoinPool = forkJoinPool;
+		this.minimumRequestsPerShard = minimumRequestsPerShard;
 	}
 
-	@Nullable
-	@Override
-	public Object refresh(int currentRefreshStep) {
-		final int index1 = currentRefreshStep - 1;
-		final int index2 = index1 - arrivals.getData().size();
-
-		if (currentRefreshStep == 0) {
-			final int directionsRequestCount = directionsRequests.size();
-
-			if (directionsRequestCount == 0) {
-				return 0;
-			} else {
-				// Map requests to array
-				requests = new Request[directionsRequestCount];
-				final long millis = System.currentTimeMillis();
-				for (int i = 0; i < directionsRequestCount; i++) {
-					final DirectionsRequest directionsRequest = directionsRequests.get(i);
-					requests[i] = new Request(
-						directionsRequest.getStartPosition(simulator),
-						directionsRequest.getEndPosition(simulator),
-						Math.max(millis, directionsRequest.getStartTime()),
-						new Long2ObjectOpenHashMap<>(),
-						new Long2LongOpenHashMap(),
-						directionsRequest.callback1,
-						directionsRequest.callback2
-					);
-				}
-				directionsRequests.clear();
-
-				// Generate caches
-				simulator.platforms.forEach(endPlatform -> {
-					for (final Request request : requests) {
-						// Walking from the start position to platforms
-						final Position endPosition = endPlatform.getMidPosition();
-						final long distanceToStart = request.startPosition().manhattanDistance(endPosition);
-						if (distanceToStart <= DirectionsFinder.MAX_WALKING_DISTANCE) {
-							final long endTime = request.startTime() + Math.round(distanceToStart / DirectionsFinder.WALKING_SPEED);
-							request.earliestConnections().put(endPlatform.getId(), new Connection(
-								null,
-								START_PLATFORM_ID, endPlatform.getId(),
-								request.startTime(), endTime,
-								distanceToStart
-							));
-							addIndependentConnectionsBFS(endPlatform.getId(), request.earliestConnections());
-						}
-
-						// Cache distances of platforms to the end position
-						final long distanceToEnd = request.endPosition().manhattanDistance(endPosition);
-						if (distanceToEnd <= DirectionsFinder.MAX_WALKING_DISTANCE) {
-							request.walkingDistancesToEnd().put(endPlatform.getId(), distanceToEnd);
-						}
-					}
-				});
+	/**
+	 * Find directions for every request in the batch.
+	 *
+	 * @param queuedRequests the requests to process
+	 * @param graphTime      the time taken to build the graph, reported in directions responses
+	 * @param timetableTime  the time taken to build the timetable, reported in directions responses
+	 * @return a callback for each request, which should be run on the simulator thread
+	 */
+	public ObjectArrayList<Runnable> process(ObjectArrayList<QueuedRequest> queuedRequests, long graphTime, long timetableTime) {
+		final long startMillis = System.currentTimeMillis();
+		writeRequests(queuedRequests);
 
-				return null;
-			}
-		} else if (index1 < arrivals.getData().size()) {
-			// Process connections in order
-			arrivals.getData().get(index1).forEach(connection -> {
-				for (final Request request : requests) {
-					if (addConnection(connection, request.earliestConnections())) {
-						addIndependentConnectionsBFS(connection.endPlatformId(), request.earliestConnections());
-					}
-				}
-			});
+		// Walking from the start position to platforms and caching distances of platforms to the end position
+		forEachRequest((requestIndex, request) -> writeWalkingConnections(request));
 
-			return null;
-		} else if (index2 < requests.length) {
-			final Request request = requests[index2];
-			final DirectionsResponse directionsResponse = request.callback1() == null ? null : new DirectionsResponse(
-				graph.getTotalRefreshTime(),
-				arrivals.getTotalRefreshTime(),
-				getTotalRefreshTime(),
-				graph.getLongestRefreshTime(),
-				arrivals.getLongestRefreshTime(),
-				getLongestRefreshTime()
+		// Process connections in order
+		for (int hour = 0; hour < timetable.getHourCount(); hour++) {
+			final int currentHour = hour;
+			forEachRequest((requestIndex, request) -> scanConnections(request, currentHour));
+		}
+
+		final long pathFindingTime = System.currentTimeMillis() - startMillis;
+		final Runnable[] callbacks = new Runnable[requests.length];
+		forEachRequest((requestIndex, request) -> {
+			callbacks[requestIndex] = getCallback(request, graphTime, timetableTime, pathFindingTime);
+			return request;
+		});
+		requests = new Request[0];
+		return ObjectArrayList.wrap(callbacks);
+	}
+
+	private void writeRequests(ObjectArrayList<QueuedRequest> queuedRequests) {
+		final int requestCount = queuedRequests.size();
+		final int platformCount = directionsSnapshot.getPlatformCount();
+		final long millis = System.currentTimeMillis();
+
+		requests = new Request[requestCount];
+		for (int i = 0; i < requestCount; i++) {
+			final QueuedRequest queuedRequest = queuedRequests.get(i);
+			final long[] earliestArrivalTimes = new long[platformCount];
+			Arrays.fill(earliestArrivalTimes, Long.MAX_VALUE);
+			requests[i] = new Request(
+				queuedRequest.startPosition(),
+				queuedRequest.endPosition(),
+				Math.max(millis, queuedRequest.startTime()),
+				earliestArrivalTimes,
+				new Connection[platformCount],
+				new int[0],
+				new long[0],
+				queuedRequest.callback1(),
+				queuedRequest.callback2()
 			);
-			final ObjectArrayList<PassengerDirection> passengerDirections = request.callback2() == null ? null : new ObjectArrayList<>();
-			Connection current = getEndConnection(request.earliestConnections(), request.walkingDistancesToEnd());
-
-			while (current != null) {
-				final Platform startPlatform = current.startPlatformId() == START_PLATFORM_ID ? null : simulator.platformIdMap.get(current.startPlatformId());
-				final Station startStation = startPlatform == null ? null : startPlatform.area;
-				final Platform endPlatform = current.endPlatformId() == END_PLATFORM_ID ? null : simulator.platformIdMap.get(current.endPlatformId());
-				final Station endStation = endPlatform == null ? null : endPlatform.area;
-
-				if (directionsResponse != null) {
-					directionsResponse.getDirectionsConnections().add(0, new DirectionsConnection(
-						current.route() == null ? "" : current.route().getHexId(),
-						startStation == null ? "" : startStation.getHexId(), endStation == null ? "" : endStation.getHexId(),
-						startPlatform == null ? "" : startPlatform.getName(), endPlatform == null ? "" : endPlatform.getName(),
-						current.startTime(), current.endTime(),
-						current.walkingDistance()
-					));
-				}
+		}
 
-				if (passengerDirections != null) {
-					passengerDirections.add(0, new PassengerDirection(
-						current.route() == null ? 0 : current.route().getId(),
-						startPlatform == null ? 0 : startPlatform.getId(),
-						endPlatform == null ? 0 : endPlatform.getId(),
-						current.startTime(), current.endTime()
-					));
-				}
+		shardCount = Math.max(1, Math.min(forkJoinPool.getParallelism(), requestCount / minimumRequestsPerShard));
+	}
+
+	private Request writeWalkingConnections(Request request) {
+		final IntArrayList endPlatformIndices = new IntArrayList();
+		final LongArrayList endWalkingDistances = new LongArrayList();
+
+		for (final int platformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(request.startPosition())) {
+			final long distanceToStart = request.startPosition().manhattanDistance(directionsSnapshot.platformPositions[platformIndex]);
+			final long endTime = request.startTime() + Math.round(distanceToStart / DirectionsFinder.WALKING_SPEED);
+			putConnection(request, platformIndex, new Connection(
+				null,
+				START_PLATFORM_ID, directionsSnapshot.platformIds[platformIndex],
+				request.startTime(), endTime,
+				distanceToStart
+			));
+			addIndependentConnectionsBFS(platformIndex, request);
+		}
+
+		for (final int platformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(request.endPosition())) {
+			endPlatformIndices.add(platformIndex);
+			endWalkingDistances.add(request.endPosition().manhattanDistance(directionsSnapshot.platformPositions[platformIndex]));
+		}
+
+		return new Request(
+			request.startPosition(),
+			request.endPosition(),
+			request.startTime(),
+			request.earliestArrivalTimes(),
+			request.earliestConnections(),
+			endPlatformIndices.toIntArray(),
+			endWalkingDistances.toLongArray(),
+			request.callback1(),
+			request.callback2()
+		);
+	}
+
+	/**
+	 * Scan the timetable rows of one hour in place. A {@link Connection} is only created when it improves a label.
+	 */
+	private Request scanConnections(Request request, int hour) {
+		final long[] earliestArrivalTimes = request.earliestArrivalTimes();
+		for (int row = timetable.hourOffsets[hour]; row < timetable.hourOffsets[hour + 1]; row++) {
+			final int startIndex = timetable.startPlatformIndices[row];
+			final int endIndex = timetable.endPlatformIndices[row];
+			final long startTime = timetable.startTimes[row];
+			final long endTime = timetable.endTimes[row];
+			// Timetable connections always have a route, so they can follow any connection
+			if (earliestArrivalTimes[startIndex] <= startTime && endTime < earliestArrivalTimes[endIndex]) {
+				putConnection(request, endIndex, new Connection(
+					timetable.routes[timetable.routeIndices[row]],
+					directionsSnapshot.platformIds[startIndex], directionsSnapshot.platformIds[endIndex],
+					startTime, endTime,
+					0
+				));
+				addIndependentConnectionsBFS(endIndex, request);
+			}
+		}
+		return request;
+	}
+
+	private Runnable getCallback(Request request, long graphTime, long timetableTime, long pathFindingTime) {
+		// The build times are reported as both the total and the longest times since each batch builds at most once
+		final DirectionsResponse directionsResponse = request.callback1() == null ? null : new DirectionsResponse(
+			graphTime,
+			timetableTime,
+			pathFindingTime,
+			graphTime,
+			timetableTime,
+			pathFindingTime
+		);
+		final ObjectArrayList<PassengerDirection> passengerDirections = request.callback2() == null ? null : new ObjectArrayList<>();
+		Connection current = getEndConnection(request);
+
+		while (current != null) {
+			final int startPlatformIndex = directionsSnapshot.getPlatformIndex(current.startPlatformId());
+			final int endPlatformIndex = directionsSnapshot.getPlatformIndex(current.endPlatformId());
+
+			if (directionsResponse != null) {
+				directionsResponse.getDirectionsConnections().add(0, directionsSnapshot.getDirectionsConnection(current));
+			}
 
-				current = request.earliestConnections().get(current.startPlatformId());
+			if (passengerDirections != null) {
+				passengerDirections.add(0, new PassengerDirection(
+					current.route() == null ? 0 : current.route().getId(),
+					startPlatformIndex < 0 ? 0 : current.startPlatformId(),
+					endPlatformIndex < 0 ? 0 : current.endPlatformId(),
+					current.startTime(), current.endTime()
+				));
 			}
 
+			current = startPlatformIndex < 0 ? null : request.earliestConnections()[startPlatformIndex];
+		}
+
+		return () -> {
 			if (request.callback1() != null) {
 				request.callback1().accept(directionsResponse);
 			}
@@ -150,61 +212,83 @@ public final class ConnectionScanAlgorithmProcessor extends RefreshableObject<Ob
 			if (request.callback2() != null) {
 				request.callback2().accept(passengerDirections);
 			}
+		};
+	}
 
-			if (index2 == requests.length - 1) {
-				return 0;
-			} else {
-				return null;
+	/**
+	 * Run a step for every request in the batch, splitting the batch across the {@link ForkJoinPool} if there are enough requests.
+	 * The step may return a replacement for the request.
+	 */
+	private void forEachRequest(RequestStep requestStep) {
+		if (shardCount <= 1) {
+			for (int i = 0; i < requests.length; i++) {
+				requests[i] = requestStep.apply(i, requests[i]);
 			}
 		} else {
-			// This shouldn't be reached, but it's here just in case
-			return 0;
+			final ObjectArrayList<ForkJoinTask<?>> tasks = new ObjectArrayList<>();
+			for (int i = 0; i < shardCount; i++) {
+				final int startRequestIndex = (int) ((long) requests.length * i / shardCount);
+				final int endRequestIndex = (int) ((long) requests.length * (i + 1) / shardCount);
+				tasks.add(ForkJoinTask.adapt(() -> {
+					for (int j = startRequestIndex; j < endRequestIndex; j++) {
+						requests[j] = requestStep.apply(j, requests[j]);
+					}
+				}));
+			}
+			// Forked from inside the pool, so that the shards run on its workers rather than the common pool
+			forkJoinPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
 		}
 	}
 
 	/**
 	 * If a connection has been added, perform iterative walking relaxation (BFS-style) starting from the last platform.
 	 */
-	private void addIndependentConnectionsBFS(long lastPlatformId, Long2ObjectOpenHashMap<Connection> earliestConnections) {
-		final LongArrayList queue = new LongArrayList();
-		queue.add(lastPlatformId);
+	private void addIndependentConnectionsBFS(int lastPlatformIndex, Request request) {
+		final IntArrayList queue = new IntArrayList();
+		queue.add(lastPlatformIndex);
 		int index = 0;
 
 		while (index < queue.size()) {
-			final long startPlatformId = queue.getLong(index++);
-			final Long2ObjectOpenHashMap<IndependentConnection> independentConnectionsForPlatformId = graph.getData().get(startPlatformId);
-
-			if (independentConnectionsForPlatformId != null) {
-				final Connection startConnection = earliestConnections.get(startPlatformId);
-				independentConnectionsForPlatformId.forEach((endPlatformId, independentConnection) -> {
-					if (addConnection(new Connection(
-						independentConnection.route(),
-						startPlatformId, endPlatformId,
-						startConnection.endTime(), startConnection.endTime() + independentConnection.duration(),
-						independentConnection.walkingDistance()
-					), earliestConnections)) {
-						queue.add(endPlatformId);
-					}
-				});
+			final int startIndex = queue.getInt(index++);
+			final long startTime = request.earliestArrivalTimes()[startIndex];
+			final Connection startConnection = request.earliestConnections()[startIndex];
+			if (startConnection == null) {
+				continue;
+			}
+
+			for (int row = graph.offsets[startIndex]; row < graph.offsets[startIndex + 1]; row++) {
+				final int endIndex = graph.endPlatformIndices[row];
+				final long endTime = startTime + graph.durations[row];
+				final Route route = graph.routes[row];
+				// Walking can't directly follow walking
+				if (endTime < request.earliestArrivalTimes()[endIndex] && (startConnection.route() != null || route != null) && (route == null || !directionsSnapshot.isRouteJammed(route.getId()))) {
+					putConnection(request, endIndex, new Connection(
+						route,
+						directionsSnapshot.platformIds[startIndex], directionsSnapshot.platformIds[endIndex],
+						startTime, endTime,
+						graph.walkingDistances[row]
+					));
+					queue.add(endIndex);
+				}
 			}
 		}
 	}
 
 	@Nullable
-	private Connection getEndConnection(Long2ObjectOpenHashMap<Connection> earliestConnections, Long2LongOpenHashMap walkingDistancesToEnd) {
-		long bestPlatformId = 0;
+	private Connection getEndConnection(Request request) {
+		int bestPlatformIndex = -1;
 		long bestStartTime = 0;
 		long bestEndTime = Long.MAX_VALUE;
 		long bestWalkingDistance = 0;
 
-		for (final Long2ObjectMap.Entry<Connection> entry : earliestConnections.long2ObjectEntrySet()) {
-			final long platformId = entry.getLongKey();
-			final long arrivalTime = entry.getValue().endTime();
-			final long distance = walkingDistancesToEnd.getOrDefault(platformId, DirectionsFinder.MAX_WALKING_DISTANCE + 1);
-			if (distance <= DirectionsFinder.MAX_WALKING_DISTANCE) {
+		for (int i = 0; i < request.endPlatformIndices().length; i++) {
+			final int platformIndex = request.endPlatformIndices()[i];
+			final long arrivalTime = request.earliestArrivalTimes()[platformIndex];
+			if (arrivalTime < Long.MAX_VALUE) {
+				final long distance = request.endWalkingDistances()[i];
 				final long endTime = arrivalTime + Math.round(distance / DirectionsFinder.WALKING_SPEED);
 				if (endTime < bestEndTime) {
-					bestPlatformId = platformId;
+					bestPlatformIndex = platformIndex;
 					bestStartTime = arrivalTime;
 					bestEndTime = endTime;
 					bestWalkingDistance = distance;
@@ -212,27 +296,25 @@ public final class ConnectionScanAlgorithmProcessor extends RefreshableObject<Ob
 			}
 		}
 
-		if (bestEndTime == Long.MAX_VALUE) {
+		if (bestPlatformIndex < 0) {
 			return null;
 		} else {
 			return new Connection(
 				null,
-				bestPlatformId, END_PLATFORM_ID,
+				directionsSnapshot.platformIds[bestPlatformIndex], END_PLATFORM_ID,
 				bestStartTime, bestEndTime,
 				bestWalkingDistance
 			);
 		}
 	}
 
-	private static boolean addConnection(Connection connection, Long2ObjectOpenHashMap<Connection> earliestConnections) {
-		final Connection startConnection = earliestConnections.get(connection.startPlatformId());
-		final Connection endConnection = earliestConnections.get(connection.endPlatformId());
+	private static void putConnection(Request request, int platformIndex, Connection connection) {
+		request.earliestArrivalTimes()[platformIndex] = connection.endTime();
+		request.earliestConnections()[platformIndex] = connection;
+	}
 
-		if (startConnection != null && startConnection.endTime() <= connection.startTime() && (endConnection == null || connection.endTime() < endConnection.endTime()) && (startConnection.route() != null || connection.route() != null)) {
-			earliestConnections.put(connection.endPlatformId(), connection);
-			return true;
-		} else {
-			return false;
-		}
+	@FunctionalInterface
+	private interface RequestStep {
+		Request apply(int requestIndex, Request request);
 	}
 }
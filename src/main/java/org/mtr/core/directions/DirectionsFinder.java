@@ -1,43 +1,349 @@
 package org.mtr.core.directions;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectLongImmutablePair;
+import it.unimi.dsi.fastutil.objects.ObjectObjectImmutablePair;
+import lombok.extern.log4j.Log4j2;
 import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.PassengerDirection;
 import org.mtr.core.data.Platform;
+import org.mtr.core.data.Position;
 import org.mtr.core.data.Route;
+import org.mtr.core.map.DirectionsProfileResponse;
 import org.mtr.core.map.DirectionsRequest;
+import org.mtr.core.map.DirectionsResponse;
 import org.mtr.core.simulation.Simulator;
 import org.mtr.core.tool.Utilities;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Finds directions on a background thread so that path finding never stalls a simulator tick. Requests are queued on the simulator
+ * thread, which also takes an immutable {@link DirectionsSnapshot} of the data needed. The {@link Graph}, {@link Timetable} and connection
+ * scan then run on the directions thread and the results are handed back with {@link Simulator#runInternal(Runnable)}, so callbacks still run on
+ * the simulator thread.
+ *
+ * <p>Many passengers make the same trip, such as from one home to one landmark, so passenger directions are cached by the platforms within
+ * walking distance of the start and end positions and by departure minute. Requests matching a cached or in-flight request share its
+ * result. The cache is cleared whenever a new snapshot is taken, the graph is invalidated or a route that the snapshot didn't consider
+ * jammed becomes jammed. If a batch can't be processed, its requests are answered with no directions rather than left waiting.</p>
+ */
+@Log4j2
 public final class DirectionsFinder {
 
-	private final Graph graph;
-	private final Arrivals arrivals;
-	private final ConnectionScanAlgorithmProcessor connectionScanAlgorithmProcessor;
+	@Nullable
+	private DirectionsSnapshot directionsSnapshot;
+	private long nextSnapshotMillis;
+	/**
+	 * Set when platforms or routes change so that the next batch rebuilds the graph
+	 */
+	private boolean graphDirty = true;
+	/**
+	 * Set when a route becomes jammed so that the next batch takes a new snapshot
+	 */
+	private boolean snapshotDirty;
+	/**
+	 * Incremented whenever the cache is invalidated so that results found before then aren't cached
+	 */
+	private int cacheGeneration;
+	private long cacheHitCount;
+	private long cacheMissCount;
+	/**
+	 * Only used on the directions thread
+	 */
+	@Nullable
+	private Graph graph;
+
+	private final Simulator simulator;
+	private final ObjectArrayList<DirectionsRequest> directionsRequests = new ObjectArrayList<>();
+	private final ObjectArrayList<ObjectObjectImmutablePair<DirectionsRequest, Consumer<DirectionsProfileResponse>>> profileRequests = new ObjectArrayList<>();
+	private final Object2ObjectOpenHashMap<CacheKey, ObjectArrayList<PassengerDirection>> cachedPassengerDirections = new Object2ObjectOpenHashMap<>();
+	private final Object2ObjectOpenHashMap<CacheKey, WaitingCallbacks> waitingCallbacks = new Object2ObjectOpenHashMap<>();
+	private final AtomicBoolean busy = new AtomicBoolean();
+	private final ExecutorService executorService;
+	/**
+	 * Runs the connection scans of a batch in parallel. The simulator tick uses the common pool, so a large batch never holds its workers.
+	 */
+	private final ForkJoinPool forkJoinPool;
 
 	public static final long MAX_WALKING_DISTANCE = 500;
 	public static final float WALKING_SPEED = 4F / Utilities.MILLIS_PER_SECOND; // 4 m/s
+	/**
+	 * Caps the batch size on small maps, where the label tables are cheap. Any remaining requests are left for the next batch.
+	 */
+	private static final int MAX_REQUESTS_PER_BATCH = 2048;
+	/**
+	 * Each request holds an arrival time and a connection for every platform, about 16 bytes per platform. Capping the platform count
+	 * times the request count keeps a batch under about 32 MB however large the map is, at the cost of smaller batches on large maps.
+	 */
+	private static final int MAX_LABELS_PER_BATCH = 1 << 21;
+	/**
+	 * Each profile request scans the whole timetable by itself, so far fewer are taken per batch.
+	 */
+	private static final int MAX_PROFILE_REQUESTS_PER_BATCH = 16;
+	private static final long SNAPSHOT_REFRESH_INTERVAL = 5000;
+	private static final long CACHE_TIME_BUCKET = Utilities.MILLIS_PER_MINUTE;
+	/**
+	 * Half of the processors are left for the simulator tick and everything else.
+	 */
+	private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
 
 	public DirectionsFinder(Simulator simulator) {
-		graph = new Graph(simulator);
-		arrivals = new Arrivals(simulator);
-		connectionScanAlgorithmProcessor = new ConnectionScanAlgorithmProcessor(graph, arrivals, simulator);
+		this.simulator = simulator;
+		executorService = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, String.format("Directions-%s", simulator.dimension));
+			thread.setDaemon(true);
+			return thread;
+		});
+		forkJoinPool = new ForkJoinPool(PARALLELISM, pool -> {
+			final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName(String.format("Directions-%s-%s", simulator.dimension, thread.getPoolIndex()));
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
 	}
 
+	/**
+	 * Must be called on the simulator thread. If the directions thread is idle, resolves the next batch of requests and hands it off.
+	 */
 	public void tick() {
-		if (!connectionScanAlgorithmProcessor.directionsRequests.isEmpty()) {
-			if (graph.tick()) {
-				return;
-			}
+		if (directionsRequests.isEmpty() && profileRequests.isEmpty() || !busy.compareAndSet(false, true)) {
+			return;
+		}
 
-			if (arrivals.tick()) {
-				return;
-			}
+		final long millis = System.currentTimeMillis();
+		final DirectionsSnapshot oldDirectionsSnapshot = directionsSnapshot;
+		final DirectionsSnapshot newDirectionsSnapshot;
+		final boolean rebuildGraph = graphDirty;
+		graphDirty = false;
+		if (oldDirectionsSnapshot == null || rebuildGraph || snapshotDirty || millis >= nextSnapshotMillis) {
+			newDirectionsSnapshot = DirectionsSnapshot.create(simulator);
+			directionsSnapshot = newDirectionsSnapshot;
+			nextSnapshotMillis = millis + SNAPSHOT_REFRESH_INTERVAL;
+			snapshotDirty = false;
+			clearCache();
+		} else {
+			newDirectionsSnapshot = oldDirectionsSnapshot;
 		}
 
-		connectionScanAlgorithmProcessor.tick();
+		final int maxRequests = Math.clamp(MAX_LABELS_PER_BATCH / Math.max(1, newDirectionsSnapshot.getPlatformCount()), 1, MAX_REQUESTS_PER_BATCH);
+		final int requestCount = Math.min(maxRequests, directionsRequests.size());
+		final ObjectArrayList<QueuedRequest> queuedRequests = new ObjectArrayList<>(requestCount);
+		for (int i = 0; i < requestCount; i++) {
+			final DirectionsRequest directionsRequest = directionsRequests.get(i);
+			queuedRequests.add(new QueuedRequest(
+				directionsRequest.getStartPosition(simulator),
+				directionsRequest.getEndPosition(simulator),
+				directionsRequest.getStartTime(),
+				directionsRequest.callback1,
+				directionsRequest.callback2
+			));
+		}
+		directionsRequests.removeElements(0, requestCount);
+
+		final int profileRequestCount = Math.min(MAX_PROFILE_REQUESTS_PER_BATCH, profileRequests.size());
+		final ObjectArrayList<QueuedProfileRequest> queuedProfileRequests = new ObjectArrayList<>(profileRequestCount);
+		for (int i = 0; i < profileRequestCount; i++) {
+			final DirectionsRequest directionsRequest = profileRequests.get(i).left();
+			queuedProfileRequests.add(new QueuedProfileRequest(
+				directionsRequest.getStartPosition(simulator),
+				directionsRequest.getEndPosition(simulator),
+				directionsRequest.getStartTime(),
+				directionsRequest.getEndTime(),
+				profileRequests.get(i).right()
+			));
+		}
+		profileRequests.removeElements(0, profileRequestCount);
+
+		try {
+			executorService.execute(() -> {
+				try {
+					final ObjectArrayList<Runnable> callbacks = process(queuedRequests, queuedProfileRequests, newDirectionsSnapshot, rebuildGraph);
+					simulator.runInternal(() -> callbacks.forEach(Runnable::run));
+				} catch (Exception e) {
+					log.error("Failed to find directions", e);
+					simulator.runInternal(() -> failRequests(queuedRequests, queuedProfileRequests));
+				} finally {
+					busy.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			busy.set(false);
+			graphDirty |= rebuildGraph;
+			log.debug("Directions requests dropped after stopping", e);
+			failRequests(queuedRequests, queuedProfileRequests);
+		}
 	}
 
+	/**
+	 * Must be called on the simulator thread. Passenger requests (with only {@link DirectionsRequest#callback2}) may be answered from the
+	 * cache immediately.
+	 */
 	public void addRequest(DirectionsRequest directionsRequest) {
-		connectionScanAlgorithmProcessor.directionsRequests.add(directionsRequest);
+		final DirectionsSnapshot currentDirectionsSnapshot = directionsSnapshot;
+		final Consumer<ObjectArrayList<PassengerDirection>> callback = directionsRequest.callback2;
+		if (currentDirectionsSnapshot == null || directionsRequest.callback1 != null || callback == null) {
+			directionsRequests.add(directionsRequest);
+			return;
+		}
+
+		final Position startPosition = directionsRequest.getStartPosition(simulator);
+		final Position endPosition = directionsRequest.getEndPosition(simulator);
+		final CacheKey cacheKey = new CacheKey(
+			getPlatformIds(currentDirectionsSnapshot, startPosition),
+			getPlatformIds(currentDirectionsSnapshot, endPosition),
+			Math.floorDiv(directionsRequest.getStartTime(), CACHE_TIME_BUCKET)
+		);
+
+		final ObjectArrayList<PassengerDirection> passengerDirections = cachedPassengerDirections.get(cacheKey);
+		if (passengerDirections != null) {
+			cacheHitCount++;
+			callback.accept(new ObjectArrayList<>(passengerDirections));
+			return;
+		}
+
+		final WaitingCallbacks existingWaitingCallbacks = waitingCallbacks.get(cacheKey);
+		// Requests found before the cache was invalidated can't be shared
+		if (existingWaitingCallbacks != null && existingWaitingCallbacks.cacheGeneration() == cacheGeneration) {
+			cacheHitCount++;
+			existingWaitingCallbacks.callbacks().add(callback);
+			return;
+		}
+
+		cacheMissCount++;
+		final WaitingCallbacks newWaitingCallbacks = new WaitingCallbacks(cacheGeneration, ObjectArrayList.of(callback));
+		waitingCallbacks.put(cacheKey, newWaitingCallbacks);
+		directionsRequests.add(new DirectionsRequest(startPosition, endPosition, directionsRequest.getStartTime(), null, newPassengerDirections -> {
+			if (newWaitingCallbacks.cacheGeneration() == cacheGeneration) {
+				cachedPassengerDirections.put(cacheKey, newPassengerDirections);
+			}
+
+			waitingCallbacks.remove(cacheKey, newWaitingCallbacks);
+			newWaitingCallbacks.callbacks().forEach(callbackForKey -> callbackForKey.accept(new ObjectArrayList<>(newPassengerDirections)));
+		}));
+	}
+
+	/**
+	 * Queue a request for every Pareto-optimal journey departing between the start and end times of the request. Must be called on the
+	 * simulator thread.
+	 */
+	public void addProfileRequest(DirectionsRequest directionsRequest, Consumer<DirectionsProfileResponse> callback) {
+		profileRequests.add(new ObjectObjectImmutablePair<>(directionsRequest, callback));
+	}
+
+	/**
+	 * Must be called on the simulator thread whenever platforms or routes change. The graph is rebuilt with the next batch.
+	 */
+	public void invalidateGraph() {
+		graphDirty = true;
+		invalidateCache();
+	}
+
+	/**
+	 * Must be called on the simulator thread whenever a route is marked as jammed. If the current snapshot doesn't consider the route
+	 * jammed, cached directions may use it, so the cache is cleared and a new snapshot is taken with the next batch.
+	 */
+	public void onRouteJammed(long routeId) {
+		final DirectionsSnapshot currentDirectionsSnapshot = directionsSnapshot;
+		if (currentDirectionsSnapshot != null && !currentDirectionsSnapshot.isRouteJammed(routeId)) {
+			snapshotDirty = true;
+			invalidateCache();
+		}
+	}
+
+	/**
+	 * @return the number of passenger requests answered from the cache or by sharing an in-flight request
+	 */
+	public long getCacheHitCount() {
+		return cacheHitCount;
+	}
+
+	/**
+	 * @return the number of passenger requests that had to be processed
+	 */
+	public long getCacheMissCount() {
+		return cacheMissCount;
+	}
+
+	/**
+	 * Stop the directions thread and its pool, waiting for the current batch to finish. Requests that have not been handed off yet are dropped.
+	 */
+	public void stop() {
+		executorService.shutdown();
+		Utilities.awaitTermination(executorService);
+		forkJoinPool.shutdown();
+		Utilities.awaitTermination(forkJoinPool);
+		log.info("Directions cache for {} answered {} passenger request(s) and missed {}", simulator.dimension, cacheHitCount, cacheMissCount);
+	}
+
+	/**
+	 * Must be called on the simulator thread. Answers every request of a batch that couldn't be processed with no directions, so that
+	 * nobody waits forever. Passenger requests sharing an in-flight request are answered too, but the empty results aren't cached.
+	 */
+	private void failRequests(ObjectArrayList<QueuedRequest> queuedRequests, ObjectArrayList<QueuedProfileRequest> queuedProfileRequests) {
+		cacheGeneration++;
+		queuedRequests.forEach(queuedRequest -> {
+			if (queuedRequest.callback1() != null) {
+				queuedRequest.callback1().accept(new DirectionsResponse(0, 0, 0, 0, 0, 0));
+			}
+			if (queuedRequest.callback2() != null) {
+				queuedRequest.callback2().accept(new ObjectArrayList<>());
+			}
+		});
+		queuedProfileRequests.forEach(queuedProfileRequest -> queuedProfileRequest.callback().accept(new DirectionsProfileResponse(0, 0, 0)));
+	}
+
+	/**
+	 * Results for requests that were already queued are still cached, since they are found with the new snapshot or at most one tick before it.
+	 */
+	private void clearCache() {
+		cachedPassengerDirections.clear();
+	}
+
+	/**
+	 * Results for requests that were already queued may be wrong, so they aren't cached.
+	 */
+	private void invalidateCache() {
+		cachedPassengerDirections.clear();
+		cacheGeneration++;
+	}
+
+	/**
+	 * Runs on the directions thread. The graph only depends on platforms and continuous routes, so it is only rebuilt after they change,
+	 * while the timetable is rebuilt for every batch from the latest snapshot.
+	 */
+	private ObjectArrayList<Runnable> process(ObjectArrayList<QueuedRequest> queuedRequests, ObjectArrayList<QueuedProfileRequest> queuedProfileRequests, DirectionsSnapshot directionsSnapshot, boolean rebuildGraph) {
+		final Graph oldGraph = graph;
+		final Graph newGraph;
+		final long graphTime;
+		if (oldGraph == null || rebuildGraph || !oldGraph.matches(directionsSnapshot)) {
+			final ObjectLongImmutablePair<Graph> graphAndTime = Utilities.measureDuration(() -> new Graph(directionsSnapshot, oldGraph));
+			newGraph = graphAndTime.left();
+			graphTime = graphAndTime.rightLong();
+			graph = newGraph;
+		} else {
+			newGraph = oldGraph;
+			graphTime = 0;
+		}
+
+		final ObjectLongImmutablePair<Timetable> timetableAndTime = Utilities.measureDuration(() -> Timetable.create(directionsSnapshot));
+		final ObjectArrayList<Runnable> callbacks = new ObjectArrayList<>();
+		if (!queuedRequests.isEmpty()) {
+			callbacks.addAll(new ConnectionScanAlgorithmProcessor(directionsSnapshot, newGraph, timetableAndTime.left(), forkJoinPool).process(queuedRequests, graphTime, timetableAndTime.rightLong()));
+		}
+		if (!queuedProfileRequests.isEmpty()) {
+			callbacks.addAll(new ProfileConnectionScanAlgorithmProcessor(directionsSnapshot, newGraph, timetableAndTime.left(), forkJoinPool).process(queuedProfileRequests, graphTime, timetableAndTime.rightLong()));
+		}
+		return callbacks;
 	}
 
 	/**
@@ -61,6 +367,30 @@ public final class DirectionsFinder {
 		}
 	}
 
+	private static LongArrayList getPlatformIds(DirectionsSnapshot directionsSnapshot, Position position) {
+		final LongArrayList platformIds = new LongArrayList();
+		for (final int platformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(position)) {
+			platformIds.add(directionsSnapshot.platformIds[platformIndex]);
+		}
+		LongArrays.quickSort(platformIds.elements(), 0, platformIds.size());
+		return platformIds;
+	}
+
+	/**
+	 * @param startPlatformIds the sorted IDs of the platforms within walking distance of the start position
+	 * @param endPlatformIds   the sorted IDs of the platforms within walking distance of the end position
+	 * @param timeBucket       the departure time divided by {@link #CACHE_TIME_BUCKET}
+	 */
+	private record CacheKey(LongArrayList startPlatformIds, LongArrayList endPlatformIds, long timeBucket) {
+	}
+
+	/**
+	 * @param cacheGeneration the cache generation when the request was queued
+	 * @param callbacks       the callbacks of every passenger sharing the request
+	 */
+	private record WaitingCallbacks(int cacheGeneration, ObjectArrayList<Consumer<ObjectArrayList<PassengerDirection>>> callbacks) {
+	}
+
 	@FunctionalInterface
 	public interface RouteOffsetAndPlatformsCallback {
 		void accept(long offsetTimeFromLastDeparture, long duration, @Nullable Platform platform1, @Nullable Platform platform2);
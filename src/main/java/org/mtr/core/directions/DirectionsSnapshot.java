@@ -0,0 +1,199 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import it.unimi.dsi.fastutil.objects.ObjectObjectImmutablePair;
+import org.mtr.core.data.Platform;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.map.DirectionsConnection;
+import org.mtr.core.simulation.Simulator;
+
+/**
+ * An immutable copy of the platform, route and departure data needed to find directions. It is taken on the simulator thread and then
+ * only read by the directions thread, so the directions pipeline never touches live simulator state.
+ *
+ * <p>Platforms are given dense indices in the order of {@link Simulator#platforms}. Routes are only kept for their IDs, which never change.</p>
+ */
+public final class DirectionsSnapshot {
+
+	/**
+	 * The simulator time when the snapshot was taken
+	 */
+	final long millis;
+	final long[] platformIds;
+	final Position[] platformPositions;
+	final String[] platformNames;
+	/**
+	 * The hex ID of the station of each platform or an empty string if the platform is not in a station
+	 */
+	final String[] platformStationHexIds;
+	final ObjectImmutableList<RouteSnapshot> routes;
+	private final LongOpenHashSet jammedRouteIds;
+	private final Long2IntOpenHashMap platformIdToIndex;
+	/**
+	 * The platforms in each grid cell, with cells as large as the walking distance so that only the surrounding 3×3 cells have to be searched
+	 */
+	private final Long2ObjectOpenHashMap<IntArrayList> platformGrid = new Long2ObjectOpenHashMap<>();
+
+	DirectionsSnapshot(long millis, long[] platformIds, Position[] platformPositions, String[] platformNames, String[] platformStationHexIds, ObjectImmutableList<RouteSnapshot> routes, LongOpenHashSet jammedRouteIds) {
+		this.millis = millis;
+		this.platformIds = platformIds;
+		this.platformPositions = platformPositions;
+		this.platformNames = platformNames;
+		this.platformStationHexIds = platformStationHexIds;
+		this.routes = routes;
+		this.jammedRouteIds = jammedRouteIds;
+		platformIdToIndex = new Long2IntOpenHashMap(platformIds.length);
+		platformIdToIndex.defaultReturnValue(-1);
+		for (int i = 0; i < platformIds.length; i++) {
+			platformIdToIndex.put(platformIds[i], i);
+			platformGrid.computeIfAbsent(getGridKey(Math.floorDiv(platformPositions[i].getX(), DirectionsFinder.MAX_WALKING_DISTANCE), Math.floorDiv(platformPositions[i].getZ(), DirectionsFinder.MAX_WALKING_DISTANCE)), key -> new IntArrayList()).add(i);
+		}
+	}
+
+	/**
+	 * Copy the data needed for directions from the simulator. Must be called on the simulator thread.
+	 */
+	public static DirectionsSnapshot create(Simulator simulator) {
+		final long millis = simulator.getCurrentMillis();
+		final int platformCount = simulator.platforms.size();
+		final long[] platformIds = new long[platformCount];
+		final Position[] platformPositions = new Position[platformCount];
+		final String[] platformNames = new String[platformCount];
+		final String[] platformStationHexIds = new String[platformCount];
+		final Long2IntOpenHashMap platformIdToIndex = new Long2IntOpenHashMap(platformCount);
+		platformIdToIndex.defaultReturnValue(-1);
+
+		int platformIndex = 0;
+		for (final Platform platform : simulator.platforms) {
+			platformIds[platformIndex] = platform.getId();
+			platformPositions[platformIndex] = platform.getMidPosition();
+			platformNames[platformIndex] = platform.getName();
+			platformStationHexIds[platformIndex] = platform.area == null ? "" : platform.area.getHexId();
+			platformIdToIndex.put(platform.getId(), platformIndex);
+			platformIndex++;
+		}
+
+		final Long2ObjectOpenHashMap<ObjectObjectImmutablePair<Route, LongArrayList>> departures = new Long2ObjectOpenHashMap<>();
+		simulator.sidings.forEach(siding -> siding.getDeparturesForDirections(millis, departures));
+
+		final ObjectArrayList<RouteSnapshot> routes = new ObjectArrayList<>();
+		final LongOpenHashSet jammedRouteIds = new LongOpenHashSet();
+		simulator.routes.forEach(route -> {
+			// Jammed routes are kept so that the graph doesn't change when jams come and go, but both passenger and API directions avoid them
+			if (simulator.isRouteJammed(route.getId())) {
+				jammedRouteIds.add(route.getId());
+			}
+
+			final LongArrayList offsets = new LongArrayList();
+			final LongArrayList durations = new LongArrayList();
+			final IntArrayList startPlatformIndices = new IntArrayList();
+			final IntArrayList endPlatformIndices = new IntArrayList();
+			DirectionsFinder.processRoute(route, route.getRoutePlatforms().size() - 1, (offsetTimeFromLastDeparture, duration, platform1, platform2) -> {
+				final int startPlatformIndex = platform1 == null ? -1 : platformIdToIndex.get(platform1.getId());
+				final int endPlatformIndex = platform2 == null ? -1 : platformIdToIndex.get(platform2.getId());
+				if (startPlatformIndex >= 0 && endPlatformIndex >= 0) {
+					offsets.add(offsetTimeFromLastDeparture);
+					durations.add(duration);
+					startPlatformIndices.add(startPlatformIndex);
+					endPlatformIndices.add(endPlatformIndex);
+				}
+			});
+
+			if (!offsets.isEmpty()) {
+				final ObjectObjectImmutablePair<Route, LongArrayList> departuresForRoute = departures.get(route.getId());
+				routes.add(new RouteSnapshot(
+					route,
+					route.getTransportMode().continuousMovement,
+					offsets.toLongArray(),
+					durations.toLongArray(),
+					startPlatformIndices.toIntArray(),
+					endPlatformIndices.toIntArray(),
+					departuresForRoute == null ? new long[0] : departuresForRoute.right().toLongArray()
+				));
+			}
+		});
+
+		return new DirectionsSnapshot(millis, platformIds, platformPositions, platformNames, platformStationHexIds, new ObjectImmutableList<>(routes), jammedRouteIds);
+	}
+
+	public int getPlatformCount() {
+		return platformIds.length;
+	}
+
+	/**
+	 * @return the dense index of the platform or {@code -1} if the platform did not exist when the snapshot was taken
+	 */
+	public int getPlatformIndex(long platformId) {
+		return platformIdToIndex.get(platformId);
+	}
+
+	/**
+	 * @return the dense indices of every platform within walking distance of the position, in increasing order
+	 */
+	public IntArrayList getPlatformIndicesWithinWalkingDistance(Position position) {
+		final IntArrayList platformIndices = new IntArrayList();
+		final long gridX = Math.floorDiv(position.getX(), DirectionsFinder.MAX_WALKING_DISTANCE);
+		final long gridZ = Math.floorDiv(position.getZ(), DirectionsFinder.MAX_WALKING_DISTANCE);
+
+		for (long x = gridX - 1; x <= gridX + 1; x++) {
+			for (long z = gridZ - 1; z <= gridZ + 1; z++) {
+				final IntArrayList cell = platformGrid.get(getGridKey(x, z));
+				if (cell != null) {
+					for (final int platformIndex : cell) {
+						if (position.manhattanDistance(platformPositions[platformIndex]) <= DirectionsFinder.MAX_WALKING_DISTANCE) {
+							platformIndices.add(platformIndex);
+						}
+					}
+				}
+			}
+		}
+
+		IntArrays.quickSort(platformIndices.elements(), 0, platformIndices.size());
+		return platformIndices;
+	}
+
+	/**
+	 * Convert a connection found by path finding into its wire form, using the platform and station names in this snapshot.
+	 */
+	DirectionsConnection getDirectionsConnection(Connection connection) {
+		final int startPlatformIndex = getPlatformIndex(connection.startPlatformId());
+		final int endPlatformIndex = getPlatformIndex(connection.endPlatformId());
+		return new DirectionsConnection(
+			connection.route() == null ? "" : connection.route().getHexId(),
+			startPlatformIndex < 0 ? "" : platformStationHexIds[startPlatformIndex], endPlatformIndex < 0 ? "" : platformStationHexIds[endPlatformIndex],
+			startPlatformIndex < 0 ? "" : platformNames[startPlatformIndex], endPlatformIndex < 0 ? "" : platformNames[endPlatformIndex],
+			connection.startTime(), connection.endTime(),
+			connection.walkingDistance()
+		);
+	}
+
+	public boolean isRouteJammed(long routeId) {
+		return jammedRouteIds.contains(routeId);
+	}
+
+	private static long getGridKey(long gridX, long gridZ) {
+		return (gridX << 32) | (gridZ & 0XFFFFFFFFL);
+	}
+
+	/**
+	 * The stops of one route, iterated backwards from the last platform as in {@link DirectionsFinder#processRoute}.
+	 *
+	 * @param route                the route, only used for its IDs
+	 * @param continuousMovement   whether the route runs continuously (such as a cable car) and is independent of departure times
+	 * @param offsets              the offset of each hop from the departure at the last platform
+	 * @param durations            the travel time of each hop
+	 * @param startPlatformIndices the dense index of the start platform of each hop
+	 * @param endPlatformIndices   the dense index of the end platform of each hop
+	 * @param departures           the absolute departure times at the last platform
+	 */
+	record RouteSnapshot(Route route, boolean continuousMovement, long[] offsets, long[] durations, int[] startPlatformIndices, int[] endPlatformIndices, long[] departures) {
+	}
+}
@@ -1,97 +1,167 @@
 package org.mtr.core.directions;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.jspecify.annotations.Nullable;
-import org.mtr.core.data.Platform;
 import org.mtr.core.data.Position;
-import org.mtr.core.simulation.Simulator;
-import org.mtr.core.tool.RefreshableObject;
+import org.mtr.core.data.Route;
 
-public final class Graph extends RefreshableObject<Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<IndependentConnection>>> {
+import java.util.Arrays;
 
-	private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<IndependentConnection>> independentConnections = new Long2ObjectOpenHashMap<>();
-	private final Simulator simulator;
+/**
+ * Connections that are independent of start time: walking between nearby platforms and riding routes with continuous movement. Built
+ * from a {@link DirectionsSnapshot} and never modified afterwards.
+ *
+ * <p>The connections are stored as compressed sparse rows over the dense platform indices of the snapshot: the connections starting from
+ * platform {@code i} are the entries from {@code offsets[i]} (inclusive) to {@code offsets[i + 1]} (exclusive) of the other arrays. Walking
+ * connections only depend on platform positions, so they are kept separately and reused when only routes have changed.</p>
+ */
+public final class Graph {
 
-	public Graph(Simulator simulator) {
-		super(new Long2ObjectOpenHashMap<>(), 30000);
-		this.simulator = simulator;
+	final int[] offsets;
+	final int[] startPlatformIndices;
+	final int[] endPlatformIndices;
+	final long[] durations;
+	final long[] walkingDistances;
+	/**
+	 * The route of each connection or {@code null} if walking
+	 */
+	final Route[] routes;
+	/**
+	 * The connections ending at platform {@code i} are the rows listed from {@code incomingOffsets[i]} (inclusive) to
+	 * {@code incomingOffsets[i + 1]} (exclusive) of {@link #incomingRows}, for scanning backwards
+	 */
+	final int[] incomingOffsets;
+	final int[] incomingRows;
+
+	private final long[] platformIds;
+	private final Position[] platformPositions;
+	private final int[] walkingOffsets;
+	private final int[] walkingEndPlatformIndices;
+	private final long[] walkingWalkingDistances;
+
+	/**
+	 * Build every connection from scratch.
+	 */
+	public Graph(DirectionsSnapshot directionsSnapshot) {
+		this(directionsSnapshot, null);
 	}
 
-	@Nullable
-	@Override
-	public Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<IndependentConnection>> refresh(int currentRefreshStep) {
-		if (currentRefreshStep == 0) {
-			// Grid cell size: choose half of maxWalkingDistance for efficient neighborhood search
-			final double gridSize = DirectionsFinder.MAX_WALKING_DISTANCE / 2D;
-
-			// Build a spatial grid
-			final Long2ObjectOpenHashMap<ObjectArrayList<Platform>> grid = new Long2ObjectOpenHashMap<>();
-			simulator.platforms.forEach(platform -> {
-				final Position platformMidPosition = platform.getMidPosition();
-				final long gridKey = createGridKey(platformMidPosition.getX(), platformMidPosition.getZ(), gridSize);
-				grid.computeIfAbsent(gridKey, key -> new ObjectArrayList<>()).add(platform);
-			});
-
-			// For each platform, connect to nearby platforms within maxWalkingDistance
-			simulator.platforms.forEach(platform -> {
-				final Position platformMidPosition = platform.getMidPosition();
-				final long platformId = platform.getId();
-
-				final int gridX = (int) Math.floor(platformMidPosition.getX() / gridSize);
-				final int gridZ = (int) Math.floor(platformMidPosition.getZ() / gridSize);
-
-				// Search surrounding 3×3 cells
-				for (int x = -1; x <= 1; x++) {
-					for (int z = -1; z <= 1; z++) {
-						final long gridKey = createGridKey((gridX + x) * gridSize, (gridZ + z) * gridSize, gridSize);
-						final ObjectArrayList<Platform> cell = grid.get(gridKey);
-						if (cell == null) {
-							continue;
-						}
-
-						for (final Platform walkingPlatform : cell) {
-							if (walkingPlatform.getId() == platformId) {
-								continue;
-							}
-
-							final long distance = platformMidPosition.manhattanDistance(walkingPlatform.getMidPosition());
-							if (distance <= DirectionsFinder.MAX_WALKING_DISTANCE) {
-								independentConnections.computeIfAbsent(platformId, key -> new Long2ObjectOpenHashMap<>()).put(walkingPlatform.getId(), new IndependentConnection(
-									null,
-									platformId, walkingPlatform.getId(),
-									Math.round(distance / DirectionsFinder.WALKING_SPEED), distance
-								));
-							}
-						}
-					}
-				}
-			});
+	/**
+	 * Build the connections, reusing the walking connections of {@code previousGraph} if the platforms have not changed since it was built.
+	 */
+	public Graph(DirectionsSnapshot directionsSnapshot, @Nullable Graph previousGraph) {
+		platformIds = directionsSnapshot.platformIds;
+		platformPositions = directionsSnapshot.platformPositions;
+		final int platformCount = directionsSnapshot.getPlatformCount();
 
-			return null;
+		if (previousGraph != null && previousGraph.matches(directionsSnapshot)) {
+			walkingOffsets = previousGraph.walkingOffsets;
+			walkingEndPlatformIndices = previousGraph.walkingEndPlatformIndices;
+			walkingWalkingDistances = previousGraph.walkingWalkingDistances;
 		} else {
-			simulator.routes.forEach(route -> {
-				// Keep transfer graph and CSA in sync: jammed routes are excluded from directions.
-				if (route.getTransportMode().continuousMovement && !route.getHidden() && !simulator.isRouteJammed(route.getId())) {
-					DirectionsFinder.processRoute(
-						route,
-						route.getRoutePlatforms().size() - 1,
-						(offsetTimeFromLastDeparture, duration, platform1, platform2) -> independentConnections.computeIfAbsent(platform1.getId(), key -> new Long2ObjectOpenHashMap<>()).put(platform2.getId(), new IndependentConnection(
-							route,
-							platform1.getId(), platform2.getId(),
-							duration, 0
-						))
-					);
+			walkingOffsets = new int[platformCount + 1];
+			final IntArrayList tempWalkingEndPlatformIndices = new IntArrayList();
+			final LongArrayList tempWalkingDistances = new LongArrayList();
+			writeWalkingConnections(directionsSnapshot, tempWalkingEndPlatformIndices, tempWalkingDistances);
+			walkingEndPlatformIndices = tempWalkingEndPlatformIndices.toIntArray();
+			walkingWalkingDistances = tempWalkingDistances.toLongArray();
+		}
+
+		// Collect the continuous movement hops by start platform
+		final int[] routeConnectionCounts = new int[platformCount];
+		final IntArrayList routeStartPlatformIndices = new IntArrayList();
+		final IntArrayList routeEndPlatformIndices = new IntArrayList();
+		final LongArrayList routeDurations = new LongArrayList();
+		final ObjectArrayList<Route> routeRoutes = new ObjectArrayList<>();
+		directionsSnapshot.routes.forEach(routeSnapshot -> {
+			if (routeSnapshot.continuousMovement()) {
+				for (int i = 0; i < routeSnapshot.offsets().length; i++) {
+					final int startPlatformIndex = routeSnapshot.startPlatformIndices()[i];
+					routeConnectionCounts[startPlatformIndex]++;
+					routeStartPlatformIndices.add(startPlatformIndex);
+					routeEndPlatformIndices.add(routeSnapshot.endPlatformIndices()[i]);
+					routeDurations.add(routeSnapshot.durations()[i]);
+					routeRoutes.add(routeSnapshot.route());
 				}
-			});
+			}
+		});
+
+		// Merge the walking and route connections into one set of rows
+		offsets = new int[platformCount + 1];
+		for (int i = 0; i < platformCount; i++) {
+			offsets[i + 1] = offsets[i] + walkingOffsets[i + 1] - walkingOffsets[i] + routeConnectionCounts[i];
+		}
+
+		final int connectionCount = offsets[platformCount];
+		startPlatformIndices = new int[connectionCount];
+		endPlatformIndices = new int[connectionCount];
+		durations = new long[connectionCount];
+		walkingDistances = new long[connectionCount];
+		routes = new Route[connectionCount];
+		final int[] nextRows = new int[platformCount];
+
+		for (int i = 0; i < platformCount; i++) {
+			int row = offsets[i];
+			for (int j = walkingOffsets[i]; j < walkingOffsets[i + 1]; j++) {
+				startPlatformIndices[row] = i;
+				endPlatformIndices[row] = walkingEndPlatformIndices[j];
+				durations[row] = Math.round(walkingWalkingDistances[j] / DirectionsFinder.WALKING_SPEED);
+				walkingDistances[row] = walkingWalkingDistances[j];
+				row++;
+			}
+			nextRows[i] = row;
+		}
 
-			return independentConnections;
+		for (int i = 0; i < routeStartPlatformIndices.size(); i++) {
+			final int startPlatformIndex = routeStartPlatformIndices.getInt(i);
+			final int row = nextRows[startPlatformIndex]++;
+			startPlatformIndices[row] = startPlatformIndex;
+			endPlatformIndices[row] = routeEndPlatformIndices.getInt(i);
+			durations[row] = routeDurations.getLong(i);
+			routes[row] = routeRoutes.get(i);
 		}
+
+		// Index the same rows by end platform
+		incomingOffsets = new int[platformCount + 1];
+		for (final int endPlatformIndex : endPlatformIndices) {
+			incomingOffsets[endPlatformIndex + 1]++;
+		}
+		for (int i = 0; i < platformCount; i++) {
+			incomingOffsets[i + 1] += incomingOffsets[i];
+		}
+		incomingRows = new int[connectionCount];
+		final int[] nextIncomingRows = Arrays.copyOf(incomingOffsets, platformCount);
+		for (int row = 0; row < connectionCount; row++) {
+			incomingRows[nextIncomingRows[endPlatformIndices[row]]++] = row;
+		}
+	}
+
+	/**
+	 * @return whether the graph was built with the same platforms at the same positions, so that its platform indices can be used with the snapshot
+	 */
+	public boolean matches(DirectionsSnapshot directionsSnapshot) {
+		return Arrays.equals(platformIds, directionsSnapshot.platformIds) && Arrays.equals(platformPositions, directionsSnapshot.platformPositions);
+	}
+
+	public int getConnectionCount() {
+		return endPlatformIndices.length;
 	}
 
-	private static long createGridKey(double x, double z, double gridSize) {
-		final long gridX = (long) Math.floor(x / gridSize);
-		final long gridZ = (long) Math.floor(z / gridSize);
-		return (gridX << 32) | (gridZ & 0XFFFFFFFFL);
+	/**
+	 * Connect each platform to nearby platforms within walking distance.
+	 */
+	private void writeWalkingConnections(DirectionsSnapshot directionsSnapshot, IntArrayList tempWalkingEndPlatformIndices, LongArrayList tempWalkingDistances) {
+		for (int platformIndex = 0; platformIndex < directionsSnapshot.getPlatformCount(); platformIndex++) {
+			final Position platformMidPosition = platformPositions[platformIndex];
+			for (final int walkingPlatformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(platformMidPosition)) {
+				if (walkingPlatformIndex != platformIndex) {
+					tempWalkingEndPlatformIndices.add(walkingPlatformIndex);
+					tempWalkingDistances.add(platformMidPosition.manhattanDistance(platformPositions[walkingPlatformIndex]));
+				}
+			}
+			walkingOffsets[platformIndex + 1] = tempWalkingEndPlatformIndices.size();
+		}
 	}
 }
@@ -0,0 +1,422 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.Route;
+import org.mtr.core.map.DirectionsConnection;
+import org.mtr.core.map.DirectionsJourney;
+import org.mtr.core.map.DirectionsProfileResponse;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the profile variant of the connection scan algorithm, which finds every Pareto-optimal journey departing within a time range in
+ * one backwards pass over the {@link Timetable}. Only reads from a {@link DirectionsSnapshot} and the {@link Graph} and {@link Timetable}
+ * built from it, so it can run on any thread.
+ *
+ * <p>Each platform keeps a profile of (departure time, arrival time) pairs, where the arrival time is the earliest arrival at the end
+ * position when leaving the platform at or after the departure time. Scanning connections from the latest to the earliest departure
+ * lets every connection read the profile of its end platform, which only holds later departures. As with the single journey scan,
+ * changing between connections at the same platform takes no time.</p>
+ *
+ * <p>Time-independent connections (walking and continuous movement routes) are followed backwards transitively: whenever a profile gains
+ * an entry, every platform that leads to it through the {@link Graph} gains a shifted copy, which is then followed backwards in turn. The
+ * time-independent way from each platform to the end position is found once per request before the scan, so that journeys can also end
+ * with a continuous ride.</p>
+ *
+ * <p>Journeys that only walk or ride continuous movement routes don't depend on departure time and are left out; the single journey
+ * scan already finds them.</p>
+ */
+public final class ProfileConnectionScanAlgorithmProcessor {
+
+	private final DirectionsSnapshot directionsSnapshot;
+	private final Graph graph;
+	private final Timetable timetable;
+	private final ForkJoinPool forkJoinPool;
+
+	/**
+	 * @param directionsSnapshot the snapshot that {@code graph} and {@code timetable} were built from
+	 * @param graph              the time-independent connections
+	 * @param timetable          the time-dependent connections
+	 * @param forkJoinPool       the pool to scan requests on, which should not be shared with the simulator tick
+	 */
+	public ProfileConnectionScanAlgorithmProcessor(DirectionsSnapshot directionsSnapshot, Graph graph, Timetable timetable, ForkJoinPool forkJoinPool) {
+		this.directionsSnapshot = directionsSnapshot;
+		this.graph = graph;
+		this.timetable = timetable;
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Find journeys for every request in the batch. Requests are independent, so they are scanned in parallel on the {@link ForkJoinPool}.
+	 *
+	 * @param queuedProfileRequests the requests to process
+	 * @param graphTime             the time taken to build the graph, reported in directions responses
+	 * @param timetableTime         the time taken to build the timetable, reported in directions responses
+	 * @return a callback for each request, which should be run on the simulator thread
+	 */
+	public ObjectArrayList<Runnable> process(ObjectArrayList<QueuedProfileRequest> queuedProfileRequests, long graphTime, long timetableTime) {
+		final Runnable[] callbacks = new Runnable[queuedProfileRequests.size()];
+		final ObjectArrayList<ForkJoinTask<?>> tasks = new ObjectArrayList<>();
+		for (int i = 0; i < queuedProfileRequests.size(); i++) {
+			final int requestIndex = i;
+			tasks.add(ForkJoinTask.adapt(() -> {
+				final QueuedProfileRequest queuedProfileRequest = queuedProfileRequests.get(requestIndex);
+				final DirectionsProfileResponse directionsProfileResponse = findJourneys(queuedProfileRequest, graphTime, timetableTime);
+				callbacks[requestIndex] = () -> queuedProfileRequest.callback().accept(directionsProfileResponse);
+			}));
+		}
+		// Forked from inside the pool, so that the requests run on its workers rather than the common pool
+		forkJoinPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		return ObjectArrayList.wrap(callbacks);
+	}
+
+	private DirectionsProfileResponse findJourneys(QueuedProfileRequest queuedProfileRequest, long graphTime, long timetableTime) {
+		final long startMillis = System.currentTimeMillis();
+		final long startTime = Math.max(startMillis, queuedProfileRequest.startTime());
+		final long endTime = Math.max(startTime, queuedProfileRequest.endTime());
+		final int platformCount = directionsSnapshot.getPlatformCount();
+
+		// Cache distances of platforms to the end position
+		final long[] endWalkingDistances = new long[platformCount];
+		Arrays.fill(endWalkingDistances, -1);
+		for (final int platformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(queuedProfileRequest.endPosition())) {
+			endWalkingDistances[platformIndex] = queuedProfileRequest.endPosition().manhattanDistance(directionsSnapshot.platformPositions[platformIndex]);
+		}
+
+		// Time-independent ways from each platform to the end position
+		final Tails tails = getTails(endWalkingDistances);
+
+		// Process connections in reverse order, stopping at connections that depart too early to be used
+		final Profile[] profiles = new Profile[platformCount];
+		for (int row = timetable.getConnectionCount() - 1; row >= 0 && timetable.startTimes[row] >= startTime; row--) {
+			final int startIndex = timetable.startPlatformIndices[row];
+			final int endIndex = timetable.endPlatformIndices[row];
+			final long connectionStartTime = timetable.startTimes[row];
+			final long connectionEndTime = timetable.endTimes[row];
+			final long tailDuration = tails.afterRideDurations()[endIndex];
+			long arrivalTime = tailDuration == Long.MAX_VALUE ? Long.MAX_VALUE : connectionEndTime + tailDuration;
+			ProfileEntry next = null;
+
+			final Profile endProfile = profiles[endIndex];
+			final ProfileEntry continuation = endProfile == null ? null : endProfile.getEarliest(connectionEndTime);
+			if (continuation != null && continuation.arrivalTime() < arrivalTime) {
+				arrivalTime = continuation.arrivalTime();
+				next = continuation;
+			}
+
+			if (arrivalTime < Long.MAX_VALUE) {
+				final ProfileEntry profileEntry = new ProfileEntry(connectionStartTime, arrivalTime, row, -1, next);
+				if (getProfile(profiles, startIndex).add(profileEntry)) {
+					addIndependentConnectionsBackwards(startIndex, profileEntry, profiles);
+				}
+			}
+		}
+
+		// Walking from the start position to platforms
+		final ObjectArrayList<Journey> journeys = new ObjectArrayList<>();
+		for (final int platformIndex : directionsSnapshot.getPlatformIndicesWithinWalkingDistance(queuedProfileRequest.startPosition())) {
+			final Profile profile = profiles[platformIndex];
+			final long distance = queuedProfileRequest.startPosition().manhattanDistance(directionsSnapshot.platformPositions[platformIndex]);
+			if (profile != null) {
+				final long walkingTime = getWalkingTime(distance);
+				for (final ProfileEntry profileEntry : profile.profileEntries) {
+					final long departureTime = profileEntry.departureTime() - walkingTime;
+					// Walking can't directly follow walking
+					if (departureTime >= startTime && departureTime <= endTime && (profileEntry.graphRow() < 0 || graph.routes[profileEntry.graphRow()] != null)) {
+						journeys.add(new Journey(departureTime, platformIndex, distance, profileEntry));
+					}
+				}
+			}
+		}
+
+		// Keep only journeys that are not dominated, from the latest departure to the earliest
+		journeys.sort(Comparator.comparingLong(Journey::departureTime).reversed().thenComparingLong(journey -> journey.profileEntry().arrivalTime()));
+		final ObjectArrayList<Journey> paretoJourneys = new ObjectArrayList<>();
+		long bestArrivalTime = Long.MAX_VALUE;
+		for (final Journey journey : journeys) {
+			if (journey.profileEntry().arrivalTime() < bestArrivalTime) {
+				bestArrivalTime = journey.profileEntry().arrivalTime();
+				paretoJourneys.add(journey);
+			}
+		}
+
+		final DirectionsProfileResponse directionsProfileResponse = new DirectionsProfileResponse(graphTime, timetableTime, System.currentTimeMillis() - startMillis);
+		for (int i = paretoJourneys.size() - 1; i >= 0; i--) {
+			directionsProfileResponse.getDirectionsJourneys().add(getDirectionsJourney(paretoJourneys.get(i), tails, endWalkingDistances));
+		}
+		return directionsProfileResponse;
+	}
+
+	/**
+	 * Find the fastest way from each platform to the end position using only time-independent connections, with a label correcting search
+	 * backwards from the platforms within walking distance of the end position. There are two labels for each platform, since walking can't
+	 * directly follow walking: one for arriving by a ride and one for arriving on foot.
+	 */
+	private Tails getTails(long[] endWalkingDistances) {
+		final int platformCount = endWalkingDistances.length;
+		final Tails tails = new Tails(new long[platformCount], new int[platformCount], new long[platformCount], new int[platformCount]);
+		Arrays.fill(tails.afterRideDurations(), Long.MAX_VALUE);
+		Arrays.fill(tails.afterRideRows(), -1);
+		Arrays.fill(tails.afterWalkingDurations(), Long.MAX_VALUE);
+		Arrays.fill(tails.afterWalkingRows(), -1);
+
+		final IntArrayList queue = new IntArrayList();
+		for (int platformIndex = 0; platformIndex < platformCount; platformIndex++) {
+			if (endWalkingDistances[platformIndex] >= 0) {
+				tails.afterRideDurations()[platformIndex] = getWalkingTime(endWalkingDistances[platformIndex]);
+				tails.afterWalkingDurations()[platformIndex] = tails.afterRideDurations()[platformIndex];
+				queue.add(platformIndex);
+			}
+		}
+
+		int index = 0;
+		while (index < queue.size()) {
+			final int endIndex = queue.getInt(index++);
+			for (int i = graph.incomingOffsets[endIndex]; i < graph.incomingOffsets[endIndex + 1]; i++) {
+				final int graphRow = graph.incomingRows[i];
+				final int startIndex = graph.startPlatformIndices[graphRow];
+				final Route route = graph.routes[graphRow];
+				boolean improved = false;
+
+				if (route == null) {
+					// Walking can only follow a ride
+					final long duration = tails.afterWalkingDurations()[endIndex];
+					if (duration < Long.MAX_VALUE && graph.durations[graphRow] + duration < tails.afterRideDurations()[startIndex]) {
+						tails.afterRideDurations()[startIndex] = graph.durations[graphRow] + duration;
+						tails.afterRideRows()[startIndex] = graphRow;
+						improved = true;
+					}
+				} else if (!directionsSnapshot.isRouteJammed(route.getId())) {
+					final long duration = tails.afterRideDurations()[endIndex];
+					if (duration < Long.MAX_VALUE && graph.durations[graphRow] + duration < tails.afterRideDurations()[startIndex]) {
+						tails.afterRideDurations()[startIndex] = graph.durations[graphRow] + duration;
+						tails.afterRideRows()[startIndex] = graphRow;
+						improved = true;
+					}
+					if (duration < Long.MAX_VALUE && graph.durations[graphRow] + duration < tails.afterWalkingDurations()[startIndex]) {
+						tails.afterWalkingDurations()[startIndex] = graph.durations[graphRow] + duration;
+						tails.afterWalkingRows()[startIndex] = graphRow;
+						improved = true;
+					}
+				}
+
+				if (improved) {
+					queue.add(startIndex);
+				}
+			}
+		}
+
+		return tails;
+	}
+
+	/**
+	 * Once a profile has gained an entry, add shifted copies of it to every platform leading to it through time-independent connections,
+	 * and in turn to every platform leading to those (BFS-style), mirroring the forward relaxation of the single journey scan.
+	 */
+	private void addIndependentConnectionsBackwards(int lastPlatformIndex, ProfileEntry lastProfileEntry, Profile[] profiles) {
+		final IntArrayList queuedPlatformIndices = new IntArrayList();
+		final ObjectArrayList<ProfileEntry> queuedProfileEntries = new ObjectArrayList<>();
+		queuedPlatformIndices.add(lastPlatformIndex);
+		queuedProfileEntries.add(lastProfileEntry);
+		int index = 0;
+
+		while (index < queuedPlatformIndices.size()) {
+			final int endIndex = queuedPlatformIndices.getInt(index);
+			final ProfileEntry profileEntry = queuedProfileEntries.get(index);
+			index++;
+			final boolean startsWithWalking = profileEntry.graphRow() >= 0 && graph.routes[profileEntry.graphRow()] == null;
+
+			for (int i = graph.incomingOffsets[endIndex]; i < graph.incomingOffsets[endIndex + 1]; i++) {
+				final int graphRow = graph.incomingRows[i];
+				final Route route = graph.routes[graphRow];
+				// Walking can't directly follow walking
+				if ((route != null || !startsWithWalking) && (route == null || !directionsSnapshot.isRouteJammed(route.getId()))) {
+					final int startIndex = graph.startPlatformIndices[graphRow];
+					final ProfileEntry newProfileEntry = new ProfileEntry(profileEntry.departureTime() - graph.durations[graphRow], profileEntry.arrivalTime(), -1, graphRow, profileEntry);
+					if (getProfile(profiles, startIndex).add(newProfileEntry)) {
+						queuedPlatformIndices.add(startIndex);
+						queuedProfileEntries.add(newProfileEntry);
+					}
+				}
+			}
+		}
+	}
+
+	private DirectionsJourney getDirectionsJourney(Journey journey, Tails tails, long[] endWalkingDistances) {
+		final ObjectArrayList<Connection> connections = new ObjectArrayList<>();
+		connections.add(new Connection(
+			null,
+			ConnectionScanAlgorithmProcessor.START_PLATFORM_ID, directionsSnapshot.platformIds[journey.platformIndex()],
+			journey.departureTime(), journey.profileEntry().departureTime(),
+			journey.walkingDistance()
+		));
+
+		ProfileEntry current = journey.profileEntry();
+		while (current != null) {
+			final int graphRow = current.graphRow();
+			if (graphRow >= 0) {
+				connections.add(getGraphConnection(graphRow, current.departureTime()));
+			} else {
+				final int row = current.timetableRow();
+				final int endIndex = timetable.endPlatformIndices[row];
+				connections.add(new Connection(
+					timetable.routes[timetable.routeIndices[row]],
+					directionsSnapshot.platformIds[timetable.startPlatformIndices[row]], directionsSnapshot.platformIds[endIndex],
+					timetable.startTimes[row], timetable.endTimes[row],
+					0
+				));
+
+				if (current.next() == null) {
+					addTailConnections(connections, tails, endIndex, timetable.endTimes[row], endWalkingDistances);
+				}
+			}
+
+			current = current.next();
+		}
+
+		final ObjectArrayList<DirectionsConnection> directionsConnections = new ObjectArrayList<>();
+		connections.forEach(connection -> directionsConnections.add(directionsSnapshot.getDirectionsConnection(connection)));
+		return new DirectionsJourney(directionsConnections);
+	}
+
+	/**
+	 * Follow the time-independent way from a platform to the end position found by {@link #getTails(long[])}, arriving at the platform by a ride.
+	 */
+	private void addTailConnections(ObjectArrayList<Connection> connections, Tails tails, int platformIndex, long time, long[] endWalkingDistances) {
+		int currentPlatformIndex = platformIndex;
+		long currentTime = time;
+		boolean afterWalking = false;
+
+		while (true) {
+			final int graphRow = afterWalking ? tails.afterWalkingRows()[currentPlatformIndex] : tails.afterRideRows()[currentPlatformIndex];
+			if (graphRow < 0) {
+				connections.add(new Connection(
+					null,
+					directionsSnapshot.platformIds[currentPlatformIndex], ConnectionScanAlgorithmProcessor.END_PLATFORM_ID,
+					currentTime, currentTime + getWalkingTime(endWalkingDistances[currentPlatformIndex]),
+					endWalkingDistances[currentPlatformIndex]
+				));
+				return;
+			}
+
+			connections.add(getGraphConnection(graphRow, currentTime));
+			currentPlatformIndex = graph.endPlatformIndices[graphRow];
+			currentTime += graph.durations[graphRow];
+			afterWalking = graph.routes[graphRow] == null;
+		}
+	}
+
+	private Connection getGraphConnection(int graphRow, long startTime) {
+		return new Connection(
+			graph.routes[graphRow],
+			directionsSnapshot.platformIds[graph.startPlatformIndices[graphRow]], directionsSnapshot.platformIds[graph.endPlatformIndices[graphRow]],
+			startTime, startTime + graph.durations[graphRow],
+			graph.walkingDistances[graphRow]
+		);
+	}
+
+	private static Profile getProfile(Profile[] profiles, int platformIndex) {
+		final Profile profile = profiles[platformIndex];
+		if (profile == null) {
+			final Profile newProfile = new Profile();
+			profiles[platformIndex] = newProfile;
+			return newProfile;
+		} else {
+			return profile;
+		}
+	}
+
+	private static long getWalkingTime(long distance) {
+		return Math.round(distance / DirectionsFinder.WALKING_SPEED);
+	}
+
+	/**
+	 * One way of leaving a platform, by either a timetable connection or a graph connection.
+	 *
+	 * @param departureTime the time to leave the platform
+	 * @param arrivalTime   the arrival time at the end position
+	 * @param timetableRow  the timetable connection taken or {@code -1} if a graph connection is taken
+	 * @param graphRow      the graph connection taken or {@code -1} if a timetable connection is taken
+	 * @param next          the way of leaving the end platform of the connection or {@code null} if following the tail to the end position,
+	 *                      which only happens after a timetable connection
+	 */
+	private record ProfileEntry(long departureTime, long arrivalTime, int timetableRow, int graphRow, @Nullable ProfileEntry next) {
+	}
+
+	private record Journey(long departureTime, int platformIndex, long walkingDistance, ProfileEntry profileEntry) {
+	}
+
+	/**
+	 * The time-independent ways from each platform to the end position, depending on whether the platform was reached by a ride or on foot.
+	 *
+	 * @param afterRideDurations    the time to reach the end position or {@link Long#MAX_VALUE} if it can't be reached
+	 * @param afterRideRows         the first graph connection taken or {@code -1} if walking straight to the end position
+	 * @param afterWalkingDurations the same as {@code afterRideDurations}, without walking connections
+	 * @param afterWalkingRows      the same as {@code afterRideRows}, without walking connections
+	 */
+	private record Tails(long[] afterRideDurations, int[] afterRideRows, long[] afterWalkingDurations, int[] afterWalkingRows) {
+	}
+
+	/**
+	 * The Pareto-optimal entries of one platform, sorted from the latest departure to the earliest. Arrival times are strictly decreasing
+	 * too, since an entry that departs earlier must also arrive earlier to be kept.
+	 */
+	private static final class Profile {
+
+		private final ObjectArrayList<ProfileEntry> profileEntries = new ObjectArrayList<>();
+
+		/**
+		 * @return the entry that departs at or after {@code time} with the earliest arrival or {@code null} if there is none
+		 */
+		@Nullable
+		private ProfileEntry getEarliest(long time) {
+			final int index = getFirstIndexBefore(time) - 1;
+			return index < 0 ? null : profileEntries.get(index);
+		}
+
+		/**
+		 * Add an entry unless an existing entry departs no earlier and arrives no later, removing entries that the new entry dominates.
+		 * Entries are usually added in decreasing order of departure, so this is usually an append.
+		 *
+		 * @return whether the entry was added
+		 */
+		private boolean add(ProfileEntry profileEntry) {
+			final int index = getFirstIndexBefore(profileEntry.departureTime());
+			if (index > 0 && profileEntries.get(index - 1).arrivalTime() <= profileEntry.arrivalTime()) {
+				return false;
+			}
+
+			// An entry departing at the same time arrives later, so it is replaced too
+			final int startIndex = index > 0 && profileEntries.get(index - 1).departureTime() == profileEntry.departureTime() ? index - 1 : index;
+			int endIndex = index;
+			while (endIndex < profileEntries.size() && profileEntries.get(endIndex).arrivalTime() >= profileEntry.arrivalTime()) {
+				endIndex++;
+			}
+			profileEntries.removeElements(startIndex, endIndex);
+			profileEntries.add(startIndex, profileEntry);
+			return true;
+		}
+
+		/**
+		 * @return the index of the first entry departing strictly before {@code time}
+		 */
+		private int getFirstIndexBefore(long time) {
+			int low = 0;
+			int high = profileEntries.size();
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (profileEntries.get(middle).departureTime() >= time) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
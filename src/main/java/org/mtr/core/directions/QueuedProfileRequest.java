@@ -0,0 +1,24 @@
+package org.mtr.core.directions;
+
+import org.mtr.core.data.Position;
+import org.mtr.core.map.DirectionsProfileResponse;
+
+import java.util.function.Consumer;
+
+/**
+ * A profile directions request waiting to be processed, with its start and end positions already resolved on the simulator thread.
+ *
+ * @param startPosition the position to start walking from
+ * @param endPosition   the position to walk to at the end
+ * @param startTime     the earliest absolute departure time (in millis after epoch)
+ * @param endTime       the latest absolute departure time (in millis after epoch)
+ * @param callback      the callback for the journeys found
+ */
+public record QueuedProfileRequest(
+	Position startPosition,
+	Position endPosition,
+	long startTime,
+	long endTime,
+	Consumer<DirectionsProfileResponse> callback
+) {
+}
@@ -0,0 +1,27 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.PassengerDirection;
+import org.mtr.core.data.Position;
+import org.mtr.core.map.DirectionsResponse;
+
+import java.util.function.Consumer;
+
+/**
+ * A directions request waiting to be processed, with its start and end positions already resolved on the simulator thread.
+ *
+ * @param startPosition the position to start walking from
+ * @param endPosition   the position to walk to at the end
+ * @param startTime     the requested absolute starting time (in millis after epoch)
+ * @param callback1     an optional callback for the full directions response
+ * @param callback2     an optional callback for the passenger directions
+ */
+public record QueuedRequest(
+	Position startPosition,
+	Position endPosition,
+	long startTime,
+	@Nullable Consumer<DirectionsResponse> callback1,
+	@Nullable Consumer<ObjectArrayList<PassengerDirection>> callback2
+) {
+}
@@ -1,7 +1,5 @@
 package org.mtr.core.directions;
 
-import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.data.PassengerDirection;
@@ -10,12 +8,27 @@ import org.mtr.core.map.DirectionsResponse;
 
 import java.util.function.Consumer;
 
+/**
+ * A single directions request in a connection scan batch. The label tables are indexed by the dense platform index of the batch.
+ *
+ * @param startPosition          the position to start walking from
+ * @param endPosition            the position to walk to at the end
+ * @param startTime              the absolute starting time (in millis after epoch)
+ * @param earliestArrivalTimes   the earliest known arrival time at each platform or {@link Long#MAX_VALUE} if not reached yet
+ * @param earliestConnections    the connection used to reach each platform at its earliest arrival time or {@code null} if not reached yet
+ * @param endPlatformIndices     the platforms within walking distance of the end position
+ * @param endWalkingDistances    the walking distance from each platform in {@code endPlatformIndices} to the end position
+ * @param callback1              an optional callback for the full directions response
+ * @param callback2              an optional callback for the passenger directions
+ */
 public record Request(
 	Position startPosition,
 	Position endPosition,
 	long startTime,
-	Long2ObjectOpenHashMap<Connection> earliestConnections,
-	Long2LongOpenHashMap walkingDistancesToEnd,
+	long[] earliestArrivalTimes,
+	@Nullable Connection[] earliestConnections,
+	int[] endPlatformIndices,
+	long[] endWalkingDistances,
 	@Nullable Consumer<DirectionsResponse> callback1,
 	@Nullable Consumer<ObjectArrayList<PassengerDirection>> callback2
 ) {
@@ -0,0 +1,204 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.mtr.core.data.Route;
+import org.mtr.core.tool.Utilities;
+
+/**
+ * The time-dependent connections used by the connection scan algorithm, stored as parallel primitive arrays instead of one object per
+ * connection. Rows are grouped into hourly buckets (counted from the time the timetable was built) and sorted by start time within each
+ * bucket. Platforms are referred to by their dense indices in the {@link DirectionsSnapshot} the timetable was built from and routes by
+ * their indices in {@link #routes}.
+ */
+public final class Timetable {
+
+	final Route[] routes;
+	/**
+	 * The first row of each hourly bucket, with one extra entry marking the end of the last bucket
+	 */
+	final int[] hourOffsets;
+	final long[] startTimes;
+	final long[] endTimes;
+	final int[] startPlatformIndices;
+	final int[] endPlatformIndices;
+	final int[] routeIndices;
+
+	private Timetable(Route[] routes, int[] hourOffsets, long[] startTimes, long[] endTimes, int[] startPlatformIndices, int[] endPlatformIndices, int[] routeIndices) {
+		this.routes = routes;
+		this.hourOffsets = hourOffsets;
+		this.startTimes = startTimes;
+		this.endTimes = endTimes;
+		this.startPlatformIndices = startPlatformIndices;
+		this.endPlatformIndices = endPlatformIndices;
+		this.routeIndices = routeIndices;
+	}
+
+	/**
+	 * Expand the departures of every route in the snapshot into connections. Jammed routes are left out.
+	 */
+	public static Timetable create(DirectionsSnapshot directionsSnapshot) {
+		final Builder builder = new Builder(directionsSnapshot.millis);
+		for (final DirectionsSnapshot.RouteSnapshot routeSnapshot : directionsSnapshot.routes) {
+			if (routeSnapshot.departures().length > 0 && !directionsSnapshot.isRouteJammed(routeSnapshot.route().getId())) {
+				final int routeIndex = builder.addRoute(routeSnapshot.route());
+				for (int i = 0; i < routeSnapshot.offsets().length; i++) {
+					for (final long departure : routeSnapshot.departures()) {
+						final long startTime = departure - routeSnapshot.offsets()[i];
+						builder.add(routeIndex, routeSnapshot.startPlatformIndices()[i], routeSnapshot.endPlatformIndices()[i], startTime, startTime + routeSnapshot.durations()[i]);
+					}
+				}
+			}
+		}
+		builder.group();
+		for (int i = 0; i < builder.getHourCount(); i++) {
+			builder.sortHour(i);
+		}
+		return builder.build();
+	}
+
+	public int getHourCount() {
+		return hourOffsets.length - 1;
+	}
+
+	public int getConnectionCount() {
+		return startTimes.length;
+	}
+
+	/**
+	 * Collects connections in any order. {@link #group()} then buckets them by hour and {@link #sortHour(int)} sorts one bucket at a time
+	 * with a primitive sort.
+	 */
+	static final class Builder {
+
+		private boolean grouped;
+		private int[] hourOffsets = new int[1];
+		private long[] startTimes = new long[0];
+		private long[] endTimes = new long[0];
+		private int[] startPlatformIndices = new int[0];
+		private int[] endPlatformIndices = new int[0];
+		private int[] routeIndices = new int[0];
+
+		private final long millis;
+		private final ObjectArrayList<Route> routes = new ObjectArrayList<>();
+		private final IntArrayList hourCounts = new IntArrayList();
+		private final LongArrayList tempStartTimes = new LongArrayList();
+		private final LongArrayList tempEndTimes = new LongArrayList();
+		private final IntArrayList tempStartPlatformIndices = new IntArrayList();
+		private final IntArrayList tempEndPlatformIndices = new IntArrayList();
+		private final IntArrayList tempRouteIndices = new IntArrayList();
+		private final IntArrayList tempHours = new IntArrayList();
+
+		/**
+		 * @param millis connections starting before this time are dropped and hours are counted from here
+		 */
+		Builder(long millis) {
+			this.millis = millis;
+		}
+
+		/**
+		 * @return the route index to pass to {@link #add(int, int, int, long, long)}
+		 */
+		int addRoute(Route route) {
+			routes.add(route);
+			return routes.size() - 1;
+		}
+
+		/**
+		 * Add a connection if it starts at or after the build time.
+		 */
+		void add(int routeIndex, int startPlatformIndex, int endPlatformIndex, long startTime, long endTime) {
+			if (startTime >= millis) {
+				final int hour = (int) ((startTime - millis) / Utilities.MILLIS_PER_HOUR);
+				while (hourCounts.size() <= hour) {
+					hourCounts.add(0);
+				}
+				hourCounts.set(hour, hourCounts.getInt(hour) + 1);
+
+				tempStartTimes.add(startTime);
+				tempEndTimes.add(endTime);
+				tempStartPlatformIndices.add(startPlatformIndex);
+				tempEndPlatformIndices.add(endPlatformIndex);
+				tempRouteIndices.add(routeIndex);
+				tempHours.add(hour);
+			}
+		}
+
+		/**
+		 * Move every added connection into its hourly bucket, keeping the order in which connections were added.
+		 */
+		void group() {
+			final int hourCount = hourCounts.size();
+			final int connectionCount = tempStartTimes.size();
+			hourOffsets = new int[hourCount + 1];
+			for (int i = 0; i < hourCount; i++) {
+				hourOffsets[i + 1] = hourOffsets[i] + hourCounts.getInt(i);
+			}
+
+			startTimes = new long[connectionCount];
+			endTimes = new long[connectionCount];
+			startPlatformIndices = new int[connectionCount];
+			endPlatformIndices = new int[connectionCount];
+			routeIndices = new int[connectionCount];
+			final int[] nextRows = hourOffsets.clone();
+
+			for (int i = 0; i < connectionCount; i++) {
+				final int row = nextRows[tempHours.getInt(i)]++;
+				startTimes[row] = tempStartTimes.getLong(i);
+				endTimes[row] = tempEndTimes.getLong(i);
+				startPlatformIndices[row] = tempStartPlatformIndices.getInt(i);
+				endPlatformIndices[row] = tempEndPlatformIndices.getInt(i);
+				routeIndices[row] = tempRouteIndices.getInt(i);
+			}
+
+			tempStartTimes.clear();
+			tempEndTimes.clear();
+			tempStartPlatformIndices.clear();
+			tempEndPlatformIndices.clear();
+			tempRouteIndices.clear();
+			tempHours.clear();
+			grouped = true;
+		}
+
+		int getHourCount() {
+			return hourOffsets.length - 1;
+		}
+
+		/**
+		 * Sort the connections of one hourly bucket by start time. The sort is stable.
+		 */
+		void sortHour(int hour) {
+			Arrays.mergeSort(hourOffsets[hour], hourOffsets[hour + 1], (row1, row2) -> Long.compare(startTimes[row1], startTimes[row2]), (row1, row2) -> {
+				swap(startTimes, row1, row2);
+				swap(endTimes, row1, row2);
+				swap(startPlatformIndices, row1, row2);
+				swap(endPlatformIndices, row1, row2);
+				swap(routeIndices, row1, row2);
+			});
+		}
+
+		/**
+		 * Groups the connections if needed. Every hourly bucket should already be sorted.
+		 */
+		Timetable build() {
+			if (!grouped) {
+				group();
+			}
+			return new Timetable(routes.toArray(new Route[0]), hourOffsets, startTimes, endTimes, startPlatformIndices, endPlatformIndices, routeIndices);
+		}
+
+		private static void swap(long[] array, int index1, int index2) {
+			final long temp = array[index1];
+			array[index1] = array[index2];
+			array[index2] = temp;
+		}
+
+		private static void swap(int[] array, int index1, int index2) {
+			final int temp = array[index1];
+			array[index1] = array[index2];
+			array[index2] = temp;
+		}
+	}
+}
@@ -1,25 +1,25 @@
 package org.mtr.core.integration;
 
-import com.google.gson.JsonObject;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.generated.integration.ResponseSchema;
-import org.mtr.core.tool.Utilities;
+import org.mtr.core.serializer.SerializedDataBase;
+import org.mtr.core.serializer.WriterBase;
 
 public final class Response extends ResponseSchema {
 
 	@Nullable
-	public final JsonObject data;
+	public final SerializedDataBase data;
 
-	public Response(int code, String text, @Nullable JsonObject data) {
+	public Response(int code, String text, @Nullable SerializedDataBase data) {
 		super(code, System.currentTimeMillis(), text, 1);
 		this.data = data;
 	}
 
-	public JsonObject getJson() {
-		final JsonObject jsonObject = Utilities.getJsonObjectFromData(this);
+	@Override
+	public void serializeData(WriterBase writerBase) {
+		super.serializeData(writerBase);
 		if (data != null) {
-			jsonObject.add("data", data);
+			data.serializeData(writerBase.writeChild("data"));
 		}
-		return jsonObject;
 	}
 }
@@ -13,4 +13,16 @@ public final class DirectionsConnection extends DirectionsConnectionSchema {
 		super(readerBase);
 		updateData(readerBase);
 	}
+
+	public String getRouteId() {
+		return routeId;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getEndTime() {
+		return endTime;
+	}
 }
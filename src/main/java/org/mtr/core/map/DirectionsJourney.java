@@ -0,0 +1,25 @@
+package org.mtr.core.map;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.mtr.core.generated.map.DirectionsJourneySchema;
+import org.mtr.core.serializer.ReaderBase;
+
+/**
+ * One journey of a {@link DirectionsProfileResponse}, from the start position to the end position.
+ */
+public final class DirectionsJourney extends DirectionsJourneySchema {
+
+	public DirectionsJourney(ObjectArrayList<DirectionsConnection> connections) {
+		super();
+		this.connections.addAll(connections);
+	}
+
+	public DirectionsJourney(ReaderBase readerBase) {
+		super(readerBase);
+		updateData(readerBase);
+	}
+
+	public ObjectArrayList<DirectionsConnection> getDirectionsConnections() {
+		return connections;
+	}
+}
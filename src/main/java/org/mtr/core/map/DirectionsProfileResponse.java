@@ -0,0 +1,25 @@
+package org.mtr.core.map;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.mtr.core.generated.map.DirectionsProfileResponseSchema;
+import org.mtr.core.serializer.ReaderBase;
+
+/**
+ * Every Pareto-optimal journey departing within the requested time range, sorted by departure time. No journey both departs earlier
+ * and arrives later than another.
+ */
+public final class DirectionsProfileResponse extends DirectionsProfileResponseSchema {
+
+	public DirectionsProfileResponse(long refreshGraphTime, long refreshTimetableTime, long pathFindingTime) {
+		super(refreshGraphTime, refreshTimetableTime, pathFindingTime);
+	}
+
+	public DirectionsProfileResponse(ReaderBase readerBase) {
+		super(readerBase);
+		updateData(readerBase);
+	}
+
+	public ObjectArrayList<DirectionsJourney> getDirectionsJourneys() {
+		return journeys;
+	}
+}
@@ -80,6 +80,13 @@ public final class DirectionsRequest extends DirectionsRequestSchema {
 		return startTime;
 	}
 
+	/**
+	 * @return the latest departure time for profile requests (simulator wall-clock millis), ignored by single journey requests
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
 	private Position getPosition(Simulator simulator, long x, long y, long z, String stationName, String clientId) {
 		if (!stationName.isEmpty()) {
 			final Station station = simulator.stations.stream()
@@ -1,12 +1,10 @@
 package org.mtr.core.oba;
 
-import com.google.gson.JsonObject;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.mtr.core.generated.oba.ListElementSchema;
 import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.serializer.WriterBase;
 import org.mtr.core.simulation.Simulator;
-import org.mtr.core.tool.Utilities;
 
 public final class ListElement<T extends SerializedDataBase> extends ListElementSchema {
 
@@ -27,9 +25,9 @@ public final class ListElement<T extends SerializedDataBase> extends ListElement
 	}
 
 	@Override
-	public JsonObject toJson(Simulator simulator) {
+	public SerializedDataBase build(Simulator simulator) {
 		references.build(simulator);
-		return Utilities.getJsonObjectFromData(this);
+		return this;
 	}
 
 	@Override
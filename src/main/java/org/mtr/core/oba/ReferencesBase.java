@@ -1,9 +1,9 @@
 package org.mtr.core.oba;
 
-import com.google.gson.JsonObject;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.generated.oba.ReferencesBaseSchema;
 import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.simulation.Simulator;
 
 public abstract class ReferencesBase extends ReferencesBaseSchema {
@@ -35,8 +35,13 @@ public abstract class ReferencesBase extends ReferencesBaseSchema {
 		}
 	}
 
+	/**
+	 * Resolve the references collected so far against the simulator.
+	 *
+	 * @return the response to send, or {@code null} if there is nothing to send
+	 */
 	@Nullable
-	public abstract JsonObject toJson(Simulator simulator);
+	public abstract SerializedDataBase build(Simulator simulator);
 
 	protected abstract boolean isIncludeReferences();
 }
@@ -1,11 +1,9 @@
 package org.mtr.core.oba;
 
-import com.google.gson.JsonObject;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.serializer.WriterBase;
 import org.mtr.core.simulation.Simulator;
-import org.mtr.core.tool.Utilities;
 
 public final class SingleElement<T extends SerializedDataBase> extends ReferencesBase {
 
@@ -28,12 +26,12 @@ public final class SingleElement<T extends SerializedDataBase> extends Reference
 
 	@Nullable
 	@Override
-	public JsonObject toJson(Simulator simulator) {
+	public SerializedDataBase build(Simulator simulator) {
 		if (entry == null) {
 			return null;
 		} else {
 			references.build(simulator);
-			return Utilities.getJsonObjectFromData(this);
+			return this;
 		}
 	}
 
@@ -24,6 +24,13 @@ public final class DataRequest extends DataRequestSchema {
 		uuid = UUID.fromString(clientId);
 	}
 
+	/**
+	 * Declare that the client can rebuild vehicles from {@link VehicleDelta}s. Clients that don't are always sent full {@link VehicleUpdate}s.
+	 */
+	public void setSupportsVehicleDeltas() {
+		supportsVehicleDeltas = true;
+	}
+
 	public DataResponse getData(Simulator simulator) {
 		final DataResponse dataResponse = new DataResponse(simulator);
 		final LongAVLTreeSet addedStationIds = new LongAVLTreeSet();
@@ -109,6 +116,7 @@ public final class DataRequest extends DataRequestSchema {
 		for (final Client client : simulator.clients) {
 			if (client.uuid.equals(uuid)) {
 				client.setPositionAndUpdateRadius(clientPosition, requestRadius);
+				client.setSupportsVehicleDeltas(supportsVehicleDeltas);
 				createClient = false;
 				break;
 			}
@@ -117,6 +125,7 @@ public final class DataRequest extends DataRequestSchema {
 		if (createClient) {
 			final Client client = new Client(uuid);
 			client.setPositionAndUpdateRadius(clientPosition, requestRadius);
+			client.setSupportsVehicleDeltas(supportsVehicleDeltas);
 			simulator.clients.add(client);
 		}
 
@@ -5,6 +5,7 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArraySet;
 import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.DataChangeSet;
 import org.mtr.core.data.NameColorDataBase;
 import org.mtr.core.data.Position;
 import org.mtr.core.data.Rail;
@@ -76,25 +77,28 @@ public final class DeleteDataRequest extends DeleteDataRequestSchema {
 		final DeleteDataResponse deleteDataResponse = new DeleteDataResponse();
 		final ObjectArraySet<Position> railNodePositionsToUpdate = new ObjectArraySet<>();
 
-		stationIds.forEach(stationId -> delete(stationId, simulator.stations, deleteDataResponse.getStationIds()));
-		platformIds.forEach(platformId -> delete(platformId, simulator.platforms, deleteDataResponse.getPlatformIds()));
-		sidingIds.forEach(sidingId -> delete(sidingId, simulator.sidings, deleteDataResponse.getSidingIds()));
-		routeIds.forEach(routeId -> delete(routeId, simulator.routes, deleteDataResponse.getRouteIds()));
-		depotIds.forEach(depotId -> delete(depotId, simulator.depots, deleteDataResponse.getDepotIds()));
+		final DataChangeSet dataChangeSet = new DataChangeSet();
+
+		stationIds.forEach(stationId -> delete(stationId, simulator.stations, deleteDataResponse.getStationIds(), dataChangeSet));
+		platformIds.forEach(platformId -> delete(platformId, simulator.platforms, deleteDataResponse.getPlatformIds(), dataChangeSet));
+		sidingIds.forEach(sidingId -> delete(sidingId, simulator.sidings, deleteDataResponse.getSidingIds(), dataChangeSet));
+		routeIds.forEach(routeId -> delete(routeId, simulator.routes, deleteDataResponse.getRouteIds(), dataChangeSet));
+		depotIds.forEach(depotId -> delete(depotId, simulator.depots, deleteDataResponse.getDepotIds(), dataChangeSet));
 		liftFloorPositions.forEach(liftPosition -> simulator.lifts.removeIf(lift -> {
 			if (lift.getFloorIndex(liftPosition) >= 0) {
 				deleteDataResponse.getLiftIds().add(lift.getId());
+				dataChangeSet.remove(lift);
 				return true;
 			} else {
 				return false;
 			}
 		}));
-		railIds.forEach(railId -> delete(simulator.railIdMap.get(railId), simulator.rails, railId, deleteDataResponse.getRailIds(), railNodePositionsToUpdate));
-		railNodePositions.forEach(railNodePosition -> simulator.positionsToRail.getOrDefault(railNodePosition, new Object2ObjectOpenHashMap<>()).values().forEach(rail -> delete(rail, simulator.rails, rail.getHexId(), deleteDataResponse.getRailIds(), railNodePositionsToUpdate)));
-		homeIds.forEach(homeId -> delete(homeId, simulator.homes, deleteDataResponse.getHomeIds()));
-		landmarkIds.forEach(landmarkId -> delete(landmarkId, simulator.landmarks, deleteDataResponse.getLandmarkIds()));
+		railIds.forEach(railId -> delete(simulator.railIdMap.get(railId), simulator.rails, railId, deleteDataResponse.getRailIds(), railNodePositionsToUpdate, dataChangeSet));
+		railNodePositions.forEach(railNodePosition -> simulator.positionsToRail.getOrDefault(railNodePosition, new Object2ObjectOpenHashMap<>()).values().forEach(rail -> delete(rail, simulator.rails, rail.getHexId(), deleteDataResponse.getRailIds(), railNodePositionsToUpdate, dataChangeSet)));
+		homeIds.forEach(homeId -> delete(homeId, simulator.homes, deleteDataResponse.getHomeIds(), dataChangeSet));
+		landmarkIds.forEach(landmarkId -> delete(landmarkId, simulator.landmarks, deleteDataResponse.getLandmarkIds(), dataChangeSet));
 
-		simulator.sync();
+		simulator.sync(dataChangeSet);
 		railNodePositionsToUpdate.forEach(railNodePosition -> {
 			if (simulator.positionsToRail.getOrDefault(railNodePosition, new Object2ObjectOpenHashMap<>()).isEmpty()) {
 				deleteDataResponse.getRailNodePositions().add(railNodePosition);
@@ -104,15 +108,23 @@ public final class DeleteDataRequest extends DeleteDataRequestSchema {
 		return deleteDataResponse;
 	}
 
-	private static <T extends NameColorDataBase> void delete(long id, ObjectArraySet<T> dataSet, LongArrayList dataToUpdate) {
-		if (dataSet.removeIf(data -> data.getId() == id)) {
+	private static <T extends NameColorDataBase> void delete(long id, ObjectArraySet<T> dataSet, LongArrayList dataToUpdate, DataChangeSet dataChangeSet) {
+		if (dataSet.removeIf(data -> {
+			if (data.getId() == id) {
+				dataChangeSet.remove(data);
+				return true;
+			} else {
+				return false;
+			}
+		})) {
 			dataToUpdate.add(id);
 		}
 	}
 
-	private static void delete(@Nullable Rail rail, ObjectArraySet<Rail> rails, String railId, ObjectArrayList<String> railsIdsToUpdate, ObjectArraySet<Position> railNodePositionsToUpdate) {
+	private static void delete(@Nullable Rail rail, ObjectArraySet<Rail> rails, String railId, ObjectArrayList<String> railsIdsToUpdate, ObjectArraySet<Position> railNodePositionsToUpdate, DataChangeSet dataChangeSet) {
 		if (rail != null) {
 			rails.remove(rail);
+			dataChangeSet.remove(rail);
 			railsIdsToUpdate.add(railId);
 			rail.writePositions(railNodePositionsToUpdate);
 		}
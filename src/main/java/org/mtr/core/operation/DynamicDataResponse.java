@@ -38,6 +38,13 @@ public final class DynamicDataResponse extends DynamicDataResponseSchema {
 		vehiclesToUpdate.forEach(consumer);
 	}
 
+	/**
+	 * Vehicles in this list should be rebuilt with {@link VehicleDelta#apply(VehicleUpdate)} and are kept as well.
+	 */
+	public void iterateVehicleDeltas(Consumer<VehicleDelta> consumer) {
+		vehicleDeltas.forEach(consumer);
+	}
+
 	public void iterateVehiclesToKeep(LongConsumer consumer) {
 		vehiclesToKeep.forEach(consumer);
 	}
@@ -66,6 +73,10 @@ public final class DynamicDataResponse extends DynamicDataResponseSchema {
 		vehiclesToUpdate.add(vehicleUpdate);
 	}
 
+	public void addVehicleDelta(VehicleDelta vehicleDelta) {
+		vehicleDeltas.add(vehicleDelta);
+	}
+
 	public void addVehicleToKeep(long vehicleId) {
 		vehiclesToKeep.add(vehicleId);
 	}
@@ -3,16 +3,17 @@ package org.mtr.core.operation;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.mtr.core.data.Data;
 import org.mtr.core.data.Lift;
-import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.simulation.Simulator;
 
 public final class GenerateByLift {
 
 	private final Data data;
 	private final Lift lift;
 
-	public GenerateByLift(JsonReader jsonReader, Data data) {
+	public GenerateByLift(ReaderBase readerBase, Data data) {
 		this.data = data;
-		lift = new Lift(jsonReader, data);
+		lift = new Lift(readerBase, data);
 	}
 
 	public void generate() {
@@ -20,6 +21,9 @@ public final class GenerateByLift {
 		liftsToModify.add(lift);
 		liftsToModify.getFirst().setFloors(lift);
 		data.lifts.add(liftsToModify.getFirst());
+		if (data instanceof Simulator simulator) {
+			simulator.markDirty(liftsToModify.getFirst());
+		}
 		data.sync();
 	}
 }
@@ -122,9 +122,11 @@ public final class UpdateDataRequest extends UpdateDataRequestSchema {
 		sidings.forEach(siding -> update(siding, false, data.sidingIdMap.get(siding.getId()), data.sidings, updateDataResponse.getSidings()));
 		routes.forEach(route -> update(route, true, data.routeIdMap.get(route.getId()), data.routes, updateDataResponse.getRoutes()));
 		depots.forEach(depot -> update(depot, true, data.depotIdMap.get(depot.getId()), data.depots, updateDataResponse.getDepots()));
+		final DataChangeSet dataChangeSet = new DataChangeSet();
+		final ObjectArrayList<Lift> liftsToUpdate = new ObjectArrayList<>();
 		lifts.forEach(lift -> {
-			getAndRemoveMatchingLifts(data, lift);
-			update(lift, true, null, data.lifts, ObjectArrayList.of());
+			dataChangeSet.removeAll(getAndRemoveMatchingLifts(data, lift));
+			update(lift, true, null, data.lifts, liftsToUpdate);
 		});
 		rails.forEach(rail -> {
 			final Rail existingRail = data.railIdMap.get(rail.getHexId());
@@ -138,7 +140,18 @@ public final class UpdateDataRequest extends UpdateDataRequestSchema {
 		final ObjectArrayList<Siding> sidingsToInit = new ObjectArrayList<>();
 		final ObjectArrayList<Rail> railsToUpdate = new ObjectArrayList<>();
 		updateDataResponse.getRails().forEach(rail -> rail.checkOrCreateSavedRailAndUpdateTiltAngles(data, updateDataResponse.getPlatforms(), sidingsToInit, railsToUpdate));
-		data.sync();
+		dataChangeSet.updateAll(updateDataResponse.getStations());
+		dataChangeSet.updateAll(updateDataResponse.getPlatforms());
+		dataChangeSet.updateAll(updateDataResponse.getSidings());
+		dataChangeSet.updateAll(updateDataResponse.getRoutes());
+		dataChangeSet.updateAll(updateDataResponse.getDepots());
+		dataChangeSet.updateAll(liftsToUpdate);
+		dataChangeSet.updateAll(updateDataResponse.getRails());
+		dataChangeSet.updateAll(updateDataResponse.getHomes());
+		dataChangeSet.updateAll(updateDataResponse.getLandmarks());
+		dataChangeSet.updateAll(sidingsToInit);
+		dataChangeSet.updateAll(railsToUpdate);
+		data.sync(dataChangeSet);
 		sidingsToInit.forEach(Siding::init);
 		updateDataResponse.getSidings().addAll(sidingsToInit);
 		updateDataResponse.getRails().addAll(railsToUpdate);
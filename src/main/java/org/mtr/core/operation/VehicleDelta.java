@@ -0,0 +1,74 @@
+package org.mtr.core.operation;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.mtr.core.data.Vehicle;
+import org.mtr.core.generated.operation.VehicleDeltaSchema;
+import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.tool.Utilities;
+
+/**
+ * The fields of a vehicle that change while it runs along its path, sent instead of a full {@link VehicleUpdate} when the client already
+ * has the rest of the vehicle. Any path segments that the client does not have yet are sent in {@link #pathTail}.
+ */
+public final class VehicleDelta extends VehicleDeltaSchema {
+
+	public VehicleDelta(Vehicle vehicle, int pathStartIndex, int pathEndIndex) {
+		super(
+			vehicle.getId(),
+			vehicle.getRailProgress(),
+			vehicle.getSpeed(),
+			vehicle.getElapsedDwellTime(),
+			vehicle.getNextStoppingIndexAto(),
+			vehicle.getNextStoppingIndexManual(),
+			vehicle.vehicleExtraData.getStoppingPoint(),
+			vehicle.vehicleExtraData.getSpeedTarget(),
+			vehicle.vehicleExtraData.getPowerLevel(),
+			vehicle.vehicleExtraData.getDoorMultiplier() > 0,
+			vehicle.vehicleExtraData.getIsCurrentlyManual()
+		);
+		pathTail.addAll(vehicle.vehicleExtraData.immutablePath.subList(pathStartIndex, pathEndIndex));
+	}
+
+	public VehicleDelta(ReaderBase readerBase) {
+		super(readerBase);
+		updateData(readerBase);
+	}
+
+	public long getVehicleId() {
+		return vehicleId;
+	}
+
+	/**
+	 * Rebuild the vehicle on the receiving side by applying this delta to the last full update or rebuilt update of the same vehicle.
+	 *
+	 * @param vehicleUpdate the previous state of the vehicle
+	 * @return the new state of the vehicle
+	 */
+	public VehicleUpdate apply(VehicleUpdate vehicleUpdate) {
+		final JsonObject jsonObject = Utilities.getJsonObjectFromData(vehicleUpdate);
+
+		final JsonObject vehicleObject = jsonObject.getAsJsonObject("vehicle");
+		vehicleObject.addProperty("railProgress", railProgress);
+		vehicleObject.addProperty("speed", speed);
+		vehicleObject.addProperty("elapsedDwellTime", elapsedDwellTime);
+		vehicleObject.addProperty("nextStoppingIndexAto", nextStoppingIndexAto);
+		vehicleObject.addProperty("nextStoppingIndexManual", nextStoppingIndexManual);
+
+		final JsonObject dataObject = jsonObject.getAsJsonObject("data");
+		dataObject.addProperty("stoppingPoint", stoppingPoint);
+		dataObject.addProperty("speedTarget", speedTarget);
+		dataObject.addProperty("powerLevel", powerLevel);
+		dataObject.addProperty("doorTarget", doorTarget);
+		dataObject.addProperty("isCurrentlyManual", isCurrentlyManual);
+
+		if (!pathTail.isEmpty()) {
+			final JsonArray pathArray = dataObject.has("path") ? dataObject.getAsJsonArray("path") : new JsonArray();
+			pathTail.forEach(pathData -> pathArray.add(Utilities.getJsonObjectFromData(pathData)));
+			dataObject.add("path", pathArray);
+		}
+
+		return new VehicleUpdate(new JsonReader(jsonObject));
+	}
+}
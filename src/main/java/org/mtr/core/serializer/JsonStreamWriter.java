@@ -0,0 +1,219 @@
+package org.mtr.core.serializer;
+
+import com.google.gson.Strictness;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link WriterBase} that writes JSON tokens straight to an {@link OutputStream} as UTF-8, without building a {@link com.google.gson.JsonObject}
+ * first. The output is the same as {@link JsonWriter} followed by {@code toString()}.
+ *
+ * <p>Writes are not deferred, so an object or array is finished as soon as something is written to one of its parents. Every
+ * {@code serializeData} implementation writes its children in order, so this only matters for hand-written code that keeps several child
+ * writers open at once; such writes are logged and dropped. Call {@link #serialize()} after the last write to finish the document.</p>
+ */
+@Log4j2
+public final class JsonStreamWriter extends WriterBase {
+
+	private final State state;
+	private final int depth;
+
+	public JsonStreamWriter(OutputStream outputStream) {
+		final com.google.gson.stream.JsonWriter jsonWriter = new com.google.gson.stream.JsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		jsonWriter.setStrictness(Strictness.LENIENT);
+		state = new State(jsonWriter);
+		depth = 0;
+		state.open(this, false);
+	}
+
+	private JsonStreamWriter(State state, int depth) {
+		this.state = state;
+		this.depth = depth;
+	}
+
+	@Override
+	public void writeBoolean(String key, boolean value) {
+		write(key, jsonWriter -> jsonWriter.value(value));
+	}
+
+	@Override
+	public void writeInt(String key, int value) {
+		write(key, jsonWriter -> jsonWriter.value(value));
+	}
+
+	@Override
+	public void writeLong(String key, long value) {
+		write(key, jsonWriter -> jsonWriter.value(value));
+	}
+
+	@Override
+	public void writeDouble(String key, double value) {
+		write(key, jsonWriter -> jsonWriter.value(value));
+	}
+
+	@Override
+	public void writeString(String key, String value) {
+		write(key, jsonWriter -> jsonWriter.value(value));
+	}
+
+	@Override
+	public Array writeArray(String key) {
+		final JsonStreamArrayWriter jsonStreamArrayWriter = new JsonStreamArrayWriter(state, depth + 1);
+		if (write(key, jsonWriter -> {
+		})) {
+			state.open(jsonStreamArrayWriter, true);
+		}
+		return jsonStreamArrayWriter;
+	}
+
+	@Override
+	public WriterBase writeChild(String key) {
+		final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(state, depth + 1);
+		if (write(key, jsonWriter -> {
+		})) {
+			state.open(jsonStreamWriter, false);
+		}
+		return jsonStreamWriter;
+	}
+
+	/**
+	 * Finish every open object and array and flush the output. Errors are logged rather than propagated, matching
+	 * {@link MessagePackWriter#serialize()}.
+	 */
+	public void serialize() {
+		try {
+			state.closeAbove(-1);
+			state.jsonWriter.flush();
+		} catch (Exception e) {
+			log.error("Failed to serialize JSON output", e);
+		}
+	}
+
+	private boolean write(String key, Write instruction) {
+		return state.write(this, depth, jsonWriter -> {
+			jsonWriter.name(key);
+			instruction.write(jsonWriter);
+		});
+	}
+
+	private static final class JsonStreamArrayWriter extends Array {
+
+		private final State state;
+		private final int depth;
+
+		private JsonStreamArrayWriter(State state, int depth) {
+			this.state = state;
+			this.depth = depth;
+		}
+
+		@Override
+		public void writeBoolean(boolean value) {
+			write(jsonWriter -> jsonWriter.value(value));
+		}
+
+		@Override
+		public void writeInt(int value) {
+			write(jsonWriter -> jsonWriter.value(value));
+		}
+
+		@Override
+		public void writeLong(long value) {
+			write(jsonWriter -> jsonWriter.value(value));
+		}
+
+		@Override
+		public void writeDouble(double value) {
+			write(jsonWriter -> jsonWriter.value(value));
+		}
+
+		@Override
+		public void writeString(String value) {
+			write(jsonWriter -> jsonWriter.value(value));
+		}
+
+		@Override
+		public WriterBase writeChild() {
+			final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(state, depth + 1);
+			if (write(jsonWriter -> {
+			})) {
+				state.open(jsonStreamWriter, false);
+			}
+			return jsonStreamWriter;
+		}
+
+		private boolean write(Write instruction) {
+			return state.write(this, depth, instruction);
+		}
+	}
+
+	/**
+	 * The underlying writer and the objects and arrays that are still open, shared by every writer of one document.
+	 */
+	private static final class State {
+
+		private final com.google.gson.stream.JsonWriter jsonWriter;
+		private final ObjectArrayList<Object> openWriters = new ObjectArrayList<>();
+		private final BooleanArrayList openArrays = new BooleanArrayList();
+
+		private State(com.google.gson.stream.JsonWriter jsonWriter) {
+			this.jsonWriter = jsonWriter;
+		}
+
+		private void open(Object writer, boolean isArray) {
+			try {
+				if (isArray) {
+					jsonWriter.beginArray();
+				} else {
+					jsonWriter.beginObject();
+				}
+				openWriters.add(writer);
+				openArrays.add(isArray);
+			} catch (Exception e) {
+				log.error("Failed to write JSON output", e);
+			}
+		}
+
+		/**
+		 * Finish any children of the writer and run the instruction, unless the writer itself has already been finished.
+		 *
+		 * @return whether the instruction was run
+		 */
+		private boolean write(Object writer, int depth, Write instruction) {
+			if (depth >= openWriters.size() || openWriters.get(depth) != writer) {
+				log.error("Dropping a write to a JSON object or array that has already been finished");
+				return false;
+			}
+
+			try {
+				closeAbove(depth);
+				instruction.write(jsonWriter);
+				return true;
+			} catch (Exception e) {
+				log.error("Failed to write JSON output", e);
+				return false;
+			}
+		}
+
+		private void closeAbove(int depth) throws IOException {
+			while (openWriters.size() > depth + 1) {
+				openWriters.pop();
+				if (openArrays.popBoolean()) {
+					jsonWriter.endArray();
+				} else {
+					jsonWriter.endObject();
+				}
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Write {
+		void write(com.google.gson.stream.JsonWriter jsonWriter) throws IOException;
+	}
+}
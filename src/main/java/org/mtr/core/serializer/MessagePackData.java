@@ -0,0 +1,102 @@
+package org.mtr.core.serializer;
+
+import lombok.extern.log4j.Log4j2;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+
+import java.util.Map;
+
+/**
+ * A payload that is still packed as a MessagePack map, such as a request handed over as bytes by the embedding mod.
+ *
+ * <p>{@link #createReader()} unpacks the bytes straight into a {@link MessagePackReader}, so the payload can be read into its request type
+ * without building an intermediate JSON tree.</p>
+ */
+@Log4j2
+public final class MessagePackData implements SerializedDataBase {
+
+	private final byte[] bytes;
+
+	public MessagePackData(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Pack {@code data} into MessagePack bytes.
+	 */
+	public static MessagePackData create(SerializedDataBase data) {
+		try (final MessageBufferPacker messageBufferPacker = MessagePack.newDefaultBufferPacker()) {
+			final MessagePackWriter messagePackWriter = new MessagePackWriter(messageBufferPacker);
+			data.serializeData(messagePackWriter);
+			messagePackWriter.serialize();
+			return new MessagePackData(messageBufferPacker.toByteArray());
+		} catch (Exception e) {
+			log.error("Failed to pack {}", data, e);
+			return new MessagePackData(new byte[0]);
+		}
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return a reader over the packed map, or an empty reader if the bytes can't be read
+	 */
+	public ReaderBase createReader() {
+		try (final MessageUnpacker messageUnpacker = MessagePack.newDefaultUnpacker(bytes)) {
+			return new MessagePackReader(messageUnpacker);
+		} catch (Exception e) {
+			log.error("Failed to unpack MessagePack data", e);
+			return new MessagePackReader();
+		}
+	}
+
+	/**
+	 * Packed payloads are read through {@link #createReader()} instead, so this does nothing.
+	 */
+	@Override
+	public void updateData(ReaderBase readerBase) {
+	}
+
+	@Override
+	public void serializeData(WriterBase writerBase) {
+		try (final MessageUnpacker messageUnpacker = MessagePack.newDefaultUnpacker(bytes)) {
+			writeMap(messageUnpacker.unpackValue(), writerBase);
+		} catch (Exception e) {
+			log.error("Failed to unpack MessagePack data", e);
+		}
+	}
+
+	private static void writeMap(Value value, WriterBase writerBase) {
+		for (final Map.Entry<Value, Value> entry : value.asMapValue().entrySet()) {
+			final String key = entry.getKey().asStringValue().asString();
+			final Value entryValue = entry.getValue();
+			switch (entryValue.getValueType()) {
+				case BOOLEAN -> writerBase.writeBoolean(key, entryValue.asBooleanValue().getBoolean());
+				case INTEGER -> writerBase.writeLong(key, entryValue.asIntegerValue().asLong());
+				case FLOAT -> writerBase.writeDouble(key, entryValue.asFloatValue().toDouble());
+				case STRING -> writerBase.writeString(key, entryValue.asStringValue().asString());
+				case ARRAY -> writeArray(entryValue, writerBase.writeArray(key));
+				case MAP -> writeMap(entryValue, writerBase.writeChild(key));
+				default -> log.debug("Skipping unsupported MessagePack value {} for {}", entryValue, key);
+			}
+		}
+	}
+
+	private static void writeArray(Value value, WriterBase.Array array) {
+		for (final Value arrayValue : value.asArrayValue()) {
+			switch (arrayValue.getValueType()) {
+				case BOOLEAN -> array.writeBoolean(arrayValue.asBooleanValue().getBoolean());
+				case INTEGER -> array.writeLong(arrayValue.asIntegerValue().asLong());
+				case FLOAT -> array.writeDouble(arrayValue.asFloatValue().toDouble());
+				case STRING -> array.writeString(arrayValue.asStringValue().asString());
+				case MAP -> writeMap(arrayValue, array.writeChild());
+				// Nested arrays can't be written through WriterBase and don't appear in any schema
+				default -> log.debug("Skipping unsupported MessagePack array element {}", arrayValue);
+			}
+		}
+	}
+}
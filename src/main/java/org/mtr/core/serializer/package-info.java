@@ -1,5 +1,5 @@
 /**
- * Streaming reader / writer abstraction over JSON ({@link org.mtr.core.serializer.JsonReader}, {@link org.mtr.core.serializer.JsonWriter}) and MessagePack ({@link org.mtr.core.serializer.MessagePackWriter}). Used by every generated schema class to read and write its on-disk and on-the-wire form.
+ * Streaming reader / writer abstraction over JSON ({@link org.mtr.core.serializer.JsonReader}, {@link org.mtr.core.serializer.JsonWriter}, {@link org.mtr.core.serializer.JsonStreamWriter}) and MessagePack ({@link org.mtr.core.serializer.MessagePackWriter}). Used by every generated schema class to read and write its on-disk and on-the-wire form.
  */
 @NullMarked
 package org.mtr.core.serializer;
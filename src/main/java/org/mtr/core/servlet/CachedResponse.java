@@ -1,29 +1,264 @@
 package org.mtr.core.servlet;
 
-import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import lombok.RequiredArgsConstructor;
 import org.jspecify.annotations.Nullable;
+import org.mtr.core.integration.Response;
+import org.mtr.core.serializer.JsonStreamWriter;
+import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.serializer.SerializedDataBase;
+import org.mtr.core.serializer.WriterBase;
 import org.mtr.core.simulation.Simulator;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
+/**
+ * A read-only response published by the simulator for HTTP threads to read.
+ *
+ * <p>The data is built on the simulator thread, and it must not hold on to live simulator objects. HTTP threads read the last published
+ * content without waiting for the simulator; if it has expired, a rebuild is queued and the old content is still sent in the meantime, so
+ * polling clients never queue more than one rebuild per lifespan. Requests that arrive before the first content is published share one
+ * rebuild.</p>
+ */
 @RequiredArgsConstructor
 public final class CachedResponse {
 
-	private final Function<Simulator, JsonObject> function;
+	private final Function<Simulator, SerializedDataBase> function;
 	private final long lifespan;
+	private final Simulator simulator;
+	private final AtomicBoolean updateQueued = new AtomicBoolean();
+	private final ObjectArrayList<Consumer<Content>> pendingConsumers = new ObjectArrayList<>();
 
-	private long expiry;
+	private volatile long expiry;
 	@Nullable
-	private JsonObject cache;
+	private volatile Content cache;
 
+	/**
+	 * Pass the published content to the consumer. This can be called from any thread; the consumer is called straight away unless nothing
+	 * has been published yet, in which case it is called on the simulator thread once the content has been built.
+	 */
+	public void get(Consumer<Content> consumer) {
+		final Content content = cache;
+		if (content == null) {
+			synchronized (pendingConsumers) {
+				pendingConsumers.add(consumer);
+			}
+			queueUpdate();
+		} else {
+			if (System.currentTimeMillis() > expiry) {
+				queueUpdate();
+			}
+			consumer.accept(content);
+		}
+	}
 
-	public JsonObject get(Simulator simulator) {
+	/**
+	 * Rebuild and publish the content if it has expired. Must be called on the simulator thread.
+	 *
+	 * @return the published content
+	 */
+	public Content update() {
 		final long currentMillis = System.currentTimeMillis();
-		if (cache == null || currentMillis > expiry) {
-			cache = function.apply(simulator);
-			expiry = currentMillis + lifespan;
+		final Content content = cache;
+		if (content != null && currentMillis <= expiry) {
+			return content;
+		}
+
+		final Content newContent = new Content(function.apply(simulator));
+		expiry = currentMillis + lifespan;
+		// Keep the old content (and its encoded bodies) if nothing has changed, so that clients can keep using their copy
+		if (content != null && content.eTag.equals(newContent.eTag)) {
+			return content;
+		} else {
+			cache = newContent;
+			return newContent;
+		}
+	}
+
+	/**
+	 * Queue a rebuild unless one is already queued. Consumers waiting for the first content are sent whatever the rebuild publishes.
+	 */
+	private void queueUpdate() {
+		if (updateQueued.compareAndSet(false, true)) {
+			if (!simulator.run(() -> {
+				updateQueued.set(false);
+				final Content content = update();
+				final ObjectArrayList<Consumer<Content>> consumers;
+				synchronized (pendingConsumers) {
+					consumers = new ObjectArrayList<>(pendingConsumers);
+					pendingConsumers.clear();
+				}
+				consumers.forEach(consumer -> consumer.accept(content));
+			}, MessageQueue.Priority.DASHBOARD)) {
+				// The queue is full, so let the next request try again
+				updateQueued.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Cached response data along with an ETag of its JSON. The data is encoded once, plain and compressed, and those bytes are reused until
+	 * the data changes. Only the small response envelope around it, which holds the current time, is encoded for every request.
+	 *
+	 * <p>The ETag is weak, since the bodies it covers differ in their envelope on every request and one tag covers both the plain and the
+	 * compressed body. It only promises that the data is the same.</p>
+	 */
+	public static final class Content implements SerializedDataBase {
+
+		public final String eTag;
+		private final SerializedDataBase data;
+		/**
+		 * The data encoded as UTF-8 JSON
+		 */
+		private final byte[] dataBytes;
+		/**
+		 * The data compressed as raw deflate blocks, ending on a byte boundary so that more blocks can follow
+		 */
+		@Nullable
+		private byte[] deflatedDataBytes;
+
+		private static final String WEAK_PREFIX = "W/";
+		private static final byte[] DATA_KEY = ",\"data\":".getBytes(StandardCharsets.UTF_8);
+		private static final byte[] SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+		private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+		private static final int DEFLATE_BUFFER_SIZE = 8192;
+
+		Content(SerializedDataBase data) {
+			this.data = data;
+			final FastByteArrayOutputStream fastByteArrayOutputStream = new FastByteArrayOutputStream();
+			final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(fastByteArrayOutputStream);
+			data.serializeData(jsonStreamWriter);
+			jsonStreamWriter.serialize();
+			dataBytes = Arrays.copyOf(fastByteArrayOutputStream.array, fastByteArrayOutputStream.length);
+			final CRC32 crc32 = new CRC32();
+			crc32.update(dataBytes);
+			eTag = String.format("%s\"%08x-%x\"", WEAK_PREFIX, crc32.getValue(), dataBytes.length);
+		}
+
+		/**
+		 * Check the ETags of an {@code If-None-Match} header against this content. As with any {@code If-None-Match} header, the tags are
+		 * compared weakly, so a tag sent back with or without its weak prefix matches.
+		 *
+		 * @return whether the client already has this content
+		 */
+		boolean matches(String ifNoneMatch) {
+			final String opaqueTag = removeWeakPrefix(eTag);
+			for (final String otherETag : ifNoneMatch.split(",")) {
+				final String trimmedETag = otherETag.trim();
+				if (trimmedETag.equals("*") || removeWeakPrefix(trimmedETag).equals(opaqueTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void updateData(ReaderBase readerBase) {
+			data.updateData(readerBase);
+		}
+
+		@Override
+		public void serializeData(WriterBase writerBase) {
+			data.serializeData(writerBase);
+		}
+
+		/**
+		 * Encode a new response envelope, with the current time, around the cached data.
+		 *
+		 * @param reasonPhrase the text of the response envelope
+		 * @param gzip         whether to return the gzip-compressed body
+		 * @return the full response body, encoded as UTF-8 JSON
+		 */
+		public byte[] getBody(String reasonPhrase, boolean gzip) {
+			final FastByteArrayOutputStream fastByteArrayOutputStream = new FastByteArrayOutputStream();
+			final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(fastByteArrayOutputStream);
+			new Response(HttpResponseStatus.OK.code, reasonPhrase, null).serializeData(jsonStreamWriter);
+			jsonStreamWriter.serialize();
+
+			// Reopen the envelope object to add the data as its last child
+			final FastByteArrayOutputStream prefixOutputStream = new FastByteArrayOutputStream();
+			prefixOutputStream.write(fastByteArrayOutputStream.array, 0, fastByteArrayOutputStream.length - 1);
+			prefixOutputStream.write(DATA_KEY, 0, DATA_KEY.length);
+			final byte[] prefix = Arrays.copyOf(prefixOutputStream.array, prefixOutputStream.length);
+
+			return gzip ? getGzipBody(prefix) : getPlainBody(prefix);
+		}
+
+		private byte[] getPlainBody(byte[] prefix) {
+			final byte[] body = Arrays.copyOf(prefix, prefix.length + dataBytes.length + SUFFIX.length);
+			System.arraycopy(dataBytes, 0, body, prefix.length, dataBytes.length);
+			System.arraycopy(SUFFIX, 0, body, prefix.length + dataBytes.length, SUFFIX.length);
+			return body;
+		}
+
+		/**
+		 * Deflate streams can be joined as long as every part but the last ends on a byte boundary, so only the envelope is compressed again.
+		 */
+		private byte[] getGzipBody(byte[] prefix) {
+			final FastByteArrayOutputStream fastByteArrayOutputStream = new FastByteArrayOutputStream();
+			fastByteArrayOutputStream.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+			deflate(prefix, false, fastByteArrayOutputStream);
+			final byte[] currentDeflatedDataBytes = getDeflatedDataBytes();
+			fastByteArrayOutputStream.write(currentDeflatedDataBytes, 0, currentDeflatedDataBytes.length);
+			deflate(SUFFIX, true, fastByteArrayOutputStream);
+
+			final CRC32 crc32 = new CRC32();
+			crc32.update(prefix);
+			crc32.update(dataBytes);
+			crc32.update(SUFFIX);
+			writeIntLittleEndian(fastByteArrayOutputStream, (int) crc32.getValue());
+			writeIntLittleEndian(fastByteArrayOutputStream, prefix.length + dataBytes.length + SUFFIX.length);
+			return Arrays.copyOf(fastByteArrayOutputStream.array, fastByteArrayOutputStream.length);
+		}
+
+		private synchronized byte[] getDeflatedDataBytes() {
+			if (deflatedDataBytes == null) {
+				final FastByteArrayOutputStream fastByteArrayOutputStream = new FastByteArrayOutputStream();
+				deflate(dataBytes, false, fastByteArrayOutputStream);
+				deflatedDataBytes = Arrays.copyOf(fastByteArrayOutputStream.array, fastByteArrayOutputStream.length);
+			}
+			return deflatedDataBytes;
+		}
+
+		/**
+		 * @param finish whether this is the last part of the stream; otherwise the output is flushed to a byte boundary
+		 */
+		private static void deflate(byte[] bytes, boolean finish, FastByteArrayOutputStream fastByteArrayOutputStream) {
+			final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				deflater.setInput(bytes);
+				if (finish) {
+					deflater.finish();
+				}
+				final byte[] buffer = new byte[DEFLATE_BUFFER_SIZE];
+				while (true) {
+					final int length = deflater.deflate(buffer, 0, buffer.length, finish ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+					fastByteArrayOutputStream.write(buffer, 0, length);
+					// A full buffer means there may be more output
+					if (finish ? deflater.finished() : length < buffer.length) {
+						break;
+					}
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+
+		private static String removeWeakPrefix(String eTag) {
+			return eTag.startsWith(WEAK_PREFIX) ? eTag.substring(WEAK_PREFIX.length()) : eTag;
+		}
+
+		private static void writeIntLittleEndian(FastByteArrayOutputStream fastByteArrayOutputStream, int value) {
+			for (int i = 0; i < Integer.BYTES; i++) {
+				fastByteArrayOutputStream.write(value >>> (i * Byte.SIZE));
+			}
 		}
-		return cache;
 	}
 }
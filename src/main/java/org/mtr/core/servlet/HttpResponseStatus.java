@@ -4,9 +4,11 @@ public enum HttpResponseStatus {
 
 	OK(200, "OK"),
 	REDIRECT(301, "Redirect"),
+	NOT_MODIFIED(304, "Not Modified"),
 	BAD_REQUEST(400, "Bad Request"),
 	NOT_FOUND(404, "Not Found"),
-	INTERNAL_SERVER_ERROR(500, "Internal Server Error");
+	INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+	SERVICE_UNAVAILABLE(503, "Service Unavailable");
 
 	public final int code;
 	public final String description;
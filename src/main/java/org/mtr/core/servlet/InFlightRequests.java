@@ -0,0 +1,92 @@
+package org.mtr.core.servlet;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jspecify.annotations.Nullable;
+import org.mtr.core.serializer.SerializedDataBase;
+
+import java.util.function.Consumer;
+
+/**
+ * Identical read requests that are waiting for the same response. Only the first request is queued on the simulator thread; the others
+ * attach to it and are sent the same encoded response when it completes.
+ */
+final class InFlightRequests {
+
+	private final Object2ObjectOpenHashMap<String, InFlightRequest> requests = new Object2ObjectOpenHashMap<>();
+
+	/**
+	 * If a request hasn't completed after this long, identical requests stop waiting for it and start their own.
+	 */
+	private static final long TIMEOUT_MILLIS = 30_000L;
+
+	/**
+	 * Attach a request to an in-flight request with the same key, or start a new one.
+	 *
+	 * @param key             identifies requests that would get the same response
+	 * @param sendResponse    callback fed either the response body, or {@code null} to signal a 404
+	 * @param sendUnavailable callback for when the request is rejected because the simulator is too busy
+	 * @return the new in-flight request, which the caller has to process and complete, or {@code null} if the request was attached to an
+	 * existing one
+	 */
+	@Nullable
+	synchronized InFlightRequest add(String key, Consumer<@Nullable SerializedDataBase> sendResponse, Runnable sendUnavailable) {
+		final long currentMillis = System.currentTimeMillis();
+		final InFlightRequest inFlightRequest = requests.get(key);
+		if (inFlightRequest == null || currentMillis - inFlightRequest.startMillis > TIMEOUT_MILLIS) {
+			final InFlightRequest newInFlightRequest = new InFlightRequest(key, currentMillis);
+			newInFlightRequest.sendResponses.add(sendResponse);
+			newInFlightRequest.sendUnavailables.add(sendUnavailable);
+			requests.put(key, newInFlightRequest);
+			return newInFlightRequest;
+		} else {
+			inFlightRequest.sendResponses.add(sendResponse);
+			inFlightRequest.sendUnavailables.add(sendUnavailable);
+			return null;
+		}
+	}
+
+	final class InFlightRequest {
+
+		private final String key;
+		private final long startMillis;
+		private final ObjectArrayList<Consumer<@Nullable SerializedDataBase>> sendResponses = new ObjectArrayList<>();
+		private final ObjectArrayList<Runnable> sendUnavailables = new ObjectArrayList<>();
+
+		private InFlightRequest(String key, long startMillis) {
+			this.key = key;
+			this.startMillis = startMillis;
+		}
+
+		/**
+		 * Send the response to every attached request. The response is always encoded once as {@link CachedResponse.Content} and the bytes
+		 * are shared, so that every response of a coalesced endpoint has an ETag and can be compressed, however many requests were waiting.
+		 */
+		void complete(@Nullable SerializedDataBase data) {
+			final ObjectArrayList<Consumer<@Nullable SerializedDataBase>> sendResponsesCopy;
+			synchronized (InFlightRequests.this) {
+				requests.remove(key, this);
+				sendResponsesCopy = new ObjectArrayList<>(sendResponses);
+				sendResponses.clear();
+				sendUnavailables.clear();
+			}
+
+			final SerializedDataBase sharedData = data == null || data instanceof CachedResponse.Content ? data : new CachedResponse.Content(data);
+			sendResponsesCopy.forEach(sendResponse -> sendResponse.accept(sharedData));
+		}
+
+		/**
+		 * Reject every attached request instead of processing it.
+		 */
+		void reject() {
+			final ObjectArrayList<Runnable> sendUnavailablesCopy;
+			synchronized (InFlightRequests.this) {
+				requests.remove(key, this);
+				sendUnavailablesCopy = new ObjectArrayList<>(sendUnavailables);
+				sendResponses.clear();
+				sendUnavailables.clear();
+			}
+			sendUnavailablesCopy.forEach(Runnable::run);
+		}
+	}
+}
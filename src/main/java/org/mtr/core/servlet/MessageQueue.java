@@ -3,50 +3,201 @@ package org.mtr.core.servlet;
 import lombok.extern.log4j.Log4j2;
 
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
- * Bounded-by-memory FIFO queue used to hand work off to the simulator thread.
+ * Bounded queue with priority classes, used to hand work off to the simulator thread.
  *
- * <p>Backed by a {@link LinkedBlockingDeque} so producers can {@link #put(Object) put} from any
- * thread without blocking the simulator. The simulator drains the queue once per tick via
- * {@link #process(Consumer)}.</p>
+ * <p>Each {@link Priority} has its own {@link LinkedBlockingDeque}, so producers can {@link #put(Object, Priority) put} from any thread
+ * without blocking the simulator. If a class is full, the new element is dropped and counted rather than letting the queue grow without
+ * limit. The simulator drains the queue once per tick via {@link #process(Consumer, long)}, highest priority first, until its time budget
+ * runs out; whatever is left waits for the next tick.</p>
  *
  * @param <T> element type the queue holds
  */
 @Log4j2
 public final class MessageQueue<T> {
 
-	private final LinkedBlockingDeque<T> linkedBlockingDeque = new LinkedBlockingDeque<>();
+	private final LinkedBlockingDeque<Entry<T>>[] linkedBlockingDeques;
+	private final LongAdder processedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
 
 	/**
-	 * Enqueue {@code object}. If the calling thread is interrupted while blocked, the interrupt
-	 * flag is restored and the failure is logged so the caller can react instead of silently
-	 * losing the message (see CODE_STYLES §3.14).
+	 * Default number of elements each priority class can hold.
 	 */
-	public void put(T object) {
-		try {
-			linkedBlockingDeque.put(object);
-		} catch (InterruptedException e) {
-			// Restore the interrupt flag so callers higher up the stack can react to the
-			// interruption — the alternative is silently swallowing it (see CODE_STYLES §3.14).
-			Thread.currentThread().interrupt();
-			log.error("Interrupted while enqueuing message", e);
+	private static final int DEFAULT_CAPACITY = 16384;
+
+	public MessageQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of elements each priority class can hold before new elements are dropped
+	 */
+	@SuppressWarnings("unchecked")
+	public MessageQueue(int capacity) {
+		linkedBlockingDeques = new LinkedBlockingDeque[Priority.values().length];
+		for (int i = 0; i < linkedBlockingDeques.length; i++) {
+			linkedBlockingDeques[i] = new LinkedBlockingDeque<>(capacity);
+		}
+	}
+
+	/**
+	 * Enqueue {@code object} with {@link Priority#PLAYER} priority.
+	 *
+	 * @return whether the object was queued
+	 */
+	public boolean put(T object) {
+		return put(object, Priority.PLAYER);
+	}
+
+	/**
+	 * Enqueue {@code object}. Never blocks; if the priority class is full, the object is dropped.
+	 *
+	 * @return whether the object was queued, or {@code false} if it was dropped
+	 */
+	public boolean put(T object, Priority priority) {
+		if (linkedBlockingDeques[priority.ordinal()].offer(new Entry<>(object, System.nanoTime()))) {
+			return true;
+		} else {
+			droppedCount.increment();
+			log.debug("Dropping {} message because the queue is full", priority);
+			return false;
 		}
 	}
 
 	/**
-	 * Drain every queued element on the calling thread, feeding each into {@code callback} in
-	 * arrival order. Returns once the queue is empty.
+	 * @return the number of queued elements
+	 */
+	public int size() {
+		int size = 0;
+		for (final LinkedBlockingDeque<Entry<T>> linkedBlockingDeque : linkedBlockingDeques) {
+			size += linkedBlockingDeque.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of queued elements with the given priority
+	 */
+	public int size(Priority priority) {
+		return linkedBlockingDeques[priority.ordinal()].size();
+	}
+
+	/**
+	 * Drain every queued element on the calling thread, feeding each into {@code callback}, highest priority first and in arrival order within
+	 * each priority. Returns once the queue is empty.
 	 */
 	public void process(Consumer<T> callback) {
-		while (true) {
-			final T object = linkedBlockingDeque.poll();
-			if (object == null) {
-				break;
-			} else {
-				callback.accept(object);
+		process(callback, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Drain queued elements on the calling thread, feeding each into {@code callback}, highest priority first and in arrival order within
+	 * each priority. Stops taking new elements once {@code budgetNanos} has been spent; elements left over stay queued. Every non-empty
+	 * priority class gets at least one element per call, so lower classes are slowed down rather than starved.
+	 *
+	 * @param budgetNanos how long to keep processing for, in nanoseconds
+	 */
+	public void process(Consumer<T> callback, long budgetNanos) {
+		final long startNanos = System.nanoTime();
+		for (final LinkedBlockingDeque<Entry<T>> linkedBlockingDeque : linkedBlockingDeques) {
+			boolean first = true;
+			while (first || System.nanoTime() - startNanos < budgetNanos) {
+				final Entry<T> entry = linkedBlockingDeque.poll();
+				if (entry == null) {
+					break;
+				} else {
+					final long waitNanos = System.nanoTime() - entry.enqueuedNanos;
+					processedCount.increment();
+					totalWaitNanos.add(waitNanos);
+					maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+					callback.accept(entry.object);
+					first = false;
+				}
 			}
 		}
 	}
+
+	/**
+	 * @return a snapshot of the queue's counters
+	 */
+	public Statistics getStatistics() {
+		final int[] sizes = new int[linkedBlockingDeques.length];
+		for (int i = 0; i < linkedBlockingDeques.length; i++) {
+			sizes[i] = linkedBlockingDeques[i].size();
+		}
+		final long processed = processedCount.sum();
+		return new Statistics(sizes, processed, droppedCount.sum(), processed == 0 ? 0 : totalWaitNanos.sum() / processed, maxWaitNanos.get());
+	}
+
+	/**
+	 * Priority classes, from highest to lowest.
+	 */
+	public enum Priority {
+		/**
+		 * Player actions and anything else a player is waiting on in game.
+		 */
+		PLAYER,
+		/**
+		 * Reads for the web dashboard and other HTTP clients.
+		 */
+		DASHBOARD,
+		/**
+		 * Bulk operations that can take several ticks to get through without anyone noticing.
+		 */
+		BULK
+	}
+
+	/**
+	 * Queue counters at one point in time. Counts and wait times are cumulative since the queue was created.
+	 */
+	public static final class Statistics {
+
+		/**
+		 * Number of queued elements, indexed by {@link Priority#ordinal()}.
+		 */
+		public final int[] sizes;
+		public final long processedCount;
+		public final long droppedCount;
+		public final long averageWaitNanos;
+		public final long maxWaitNanos;
+
+		private Statistics(int[] sizes, long processedCount, long droppedCount, long averageWaitNanos, long maxWaitNanos) {
+			this.sizes = sizes;
+			this.processedCount = processedCount;
+			this.droppedCount = droppedCount;
+			this.averageWaitNanos = averageWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder stringBuilder = new StringBuilder("queued");
+			for (final Priority priority : Priority.values()) {
+				stringBuilder.append(' ').append(priority).append('=').append(sizes[priority.ordinal()]);
+			}
+			return stringBuilder.append(", processed ").append(processedCount)
+					.append(", dropped ").append(droppedCount)
+					.append(", average wait ").append(TimeUnit.NANOSECONDS.toMillis(averageWaitNanos)).append(" ms")
+					.append(", max wait ").append(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)).append(" ms")
+					.toString();
+		}
+	}
+
+	private static final class Entry<T> {
+
+		private final T object;
+		private final long enqueuedNanos;
+
+		private Entry(T object, long enqueuedNanos) {
+			this.object = object;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
 }
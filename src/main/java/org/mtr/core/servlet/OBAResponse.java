@@ -1,6 +1,5 @@
 package org.mtr.core.servlet;
 
-import com.google.gson.JsonObject;
 import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
 import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
@@ -9,6 +8,7 @@ import org.jspecify.annotations.Nullable;
 import org.mtr.core.data.Platform;
 import org.mtr.core.data.Siding;
 import org.mtr.core.oba.*;
+import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.simulation.Simulator;
 import org.mtr.core.tool.LatLon;
 import org.mtr.core.tool.Utilities;
@@ -18,7 +18,7 @@ import org.mtr.core.tool.Utilities;
  * {@code /oba/api/where/*} (see {@link OBAServlet}).
  *
  * <p>Each {@code getXxx} method maps directly to one OBA endpoint and returns either a fully
- * populated {@link JsonObject} or {@code null} to signal "no such resource" (which the servlet
+ * populated {@link SerializedDataBase} or {@code null} to signal "no such resource" (which the servlet
  * layer translates into a {@code 404}). The OBA payload shape (the {@link SingleElement} /
  * {@link ListElement} envelopes) is fixed by the OBA specification.</p>
  */
@@ -41,34 +41,34 @@ public final class OBAResponse extends ResponseBase<Object> {
 	}
 
 	/**
-	 * @return JSON envelope for {@code /oba/api/where/agencies-with-coverage}
+	 * @return envelope for {@code /oba/api/where/agencies-with-coverage}
 	 */
-	public JsonObject getAgenciesWithCoverage() {
+	public SerializedDataBase getAgenciesWithCoverage() {
 		final ListElement<AgencyWithCoverage> listElement = ListElement.create(includeReferences, AGENCY);
 		listElement.add(new AgencyWithCoverage());
-		return listElement.toJson(simulator);
+		return listElement.build(simulator);
 	}
 
 	/**
-	 * @return JSON envelope for {@code /oba/api/where/agency/{id}}, or {@code null} if {@code id != "1"}
+	 * @return envelope for {@code /oba/api/where/agency/{id}}, or {@code null} if {@code id != "1"}
 	 */
 	@Nullable
-	public JsonObject getAgency() {
+	public SerializedDataBase getAgency() {
 		if (data.equals("1")) {
 			final SingleElement<Agency> singleElement = SingleElement.create(includeReferences, AGENCY);
 			singleElement.set(AGENCY);
-			return singleElement.toJson(simulator);
+			return singleElement.build(simulator);
 		} else {
 			return null;
 		}
 	}
 
 	/**
-	 * @return JSON envelope for {@code /oba/api/where/arrivals-and-departures-for-stop/{platformIdHex}},
+	 * @return envelope for {@code /oba/api/where/arrivals-and-departures-for-stop/{platformIdHex}},
 	 * or {@code null} if the platform id does not parse / does not resolve.
 	 */
 	@Nullable
-	public JsonObject getArrivalsAndDeparturesForStop() {
+	public SerializedDataBase getArrivalsAndDeparturesForStop() {
 		try {
 			final long platformId = Long.parseUnsignedLong(data, 16);
 			final Platform platform = simulator.platformIdMap.get(platformId);
@@ -101,7 +101,7 @@ public final class OBAResponse extends ResponseBase<Object> {
 				}
 			})));
 
-			return singleElement.toJson(simulator);
+			return singleElement.build(simulator);
 		} catch (Exception e) {
 			// Bad hex id, missing platform, or NPE inside platform.routes — all map to a 404.
 			// Logged at debug so a flood of malformed client requests stays silent (§3.14).
@@ -112,13 +112,13 @@ public final class OBAResponse extends ResponseBase<Object> {
 	}
 
 	/**
-	 * @return JSON envelope for {@code /oba/api/where/stops-for-location}
+	 * @return envelope for {@code /oba/api/where/stops-for-location}
 	 */
-	public JsonObject getStopsForLocation() {
+	public SerializedDataBase getStopsForLocation() {
 		final LatLon latLon = getLatLonParameter();
 
 		if (latLon == null) {
-			return ListElement.create(includeReferences, AGENCY).toJson(simulator);
+			return ListElement.create(includeReferences, AGENCY).build(simulator);
 		} else {
 			final double latSpan;
 			final double lonSpan;
@@ -145,16 +145,16 @@ public final class OBAResponse extends ResponseBase<Object> {
 				}
 			}
 
-			return listElement.toJson(simulator);
+			return listElement.build(simulator);
 		}
 	}
 
 	/**
-	 * @return JSON envelope for {@code /oba/api/where/trip-details/{tripId}}, or {@code null} if
+	 * @return envelope for {@code /oba/api/where/trip-details/{tripId}}, or {@code null} if
 	 * the composite trip id does not parse / does not resolve.
 	 */
 	@Nullable
-	public JsonObject getTripDetails() {
+	public SerializedDataBase getTripDetails() {
 		final String[] tripIdSplit = data.split("_");
 		if (tripIdSplit.length == 4) {
 			try {
@@ -162,7 +162,7 @@ public final class OBAResponse extends ResponseBase<Object> {
 				if (siding != null) {
 					final SingleElement<TripDetails> singleElement = SingleElement.create(includeReferences, AGENCY);
 					siding.getOBATripDetailsWithDataUsed(singleElement, currentMillis, Integer.parseInt(tripIdSplit[1]), Integer.parseInt(tripIdSplit[2]), Long.parseLong(tripIdSplit[3]));
-					return singleElement.toJson(simulator);
+					return singleElement.build(simulator);
 				}
 			} catch (Exception e) {
 				// Malformed components in the composite trip id — fall through to a 404. (§3.14)
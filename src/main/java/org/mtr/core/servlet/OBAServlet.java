@@ -1,22 +1,34 @@
 package org.mtr.core.servlet;
 
-import com.google.gson.JsonObject;
 import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.serializer.SerializedDataBase;
+import org.mtr.core.serializer.WriterBase;
 import org.mtr.core.simulation.Simulator;
 
 import java.util.function.Consumer;
 
 public final class OBAServlet extends ServletBase {
 
+	private static final SerializedDataBase EMPTY_RESPONSE = new SerializedDataBase() {
+		@Override
+		public void updateData(ReaderBase readerBase) {
+		}
+
+		@Override
+		public void serializeData(WriterBase writerBase) {
+		}
+	};
+
 	public OBAServlet(ObjectImmutableList<Simulator> simulators) {
 		super(simulators);
 	}
 
 	@Override
-	public void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable JsonObject> sendResponse) {
+	public void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable SerializedDataBase> sendResponse) {
 		final OBAResponse obaResponse = new OBAResponse(data, parameters, simulator.getCurrentMillis(), simulator);
 		switch (endpoint) {
 			// --- Implemented endpoints ---
@@ -51,7 +63,7 @@ public final class OBAServlet extends ServletBase {
 			     "trip",
 			     "trips-for-location",
 			     "trips-for-route",
-			     "vehicles-for-agency" -> sendResponse.accept(new JsonObject());
+			     "vehicles-for-agency" -> sendResponse.accept(EMPTY_RESPONSE);
 			default -> sendResponse.accept(null);
 		}
 	}
@@ -1,15 +1,14 @@
 package org.mtr.core.servlet;
 
 import org.jspecify.annotations.Nullable;
-import org.mtr.core.data.Depot;
-import org.mtr.core.data.Platform;
-import org.mtr.core.data.Siding;
-import org.mtr.core.data.Station;
+import org.mtr.core.data.*;
 import org.mtr.core.operation.*;
-import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.MessagePackData;
+import org.mtr.core.serializer.ReaderBase;
 import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.simulation.Simulator;
-import org.mtr.core.tool.Utilities;
+
+import java.util.function.Function;
 
 /**
  * Dispatch table for the simulator's operation wire protocol.
@@ -112,6 +111,11 @@ public final class OperationProcessor {
 	/**
 	 * Dispatch an incoming {@code (key, data)} pair to its handler.
 	 *
+	 * <p>If {@code data} is already the request type of the operation (as queued by the embedding mod), it is used directly and must not be
+	 * modified after it has been queued. Otherwise it is read through MessagePack, straight from the bytes if it is {@link MessagePackData}.
+	 * Requests that hold simulator data ({@link UpdateDataRequest}, {@link ListDataResponse} and {@link GenerateByLift}) are always read
+	 * against the target simulator.</p>
+	 *
 	 * @param key       one of the operation keys defined on this class
 	 * @param data      the request payload, already wrapped in a {@link SerializedDataBase}
 	 * @param simulator simulator the operation should be applied to
@@ -120,60 +124,101 @@ public final class OperationProcessor {
 	 */
 	@Nullable
 	public static SerializedDataBase process(String key, SerializedDataBase data, Simulator simulator) {
-		// TODO is there a better way to create these objects than to cast to a JSON and back?
-		final JsonReader jsonReader = new JsonReader(Utilities.getJsonObjectFromData(data));
-
 		return switch (key) {
-			case GET_DATA -> new DataRequest(jsonReader).getData(simulator);
-			case UPDATE_DATA -> new UpdateDataRequest(jsonReader, simulator).update();
-			case DELETE_DATA -> new DeleteDataRequest(jsonReader).delete(simulator);
-			case LIST_DATA -> new ListDataResponse(jsonReader, simulator).list();
-			case ARRIVALS -> new ArrivalsRequest(jsonReader).getArrivals(simulator);
+			case GET_DATA -> getRequest(data, DataRequest.class, DataRequest::new).getData(simulator);
+			case UPDATE_DATA -> new UpdateDataRequest(getReader(data), simulator).update();
+			case DELETE_DATA -> getRequest(data, DeleteDataRequest.class, DeleteDataRequest::new).delete(simulator);
+			case LIST_DATA -> new ListDataResponse(getReader(data), simulator).list();
+			case ARRIVALS -> getRequest(data, ArrivalsRequest.class, ArrivalsRequest::new).getArrivals(simulator);
 			case SET_TIME -> {
-				new SetTime(jsonReader).setGameTime(simulator);
+				getRequest(data, SetTime.class, SetTime::new).setGameTime(simulator);
 				yield null;
 			}
-			case UPDATE_RIDING_ENTITIES -> new UpdateVehicleRidingEntities(jsonReader).update(simulator);
+			case UPDATE_RIDING_ENTITIES -> getRequest(data, UpdateVehicleRidingEntities.class, UpdateVehicleRidingEntities::new).update(simulator);
 			case BLOCK_RAILS -> {
-				new BlockRails(jsonReader).blockRails(simulator);
+				getRequest(data, BlockRails.class, BlockRails::new).blockRails(simulator);
 				yield null;
 			}
 			case PRESS_LIFT -> {
-				new PressLift(jsonReader).pressLift(simulator);
+				getRequest(data, PressLift.class, PressLift::new).pressLift(simulator);
 				yield null;
 			}
-			case NEARBY_STATIONS -> new NearbyAreasRequest<Station, Platform>(jsonReader).query(simulator, simulator.stations);
-			case NEARBY_DEPOTS -> new NearbyAreasRequest<Depot, Siding>(jsonReader).query(simulator, simulator.depots);
-			case RAILS -> new RailsRequest(jsonReader).query(simulator);
+			case NEARBY_STATIONS -> OperationProcessor.<Station, Platform>getNearbyAreasRequest(data).query(simulator, simulator.stations);
+			case NEARBY_DEPOTS -> OperationProcessor.<Depot, Siding>getNearbyAreasRequest(data).query(simulator, simulator.depots);
+			case RAILS -> getRequest(data, RailsRequest.class, RailsRequest::new).query(simulator);
 			case GENERATE_BY_DEPOT_IDS -> {
-				new DepotOperationByIds(jsonReader).generate(simulator);
+				getRequest(data, DepotOperationByIds.class, DepotOperationByIds::new).generate(simulator);
 				yield null;
 			}
 			case GENERATE_BY_DEPOT_NAME -> {
-				new DepotOperationByName(jsonReader).generate(simulator);
+				getRequest(data, DepotOperationByName.class, DepotOperationByName::new).generate(simulator);
 				yield null;
 			}
 			case GENERATE_BY_LIFT -> {
-				new GenerateByLift(jsonReader, simulator).generate();
+				new GenerateByLift(getReader(data), simulator).generate();
 				yield null;
 			}
 			case CLEAR_BY_DEPOT_IDS -> {
-				new DepotOperationByIds(jsonReader).clear(simulator);
+				getRequest(data, DepotOperationByIds.class, DepotOperationByIds::new).clear(simulator);
 				yield null;
 			}
 			case CLEAR_BY_DEPOT_NAME -> {
-				new DepotOperationByName(jsonReader).clear(simulator);
+				getRequest(data, DepotOperationByName.class, DepotOperationByName::new).clear(simulator);
 				yield null;
 			}
 			case INSTANT_DEPLOY_BY_DEPOT_IDS -> {
-				new DepotOperationByIds(jsonReader).instantDeploy(simulator);
+				getRequest(data, DepotOperationByIds.class, DepotOperationByIds::new).instantDeploy(simulator);
 				yield null;
 			}
 			case INSTANT_DEPLOY_BY_DEPOT_NAME -> {
-				new DepotOperationByName(jsonReader).instantDeploy(simulator);
+				getRequest(data, DepotOperationByName.class, DepotOperationByName::new).instantDeploy(simulator);
 				yield null;
 			}
 			default -> null;
 		};
 	}
+
+	/**
+	 * Queue priority of an incoming operation. Reads (as used by dashboards and map mods) queue behind player actions, and depot operations,
+	 * which can touch every depot at once, queue behind both. Every variant of an operation has the same priority, so that dependent
+	 * operations on the same depot stay in order (see {@link Simulator#sendMessageC2S(QueueObject)} for how other
+	 * changes are kept behind them).
+	 *
+	 * @param key one of the operation keys defined on this class
+	 * @return the priority to queue the operation with
+	 */
+	public static MessageQueue.Priority getPriority(String key) {
+		return switch (key) {
+			case GET_DATA, LIST_DATA, ARRIVALS, NEARBY_STATIONS, NEARBY_DEPOTS, RAILS -> MessageQueue.Priority.DASHBOARD;
+			case GENERATE_BY_DEPOT_IDS, GENERATE_BY_DEPOT_NAME, CLEAR_BY_DEPOT_IDS, CLEAR_BY_DEPOT_NAME, INSTANT_DEPLOY_BY_DEPOT_IDS, INSTANT_DEPLOY_BY_DEPOT_NAME -> MessageQueue.Priority.BULK;
+			default -> MessageQueue.Priority.PLAYER;
+		};
+	}
+
+	/**
+	 * Whether an incoming operation changes saved data directly and so has to be journaled before it is processed, to survive a crash before
+	 * the next save.
+	 *
+	 * @param key one of the operation keys defined on this class
+	 */
+	public static boolean isJournaled(String key) {
+		return switch (key) {
+			case UPDATE_DATA, DELETE_DATA -> true;
+			default -> false;
+		};
+	}
+
+	private static <T extends SerializedDataBase> T getRequest(SerializedDataBase data, Class<T> requestClass, Function<ReaderBase, T> createRequest) {
+		return requestClass.isInstance(data) ? requestClass.cast(data) : createRequest.apply(getReader(data));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends AreaBase<T, U>, U extends SavedRailBase<U, T>> NearbyAreasRequest<T, U> getNearbyAreasRequest(SerializedDataBase data) {
+		// The type parameters are only used by the query, so a request created for any area type can be used
+		return data instanceof NearbyAreasRequest<?, ?> nearbyAreasRequest ? (NearbyAreasRequest<T, U>) nearbyAreasRequest : new NearbyAreasRequest<>(getReader(data));
+	}
+
+	private static ReaderBase getReader(SerializedDataBase data) {
+		return (data instanceof MessagePackData messagePackData ? messagePackData : MessagePackData.create(data)).createReader();
+	}
 }
@@ -4,6 +4,8 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
 import jakarta.servlet.AsyncContext;
@@ -16,10 +18,13 @@ import lombok.extern.log4j.Log4j2;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.integration.Response;
 import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.JsonStreamWriter;
+import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.simulation.Simulator;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -30,12 +35,41 @@ import java.util.stream.Collectors;
  * parameter, or all simulators when {@code dimensions=all}), parses the request body once into
  * a {@link JsonReader}, then defers to the subclass-implemented
  * {@link #getContent(String, String, Object2ObjectAVLTreeMap, JsonReader, Simulator, Consumer)}
- * which runs on the simulator thread to keep state mutation single-threaded.</p>
+ * which runs on the simulator thread to keep state mutation single-threaded. Read-only requests
+ * that {@link #getPublishedContent(String, Simulator, Consumer)} can answer from published
+ * content skip the simulator thread.</p>
  */
 @Log4j2
 public abstract class ServletBase extends HttpServlet {
 
 	private final ObjectImmutableList<Simulator> simulators;
+	private final InFlightRequests inFlightRequests = new InFlightRequests();
+	/**
+	 * Requests per endpoint that have been queued on a simulator thread and haven't run yet
+	 */
+	private final Object2IntOpenHashMap<String> queuedRequestCounts = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Maximum number of bytes handed to the output stream at once while it is ready.
+	 */
+	private static final int CHUNK_SIZE = 8192;
+	/**
+	 * Requests for one endpoint that can be queued on the simulator thread at once before further requests are rejected with a {@code 503}.
+	 */
+	private static final int MAX_QUEUED_REQUESTS_PER_ENDPOINT = 64;
+	/**
+	 * Length of the simulator's run queue past which requests are rejected with a {@code 503} rather than making the queue grow further.
+	 */
+	private static final int MAX_SIMULATOR_QUEUED_RUNS = 1024;
+	/**
+	 * Sent with {@code 503} responses as a hint for when to try again.
+	 */
+	private static final int RETRY_AFTER_SECONDS = 1;
+	/**
+	 * Requests that haven't been answered after this long are ended by the container, so that a lost response can't hold a connection open
+	 * forever. Longer than the time identical requests wait for each other, so that they are never cut short while waiting.
+	 */
+	private static final long ASYNC_TIMEOUT_MILLIS = 60_000L;
 
 	protected ServletBase(ObjectImmutableList<Simulator> simulators) {
 		this.simulators = simulators;
@@ -51,12 +85,13 @@ public abstract class ServletBase extends HttpServlet {
 		AsyncContext asyncContext = null;
 		try {
 			asyncContext = httpServletRequest.startAsync();
-			asyncContext.setTimeout(0);
+			asyncContext.setTimeout(ASYNC_TIMEOUT_MILLIS);
 			final JsonElement jsonElement = JsonParser.parseReader(httpServletRequest.getReader());
 			final JsonReader jsonReader = new JsonReader(jsonElement.isJsonNull() ? new JsonObject() : jsonElement);
+			final String requestBody = jsonElement.isJsonNull() ? "" : jsonElement.toString();
 
 			if (tryGetParameter(httpServletRequest, "dimensions").equals("all")) {
-				simulators.forEach(simulator -> run(httpServletRequest, null, null, jsonReader, simulator));
+				simulators.forEach(simulator -> run(httpServletRequest, null, null, jsonReader, requestBody, simulator));
 				buildResponseObject(httpServletResponse, asyncContext, null, HttpResponseStatus.OK);
 			} else {
 				int dimension = 0;
@@ -70,7 +105,7 @@ public abstract class ServletBase extends HttpServlet {
 				if (dimension < 0 || dimension >= simulators.size()) {
 					buildResponseObject(httpServletResponse, asyncContext, null, HttpResponseStatus.BAD_REQUEST, "Invalid Dimension");
 				} else {
-					run(httpServletRequest, httpServletResponse, asyncContext, jsonReader, simulators.get(dimension));
+					run(httpServletRequest, httpServletResponse, asyncContext, jsonReader, requestBody, simulators.get(dimension));
 				}
 			}
 		} catch (Exception e) {
@@ -83,7 +118,9 @@ public abstract class ServletBase extends HttpServlet {
 					httpServletResponse.setStatus(httpResponseStatus.code);
 					httpServletResponse.addHeader("Content-Type", getMimeType("json"));
 					httpServletResponse.addHeader("Access-Control-Allow-Origin", "*");
-					httpServletResponse.getWriter().write(new Response(httpResponseStatus.code, httpResponseStatus.description, null).getJson().toString());
+					final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(httpServletResponse.getOutputStream());
+					new Response(httpResponseStatus.code, httpResponseStatus.description, null).serializeData(jsonStreamWriter);
+					jsonStreamWriter.serialize();
 				} catch (Exception responseException) {
 					log.error("Failed to send fallback servlet error response", responseException);
 				}
@@ -92,7 +129,7 @@ public abstract class ServletBase extends HttpServlet {
 	}
 
 	/**
-	 * Subclass hook: produce the JSON body for one resolved request.
+	 * Subclass hook: produce the body for one resolved request. The body is written as JSON on the thread that calls {@code sendResponse}.
 	 *
 	 * @param endpoint     first path segment after the servlet's base path
 	 * @param data         second path segment (typically a hex id), or {@code ""} if absent
@@ -101,9 +138,23 @@ public abstract class ServletBase extends HttpServlet {
 	 * @param simulator    simulator the request was routed to
 	 * @param sendResponse callback fed either the response body, or {@code null} to signal a 404
 	 */
-	protected abstract void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable JsonObject> sendResponse);
+	protected abstract void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable SerializedDataBase> sendResponse);
+
+	/**
+	 * Subclass hook for read-only requests that can be answered from content published by the simulator (see {@link CachedResponse}). It is
+	 * called on the HTTP thread, so it must not touch live simulator state.
+	 *
+	 * @param endpoint     first path segment after the servlet's base path
+	 * @param simulator    simulator the request was routed to
+	 * @param sendResponse callback fed either the response body, or {@code null} to signal a 404
+	 * @return whether the request was handled; if not, {@link #getContent(String, String, Object2ObjectAVLTreeMap, JsonReader, Simulator, Consumer)}
+	 * is queued on the simulator thread
+	 */
+	protected boolean getPublishedContent(String endpoint, Simulator simulator, Consumer<@Nullable SerializedDataBase> sendResponse) {
+		return false;
+	}
 
-	private void run(HttpServletRequest httpServletRequest, @Nullable HttpServletResponse httpServletResponse, @Nullable AsyncContext asyncContext, JsonReader jsonReader, Simulator simulator) {
+	private void run(HttpServletRequest httpServletRequest, @Nullable HttpServletResponse httpServletResponse, @Nullable AsyncContext asyncContext, JsonReader jsonReader, String requestBody, Simulator simulator) {
 		final String endpoint;
 		final String data;
 		final String path = httpServletRequest.getPathInfo();
@@ -123,11 +174,74 @@ public abstract class ServletBase extends HttpServlet {
 			}
 		});
 
-		simulator.run(() -> getContent(endpoint, data, parameters, jsonReader, simulator, (@Nullable JsonObject jsonObject) -> {
+		final String ifNoneMatch = Objects.requireNonNullElse(httpServletRequest.getHeader("If-None-Match"), "");
+		final boolean acceptsGzip = Objects.requireNonNullElse(httpServletRequest.getHeader("Accept-Encoding"), "").contains("gzip");
+
+		final Consumer<@Nullable SerializedDataBase> sendResponse = responseData -> {
 			if (httpServletResponse != null && asyncContext != null) {
-				buildResponseObject(httpServletResponse, asyncContext, jsonObject, jsonObject == null ? HttpResponseStatus.NOT_FOUND : HttpResponseStatus.OK, endpoint, data);
+				if (responseData instanceof final CachedResponse.Content content) {
+					sendCachedResponse(httpServletResponse, asyncContext, content, ifNoneMatch, acceptsGzip, endpoint, data);
+				} else {
+					buildResponseObject(httpServletResponse, asyncContext, responseData, responseData == null ? HttpResponseStatus.NOT_FOUND : HttpResponseStatus.OK, endpoint, data);
+				}
 			}
-		}));
+		};
+
+		if (!getPublishedContent(endpoint, simulator, sendResponse)) {
+			if (httpServletResponse == null) {
+				simulator.run(() -> getContent(endpoint, data, parameters, jsonReader, simulator, sendResponse), MessageQueue.Priority.DASHBOARD);
+			} else {
+				// Identical requests (same simulator, path, parameters and body) share one computation
+				final InFlightRequests.InFlightRequest inFlightRequest = inFlightRequests.add(String.join("\n", simulator.dimension, endpoint, data, parameters.toString(), requestBody), sendResponse, () -> {
+					if (httpServletResponse != null && asyncContext != null) {
+						httpServletResponse.addHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+						buildResponseObject(httpServletResponse, asyncContext, null, HttpResponseStatus.SERVICE_UNAVAILABLE, endpoint, data);
+					}
+				});
+				if (inFlightRequest != null) {
+					if (!tryAdmit(endpoint, simulator)) {
+						inFlightRequest.reject();
+					} else if (!simulator.run(() -> {
+						// The slot only bounds requests waiting for the simulator thread, so it is released even if no response is sent
+						try {
+							getContent(endpoint, data, parameters, jsonReader, simulator, inFlightRequest::complete);
+						} catch (Exception e) {
+							log.error("Failed to get content for {}", endpoint, e);
+							inFlightRequest.reject();
+						} finally {
+							release(endpoint);
+						}
+					}, MessageQueue.Priority.DASHBOARD)) {
+						release(endpoint);
+						inFlightRequest.reject();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Admit a request that has to be queued on the simulator thread, unless too many requests for the same endpoint are already queued or the
+	 * simulator's queue is too long. Admitted requests must be released once they have run, whether or not they have been answered.
+	 */
+	private boolean tryAdmit(String endpoint, Simulator simulator) {
+		synchronized (queuedRequestCounts) {
+			final int queuedRequestCount = queuedRequestCounts.getInt(endpoint);
+			if (queuedRequestCount >= MAX_QUEUED_REQUESTS_PER_ENDPOINT || simulator.getQueuedRunCount() >= MAX_SIMULATOR_QUEUED_RUNS) {
+				return false;
+			} else {
+				queuedRequestCounts.put(endpoint, queuedRequestCount + 1);
+				return true;
+			}
+		}
+	}
+
+	private void release(String endpoint) {
+		synchronized (queuedRequestCounts) {
+			if (queuedRequestCounts.addTo(endpoint, -1) <= 1) {
+				queuedRequestCounts.removeInt(endpoint);
+			}
+		}
 	}
 
 	/**
@@ -136,27 +250,35 @@ public abstract class ServletBase extends HttpServlet {
 	 * JSON / static-asset payload from the simulator thread without blocking it.
 	 */
 	public static void sendResponse(HttpServletResponse httpServletResponse, AsyncContext asyncContext, String content, String contentType, HttpResponseStatus httpResponseStatus) {
+		if (httpResponseStatus == HttpResponseStatus.REDIRECT) {
+			httpServletResponse.addHeader("Location", content);
+		}
+		final byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+		sendResponse(httpServletResponse, asyncContext, contentBytes, contentBytes.length, contentType, httpResponseStatus);
+	}
+
+	/**
+	 * Asynchronously stream the first {@code contentLength} bytes of {@code contentBytes} to {@code httpServletResponse}. The array must not be
+	 * modified afterwards.
+	 */
+	public static void sendResponse(HttpServletResponse httpServletResponse, AsyncContext asyncContext, byte[] contentBytes, int contentLength, String contentType, HttpResponseStatus httpResponseStatus) {
 		try {
 			final ServletOutputStream servletOutputStream = httpServletResponse.getOutputStream();
-			final byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
 			final int[] contentPosition = {0};
 			httpServletResponse.addHeader("Content-Type", contentType);
 			httpServletResponse.addHeader("Access-Control-Allow-Origin", "*");
-			if (httpResponseStatus == HttpResponseStatus.REDIRECT) {
-				httpServletResponse.addHeader("Location", content);
-			}
 			servletOutputStream.setWriteListener(new WriteListener() {
 				@Override
 				public void onWritePossible() {
 					try {
 						while (servletOutputStream.isReady()) {
-							final int remainingBytes = contentBytes.length - contentPosition[0];
+							final int remainingBytes = contentLength - contentPosition[0];
 							if (remainingBytes <= 0) {
 								httpServletResponse.setStatus(httpResponseStatus.code);
 								asyncContext.complete();
 								return;
 							}
-							final int chunkSize = Math.min(remainingBytes, 8192);
+							final int chunkSize = Math.min(remainingBytes, CHUNK_SIZE);
 							servletOutputStream.write(contentBytes, contentPosition[0], chunkSize);
 							contentPosition[0] += chunkSize;
 						}
@@ -200,13 +322,41 @@ public abstract class ServletBase extends HttpServlet {
 		}
 	}
 
-	private static void buildResponseObject(HttpServletResponse httpServletResponse, AsyncContext asyncContext, @Nullable JsonObject data, HttpResponseStatus httpResponseStatus, String... parameters) {
+	/**
+	 * Send the pre-encoded body of cached content, gzip-compressed if the client accepts it, or an empty {@code 304} if the client already
+	 * has the same content.
+	 */
+	private static void sendCachedResponse(HttpServletResponse httpServletResponse, AsyncContext asyncContext, CachedResponse.Content content, String ifNoneMatch, boolean acceptsGzip, String... parameters) {
+		httpServletResponse.addHeader("ETag", content.eTag);
+		httpServletResponse.addHeader("Vary", "Accept-Encoding");
+		if (content.matches(ifNoneMatch)) {
+			sendResponse(httpServletResponse, asyncContext, new byte[0], 0, getMimeType("json"), HttpResponseStatus.NOT_MODIFIED);
+		} else {
+			final byte[] body = content.getBody(getReasonPhrase(HttpResponseStatus.OK, parameters), acceptsGzip);
+			if (acceptsGzip) {
+				httpServletResponse.addHeader("Content-Encoding", "gzip");
+			}
+			sendResponse(httpServletResponse, asyncContext, body, body.length, getMimeType("json"), HttpResponseStatus.OK);
+		}
+	}
+
+	private static void buildResponseObject(HttpServletResponse httpServletResponse, AsyncContext asyncContext, @Nullable SerializedDataBase data, HttpResponseStatus httpResponseStatus, String... parameters) {
+		final String reasonPhrase = getReasonPhrase(httpResponseStatus, parameters);
+		// Write the JSON straight into one byte array rather than building a JSON tree and a string first
+		final FastByteArrayOutputStream fastByteArrayOutputStream = new FastByteArrayOutputStream();
+		final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(fastByteArrayOutputStream);
+		new Response(httpResponseStatus.code, reasonPhrase, data).serializeData(jsonStreamWriter);
+		jsonStreamWriter.serialize();
+		sendResponse(httpServletResponse, asyncContext, fastByteArrayOutputStream.array, fastByteArrayOutputStream.length, getMimeType("json"), httpResponseStatus);
+	}
+
+	private static String getReasonPhrase(HttpResponseStatus httpResponseStatus, String... parameters) {
 		final StringBuilder reasonPhrase = new StringBuilder(httpResponseStatus.description);
 		final String trimmedParameters = Arrays.stream(parameters).filter(parameter -> !parameter.isEmpty()).collect(Collectors.joining(", "));
 		if (!trimmedParameters.isEmpty()) {
 			reasonPhrase.append(" - ").append(trimmedParameters);
 		}
-		sendResponse(httpServletResponse, asyncContext, new Response(httpResponseStatus.code, reasonPhrase.toString(), data).getJson().toString(), getMimeType("json"), httpResponseStatus);
+		return reasonPhrase.toString();
 	}
 
 	private static String tryGetParameter(HttpServletRequest httpServletRequest, String parameter) {
@@ -1,6 +1,5 @@
 package org.mtr.core.servlet;
 
-import com.google.gson.JsonObject;
 import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
@@ -12,6 +11,7 @@ import org.mtr.core.data.NameColorDataBase;
 import org.mtr.core.map.*;
 import org.mtr.core.operation.ArrivalsRequest;
 import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.SerializedDataBase;
 import org.mtr.core.simulation.Simulator;
 import org.mtr.core.tool.Utilities;
 
@@ -34,38 +34,57 @@ public final class SystemMapServlet extends ServletBase {
 
 	public SystemMapServlet(ObjectImmutableList<Simulator> simulators) {
 		super(simulators);
+		// Created up front so that HTTP threads only ever read these maps
+		simulators.forEach(simulator -> {
+			stationsAndRoutesResponses.put(simulator.dimension, new CachedResponse(SystemMapServlet::getStationsAndRoutes, STATIONS_AND_ROUTES_CACHE_MILLIS, simulator));
+			departuresResponses.put(simulator.dimension, new CachedResponse(SystemMapServlet::getDepartures, LIVE_DATA_CACHE_MILLIS, simulator));
+			clientsResponses.put(simulator.dimension, new CachedResponse(SystemMapServlet::getClients, LIVE_DATA_CACHE_MILLIS, simulator));
+		});
+	}
+
+	@Override
+	protected boolean getPublishedContent(String endpoint, Simulator simulator, Consumer<@Nullable SerializedDataBase> sendResponse) {
+		final CachedResponse cachedResponse = switch (endpoint) {
+			case "stations-and-routes" -> stationsAndRoutesResponses.get(simulator.dimension);
+			case "departures" -> departuresResponses.get(simulator.dimension);
+			case "clients" -> clientsResponses.get(simulator.dimension);
+			default -> null;
+		};
+
+		if (cachedResponse == null) {
+			return false;
+		} else {
+			cachedResponse.get(sendResponse::accept);
+			return true;
+		}
 	}
 
 	@Override
-	public void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable JsonObject> sendResponse) {
+	public void getContent(String endpoint, String data, Object2ObjectAVLTreeMap<String, String> parameters, JsonReader jsonReader, Simulator simulator, Consumer<@Nullable SerializedDataBase> sendResponse) {
 		if (endpoint.equals("directions")) {
-			simulator.directionsFinder.addRequest(new DirectionsRequest(jsonReader, directionsResponse -> sendResponse.accept(Utilities.getJsonObjectFromData(directionsResponse)), null));
+			simulator.directionsFinder.addRequest(new DirectionsRequest(jsonReader, sendResponse::accept, null));
+		} else if (endpoint.equals("directions-profile")) {
+			simulator.directionsFinder.addProfileRequest(new DirectionsRequest(jsonReader, null, null), sendResponse::accept);
 		} else {
-			sendResponse.accept(switch (endpoint) {
-				case "stations-and-routes" -> stationsAndRoutesResponses.computeIfAbsent(simulator.dimension, key -> new CachedResponse(SystemMapServlet::getStationsAndRoutes, STATIONS_AND_ROUTES_CACHE_MILLIS)).get(simulator);
-				case "departures" -> departuresResponses.computeIfAbsent(simulator.dimension, key -> new CachedResponse(SystemMapServlet::getDepartures, LIVE_DATA_CACHE_MILLIS)).get(simulator);
-				case "arrivals" -> Utilities.getJsonObjectFromData(new ArrivalsRequest(jsonReader).getArrivals(simulator));
-				case "clients" -> clientsResponses.computeIfAbsent(simulator.dimension, key -> new CachedResponse(SystemMapServlet::getClients, LIVE_DATA_CACHE_MILLIS)).get(simulator);
-				default -> null;
-			});
+			sendResponse.accept(endpoint.equals("arrivals") ? new ArrivalsRequest(jsonReader).getArrivals(simulator) : null);
 		}
 	}
 
-	private static JsonObject getStationsAndRoutes(Simulator simulator) {
+	private static SerializedDataBase getStationsAndRoutes(Simulator simulator) {
 		final StationAndRoutes stationAndRoutes = new StationAndRoutes(simulator.dimensions);
 		simulator.stations.forEach(stationAndRoutes::addStation);
 		simulator.routes.forEach(stationAndRoutes::addRoute);
-		return Utilities.getJsonObjectFromData(stationAndRoutes);
+		return stationAndRoutes;
 	}
 
-	private static JsonObject getDepartures(Simulator simulator) {
+	private static SerializedDataBase getDepartures(Simulator simulator) {
 		final long currentMillis = System.currentTimeMillis();
 		final Object2ObjectAVLTreeMap<String, Long2ObjectAVLTreeMap<LongArrayList>> departures = new Object2ObjectAVLTreeMap<>();
 		simulator.sidings.forEach(siding -> siding.getDeparturesForMap(currentMillis, departures));
-		return Utilities.getJsonObjectFromData(new Departures(currentMillis, departures));
+		return new Departures(currentMillis, departures);
 	}
 
-	private static JsonObject getClients(Simulator simulator) {
+	private static SerializedDataBase getClients(Simulator simulator) {
 		final long currentMillis = System.currentTimeMillis();
 		final Object2ObjectAVLTreeMap<String, Client> clients = new Object2ObjectAVLTreeMap<>();
 
@@ -91,6 +110,6 @@ public final class SystemMapServlet extends ServletBase {
 			}
 		}));
 
-		return Utilities.getJsonObjectFromData(new Clients(currentMillis, new ObjectArrayList<>(clients.values())));
+		return new Clients(currentMillis, new ObjectArrayList<>(clients.values()));
 	}
 }
@@ -8,6 +8,8 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import java.util.concurrent.Executors;
+
 /**
  * Thin wrapper around an embedded Jetty {@link Server} that hosts the simulator's HTTP surface.
  *
@@ -33,9 +35,10 @@ public final class Webserver {
 	 */
 	private static final int MIN_THREADS = 10;
 	/**
-	 * Idle worker timeout in milliseconds before the pool reaps a thread.
+	 * Idle worker timeout in milliseconds before the pool reaps a thread. Long enough that threads above {@link #MIN_THREADS} survive the
+	 * gaps between dashboard polls instead of being torn down and recreated every few requests.
 	 */
-	private static final int IDLE_TIMEOUT_MILLIS = 120;
+	private static final int IDLE_TIMEOUT_MILLIS = 60_000;
 
 	/**
 	 * Build a webserver bound to {@code port}. The server is not started until {@link #start()}.
@@ -43,7 +46,21 @@ public final class Webserver {
 	 * @param port TCP port to listen on
 	 */
 	public Webserver(int port) {
-		server = new Server(new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT_MILLIS));
+		this(port, false);
+	}
+
+	/**
+	 * Build a webserver bound to {@code port}. The server is not started until {@link #start()}.
+	 *
+	 * @param port           TCP port to listen on
+	 * @param virtualThreads if {@code true}, requests are handled on virtual threads instead of pooled platform threads
+	 */
+	public Webserver(int port, boolean virtualThreads) {
+		final QueuedThreadPool queuedThreadPool = new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT_MILLIS);
+		if (virtualThreads) {
+			queuedThreadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		}
+		server = new Server(queuedThreadPool);
 		serverConnector = new ServerConnector(server);
 		server.setConnectors(new Connector[]{serverConnector});
 		servletContextHandler = new ServletContextHandler();
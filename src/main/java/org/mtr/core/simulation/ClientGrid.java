@@ -0,0 +1,168 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.Client;
+import org.mtr.core.data.Position;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * A spatial index of client update regions (the client position padded by its update radius) on a horizontal grid, so that each vehicle,
+ * rail, passenger and lift only has to check the clients whose regions overlap it instead of every connected client.
+ *
+ * <p>The grid is rebuilt on the simulator thread at the start of a tick, and only if a client has joined, left, moved or changed its update
+ * radius. It is only read for the rest of the tick, so vehicle simulation workers may query it in parallel. Queries are conservative: the
+ * caller still has to do its own exact distance check on each client it is given.</p>
+ */
+public final class ClientGrid {
+
+	private Client[] gridClients = new Client[0];
+	private Position[] positions = new Position[0];
+	private double[] updateRadii = new double[0];
+	private int[] minCellX = new int[0];
+	private int[] minCellZ = new int[0];
+	private int[] maxCellX = new int[0];
+	private int[] maxCellZ = new int[0];
+	/**
+	 * Clients with regions too large to write into the grid cell by cell; always returned by queries
+	 */
+	private final IntArrayList largeClientIndices = new IntArrayList();
+	private final Long2ObjectOpenHashMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+	private final Object2ObjectOpenHashMap<UUID, Client> clientsByUuid = new Object2ObjectOpenHashMap<>();
+
+	private static final int CELL_SIZE = 128;
+	private static final int MAX_CELLS_PER_CLIENT = 1024;
+
+	/**
+	 * Rebuild the grid if the clients or their update regions have changed since the last call.
+	 *
+	 * @return whether the grid was rebuilt
+	 */
+	public boolean update(Iterable<Client> clients) {
+		if (!hasChanged(clients)) {
+			return false;
+		}
+
+		final ObjectArrayList<Client> tempClients = new ObjectArrayList<>();
+		clients.forEach(tempClients::add);
+		final int clientCount = tempClients.size();
+		gridClients = tempClients.toArray(new Client[0]);
+		positions = new Position[clientCount];
+		updateRadii = new double[clientCount];
+		minCellX = new int[clientCount];
+		minCellZ = new int[clientCount];
+		maxCellX = new int[clientCount];
+		maxCellZ = new int[clientCount];
+		largeClientIndices.clear();
+		cells.clear();
+		clientsByUuid.clear();
+
+		for (int i = 0; i < clientCount; i++) {
+			final Client client = gridClients[i];
+			final Position position = client.getPosition();
+			final double updateRadius = client.getUpdateRadius();
+			positions[i] = position;
+			updateRadii[i] = updateRadius;
+			minCellX[i] = getCell(position.getX() - updateRadius);
+			minCellZ[i] = getCell(position.getZ() - updateRadius);
+			maxCellX[i] = getCell(position.getX() + updateRadius);
+			maxCellZ[i] = getCell(position.getZ() + updateRadius);
+			clientsByUuid.put(client.uuid, client);
+
+			if (getCellCount(minCellX[i], minCellZ[i], maxCellX[i], maxCellZ[i]) > MAX_CELLS_PER_CLIENT) {
+				largeClientIndices.add(i);
+			} else {
+				for (int cellX = minCellX[i]; cellX <= maxCellX[i]; cellX++) {
+					for (int cellZ = minCellZ[i]; cellZ <= maxCellZ[i]; cellZ++) {
+						cells.computeIfAbsent(getKey(cellX, cellZ), key -> new IntArrayList()).add(i);
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Iterate each client whose update region overlaps the horizontal box between the two positions exactly once.
+	 */
+	public void iterateClients(Position position1, Position position2, Consumer<Client> consumer) {
+		iterateClients(position1.getX(), position1.getZ(), position2.getX(), position2.getZ(), consumer);
+	}
+
+	/**
+	 * Iterate each client whose update region overlaps the horizontal box between the two corners exactly once. The corners can be given in
+	 * any order.
+	 */
+	public void iterateClients(double x1, double z1, double x2, double z2, Consumer<Client> consumer) {
+		final int queryMinCellX = getCell(Math.min(x1, x2));
+		final int queryMinCellZ = getCell(Math.min(z1, z2));
+		final int queryMaxCellX = getCell(Math.max(x1, x2));
+		final int queryMaxCellZ = getCell(Math.max(z1, z2));
+
+		if (getCellCount(queryMinCellX, queryMinCellZ, queryMaxCellX, queryMaxCellZ) > gridClients.length) {
+			// Checking every client directly is cheaper than looking up this many cells
+			for (int i = 0; i < gridClients.length; i++) {
+				if (minCellX[i] <= queryMaxCellX && maxCellX[i] >= queryMinCellX && minCellZ[i] <= queryMaxCellZ && maxCellZ[i] >= queryMinCellZ) {
+					consumer.accept(gridClients[i]);
+				}
+			}
+			return;
+		}
+
+		for (int cellX = queryMinCellX; cellX <= queryMaxCellX; cellX++) {
+			for (int cellZ = queryMinCellZ; cellZ <= queryMaxCellZ; cellZ++) {
+				final IntArrayList clientIndices = cells.get(getKey(cellX, cellZ));
+				if (clientIndices != null) {
+					for (int i = 0; i < clientIndices.size(); i++) {
+						final int clientIndex = clientIndices.getInt(i);
+						// A client can share several cells with the box; only return it from the first shared cell
+						if (cellX == Math.max(queryMinCellX, minCellX[clientIndex]) && cellZ == Math.max(queryMinCellZ, minCellZ[clientIndex])) {
+							consumer.accept(gridClients[clientIndex]);
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < largeClientIndices.size(); i++) {
+			consumer.accept(gridClients[largeClientIndices.getInt(i)]);
+		}
+	}
+
+	/**
+	 * @return the client with the given unique identifier as of the last rebuild, or {@code null} if there is none
+	 */
+	@Nullable
+	public Client getClient(UUID uuid) {
+		return clientsByUuid.get(uuid);
+	}
+
+	private boolean hasChanged(Iterable<Client> clients) {
+		int index = 0;
+		for (final Client client : clients) {
+			if (index >= gridClients.length || gridClients[index] != client || !positions[index].equals(client.getPosition()) || updateRadii[index] != client.getUpdateRadius()) {
+				return true;
+			}
+			index++;
+		}
+		return index != gridClients.length;
+	}
+
+	private static int getCell(double value) {
+		return (int) Math.floor(value / CELL_SIZE);
+	}
+
+	private static double getCellCount(int minCellX, int minCellZ, int maxCellX, int maxCellZ) {
+		return ((double) maxCellX - minCellX + 1) * ((double) maxCellZ - minCellZ + 1);
+	}
+
+	private static long getKey(int cellX, int cellZ) {
+		return ((long) cellX << Integer.SIZE) | (cellZ & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,219 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Stores each entity in its own file, named by its hex id, in one of 256 folders named by the last two characters of the hex id.
+ *
+ * <p>Files are written to a temporary file first, forced to disk and then renamed over the old file, so a crash mid-write leaves either the
+ * old or the new file, never a partly written one. Temporary files left behind by a crash are deleted on load. A write only creates the
+ * temporary file; {@link #flush(Consumer)} forces all the temporary files of a save at once, renames them and then forces the changed
+ * folders, so that a full save waits for the disk a few times rather than once per entity.</p>
+ */
+@Log4j2
+final class DirectoryStorage implements EntityStorage {
+
+	private final Path path;
+	/**
+	 * Folders with files created, renamed or deleted since the last flush
+	 */
+	private final ObjectOpenHashSet<Path> changedFolders = new ObjectOpenHashSet<>();
+	/**
+	 * Hex ids written since the last flush, whose temporary files are still to be forced to disk and renamed
+	 */
+	private final ObjectOpenHashSet<String> pendingHexIds = new ObjectOpenHashSet<>();
+
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	/**
+	 * The number of temporary files forced to disk at the same time, enough for the disk to combine them without running out of file handles
+	 */
+	private static final int FORCE_THREADS = 32;
+
+	DirectoryStorage(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Also deletes empty folders. Regular files directly in the storage directory aren't entities and are skipped.
+	 */
+	@Override
+	public void forEach(BiConsumer<String, Callable<ByteBuffer>> consumer) {
+		try (final Stream<Path> pathStream = Files.list(path)) {
+			pathStream.filter(Files::isDirectory).forEach(idFolder -> {
+				try (final Stream<Path> folderStream = Files.list(idFolder)) {
+					folderStream.forEach(idFile -> {
+						final String fileName = idFile.getFileName().toString();
+						if (fileName.endsWith(TEMPORARY_EXTENSION)) {
+							try {
+								Files.deleteIfExists(idFile);
+								log.info("Deleted unfinished file {}", idFile);
+							} catch (Exception e) {
+								log.error("Failed to delete unfinished file {}", idFile, e);
+							}
+						} else {
+							consumer.accept(fileName, () -> ByteBuffer.wrap(Files.readAllBytes(idFile)));
+						}
+					});
+				} catch (Exception e) {
+					log.error("Failed to list files in {}", idFolder, e);
+				}
+
+				try {
+					Files.deleteIfExists(idFolder);
+					log.debug("Deleted empty folder: {}", idFolder);
+				} catch (DirectoryNotEmptyException ignored) {
+				} catch (Exception e) {
+					log.error("Failed to delete empty folder {}", idFolder, e);
+				}
+			});
+		} catch (Exception e) {
+			log.error("Failed to list directory {}", path, e);
+		}
+	}
+
+	/**
+	 * Only writes the temporary file; the entity file is replaced by the next flush.
+	 */
+	@Override
+	public void write(String hexId, byte[] bytes) throws IOException {
+		final Path idFile = getIdFile(hexId);
+		final Path idFolder = idFile.getParent();
+		if (!Files.isDirectory(idFolder)) {
+			Files.createDirectories(idFolder);
+			changedFolders.add(path);
+		}
+
+		try (final FileChannel fileChannel = FileChannel.open(getTemporaryFile(idFile), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+			while (byteBuffer.hasRemaining()) {
+				fileChannel.write(byteBuffer);
+			}
+		}
+		pendingHexIds.add(hexId);
+	}
+
+	@Override
+	public boolean delete(String hexId) throws IOException {
+		final Path idFile = getIdFile(hexId);
+		if (pendingHexIds.remove(hexId)) {
+			Files.deleteIfExists(getTemporaryFile(idFile));
+		}
+		if (Files.deleteIfExists(idFile)) {
+			changedFolders.add(idFile.getParent());
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Forces every temporary file written since the last flush to disk and renames it over its entity file, and then forces every changed
+	 * folder to disk, so that the renames and deletes of the save survive a power loss. The contents are forced before the renames, so that
+	 * a power loss can't leave a new name pointing at missing data. Folders that fail are tried again by the next flush.
+	 */
+	@Override
+	public boolean flush(Consumer<String> failedWriteConsumer) {
+		final String[] hexIds = pendingHexIds.toArray(new String[0]);
+		pendingHexIds.clear();
+
+		// Forcing many files at once lets the disk combine them, instead of waiting for each in turn
+		final boolean[] forced = new boolean[hexIds.length];
+		try (final ExecutorService executorService = Executors.newFixedThreadPool(FORCE_THREADS, Thread.ofVirtual().factory())) {
+			for (int i = 0; i < hexIds.length; i++) {
+				final int index = i;
+				executorService.execute(() -> forced[index] = forceFile(getTemporaryFile(getIdFile(hexIds[index]))));
+			}
+		}
+
+		boolean success = true;
+		for (int i = 0; i < hexIds.length; i++) {
+			final Path idFile = getIdFile(hexIds[i]);
+			final Path temporaryFile = getTemporaryFile(idFile);
+			if (forced[i]) {
+				try {
+					try {
+						Files.move(temporaryFile, idFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(temporaryFile, idFile, StandardCopyOption.REPLACE_EXISTING);
+					}
+					changedFolders.add(idFile.getParent());
+					continue;
+				} catch (Exception e) {
+					log.error("Failed to rename {}", temporaryFile, e);
+				}
+			}
+
+			failedWriteConsumer.accept(hexIds[i]);
+			success = false;
+			try {
+				Files.deleteIfExists(temporaryFile);
+			} catch (Exception e) {
+				log.error("Failed to delete unfinished file {}", temporaryFile, e);
+			}
+		}
+
+		changedFolders.removeIf(DirectoryStorage::forceFolder);
+		return success && changedFolders.isEmpty();
+	}
+
+	/**
+	 * Force a folder to disk, so that files created, renamed or deleted in it survive a power loss.
+	 *
+	 * @return whether the folder was forced to disk; also {@code true} on platforms where folders can't be opened, such as Windows
+	 */
+	static boolean forceFolder(Path folder) {
+		final FileChannel fileChannel;
+		try {
+			fileChannel = FileChannel.open(folder, StandardOpenOption.READ);
+		} catch (Exception e) {
+			log.debug("Folder {} can't be opened to force it to disk", folder, e);
+			return true;
+		}
+
+		try (fileChannel) {
+			fileChannel.force(true);
+			return true;
+		} catch (Exception e) {
+			log.error("Failed to force folder {} to disk", folder, e);
+			return false;
+		}
+	}
+
+	private Path getIdFile(String hexId) {
+		return path.resolve(hexId.substring(Math.max(0, hexId.length() - 2))).resolve(hexId);
+	}
+
+	private static Path getTemporaryFile(Path idFile) {
+		return idFile.resolveSibling(idFile.getFileName() + TEMPORARY_EXTENSION);
+	}
+
+	/**
+	 * @return whether the file was forced to disk
+	 */
+	private static boolean forceFile(Path file) {
+		try (final FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			fileChannel.force(false);
+			return true;
+		} catch (Exception e) {
+			log.error("Failed to force {} to disk", file, e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package org.mtr.core.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Where a {@link FileLoader} keeps the serialised entities of one type, keyed by hex id. Not thread-safe; a storage is loaded on one thread
+ * and then only written by one save at a time.
+ */
+interface EntityStorage {
+
+	/**
+	 * Pass every stored entity to the consumer, along with a task that returns its bytes. The tasks may be run on other threads, and the
+	 * returned buffers must not be modified.
+	 */
+	void forEach(BiConsumer<String, Callable<ByteBuffer>> consumer);
+
+	/**
+	 * Store the bytes of an entity, replacing any bytes previously stored for it. The bytes may only replace the old ones once
+	 * {@link #flush(Consumer)} is called.
+	 */
+	void write(String hexId, byte[] bytes) throws IOException;
+
+	/**
+	 * @return whether anything was stored for the entity
+	 */
+	boolean delete(String hexId) throws IOException;
+
+	/**
+	 * Called once all the writes and deletes of a save are done. Forces them to disk, so that they survive a power loss and the journaled
+	 * operations that the save covers can be dropped.
+	 *
+	 * @param failedWriteConsumer called with the hex id of every write that couldn't be finished, so that it can be written again
+	 * @return whether everything was forced to disk
+	 */
+	boolean flush(Consumer<String> failedWriteConsumer);
+}
@@ -10,35 +10,68 @@ import org.mtr.core.serializer.MessagePackReader;
 import org.mtr.core.serializer.MessagePackWriter;
 import org.mtr.core.serializer.SerializedDataBaseWithId;
 
-import java.io.InputStream;
-import java.nio.file.DirectoryNotEmptyException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 @Log4j2
 public class FileLoader<T extends SerializedDataBaseWithId> {
 
 	public final String key;
 	private final ObjectSet<T> dataSet;
-	private final Path path;
+	private final EntityStorage storage;
 	private final boolean threadedFileLoading;
+	/**
+	 * Hash of the stored bytes of each entity, keyed by hex id.
+	 */
 	private final Object2IntAVLTreeMap<String> fileHashes = new Object2IntAVLTreeMap<>();
+	/**
+	 * Entities marked as modified since the last save. Compared by reference, since entities may define equality by id.
+	 */
+	private final ReferenceOpenHashSet<T> dirtyData = new ReferenceOpenHashSet<>();
+	private boolean allDirty;
+
+	/**
+	 * When loading on several threads, each task reads and parses this many entities, so that there isn't a task per entity.
+	 */
+	private static final int LOAD_BATCH_SIZE = 1024;
 
 	public FileLoader(ObjectSet<T> dataSet, Function<MessagePackReader, T> getData, Path rootPath, String key, boolean threadedFileLoading) {
+		this(dataSet, getData, rootPath, key, threadedFileLoading, false);
+	}
+
+	/**
+	 * @param segmentStorage if {@code true}, entities are stored in append-only segment files (see {@link SegmentStorage}) rather than one file
+	 *                       each; entities found in per-entity files are moved into the segments while loading. If {@code false}, entities
+	 *                       found in segments are moved back into per-entity files instead, so that turning the option off loses nothing.
+	 */
+	public FileLoader(ObjectSet<T> dataSet, Function<MessagePackReader, T> getData, Path rootPath, String key, boolean threadedFileLoading, boolean segmentStorage) {
 		this.key = key;
 		this.dataSet = dataSet;
-		path = rootPath.resolve(key);
+		final Path path = rootPath.resolve(key);
 		createDirectory(path);
 		this.threadedFileLoading = threadedFileLoading;
-		readMessagePackFromFile(getData);
+		final DirectoryStorage directoryStorage = new DirectoryStorage(path);
+		if (segmentStorage) {
+			storage = new SegmentStorage(path);
+			readMessagePackFromStorage(getData, storage, null);
+			readMessagePackFromStorage(getData, directoryStorage, storage);
+		} else {
+			storage = directoryStorage;
+			readMessagePackFromStorage(getData, storage, null);
+			if (SegmentStorage.hasSegments(path)) {
+				final SegmentStorage oldSegmentStorage = new SegmentStorage(path);
+				readMessagePackFromStorage(getData, oldSegmentStorage, storage);
+				oldSegmentStorage.deleteIfEmpty();
+			}
+		}
 	}
 
 	@Deprecated
@@ -46,175 +79,246 @@ public class FileLoader<T extends SerializedDataBaseWithId> {
 		this(dataSet, getData, rootPath, key, false);
 	}
 
-	public IntIntImmutablePair save(boolean useReducedHash) {
-		final ObjectArrayList<T> dirtyData = new ObjectArrayList<>(dataSet);
-		final ObjectImmutableList<ObjectArrayList<String>> checkFilesToDelete = createEmptyList256();
-		fileHashes.keySet().forEach(fileName -> checkFilesToDelete.get(getParentInt(fileName)).add(fileName));
+	/**
+	 * Mark an entity as modified, so that the next {@link #save(boolean, boolean) dirty save} hashes it and writes it if it has changed.
+	 * Must be called on the simulator thread.
+	 */
+	public void markDirty(T data) {
+		if (!allDirty) {
+			dirtyData.add(data);
+		}
+	}
 
-		final int filesWritten = writeDirtyDataToFile(checkFilesToDelete, dirtyData, SerializedDataBaseWithId::getHexId, useReducedHash);
-		int filesDeleted = 0;
+	/**
+	 * Mark every entity as modified, for changes that can't be attributed to individual entities. Must be called on the simulator thread.
+	 */
+	public void markAllDirty() {
+		allDirty = true;
+		dirtyData.clear();
+	}
 
-		for (final ObjectArrayList<String> checkFilesToDeleteForParent : checkFilesToDelete) {
-			for (final String fileName : checkFilesToDeleteForParent) {
-				try {
-					if (Files.deleteIfExists(path.resolve(fileName))) {
-						filesDeleted++;
-					}
-				} catch (Exception e) {
-					log.error("Failed to delete file {}", fileName, e);
-				}
-				fileHashes.removeInt(fileName);
-			}
-		}
+	/**
+	 * Hash every entity and write the ones that have changed since the last save.
+	 *
+	 * @return the number of files written and deleted
+	 */
+	public IntIntImmutablePair save(boolean useReducedHash) {
+		return save(useReducedHash, false);
+	}
 
-		return new IntIntImmutablePair(filesWritten, filesDeleted);
+	/**
+	 * Write changed entities and delete the files of removed entities on the calling thread.
+	 *
+	 * @param useReducedHash whether to write {@link SerializedDataBaseWithId#serializeData} rather than the full data
+	 * @param dirtyOnly      if {@code true}, only entities marked with {@link #markDirty(SerializedDataBaseWithId)} and entities that have
+	 *                       never been saved are hashed; otherwise every entity is, which also catches changes that weren't marked
+	 * @return the number of files written and deleted
+	 */
+	public IntIntImmutablePair save(boolean useReducedHash, boolean dirtyOnly) {
+		final SaveSnapshot saveSnapshot = createSaveSnapshot(useReducedHash, dirtyOnly);
+		saveSnapshot.write();
+		return saveSnapshot.finish();
 	}
 
-	private void readMessagePackFromFile(Function<MessagePackReader, T> getData) {
-		if (threadedFileLoading) {
-			final Object2ObjectArrayMap<String, Future<@Nullable T>> futureDataMap = new Object2ObjectArrayMap<>();
-			try (final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor()) {
-				forEachDataFile((fileName, idFile) -> futureDataMap.put(fileName, executorService.submit(() -> readFile(getData, idFile))));
-				futureDataMap.forEach((fileName, futureData) -> {
-					try {
-						processFile(fileName, futureData.get());
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-						log.error("Interrupted while waiting for {}", fileName, e);
-					} catch (Exception e) {
-						log.error("Failed to load file {}", fileName, e);
+	/**
+	 * Serialise the entities that have changed and list the files of removed entities, without touching the disk. Must be called on the
+	 * simulator thread; the returned snapshot doesn't refer to any entity, so it can be written on another thread while the simulation
+	 * carries on.
+	 *
+	 * @param useReducedHash whether to write {@link SerializedDataBaseWithId#serializeData} rather than the full data
+	 * @param dirtyOnly      if {@code true}, only entities marked with {@link #markDirty(SerializedDataBaseWithId)} and entities that have
+	 *                       never been saved are hashed; otherwise every entity is, which also catches changes that weren't marked
+	 */
+	public SaveSnapshot createSaveSnapshot(boolean useReducedHash, boolean dirtyOnly) {
+		final ObjectArrayList<T> dataToWrite;
+		final ObjectOpenHashSet<String> filesToDelete = new ObjectOpenHashSet<>(fileHashes.keySet());
+
+		if (dirtyOnly && !allDirty) {
+			// Removed entities are found by their file names, which is much cheaper than serialising every entity
+			dataToWrite = new ObjectArrayList<>();
+			dataSet.forEach(data -> {
+				if (data.isValid()) {
+					final String hexId = data.getHexId();
+					filesToDelete.remove(hexId);
+					if (dirtyData.contains(data) || !fileHashes.containsKey(hexId)) {
+						dataToWrite.add(data);
 					}
-				});
-			}
+				}
+			});
 		} else {
-			forEachDataFile((fileName, idFile) -> processFile(fileName, readFile(getData, idFile)));
+			dataToWrite = new ObjectArrayList<>(dataSet);
 		}
-	}
 
-	private void forEachDataFile(BiConsumer<String, Path> consumer) {
-		try (final Stream<Path> pathStream = Files.list(path)) {
-			pathStream.forEach(idFolder -> {
-				try (final Stream<Path> folderStream = Files.list(idFolder)) {
-					folderStream.forEach(idFile -> consumer.accept(combineAsPath(idFolder, idFile), idFile));
-				} catch (Exception e) {
-					log.error("Failed to list files in {}", idFolder, e);
-				}
+		dirtyData.clear();
+		allDirty = false;
 
-				try {
-					Files.deleteIfExists(idFolder);
-					log.debug("Deleted empty folder: {}", idFolder);
-				} catch (DirectoryNotEmptyException ignored) {
-				} catch (Exception e) {
-					log.error("Failed to delete empty folder {}", idFolder, e);
+		final Object2ObjectOpenHashMap<String, byte[]> filesToWrite = new Object2ObjectOpenHashMap<>();
+		dataToWrite.forEach(data -> {
+			if (data.isValid()) {
+				final String hexId = data.getHexId();
+				final byte[] bytes = getBytes(data, useReducedHash);
+				final int hash = Arrays.hashCode(bytes);
+				filesToDelete.remove(hexId);
+
+				if (!fileHashes.containsKey(hexId) || hash != fileHashes.getInt(hexId)) {
+					filesToWrite.put(hexId, bytes);
+					fileHashes.put(hexId, hash);
 				}
-			});
-		} catch (Exception e) {
-			log.error("Failed to list directory {}", path, e);
-		}
+			}
+		});
+
+		filesToDelete.forEach(fileHashes::removeInt);
+		return new SaveSnapshot(filesToWrite, new ObjectArrayList<>(filesToDelete));
 	}
 
-	private void processFile(String fileName, @Nullable T data) {
-		try {
-			if (data != null) {
-				if (data.isValid()) {
-					dataSet.add(data);
+	/**
+	 * @param migrationStorage if not {@code null}, entities are moved from {@code sourceStorage} into this storage, unless it already has
+	 *                         them
+	 */
+	private void readMessagePackFromStorage(Function<MessagePackReader, T> getData, EntityStorage sourceStorage, @Nullable EntityStorage migrationStorage) {
+		final ObjectArrayList<String> hexIdsToDelete = new ObjectArrayList<>();
+		final ObjectArrayList<String> migratedHexIds = new ObjectArrayList<>();
+		final BiConsumer<String, @Nullable LoadedEntity<T>> processEntity = (hexId, loadedEntity) -> {
+			if (loadedEntity != null) {
+				if (loadedEntity.data == null) {
+					if (sourceStorage instanceof SegmentStorage) {
+						// A tombstone would also hide any older record of the entity, so the record is left for a later version to read
+						log.warn("Skipping record with parsing error [{}]", hexId);
+					} else {
+						log.info("Deleting file with parsing error [{}]", hexId);
+						hexIdsToDelete.add(hexId);
+					}
+				} else if (migrationStorage == null) {
+					processData(hexId, loadedEntity.data);
+				} else if (fileHashes.containsKey(hexId)) {
+					// Left behind by an earlier migration that was interrupted
+					migratedHexIds.add(hexId);
 				} else {
-					log.warn("Skipping invalid data: {}", data);
+					try {
+						final byte[] bytes = new byte[loadedEntity.bytes.remaining()];
+						loadedEntity.bytes.duplicate().get(bytes);
+						migrationStorage.write(hexId, bytes);
+						migratedHexIds.add(hexId);
+					} catch (Exception e) {
+						log.error("Failed to migrate {} {}", key, hexId, e);
+					}
+					processData(hexId, loadedEntity.data);
 				}
-				fileHashes.put(fileName, getHash(data, true));
 			}
-		} catch (Exception e) {
-			log.error("Failed to process file {}", fileName, e);
-		}
-	}
-
-	private int writeDirtyDataToFile(ObjectImmutableList<ObjectArrayList<String>> checkFilesToDelete, ObjectArrayList<T> dirtyData, Function<T, String> getFileName, boolean useReducedHash) {
-		int filesWritten = 0;
-		while (!dirtyData.isEmpty()) {
-			final T data = dirtyData.removeFirst();
+		};
 
-			if (data.isValid()) {
-				final String fileName = getFileName.apply(data);
-				final String parentFolderName = getParent(fileName);
-				final String parentAndFileName = combineAsPath(parentFolderName, fileName);
-				final int hash = getHash(data, useReducedHash);
+		if (threadedFileLoading) {
+			final ObjectArrayList<String> hexIds = new ObjectArrayList<>();
+			final ObjectArrayList<Callable<ByteBuffer>> readBytesList = new ObjectArrayList<>();
+			sourceStorage.forEach((hexId, readBytes) -> {
+				hexIds.add(hexId);
+				readBytesList.add(readBytes);
+			});
 
-				if (!fileHashes.containsKey(parentAndFileName) || hash != fileHashes.getInt(parentAndFileName)) {
-					createDirectory(path.resolve(parentFolderName));
+			// Each task reads and parses a batch of entities into its own slice of the array
+			@SuppressWarnings("unchecked") final @Nullable LoadedEntity<T>[] loadedEntities = new LoadedEntity[hexIds.size()];
+			final ObjectArrayList<Future<?>> futures = new ObjectArrayList<>();
+			try (final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (int i = 0; i < hexIds.size(); i += LOAD_BATCH_SIZE) {
+					final int startIndex = i;
+					futures.add(executorService.submit(() -> {
+						for (int j = startIndex; j < Math.min(startIndex + LOAD_BATCH_SIZE, hexIds.size()); j++) {
+							loadedEntities[j] = readEntity(getData, hexIds.get(j), readBytesList.get(j));
+						}
+					}));
+				}
 
-					try (final MessagePacker messagePacker = MessagePack.newDefaultPacker(Files.newOutputStream(path.resolve(parentAndFileName), StandardOpenOption.CREATE))) {
-						packMessage(messagePacker, data, useReducedHash);
+				for (final Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						log.error("Interrupted while loading {}", key, e);
 					} catch (Exception e) {
-						log.error("Failed to write file {}", parentAndFileName, e);
+						log.error("Failed to load {}", key, e);
 					}
-
-					fileHashes.put(parentAndFileName, hash);
-					filesWritten++;
 				}
+			}
 
-				checkFilesToDelete.get(getParentInt(fileName)).remove(parentAndFileName);
+			for (int i = 0; i < hexIds.size(); i++) {
+				processEntity.accept(hexIds.get(i), loadedEntities[i]);
 			}
+		} else {
+			sourceStorage.forEach((hexId, readBytes) -> processEntity.accept(hexId, readEntity(getData, hexId, readBytes)));
 		}
 
-		return filesWritten;
-	}
-
-	@Nullable
-	private static <T extends SerializedDataBaseWithId> T readFile(Function<MessagePackReader, T> getData, Path idFile) {
-		try (final InputStream inputStream = Files.newInputStream(idFile)) {
-			try (final MessageUnpacker messageUnpacker = MessagePack.newDefaultUnpacker(inputStream)) {
-				return getData.apply(new MessagePackReader(messageUnpacker));
-			} catch (Exception e) {
-				log.error("Failed to process file {}", idFile, e);
-				if (e instanceof MessageTypeException) {
-					log.info("Deleting file with parsing error [{}]", idFile);
-					Files.deleteIfExists(idFile);
-				}
+		if (migrationStorage != null && !migratedHexIds.isEmpty()) {
+			// Only delete the old copies once the new ones are written
+			if (migrationStorage.flush(hexId -> log.error("Failed to migrate {} {}", key, hexId))) {
+				hexIdsToDelete.addAll(migratedHexIds);
+				log.info("Migrated {} {} file(s) to {} storage", migratedHexIds.size(), key, migrationStorage instanceof SegmentStorage ? "segment" : "directory");
+			} else {
+				log.error("Failed to force migrated {} files to disk, keeping the old copies", key);
 			}
-		} catch (Exception e) {
-			log.error("Failed to open file {}", idFile, e);
 		}
-		return null;
-	}
 
-	private static String getParent(String fileName) {
-		return fileName.substring(Math.max(0, fileName.length() - 2));
+		hexIdsToDelete.forEach(hexId -> {
+			try {
+				sourceStorage.delete(hexId);
+			} catch (Exception e) {
+				log.error("Failed to delete {} {}", key, hexId, e);
+			}
+		});
+		sourceStorage.flush(hexId -> {
+		});
 	}
 
-	private static int getParentInt(String fileName) {
+	private void processData(String hexId, T data) {
 		try {
-			return Integer.parseInt(getParent(fileName), 16);
+			if (data.isValid()) {
+				dataSet.add(data);
+			} else {
+				log.warn("Skipping invalid data: {}", data);
+			}
+			fileHashes.put(hexId, getHash(data, true));
 		} catch (Exception e) {
-			log.error("Failed to parse parent index from {}", fileName, e);
-			return 0;
+			log.error("Failed to process file {}", hexId, e);
 		}
 	}
 
-	private static ObjectImmutableList<ObjectArrayList<String>> createEmptyList256() {
-		final ObjectArrayList<ObjectArrayList<String>> list = new ObjectArrayList<>();
-		for (int i = 0; i <= 0xFF; i++) {
-			list.add(new ObjectArrayList<>());
+	/**
+	 * @return the bytes and the parsed entity; the entity is {@code null} if the bytes couldn't be parsed, and the whole
+	 * result is {@code null} if the entity couldn't be read
+	 */
+	@Nullable
+	private static <T extends SerializedDataBaseWithId> LoadedEntity<T> readEntity(Function<MessagePackReader, T> getData, String hexId, Callable<ByteBuffer> readBytes) {
+		final ByteBuffer bytes;
+		try {
+			bytes = readBytes.call();
+		} catch (Exception e) {
+			log.error("Failed to open file {}", hexId, e);
+			return null;
 		}
-		return new ObjectImmutableList<>(list);
-	}
 
-	private static String combineAsPath(Path parentFolderPath, Path filePath) {
-		return combineAsPath(parentFolderPath.getFileName().toString(), filePath.getFileName().toString());
+		try (final MessageUnpacker messageUnpacker = MessagePack.newDefaultUnpacker(bytes.duplicate())) {
+			return new LoadedEntity<>(bytes, getData.apply(new MessagePackReader(messageUnpacker)));
+		} catch (Exception e) {
+			log.error("Failed to process file {}", hexId, e);
+			if (e instanceof MessageTypeException) {
+				return new LoadedEntity<>(bytes, null);
+			} else {
+				return null;
+			}
+		}
 	}
 
-	private static String combineAsPath(String parentFolderName, String fileName) {
-		return String.format("%s/%s", parentFolderName, fileName);
+	private static int getHash(SerializedDataBaseWithId data, boolean useReducedHash) {
+		return Arrays.hashCode(getBytes(data, useReducedHash));
 	}
 
-	private static int getHash(SerializedDataBaseWithId data, boolean useReducedHash) {
-		int hash = 0;
+	private static byte[] getBytes(SerializedDataBaseWithId data, boolean useReducedHash) {
 		try (final MessageBufferPacker messageBufferPacker = MessagePack.newDefaultBufferPacker()) {
 			packMessage(messageBufferPacker, data, useReducedHash);
-			hash = Arrays.hashCode(messageBufferPacker.toByteArray());
+			return messageBufferPacker.toByteArray();
 		} catch (Exception e) {
-			log.error("Failed to compute hash for {}", data, e);
+			log.error("Failed to serialize {}", data, e);
+			return new byte[0];
 		}
-		return hash;
 	}
 
 	private static void packMessage(MessagePacker messagePacker, SerializedDataBaseWithId data, boolean useReducedHash) {
@@ -236,4 +340,83 @@ public class FileLoader<T extends SerializedDataBaseWithId> {
 			}
 		}
 	}
+
+	/**
+	 * The files to write and delete for one save. Written once, on any thread, and then finished on the simulator thread.
+	 */
+	public final class SaveSnapshot {
+
+		private final Object2ObjectOpenHashMap<String, byte[]> filesToWrite;
+		private final ObjectArrayList<String> filesToDelete;
+		private final ObjectArrayList<String> failedFileNames = new ObjectArrayList<>();
+		private int filesWritten;
+		private int filesDeleted;
+		private boolean failed;
+
+		private SaveSnapshot(Object2ObjectOpenHashMap<String, byte[]> filesToWrite, ObjectArrayList<String> filesToDelete) {
+			this.filesToWrite = filesToWrite;
+			this.filesToDelete = filesToDelete;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Write and delete the files. Errors are logged; files that couldn't be written are written again by the next save.
+		 */
+		public void write() {
+			filesToWrite.forEach((hexId, bytes) -> {
+				try {
+					storage.write(hexId, bytes);
+					filesWritten++;
+				} catch (Exception e) {
+					log.error("Failed to write file {}", hexId, e);
+					failedFileNames.add(hexId);
+					failed = true;
+				}
+			});
+
+			filesToDelete.forEach(hexId -> {
+				try {
+					if (storage.delete(hexId)) {
+						filesDeleted++;
+					}
+				} catch (Exception e) {
+					log.error("Failed to delete file {}", hexId, e);
+					failed = true;
+				}
+			});
+
+			// The journal is only dropped once everything is on disk
+			if (!storage.flush(hexId -> {
+				log.error("Failed to write file {}", hexId);
+				failedFileNames.add(hexId);
+				filesWritten--;
+			})) {
+				log.error("Failed to force {} to disk", key);
+				failed = true;
+			}
+		}
+
+		/**
+		 * @return whether any file couldn't be written or deleted; only valid once {@link #write()} has returned
+		 */
+		public boolean hasFailures() {
+			return failed;
+		}
+
+		/**
+		 * Must be called on the simulator thread once {@link #write()} has returned.
+		 *
+		 * @return the number of files written and deleted
+		 */
+		public IntIntImmutablePair finish() {
+			failedFileNames.forEach(fileHashes::removeInt);
+			return new IntIntImmutablePair(filesWritten, filesDeleted);
+		}
+	}
+
+	private record LoadedEntity<T>(ByteBuffer bytes, @Nullable T data) {
+	}
 }
@@ -0,0 +1,231 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import lombok.extern.log4j.Log4j2;
+import org.mtr.core.serializer.MessagePackData;
+import org.mtr.core.serializer.SerializedDataBase;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of the client operations that change saved data, so that they survive a crash between saves.
+ *
+ * <p>Operations are appended on the simulator thread before they are processed, and written and forced to disk in batches on a journal
+ * thread at most every {@link #SYNC_INTERVAL_MILLIS}. The journal is split into numbered generations: a save calls {@link #rotate()} when it
+ * takes its snapshot, and once the save has been written, every generation up to the rotated one is deleted. On startup, whatever is left
+ * is replayed on top of the loaded data. Replaying an operation that the loaded data already contains does no harm, since updates set
+ * fields to the journaled values and deletes of missing entities do nothing.</p>
+ *
+ * <p>Each record holds the payload length (int), the CRC-32 of the payload (int) and the payload: the operation key length (int), the
+ * operation key (UTF-8) and the MessagePack data. A record cut short by a crash fails its length or checksum check and ends the replay of
+ * that generation.</p>
+ */
+@Log4j2
+final class Journal {
+
+	private final Path path;
+	private final ObjectArrayList<byte[]> pendingRecords = new ObjectArrayList<>();
+	private final ExecutorService executorService = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("journal").factory());
+	private int generation;
+	private long nextSyncMillis;
+
+	private static final String JOURNAL_EXTENSION = ".journal";
+	/**
+	 * Appended operations are forced to disk at most this long after they were processed.
+	 */
+	private static final long SYNC_INTERVAL_MILLIS = 100;
+	private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+	Journal(Path path) {
+		this.path = path;
+		final IntArrayList generations = getGenerations();
+		generation = generations.isEmpty() ? 0 : generations.getInt(generations.size() - 1) + 1;
+	}
+
+	/**
+	 * Pass every journaled operation to the consumer, oldest first. Must be called before anything is appended.
+	 *
+	 * @return the number of operations replayed
+	 */
+	int replay(BiConsumer<String, MessagePackData> consumer) {
+		int count = 0;
+		for (final int replayGeneration : getGenerations()) {
+			final Path journalFile = getJournalFile(replayGeneration);
+			final ByteBuffer byteBuffer;
+			try {
+				byteBuffer = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+			} catch (Exception e) {
+				log.error("Failed to read journal {}", journalFile, e);
+				continue;
+			}
+
+			while (byteBuffer.hasRemaining()) {
+				final int offset = byteBuffer.position();
+				final int payloadLength = byteBuffer.remaining() < HEADER_BYTES ? -1 : byteBuffer.getInt();
+				if (payloadLength < Integer.BYTES || byteBuffer.remaining() < Integer.BYTES + payloadLength) {
+					log.warn("Ignoring cut-short record at {} in {}", offset, journalFile);
+					break;
+				}
+
+				final int checksum = byteBuffer.getInt();
+				final CRC32 crc32 = new CRC32();
+				crc32.update(byteBuffer.array(), byteBuffer.position(), payloadLength);
+				final int keyLength = byteBuffer.getInt(byteBuffer.position());
+				if ((int) crc32.getValue() != checksum || keyLength < 0 || keyLength > payloadLength - Integer.BYTES) {
+					log.warn("Ignoring corrupt record at {} in {}", offset, journalFile);
+					break;
+				}
+
+				final int payloadStart = byteBuffer.position();
+				final String key = new String(byteBuffer.array(), payloadStart + Integer.BYTES, keyLength, StandardCharsets.UTF_8);
+				final int dataStart = payloadStart + Integer.BYTES + keyLength;
+				final byte[] data = new byte[payloadStart + payloadLength - dataStart];
+				byteBuffer.get(dataStart, data);
+				byteBuffer.position(payloadStart + payloadLength);
+
+				try {
+					consumer.accept(key, new MessagePackData(data));
+					count++;
+				} catch (Exception e) {
+					log.error("Failed to replay {} from {}", key, journalFile, e);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Add an operation to the journal. Must be called on the simulator thread, before the operation is processed.
+	 */
+	void append(String key, SerializedDataBase data) {
+		final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		final byte[] dataBytes = (data instanceof MessagePackData messagePackData ? messagePackData : MessagePackData.create(data)).getBytes();
+		final int payloadLength = Integer.BYTES + keyBytes.length + dataBytes.length;
+		final ByteBuffer byteBuffer = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+		byteBuffer.putInt(payloadLength).putInt(0).putInt(keyBytes.length).put(keyBytes).put(dataBytes);
+		final CRC32 crc32 = new CRC32();
+		crc32.update(byteBuffer.array(), HEADER_BYTES, payloadLength);
+		byteBuffer.putInt(Integer.BYTES, (int) crc32.getValue());
+		pendingRecords.add(byteBuffer.array());
+	}
+
+	/**
+	 * Hand appended operations to the journal thread if they have waited long enough. Must be called on the simulator thread, once per tick.
+	 */
+	void tick() {
+		final long currentMillis = System.currentTimeMillis();
+		if (!pendingRecords.isEmpty() && currentMillis >= nextSyncMillis) {
+			sync();
+			nextSyncMillis = currentMillis + SYNC_INTERVAL_MILLIS;
+		}
+	}
+
+	/**
+	 * Start a new generation. Must be called on the simulator thread when a save takes its snapshot.
+	 *
+	 * @return the last generation that the save covers
+	 */
+	int rotate() {
+		sync();
+		return generation++;
+	}
+
+	/**
+	 * Delete every generation up to and including {@code lastGeneration}, once a save covering them has been written.
+	 */
+	void delete(int lastGeneration) {
+		executorService.execute(() -> getGenerations().forEach(deleteGeneration -> {
+			if (deleteGeneration <= lastGeneration) {
+				try {
+					Files.deleteIfExists(getJournalFile(deleteGeneration));
+				} catch (Exception e) {
+					log.error("Failed to delete journal {}", getJournalFile(deleteGeneration), e);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Write anything still pending and wait for the journal thread to finish.
+	 */
+	void close() {
+		sync();
+		executorService.shutdown();
+		try {
+			if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				log.warn("Timed out waiting for journal {}", path);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while waiting for journal {}", path, e);
+		}
+	}
+
+	private void sync() {
+		if (!pendingRecords.isEmpty()) {
+			final ObjectArrayList<byte[]> records = new ObjectArrayList<>(pendingRecords);
+			final Path journalFile = getJournalFile(generation);
+			pendingRecords.clear();
+			executorService.execute(() -> {
+				try {
+					Files.createDirectories(path);
+					try (final FileChannel fileChannel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+						final long size = fileChannel.size();
+						try {
+							for (final byte[] record : records) {
+								final ByteBuffer byteBuffer = ByteBuffer.wrap(record);
+								while (byteBuffer.hasRemaining()) {
+									fileChannel.write(byteBuffer);
+								}
+							}
+							fileChannel.force(false);
+						} catch (Exception e) {
+							// Don't leave part of a batch in front of later batches, which would then never be replayed
+							fileChannel.truncate(size);
+							throw e;
+						}
+					}
+				} catch (Exception e) {
+					log.error("Failed to write journal {}", journalFile, e);
+				}
+			});
+		}
+	}
+
+	private IntArrayList getGenerations() {
+		final IntArrayList generations = new IntArrayList();
+		if (Files.isDirectory(path)) {
+			try (final Stream<Path> pathStream = Files.list(path)) {
+				pathStream.forEach(journalFile -> {
+					final String fileName = journalFile.getFileName().toString();
+					if (fileName.endsWith(JOURNAL_EXTENSION)) {
+						try {
+							generations.add(Integer.parseInt(fileName.substring(0, fileName.length() - JOURNAL_EXTENSION.length())));
+						} catch (NumberFormatException ignored) {
+						}
+					}
+				});
+			} catch (Exception e) {
+				log.error("Failed to list directory {}", path, e);
+			}
+		}
+		generations.sort(null);
+		return generations;
+	}
+
+	private Path getJournalFile(int generation) {
+		return path.resolve(String.format("%08d%s", generation, JOURNAL_EXTENSION));
+	}
+}
@@ -0,0 +1,397 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.ints.Int2LongAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectObjectImmutablePair;
+import lombok.extern.log4j.Log4j2;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Stores every entity of one type in a few append-only segment files instead of one file per entity.
+ *
+ * <p>A write appends a record to the newest segment and a delete appends a tombstone, so a save costs a few sequential writes rather than
+ * a file per entity. An in-memory index maps each hex id to the location of its latest record. The index is rebuilt by reading the segments
+ * in order on load, so there is no index file to keep in sync. Reading a segment stops at the first record that is cut short by a crash or
+ * fails its checksum, so the index keeps pointing at the last intact record of each entity. Writes after a load always go to a new segment,
+ * never after a bad record.</p>
+ *
+ * <p>Once most of the bytes on disk belong to overwritten or deleted records, {@link #flush(Consumer)} copies the live records into new segments
+ * and deletes the old ones. The old segments are only deleted once the new ones have been forced to disk, oldest first, so a crash during
+ * compaction leaves duplicate records but never loses one.</p>
+ *
+ * <p>Each record holds a CRC32 of the rest of the record (int), the hex id length (int), the hex id (UTF-8), the data length (int, -1 for
+ * a tombstone) and the data.</p>
+ */
+@Log4j2
+final class SegmentStorage implements EntityStorage {
+
+	private final Path path;
+	private final Object2ObjectOpenHashMap<String, Location> index = new Object2ObjectOpenHashMap<>();
+	/**
+	 * Segment number to segment size in bytes, including dead and cut-short records.
+	 */
+	private final Int2LongAVLTreeMap segmentSizes = new Int2LongAVLTreeMap();
+	private long liveBytes;
+	private int currentSegment;
+	/**
+	 * Set when a segment is created or deleted, so that the next flush forces the directory to disk too
+	 */
+	private boolean directoryChanged;
+	/**
+	 * Set when a full segment couldn't be forced to disk, so that the next flush reports the failure
+	 */
+	private boolean segmentForceFailed;
+	@Nullable
+	private FileChannel fileChannel;
+
+	private static final String SEGMENT_EXTENSION = ".segment";
+	/**
+	 * Once the current segment is this big, new records go to a new segment.
+	 */
+	private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+	/**
+	 * Segments are only compacted once there are at least this many dead bytes, so that small stores aren't rewritten on every save.
+	 */
+	private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+	/**
+	 * Longer hex ids are treated as a corrupt record.
+	 */
+	private static final int MAX_HEX_ID_LENGTH = 256;
+
+	SegmentStorage(Path path) {
+		this.path = path;
+		final IntArrayList segments = new IntArrayList();
+		try (final Stream<Path> pathStream = Files.list(path)) {
+			pathStream.forEach(segmentFile -> {
+				final int segment = getSegment(segmentFile);
+				if (segment >= 0) {
+					segments.add(segment);
+				}
+			});
+		} catch (Exception e) {
+			log.error("Failed to list directory {}", path, e);
+		}
+
+		segments.sort(null);
+		segments.forEach(this::readSegment);
+		// Even unreadable segments are never appended to
+		currentSegment = segments.isEmpty() ? 0 : segments.getInt(segments.size() - 1) + 1;
+	}
+
+	/**
+	 * Reads each segment with one bulk read and passes a view of every live record, so that there is no copy or read per entity.
+	 */
+	@Override
+	public void forEach(BiConsumer<String, Callable<ByteBuffer>> consumer) {
+		forEachLiveRecord(segmentSizes.keySet().toIntArray(), (hexId, byteBuffer) -> consumer.accept(hexId, () -> byteBuffer));
+	}
+
+	@Override
+	public void write(String hexId, byte[] bytes) throws IOException {
+		setLocation(hexId, append(hexId, ByteBuffer.wrap(bytes)));
+	}
+
+	@Override
+	public boolean delete(String hexId) throws IOException {
+		if (index.containsKey(hexId)) {
+			append(hexId, null);
+			setLocation(hexId, null);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Forces the written records, and the directory if segments were created or deleted, to disk. Records are written straight to the
+	 * segments, so there are never unfinished writes to report.
+	 */
+	@Override
+	public boolean flush(Consumer<String> failedWriteConsumer) {
+		final boolean success = closeFileChannel(true) && !segmentForceFailed;
+		segmentForceFailed = false;
+		final long deadBytes = getTotalBytes() - liveBytes;
+		if (success && deadBytes >= MIN_COMPACTION_BYTES && deadBytes > liveBytes) {
+			compact();
+		}
+		if (directoryChanged && DirectoryStorage.forceFolder(path)) {
+			directoryChanged = false;
+		}
+		return success && !directoryChanged;
+	}
+
+	/**
+	 * Deletes every segment if no live records are left, such as after moving them all to another storage.
+	 */
+	void deleteIfEmpty() {
+		if (index.isEmpty() && closeFileChannel(false)) {
+			for (final int segment : segmentSizes.keySet().toIntArray()) {
+				try {
+					Files.deleteIfExists(getSegmentFile(segment));
+					segmentSizes.remove(segment);
+					directoryChanged = true;
+				} catch (Exception e) {
+					log.error("Failed to delete segment {}", getSegmentFile(segment), e);
+				}
+			}
+		}
+	}
+
+	long getTotalBytes() {
+		long totalBytes = 0;
+		for (final long segmentSize : segmentSizes.values()) {
+			totalBytes += segmentSize;
+		}
+		return totalBytes;
+	}
+
+	private void readSegment(int segment) {
+		final Path segmentFile = getSegmentFile(segment);
+		final ByteBuffer byteBuffer;
+		try {
+			byteBuffer = ByteBuffer.wrap(Files.readAllBytes(segmentFile));
+		} catch (Exception e) {
+			log.error("Failed to read segment {}", segmentFile, e);
+			return;
+		}
+
+		segmentSizes.put(segment, byteBuffer.capacity());
+		while (byteBuffer.hasRemaining()) {
+			final int offset = byteBuffer.position();
+			if (byteBuffer.remaining() < Integer.BYTES * 3) {
+				log.warn("Ignoring cut-short record at {} in {}", offset, segmentFile);
+				break;
+			}
+
+			final int checksum = byteBuffer.getInt();
+			final int hexIdLength = byteBuffer.getInt();
+			if (hexIdLength < 0 || hexIdLength > MAX_HEX_ID_LENGTH) {
+				log.warn("Ignoring corrupt record at {} in {}", offset, segmentFile);
+				break;
+			}
+			if (byteBuffer.remaining() < hexIdLength + Integer.BYTES) {
+				log.warn("Ignoring cut-short record at {} in {}", offset, segmentFile);
+				break;
+			}
+
+			final String hexId = new String(byteBuffer.array(), byteBuffer.position(), hexIdLength, StandardCharsets.UTF_8);
+			byteBuffer.position(byteBuffer.position() + hexIdLength);
+			final int dataLength = byteBuffer.getInt();
+			if (dataLength < -1) {
+				log.warn("Ignoring corrupt record at {} in {}", offset, segmentFile);
+				break;
+			}
+			if (byteBuffer.remaining() < dataLength) {
+				log.warn("Ignoring cut-short record at {} in {}", offset, segmentFile);
+				break;
+			}
+
+			final int recordLength = getRecordLength(hexIdLength, dataLength);
+			if (getChecksum(byteBuffer.array(), offset, recordLength) != checksum) {
+				log.warn("Ignoring corrupt record at {} in {}", offset, segmentFile);
+				break;
+			}
+
+			byteBuffer.position(offset + recordLength);
+			if (dataLength >= 0) {
+				setLocation(hexId, new Location(segment, offset, recordLength, dataLength));
+			} else {
+				setLocation(hexId, null);
+			}
+		}
+	}
+
+	private Location append(String hexId, @Nullable ByteBuffer data) throws IOException {
+		if (segmentSizes.get(currentSegment) >= MAX_SEGMENT_BYTES) {
+			// The full segment is no longer covered by the next flush, so it is forced now
+			if (!closeFileChannel(true)) {
+				segmentForceFailed = true;
+			}
+			currentSegment++;
+		}
+
+		FileChannel currentFileChannel = fileChannel;
+		if (currentFileChannel == null) {
+			currentFileChannel = FileChannel.open(getSegmentFile(currentSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			fileChannel = currentFileChannel;
+			segmentSizes.put(currentSegment, currentFileChannel.size());
+			directoryChanged = true;
+		}
+
+		final byte[] hexIdBytes = hexId.getBytes(StandardCharsets.UTF_8);
+		final int dataLength = data == null ? -1 : data.remaining();
+		final int recordLength = getRecordLength(hexIdBytes.length, dataLength);
+		final ByteBuffer byteBuffer = ByteBuffer.allocate(recordLength);
+		byteBuffer.putInt(0).putInt(hexIdBytes.length).put(hexIdBytes).putInt(dataLength);
+		if (data != null) {
+			byteBuffer.put(data.duplicate());
+		}
+		byteBuffer.putInt(0, getChecksum(byteBuffer.array(), 0, recordLength));
+		byteBuffer.flip();
+
+		final long offset = segmentSizes.get(currentSegment);
+		try {
+			while (byteBuffer.hasRemaining()) {
+				currentFileChannel.write(byteBuffer);
+			}
+		} catch (IOException e) {
+			// Part of the record may have been written, so carry on in a new segment rather than after a corrupt record
+			closeFileChannel(false);
+			currentSegment++;
+			throw e;
+		}
+
+		segmentSizes.put(currentSegment, offset + recordLength);
+		return new Location(currentSegment, offset, recordLength, dataLength);
+	}
+
+	private void setLocation(String hexId, @Nullable Location location) {
+		final Location oldLocation = location == null ? index.remove(hexId) : index.put(hexId, location);
+		if (oldLocation != null) {
+			liveBytes -= oldLocation.recordLength;
+		}
+		if (location != null) {
+			liveBytes += location.recordLength;
+		}
+	}
+
+	private void compact() {
+		final int[] oldSegments = segmentSizes.keySet().toIntArray();
+		final long oldTotalBytes = getTotalBytes();
+		currentSegment = Math.max(currentSegment, segmentSizes.lastIntKey() + 1);
+
+		final boolean[] success = {true};
+		forEachLiveRecord(oldSegments, (hexId, byteBuffer) -> {
+			if (success[0]) {
+				try {
+					setLocation(hexId, append(hexId, byteBuffer));
+				} catch (Exception e) {
+					log.error("Failed to compact {}", path, e);
+					success[0] = false;
+				}
+			}
+		});
+
+		if (success[0] && closeFileChannel(true)) {
+			for (final int segment : oldSegments) {
+				try {
+					Files.deleteIfExists(getSegmentFile(segment));
+					segmentSizes.remove(segment);
+					directoryChanged = true;
+				} catch (Exception e) {
+					log.error("Failed to delete segment {}", getSegmentFile(segment), e);
+					break;
+				}
+			}
+			log.info("Compacted {} from {} to {} byte(s)", path, oldTotalBytes, getTotalBytes());
+		} else {
+			closeFileChannel(false);
+		}
+	}
+
+	/**
+	 * Reads each of the given segments with one bulk read and passes a view of each of its live records. A segment is read in full before
+	 * the consumer is called, so the consumer may write to the storage.
+	 */
+	private void forEachLiveRecord(int[] segments, BiConsumer<String, ByteBuffer> consumer) {
+		final Int2ObjectOpenHashMap<ObjectArrayList<ObjectObjectImmutablePair<String, Location>>> recordsBySegment = new Int2ObjectOpenHashMap<>();
+		index.forEach((hexId, location) -> recordsBySegment.computeIfAbsent(location.segment, key -> new ObjectArrayList<>()).add(new ObjectObjectImmutablePair<>(hexId, location)));
+
+		for (final int segment : segments) {
+			final ObjectArrayList<ObjectObjectImmutablePair<String, Location>> records = recordsBySegment.get(segment);
+			if (records != null) {
+				final ByteBuffer segmentByteBuffer;
+				try {
+					segmentByteBuffer = ByteBuffer.wrap(Files.readAllBytes(getSegmentFile(segment)));
+				} catch (Exception e) {
+					log.error("Failed to read segment {}", getSegmentFile(segment), e);
+					continue;
+				}
+
+				records.forEach(record -> {
+					final Location location = record.right();
+					consumer.accept(record.left(), segmentByteBuffer.slice((int) location.offset + location.recordLength - location.dataLength, location.dataLength));
+				});
+			}
+		}
+	}
+
+	/**
+	 * @return whether the file channel was closed (and forced to disk if requested) without errors
+	 */
+	private boolean closeFileChannel(boolean force) {
+		if (fileChannel == null) {
+			return true;
+		} else {
+			try (final FileChannel oldFileChannel = fileChannel) {
+				fileChannel = null;
+				if (force) {
+					oldFileChannel.force(true);
+				}
+				return true;
+			} catch (Exception e) {
+				log.error("Failed to close segment {}", getSegmentFile(currentSegment), e);
+				return false;
+			}
+		}
+	}
+
+	private Path getSegmentFile(int segment) {
+		return path.resolve(String.format("%08d%s", segment, SEGMENT_EXTENSION));
+	}
+
+	/**
+	 * @return whether the directory has any segments, without reading them
+	 */
+	static boolean hasSegments(Path path) {
+		try (final Stream<Path> pathStream = Files.list(path)) {
+			return pathStream.anyMatch(segmentFile -> getSegment(segmentFile) >= 0);
+		} catch (Exception e) {
+			log.error("Failed to list directory {}", path, e);
+			return false;
+		}
+	}
+
+	private static int getSegment(Path segmentFile) {
+		final String fileName = segmentFile.getFileName().toString();
+		if (fileName.endsWith(SEGMENT_EXTENSION) && Files.isRegularFile(segmentFile)) {
+			try {
+				return Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length()));
+			} catch (NumberFormatException ignored) {
+			}
+		}
+		return -1;
+	}
+
+	private static int getRecordLength(int hexIdLength, int dataLength) {
+		return Integer.BYTES * 3 + hexIdLength + Math.max(0, dataLength);
+	}
+
+	/**
+	 * @return the CRC32 of a record, covering everything after the checksum itself
+	 */
+	private static int getChecksum(byte[] bytes, int offset, int recordLength) {
+		final CRC32 crc32 = new CRC32();
+		crc32.update(bytes, offset + Integer.BYTES, recordLength - Integer.BYTES);
+		return (int) crc32.getValue();
+	}
+
+	private record Location(int segment, long offset, int recordLength, int dataLength) {
+	}
+}
@@ -1,6 +1,7 @@
 package org.mtr.core.simulation;
 
 import it.unimi.dsi.fastutil.ints.IntIntImmutablePair;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.objects.*;
 import lombok.Getter;
@@ -18,6 +19,10 @@ import org.mtr.legacy.data.LegacyRailLoader;
 
 import java.nio.file.Path;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 /**
@@ -31,13 +36,16 @@ import java.util.function.Consumer;
  *
  * <p>Persistence is delegated to {@link FileLoader} — one per top-level entity type. Saves are
  * incremental (only changed buckets are rewritten) unless {@code useReducedHash} is {@code false}
- * during the final shutdown save.</p>
+ * during the final shutdown save. Autosaves only hash entities marked with {@link #markDirty(SerializedDataBaseWithId)},
+ * apart from a periodic full pass that catches any change that wasn't marked.</p>
  */
 @Log4j2
 public class Simulator extends Data implements Utilities {
 
 	private long lastMillis;
 	private boolean autoSave = false;
+	@Nullable
+	private InFlightSave inFlightSave;
 	private long gameMillis;
 	/**
 	 * Real-time milliseconds per in-game day or {@code 0} if unknown / paused; default = 20 in-game minutes ≈ Minecraft's vanilla rate.
@@ -51,11 +59,19 @@ public class Simulator extends Data implements Utilities {
 	private boolean isTimeMoving;
 	private long lastSetGameMillisMidnight;
 	private int currentPassengerDirectionsRequests;
+	private long nextConsistencyCheckMillis;
+	private long nextFullSaveMillis;
+	private long nextDroppedMessagesLoggingMillis;
+	private long loggedDroppedMessageCount;
 
 	/**
 	 * Connected dashboard / mod clients for this dimension.
 	 */
 	public final ObjectArraySet<Client> clients = new ObjectArraySet<>();
+	/**
+	 * Update regions of {@link #clients}, rebuilt at the start of each tick if any client has moved.
+	 */
+	public final ClientGrid clientGrid = new ClientGrid();
 	/**
 	 * Stable dimension identifier (e.g. {@code "minecraft/overworld"}).
 	 */
@@ -68,6 +84,14 @@ public class Simulator extends Data implements Utilities {
 	 * Background path-finder for passenger directions queries.
 	 */
 	public final DirectionsFinder directionsFinder = new DirectionsFinder(this);
+	/**
+	 * Sidings whose depot serves each route, in {@link #sidings} iteration order. Rebuilt on {@link #sync()}.
+	 */
+	public final Long2ObjectOpenHashMap<ObjectArrayList<Siding>> routeIdToSidings = new Long2ObjectOpenHashMap<>();
+	/**
+	 * The siding each vehicle currently belongs to. Rebuilt every tick after vehicles are simulated.
+	 */
+	public final Long2ObjectOpenHashMap<Siding> vehicleIdToSiding = new Long2ObjectOpenHashMap<>();
 
 	private final FileLoader<Station> fileLoaderStations;
 	private final FileLoader<Platform> fileLoaderPlatforms;
@@ -81,11 +105,24 @@ public class Simulator extends Data implements Utilities {
 	private final FileLoader<Settings> fileLoaderSettings;
 	private final Consumer<Settings> writeSettings;
 	private final MessageQueue<Runnable> queuedRuns = new MessageQueue<>();
-	private final ObjectImmutableList<ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>>> vehiclePositions;
+	/**
+	 * Completions of work that the simulator handed off itself, which are never dropped
+	 */
+	private final ConcurrentLinkedQueue<Runnable> internalRuns = new ConcurrentLinkedQueue<>();
+	/**
+	 * Writes save files so that disk I/O doesn't hold up the simulation. Only one save is in flight at a time.
+	 */
+	private final ExecutorService saveExecutorService = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("save").factory());
+	/**
+	 * Client operations that changed saved data since the last save, so that they can be replayed after a crash.
+	 */
+	private final Journal journal;
+	private final ObjectImmutableList<VehiclePositionIndex> vehiclePositions;
 	private final Object2LongOpenHashMap<UUID> ridingVehicleIds = new Object2LongOpenHashMap<>();
 	private final MessageQueue<QueueObject> messageQueueC2S = new MessageQueue<>();
 	private final MessageQueue<QueueObject> messageQueueS2C = new MessageQueue<>();
 	private final LongOpenHashSet jammedRouteIds = new LongOpenHashSet();
+	private final VehicleSimulationPhase vehicleSimulationPhase;
 
 	/**
 	 * If the simulation falls more than this many milliseconds behind wall clock, log a notice and
@@ -93,11 +130,32 @@ public class Simulator extends Data implements Utilities {
 	 * "noisy log on a sluggish host" and "silent multi-hour drift".
 	 */
 	private static final int SIMULATION_DIFFERENCE_LOGGING_THRESHOLD = 120000;
-	private static final int MAX_PASSENGER_DIRECTIONS_REQUESTS = 512;
+	/**
+	 * Directions requests are scanned in sharded batches with array-based label tables, so this can be much higher than the number of
+	 * requests a serial scan could keep up with.
+	 */
+	private static final int MAX_PASSENGER_DIRECTIONS_REQUESTS = 2048;
+	/**
+	 * How often the caches patched by incremental syncs are checked against a full rebuild.
+	 */
+	private static final long CONSISTENCY_CHECK_INTERVAL_MILLIS = 10 * MILLIS_PER_MINUTE;
 	/**
 	 * Default in-game day length in real-time milliseconds (20 in-game minutes).
 	 */
 	private static final long DEFAULT_GAME_MILLIS_PER_DAY = 20L * 60 * MILLIS_PER_SECOND;
+	/**
+	 * Time each tick may spend on queued runs, and separately on client-to-server messages, before the rest is left for the next tick. Half
+	 * of {@link org.mtr.core.Main#MILLISECONDS_PER_TICK}, so a flood of messages slows down message processing rather than the simulation.
+	 */
+	private static final long QUEUE_PROCESSING_BUDGET_NANOS = 5_000_000;
+	/**
+	 * How often an autosave hashes every entity instead of only the ones marked as dirty.
+	 */
+	private static final long FULL_SAVE_INTERVAL_MILLIS = 60 * MILLIS_PER_MINUTE;
+	/**
+	 * Messages dropped because a queue was full are logged at most this often.
+	 */
+	private static final long DROPPED_MESSAGES_LOGGING_INTERVAL_MILLIS = MILLIS_PER_MINUTE;
 
 	/**
 	 * Load a dimension from disk and bring its in-memory graph up to a tickable state.
@@ -108,23 +166,53 @@ public class Simulator extends Data implements Utilities {
 	 * @param threadedFileLoading if {@code true}, fan file reads out across a thread pool
 	 */
 	public Simulator(String dimension, String[] dimensions, Path rootPath, boolean threadedFileLoading) {
+		this(dimension, dimensions, rootPath, threadedFileLoading, false);
+	}
+
+	/**
+	 * Load a dimension from disk and bring its in-memory graph up to a tickable state.
+	 *
+	 * @param dimension                 identifier of the dimension being loaded
+	 * @param dimensions                identifiers of every dimension hosted in the same process
+	 * @param rootPath                  root data directory; per-dimension state lives under {@code rootPath/<dimension>}
+	 * @param threadedFileLoading       if {@code true}, fan file reads out across a thread pool
+	 * @param parallelVehicleSimulation if {@code true}, simulate vehicles of independent rail networks in parallel (see {@link VehicleSimulationPhase})
+	 */
+	public Simulator(String dimension, String[] dimensions, Path rootPath, boolean threadedFileLoading, boolean parallelVehicleSimulation) {
+		this(dimension, dimensions, rootPath, threadedFileLoading, parallelVehicleSimulation, false);
+	}
+
+	/**
+	 * Load a dimension from disk and bring its in-memory graph up to a tickable state.
+	 *
+	 * @param dimension                 identifier of the dimension being loaded
+	 * @param dimensions                identifiers of every dimension hosted in the same process
+	 * @param rootPath                  root data directory; per-dimension state lives under {@code rootPath/<dimension>}
+	 * @param threadedFileLoading       if {@code true}, fan file reads out across a thread pool
+	 * @param parallelVehicleSimulation if {@code true}, simulate vehicles of independent rail networks in parallel (see {@link VehicleSimulationPhase})
+	 * @param segmentFileStorage        if {@code true}, store each data type in append-only segment files instead of one file per entity,
+	 *                                  moving existing files into the segments while loading (see {@link SegmentStorage}); if {@code false},
+	 *                                  existing segments are moved back into per-entity files instead
+	 */
+	public Simulator(String dimension, String[] dimensions, Path rootPath, boolean threadedFileLoading, boolean parallelVehicleSimulation, boolean segmentFileStorage) {
 		this.dimension = dimension;
 		this.dimensions = dimensions;
+		vehicleSimulationPhase = new VehicleSimulationPhase(this, parallelVehicleSimulation);
 
 		// Load data
 		final Path savePath = rootPath.resolve(dimension);
 		final ObjectLongImmutablePair<FileLoaderHolder> fileLoaderHolderAndDuration = Utilities.measureDuration(() -> {
 			LegacyRailLoader.load(savePath, rails, threadedFileLoading);
 			return new FileLoaderHolder(
-				new FileLoader<>(stations, messagePackHelper -> new Station(messagePackHelper, this), savePath, "stations", threadedFileLoading),
-				new FileLoader<>(platforms, messagePackHelper -> new Platform(messagePackHelper, this), savePath, "platforms", threadedFileLoading),
-				new FileLoader<>(sidings, messagePackHelper -> new Siding(messagePackHelper, this), savePath, "sidings", threadedFileLoading),
-				new FileLoader<>(routes, messagePackHelper -> new Route(messagePackHelper, this), savePath, "routes", threadedFileLoading),
-				new FileLoader<>(depots, messagePackHelper -> new Depot(messagePackHelper, this), savePath, "depots", threadedFileLoading),
-				new FileLoader<>(lifts, messagePackHelper -> new Lift(messagePackHelper, this), savePath, "lifts", threadedFileLoading),
-				new FileLoader<>(rails, Rail::new, savePath, "rails", threadedFileLoading),
-				new FileLoader<>(homes, messagePackHelper -> new Home(messagePackHelper, this), savePath, "homes", threadedFileLoading),
-				new FileLoader<>(landmarks, messagePackHelper -> new Landmark(messagePackHelper, this), savePath, "landmarks", threadedFileLoading)
+				new FileLoader<>(stations, messagePackHelper -> new Station(messagePackHelper, this), savePath, "stations", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(platforms, messagePackHelper -> new Platform(messagePackHelper, this), savePath, "platforms", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(sidings, messagePackHelper -> new Siding(messagePackHelper, this), savePath, "sidings", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(routes, messagePackHelper -> new Route(messagePackHelper, this), savePath, "routes", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(depots, messagePackHelper -> new Depot(messagePackHelper, this), savePath, "depots", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(lifts, messagePackHelper -> new Lift(messagePackHelper, this), savePath, "lifts", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(rails, Rail::new, savePath, "rails", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(homes, messagePackHelper -> new Home(messagePackHelper, this), savePath, "homes", threadedFileLoading, segmentFileStorage),
+				new FileLoader<>(landmarks, messagePackHelper -> new Landmark(messagePackHelper, this), savePath, "landmarks", threadedFileLoading, segmentFileStorage)
 			);
 		});
 		fileLoaderStations = fileLoaderHolderAndDuration.left().fileLoaderStations;
@@ -143,20 +231,18 @@ public class Simulator extends Data implements Utilities {
 		depots.forEach(Depot::init);
 		rails.forEach(Rail::checkMigrationStatus);
 
-		final ObjectArrayList<ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>>> tempVehiclePositions = new ObjectArrayList<>();
+		final ObjectArrayList<VehiclePositionIndex> tempVehiclePositions = new ObjectArrayList<>();
 		for (int i = 0; i < TransportMode.values().length; i++) {
-			final ObjectArrayList<Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>>> vehiclePositionsForTransportMode = new ObjectArrayList<>();
-			vehiclePositionsForTransportMode.add(new Object2ObjectAVLTreeMap<>());
-			vehiclePositionsForTransportMode.add(new Object2ObjectAVLTreeMap<>());
-			tempVehiclePositions.add(vehiclePositionsForTransportMode);
+			tempVehiclePositions.add(new VehiclePositionIndex());
 		}
 		vehiclePositions = new ObjectImmutableList<>(tempVehiclePositions);
-		sidings.forEach(siding -> siding.initVehiclePositions(vehiclePositions.get(siding.getTransportModeOrdinal()).get(1)));
+		sidings.forEach(siding -> siding.initVehiclePositions(vehiclePositions.get(siding.getTransportModeOrdinal())));
+		writeVehicleIdToSidingCache();
 		homes.forEach(home -> home.iteratePassengers(passenger -> passenger.writeVehicleCache(this)));
 
 		// Load settings
 		final ObjectArraySet<Settings> settings = new ObjectArraySet<>();
-		fileLoaderSettings = new FileLoader<>(settings, Settings::new, savePath, "settings", threadedFileLoading);
+		fileLoaderSettings = new FileLoader<>(settings, Settings::new, savePath, "settings", threadedFileLoading, segmentFileStorage);
 		writeSettings = newSettings -> {
 			settings.clear();
 			settings.add(newSettings);
@@ -164,6 +250,32 @@ public class Simulator extends Data implements Utilities {
 
 		// Set the last simulated millis
 		setCurrentMillis(Utilities.getElement(new ObjectArrayList<>(settings), 0, new Settings(0)).getLastSimulationMillis());
+		nextConsistencyCheckMillis = getCurrentMillis() + CONSISTENCY_CHECK_INTERVAL_MILLIS;
+		nextFullSaveMillis = getCurrentMillis() + FULL_SAVE_INTERVAL_MILLIS;
+
+		// Replay client operations that weren't saved before the last shutdown
+		journal = new Journal(savePath.resolve("journal"));
+		final int replayedCount = journal.replay((key, data) -> OperationProcessor.process(key, data, this));
+		if (replayedCount > 0) {
+			log.info("Replayed {} journaled operation(s) for {}", replayedCount, dimension);
+		}
+	}
+
+	@Override
+	public void sync() {
+		super.sync();
+		writeSyncedCaches();
+		directionsFinder.invalidateGraph();
+	}
+
+	@Override
+	public void sync(DataChangeSet dataChangeSet) {
+		super.sync(dataChangeSet);
+		dataChangeSet.iterateUpdated(this::markDirty);
+		writeSyncedCaches();
+		if (dataChangeSet.hasPlatformOrRouteChanges()) {
+			directionsFinder.invalidateGraph();
+		}
 	}
 
 	/**
@@ -194,7 +306,28 @@ public class Simulator extends Data implements Utilities {
 	}
 
 	/**
-	 * Schedule a full save on the next tick. Returns immediately.
+	 * Mark an entity as modified so that the next autosave writes it. Changes made through {@link #sync(DataChangeSet)} are marked
+	 * automatically; this is for state that changes as part of the simulation.
+	 */
+	public void markDirty(SerializedDataBaseWithId data) {
+		switch (data) {
+			case Station station -> fileLoaderStations.markDirty(station);
+			case Platform platform -> fileLoaderPlatforms.markDirty(platform);
+			case Siding siding -> fileLoaderSidings.markDirty(siding);
+			case Route route -> fileLoaderRoutes.markDirty(route);
+			case Depot depot -> fileLoaderDepots.markDirty(depot);
+			case Lift lift -> fileLoaderLifts.markDirty(lift);
+			case Rail rail -> fileLoaderRails.markDirty(rail);
+			case Home home -> fileLoaderHomes.markDirty(home);
+			case Landmark landmark -> fileLoaderLandmarks.markDirty(landmark);
+			default -> {
+			}
+		}
+	}
+
+	/**
+	 * Schedule a save on the next tick. Returns immediately. Changed entities are serialised on the simulator thread and written on a
+	 * background thread; if a save is still being written, the next one waits until it has finished.
 	 */
 	public void save() {
 		autoSave = true;
@@ -204,7 +337,14 @@ public class Simulator extends Data implements Utilities {
 	 * Stop ticking and perform a final, non-incremental save.
 	 */
 	public void stop() {
-		save(false);
+		directionsFinder.stop();
+		if (inFlightSave != null) {
+			finishSave(inFlightSave);
+			inFlightSave = null;
+		}
+		save(false, true);
+		saveExecutorService.shutdown();
+		journal.close();
 	}
 
 	/**
@@ -336,25 +476,75 @@ public class Simulator extends Data implements Utilities {
 	 * Queue a {@link Runnable} to execute on the simulator thread at the start of the next tick.
 	 * Used by HTTP servlets and the embedding mod to safely mutate simulator state without
 	 * crossing threads.
+	 *
+	 * @return whether the {@link Runnable} was queued, or {@code false} if it was dropped because the queue is full
+	 */
+	public boolean run(Runnable runnable) {
+		return run(runnable, MessageQueue.Priority.PLAYER);
+	}
+
+	/**
+	 * Queue a {@link Runnable} with the given priority to execute on the simulator thread during a later tick.
+	 *
+	 * @return whether the {@link Runnable} was queued, or {@code false} if it was dropped because the queue is full
+	 */
+	public boolean run(Runnable runnable, MessageQueue.Priority priority) {
+		return queuedRuns.put(runnable, priority);
+	}
+
+	/**
+	 * Queue a {@link Runnable} to execute on the simulator thread at the start of the next tick. Unlike {@link #run(Runnable)}, it is never
+	 * dropped and doesn't count towards any time budget, so it should only be used to hand back the results of work that the simulator
+	 * started itself, such as a batch of directions. Someone may be waiting for those results, and the amount of such work is already
+	 * bounded by the simulator.
+	 */
+	public void runInternal(Runnable runnable) {
+		internalRuns.add(runnable);
+	}
+
+	/**
+	 * @return the number of {@link Runnable}s waiting for the next tick
+	 */
+	public int getQueuedRunCount() {
+		return queuedRuns.size();
+	}
+
+	/**
+	 * @return counters of the queued runs, such as the number of dropped and the average wait time
 	 */
-	public void run(Runnable runnable) {
-		queuedRuns.put(runnable);
+	public MessageQueue.Statistics getQueuedRunStatistics() {
+		return queuedRuns.getStatistics();
 	}
 
 	/**
-	 * Enqueue a client-to-server message; processed during the next tick.
+	 * Enqueue a client-to-server message, with the priority of its operation (see {@link OperationProcessor#getPriority(String)}).
+	 * Operations that change data are kept in the order they were sent: priority classes drain independently, so one sent while a bulk
+	 * operation is still queued is queued behind it instead of overtaking it.
+	 *
+	 * @return whether the message was queued, or {@code false} if it was dropped because the queue is full
 	 */
-	public void sendMessageC2S(QueueObject queueObject) {
-		messageQueueC2S.put(queueObject);
+	public boolean sendMessageC2S(QueueObject queueObject) {
+		final MessageQueue.Priority priority = OperationProcessor.getPriority(queueObject.key);
+		return messageQueueC2S.put(queueObject, priority == MessageQueue.Priority.PLAYER && messageQueueC2S.size(MessageQueue.Priority.BULK) > 0 ? MessageQueue.Priority.BULK : priority);
+	}
+
+	/**
+	 * @return counters of the client-to-server messages, such as the number of dropped and the average wait time
+	 */
+	public MessageQueue.Statistics getMessageStatisticsC2S() {
+		return messageQueueC2S.getStatistics();
 	}
 
 	/**
 	 * Push a server-to-client message into the outgoing queue. The optional {@code consumer} is
 	 * invoked on the simulator thread when the matching response payload of type
 	 * {@code responseDataClass} arrives back from the client.
+	 *
+	 * @return whether the message was queued, or {@code false} if it was dropped because the queue is full, in which case the consumer is
+	 * never called
 	 */
-	public <T extends SerializedDataBase> void sendMessageS2C(String key, SerializedDataBase data, @Nullable Consumer<T> consumer, @Nullable Class<T> responseDataClass) {
-		messageQueueS2C.put(new QueueObject(key, data, consumer == null ? null : responseData -> run(() -> consumer.accept(responseData)), responseDataClass));
+	public <T extends SerializedDataBase> boolean sendMessageS2C(String key, SerializedDataBase data, @Nullable Consumer<T> consumer, @Nullable Class<T> responseDataClass) {
+		return messageQueueS2C.put(new QueueObject(key, data, consumer == null ? null : responseData -> run(() -> consumer.accept(responseData)), responseDataClass));
 	}
 
 	/**
@@ -396,8 +586,8 @@ public class Simulator extends Data implements Utilities {
 	 * Mark a route as jammed for the current tick so CSA/path searches avoid it.
 	 */
 	public void markRouteJammed(long routeId) {
-		if (routeId != 0) {
-			jammedRouteIds.add(routeId);
+		if (routeId != 0 && jammedRouteIds.add(routeId)) {
+			directionsFinder.onRouteJammed(routeId);
 		}
 	}
 
@@ -450,12 +640,8 @@ public class Simulator extends Data implements Utilities {
 		currentPassengerDirectionsRequests = 0;
 
 		try {
-			vehiclePositions.forEach(vehiclePositionsForTransportMode -> {
-				if (!vehiclePositionsForTransportMode.isEmpty()) {
-					vehiclePositionsForTransportMode.removeFirst();
-				}
-				vehiclePositionsForTransportMode.add(new Object2ObjectAVLTreeMap<>());
-			});
+			clientGrid.update(clients);
+			vehiclePositions.forEach(VehiclePositionIndex::rotate);
 
 			rails.forEach(rail -> rail.tick1(this));
 			rails.forEach(rail -> rail.tick2(millisElapsed));
@@ -463,16 +649,38 @@ public class Simulator extends Data implements Utilities {
 
 			// Try setting a siding's default path data
 			// If a siding doesn't have a rail associated with it, it should be removed from the data set
-			if (sidings.removeIf(Siding::tick)) {
-				sync();
+			final DataChangeSet dataChangeSet = new DataChangeSet();
+			sidings.removeIf(siding -> {
+				if (siding.tick()) {
+					dataChangeSet.remove(siding);
+					return true;
+				} else {
+					return false;
+				}
+			});
+			if (!dataChangeSet.isEmpty()) {
+				sync(dataChangeSet);
+			}
+
+			// Incremental syncing should never drift from a full sync, but rebuild everything occasionally in case it does
+			if (getCurrentMillis() >= nextConsistencyCheckMillis) {
+				syncAndCheckConsistency();
+				nextConsistencyCheckMillis = getCurrentMillis() + CONSISTENCY_CHECK_INTERVAL_MILLIS;
 			}
 
 			jammedRouteIds.clear();
-			sidings.forEach(siding -> siding.simulateVehicles(millisElapsed, vehiclePositions.get(siding.getTransportModeOrdinal())));
+			vehicleSimulationPhase.simulate(millisElapsed, vehiclePositions);
+			writeVehicleIdToSidingCache();
 			clients.forEach(client -> client.sendUpdates(this));
 
-			if (autoSave) {
-				save(true);
+			// Report a save once its files have been written, and only start another one after that
+			if (inFlightSave != null && inFlightSave.future.isDone()) {
+				finishSave(inFlightSave);
+				inFlightSave = null;
+			}
+
+			if (autoSave && inFlightSave == null) {
+				save(true, false);
 				autoSave = false;
 			}
 
@@ -481,58 +689,166 @@ public class Simulator extends Data implements Utilities {
 			homes.forEach(Home::tick);
 
 			// Process queued runs
-			queuedRuns.process(Runnable::run);
+			Runnable internalRun;
+			while ((internalRun = internalRuns.poll()) != null) {
+				internalRun.run();
+			}
+			queuedRuns.process(Runnable::run, QUEUE_PROCESSING_BUDGET_NANOS);
 
 			// Directions
 			directionsFinder.tick();
 
 			// Process messages
-			messageQueueC2S.process(queueObject -> queueObject.runCallback(OperationProcessor.process(queueObject.key, queueObject.data, this)));
+			messageQueueC2S.process(queueObject -> {
+				if (OperationProcessor.isJournaled(queueObject.key)) {
+					journal.append(queueObject.key, queueObject.data);
+				}
+				queueObject.runCallback(OperationProcessor.process(queueObject.key, queueObject.data, this));
+			}, QUEUE_PROCESSING_BUDGET_NANOS);
+			journal.tick();
+			logDroppedMessages();
 		} catch (Throwable e) {
 			log.fatal("", e);
 		}
 	}
 
-	private void save(boolean useReducedHash) {
-		// Save all data
-		final ObjectLongImmutablePair<Boolean> changedAndDuration = Utilities.measureDuration(() -> {
-			final boolean changed1 = save(fileLoaderStations, useReducedHash);
-			final boolean changed2 = save(fileLoaderPlatforms, useReducedHash);
-			final boolean changed3 = save(fileLoaderSidings, useReducedHash);
-			final boolean changed4 = save(fileLoaderRoutes, useReducedHash);
-			final boolean changed5 = save(fileLoaderDepots, useReducedHash);
-			final boolean changed6 = save(fileLoaderLifts, useReducedHash);
-			final boolean changed7 = save(fileLoaderRails, useReducedHash);
-			final boolean changed8 = save(fileLoaderHomes, useReducedHash);
-			final boolean changed9 = save(fileLoaderLandmarks, useReducedHash);
-			return changed1 || changed2 || changed3 || changed4 || changed5 || changed6 || changed7 || changed8 || changed9;
+	private void logDroppedMessages() {
+		final long currentMillis = System.currentTimeMillis();
+		if (currentMillis >= nextDroppedMessagesLoggingMillis) {
+			final MessageQueue.Statistics queuedRunStatistics = queuedRuns.getStatistics();
+			final MessageQueue.Statistics messageStatisticsC2S = messageQueueC2S.getStatistics();
+			final MessageQueue.Statistics messageStatisticsS2C = messageQueueS2C.getStatistics();
+			final long droppedMessageCount = queuedRunStatistics.droppedCount + messageStatisticsC2S.droppedCount + messageStatisticsS2C.droppedCount;
+			if (droppedMessageCount > loggedDroppedMessageCount) {
+				log.warn("Queues for {} are full; queued runs: {}; client messages: {}; server messages: {}", dimension, queuedRunStatistics, messageStatisticsC2S, messageStatisticsS2C);
+				loggedDroppedMessageCount = droppedMessageCount;
+				nextDroppedMessagesLoggingMillis = currentMillis + DROPPED_MESSAGES_LOGGING_INTERVAL_MILLIS;
+			}
+		}
+	}
+
+	private void writeSyncedCaches() {
+		// Rails or sidings may have changed, so the vehicle simulation groups have to be recalculated
+		vehicleSimulationPhase.invalidate();
+
+		routeIdToSidings.clear();
+		sidings.forEach(siding -> {
+			if (siding.area != null) {
+				siding.area.routes.forEach(route -> {
+					final ObjectArrayList<Siding> sidingsForRoute = routeIdToSidings.computeIfAbsent(route.getId(), key -> new ObjectArrayList<>());
+					// A depot may serve the same route more than once
+					if (!sidingsForRoute.contains(siding)) {
+						sidingsForRoute.add(siding);
+					}
+				});
+			}
 		});
-		if (changedAndDuration.left() || !useReducedHash) {
-			log.info("Save complete for {} in {} second(s)", dimension, (float) changedAndDuration.rightLong() / MILLIS_PER_SECOND);
+	}
+
+	private void writeVehicleIdToSidingCache() {
+		vehicleIdToSiding.clear();
+		sidings.forEach(siding -> siding.iterateVehicles(vehicle -> vehicleIdToSiding.put(vehicle.getId(), siding)));
+	}
+
+	/**
+	 * Serialise everything that has changed on the simulator thread, then write it on the save thread unless {@code wait} is set.
+	 */
+	private void save(boolean useReducedHash, boolean wait) {
+		// Autosaves only hash dirty entities, except for an occasional full pass in case a change wasn't marked
+		final boolean dirtyOnly = useReducedHash && getCurrentMillis() < nextFullSaveMillis;
+		if (!dirtyOnly) {
+			nextFullSaveMillis = getCurrentMillis() + FULL_SAVE_INTERVAL_MILLIS;
 		}
 
-		// Save settings
+		final long startMillis = System.currentTimeMillis();
+		final ObjectArrayList<FileLoader<?>.SaveSnapshot> saveSnapshots = new ObjectArrayList<>();
+		saveSnapshots.add(fileLoaderStations.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderPlatforms.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderSidings.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderRoutes.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderDepots.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderLifts.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderRails.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderHomes.createSaveSnapshot(useReducedHash, dirtyOnly));
+		saveSnapshots.add(fileLoaderLandmarks.createSaveSnapshot(useReducedHash, dirtyOnly));
 		writeSettings.accept(new Settings(getCurrentMillis()));
-		if (useReducedHash) {
-			fileLoaderSettings.save(false);
+		final FileLoader<Settings>.SaveSnapshot settingsSaveSnapshot = fileLoaderSettings.createSaveSnapshot(false, false);
+		// Operations journaled from now on are not covered by this save
+		final int journalGeneration = journal.rotate();
+		final long snapshotMillis = System.currentTimeMillis() - startMillis;
+
+		final Runnable write = () -> {
+			saveSnapshots.forEach(saveSnapshot -> saveSnapshot.write());
+			settingsSaveSnapshot.write();
+		};
+		if (wait) {
+			write.run();
+			finishSave(new InFlightSave(saveSnapshots, settingsSaveSnapshot, journalGeneration, !useReducedHash, startMillis, snapshotMillis, CompletableFuture.completedFuture(null)));
+		} else {
+			inFlightSave = new InFlightSave(saveSnapshots, settingsSaveSnapshot, journalGeneration, !useReducedHash, startMillis, snapshotMillis, CompletableFuture.runAsync(write, saveExecutorService));
+		}
+	}
+
+	/**
+	 * Log the results of a save once its files have been written, and drop the journal it covers unless something failed to be written.
+	 * Must be called on the simulator thread.
+	 */
+	private void finishSave(InFlightSave inFlightSave) {
+		boolean failed = false;
+		try {
+			inFlightSave.future.join();
+		} catch (Exception e) {
+			log.error("Failed to save {}", dimension, e);
+			failed = true;
+		}
+
+		boolean changed = false;
+		for (final FileLoader<?>.SaveSnapshot saveSnapshot : inFlightSave.saveSnapshots) {
+			failed |= saveSnapshot.hasFailures();
+			changed |= logSaveCounts(saveSnapshot);
+		}
+		failed |= inFlightSave.settingsSaveSnapshot.hasFailures();
+		if (!failed) {
+			journal.delete(inFlightSave.journalGeneration);
+		}
+		if (changed || inFlightSave.logAlways) {
+			log.info(
+				"Save complete for {} in {} second(s), {} second(s) of which on the simulation thread",
+				dimension,
+				(float) (System.currentTimeMillis() - inFlightSave.startMillis) / MILLIS_PER_SECOND,
+				(float) inFlightSave.snapshotMillis / MILLIS_PER_SECOND
+			);
+		}
+
+		if (inFlightSave.logAlways) {
+			logSaveCounts(inFlightSave.settingsSaveSnapshot);
 		} else {
-			save(fileLoaderSettings, false);
+			inFlightSave.settingsSaveSnapshot.finish();
 		}
 	}
 
-	private <T extends SerializedDataBaseWithId> boolean save(FileLoader<T> fileLoader, boolean useReducedHash) {
-		final IntIntImmutablePair saveCounts = fileLoader.save(useReducedHash);
+	private static boolean logSaveCounts(FileLoader<?>.SaveSnapshot saveSnapshot) {
+		final IntIntImmutablePair saveCounts = saveSnapshot.finish();
 		final int changedCount = saveCounts.leftInt();
 		if (changedCount > 0) {
-			log.info("- Changed {}: {}", fileLoader.key, changedCount);
+			log.info("- Changed {}: {}", saveSnapshot.getKey(), changedCount);
 		}
 		final int deletedCount = saveCounts.rightInt();
 		if (deletedCount > 0) {
-			log.info("- Deleted {}: {}", fileLoader.key, deletedCount);
+			log.info("- Deleted {}: {}", saveSnapshot.getKey(), deletedCount);
 		}
 		return changedCount > 0 || deletedCount > 0;
 	}
 
+	/**
+	 * A save whose files are being written on the save thread.
+	 *
+	 * @param journalGeneration the last journal generation that the save covers
+	 * @param logAlways         whether to log the save even if nothing has changed, as for the final save
+	 */
+	private record InFlightSave(ObjectArrayList<FileLoader<?>.SaveSnapshot> saveSnapshots, FileLoader<Settings>.SaveSnapshot settingsSaveSnapshot, int journalGeneration, boolean logAlways, long startMillis, long snapshotMillis, CompletableFuture<Void> future) {
+	}
+
 	private record FileLoaderHolder(
 		FileLoader<Station> fileLoaderStations,
 		FileLoader<Platform> fileLoaderPlatforms,
@@ -0,0 +1,187 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.*;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Siding;
+import org.mtr.core.data.VehiclePositionIndex;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The per-siding vehicle simulation step of a {@link Simulator} tick, run either serially or split across the common {@link ForkJoinPool}.
+ *
+ * <p>Vehicles only interact through the rails they occupy: the vehicle positions frames are keyed by rail positions and signal block
+ * reservations only spread along connected rails. Sidings are therefore grouped by the rail network they (and their paths) belong to, and
+ * groups never share a rail. Each group is simulated by exactly one worker in the same siding order as the serial loop, so the outcome is
+ * identical to a serial run. Worker output is merged back in a fixed order once all workers have finished.</p>
+ */
+public final class VehicleSimulationPhase {
+
+	private boolean groupsDirty = true;
+	private int groupedSidingCount;
+	private long groupedPathVersions;
+
+	private final Simulator simulator;
+	private final boolean parallel;
+	private final ObjectArrayList<ObjectArrayList<Siding>> groups = new ObjectArrayList<>();
+	private final ObjectArrayList<VehicleSimulationWorker> workers = new ObjectArrayList<>();
+
+	/**
+	 * Groups are handed out to at most this many workers per available processor so that uneven groups still balance out.
+	 */
+	private static final int WORKERS_PER_PROCESSOR = 4;
+
+	VehicleSimulationPhase(Simulator simulator, boolean parallel) {
+		this.simulator = simulator;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Force the siding groups to be rebuilt on the next parallel run. Should be called whenever rails or sidings change.
+	 */
+	public void invalidate() {
+		groupsDirty = true;
+	}
+
+	void simulate(long millisElapsed, ObjectImmutableList<VehiclePositionIndex> vehiclePositions) {
+		if (!parallel) {
+			simulator.sidings.forEach(siding -> siding.simulateVehicles(millisElapsed, vehiclePositions.get(siding.getTransportModeOrdinal())));
+			return;
+		}
+
+		final long pathVersions = getPathVersions();
+		if (groupsDirty || groupedSidingCount != simulator.sidings.size() || groupedPathVersions != pathVersions) {
+			rebuildGroups();
+			groupsDirty = false;
+			groupedSidingCount = simulator.sidings.size();
+			groupedPathVersions = pathVersions;
+		}
+
+		final int workerCount = assignWorkers(vehiclePositions);
+		if (workerCount <= 1) {
+			simulator.sidings.forEach(siding -> siding.simulateVehicles(millisElapsed, vehiclePositions.get(siding.getTransportModeOrdinal())));
+			return;
+		}
+
+		final ObjectArrayList<ForkJoinTask<?>> tasks = new ObjectArrayList<>();
+		for (int i = 0; i < workerCount; i++) {
+			final VehicleSimulationWorker worker = workers.get(i);
+			tasks.add(ForkJoinTask.adapt(() -> worker.simulate(millisElapsed)));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		for (int i = 0; i < workerCount; i++) {
+			workers.get(i).merge(simulator, vehiclePositions);
+		}
+	}
+
+	/**
+	 * Split the groups across workers, always giving the next group to the least loaded worker so the assignment is deterministic.
+	 *
+	 * @return the number of workers in use this tick
+	 */
+	private int assignWorkers(ObjectImmutableList<VehiclePositionIndex> vehiclePositions) {
+		final int workerCount = Math.min(groups.size(), ForkJoinPool.getCommonPoolParallelism() * WORKERS_PER_PROCESSOR);
+		while (workers.size() < workerCount) {
+			workers.add(new VehicleSimulationWorker());
+		}
+		for (int i = 0; i < workerCount; i++) {
+			workers.get(i).reset(vehiclePositions);
+		}
+
+		for (final ObjectArrayList<Siding> group : groups) {
+			VehicleSimulationWorker leastLoadedWorker = workers.getFirst();
+			for (int i = 1; i < workerCount; i++) {
+				final VehicleSimulationWorker worker = workers.get(i);
+				if (worker.getSidingCount() < leastLoadedWorker.getSidingCount()) {
+					leastLoadedWorker = worker;
+				}
+			}
+			leastLoadedWorker.addSidings(group);
+		}
+
+		return workerCount;
+	}
+
+	/**
+	 * Union every rail's two positions and every position along each siding's paths, then group sidings by the resulting network.
+	 * Sidings are added to their groups in {@link Simulator#sidings} iteration order.
+	 */
+	private void rebuildGroups() {
+		final Object2IntOpenHashMap<Position> positionIndices = new Object2IntOpenHashMap<>();
+		final IntArrayList parents = new IntArrayList();
+
+		simulator.positionsToRail.forEach((position1, railConnections) -> {
+			final int index1 = getIndex(positionIndices, parents, position1);
+			railConnections.keySet().forEach(position2 -> union(parents, index1, getIndex(positionIndices, parents, position2)));
+		});
+
+		final ObjectArrayList<IntArrayList> sidingPositionIndices = new ObjectArrayList<>();
+		simulator.sidings.forEach(siding -> {
+			final IntArrayList indices = new IntArrayList();
+			siding.iteratePathPositions(position -> indices.add(getIndex(positionIndices, parents, position)));
+			for (int i = 1; i < indices.size(); i++) {
+				union(parents, indices.getInt(0), indices.getInt(i));
+			}
+			sidingPositionIndices.add(indices);
+		});
+
+		final Int2ObjectLinkedOpenHashMap<ObjectArrayList<Siding>> groupsByRoot = new Int2ObjectLinkedOpenHashMap<>();
+		int sidingIndex = 0;
+		for (final Siding siding : simulator.sidings) {
+			final IntArrayList indices = sidingPositionIndices.get(sidingIndex);
+			// A siding without any positions cannot interact with anything; give it its own group
+			final int root = indices.isEmpty() ? -1 - sidingIndex : find(parents, indices.getInt(0));
+			groupsByRoot.computeIfAbsent(root, key -> new ObjectArrayList<>()).add(siding);
+			sidingIndex++;
+		}
+
+		groups.clear();
+		groups.addAll(groupsByRoot.values());
+	}
+
+	private long getPathVersions() {
+		long pathVersions = 0;
+		for (final Siding siding : simulator.sidings) {
+			pathVersions += siding.getPathVersion();
+		}
+		return pathVersions;
+	}
+
+	private static int getIndex(Object2IntOpenHashMap<Position> positionIndices, IntArrayList parents, Position position) {
+		final int index = positionIndices.getOrDefault(position, -1);
+		if (index >= 0) {
+			return index;
+		} else {
+			final int newIndex = parents.size();
+			positionIndices.put(position, newIndex);
+			parents.add(newIndex);
+			return newIndex;
+		}
+	}
+
+	private static int find(IntArrayList parents, int index) {
+		int root = index;
+		while (parents.getInt(root) != root) {
+			root = parents.getInt(root);
+		}
+		// Path compression
+		int current = index;
+		while (current != root) {
+			final int next = parents.getInt(current);
+			parents.set(current, root);
+			current = next;
+		}
+		return root;
+	}
+
+	private static void union(IntArrayList parents, int index1, int index2) {
+		final int root1 = find(parents, index1);
+		final int root2 = find(parents, index2);
+		if (root1 != root2) {
+			parents.set(Math.max(root1, root2), Math.min(root1, root2));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.jspecify.annotations.Nullable;
+import org.mtr.core.data.*;
+
+/**
+ * Scratch state for one worker of a parallel vehicle simulation phase (see {@link VehicleSimulationPhase}).
+ *
+ * <p>Each worker owns a private "current" vehicle positions frame per transport mode and records the
+ * side effects that would otherwise touch shared simulator state (jammed routes and client updates).
+ * Everything recorded here is merged back into the {@link Simulator} on the simulator thread, in worker
+ * order, once every worker has finished.</p>
+ */
+public final class VehicleSimulationWorker {
+
+	private final ObjectArrayList<Siding> sidings = new ObjectArrayList<>();
+	private final ObjectImmutableList<VehiclePositionIndex> vehiclePositions;
+	private final LongArrayList jammedRouteIds = new LongArrayList();
+	private final ObjectArrayList<ClientVehicleUpdate> clientVehicleUpdates = new ObjectArrayList<>();
+
+	VehicleSimulationWorker() {
+		final ObjectArrayList<VehiclePositionIndex> tempVehiclePositions = new ObjectArrayList<>();
+		for (int i = 0; i < TransportMode.values().length; i++) {
+			tempVehiclePositions.add(new VehiclePositionIndex());
+		}
+		vehiclePositions = new ObjectImmutableList<>(tempVehiclePositions);
+	}
+
+	/**
+	 * Record a jammed route; applied with {@link Simulator#markRouteJammed(long)} when the worker is merged.
+	 */
+	public void markRouteJammed(long routeId) {
+		jammedRouteIds.add(routeId);
+	}
+
+	/**
+	 * Record a vehicle update for a client. The snapshot is taken immediately (as {@link Client#update(Vehicle, boolean, int)} would)
+	 * and handed to the client with {@link Client#applyVehicleFrame(long, Client.VehicleFrame)} when the worker is merged.
+	 */
+	public void updateClient(Client client, Vehicle vehicle, boolean needsUpdate, int pathUpdateIndex) {
+		clientVehicleUpdates.add(new ClientVehicleUpdate(client, vehicle.getId(), client.createVehicleFrame(vehicle, needsUpdate, pathUpdateIndex)));
+	}
+
+	/**
+	 * Workers are kept between ticks so that their vehicle positions frames can be reused. Clear everything from the previous tick and
+	 * share the previous frames of the simulator, which are only read during the phase.
+	 */
+	void reset(ObjectImmutableList<VehiclePositionIndex> sharedVehiclePositions) {
+		sidings.clear();
+		jammedRouteIds.clear();
+		clientVehicleUpdates.clear();
+		for (int i = 0; i < vehiclePositions.size(); i++) {
+			vehiclePositions.get(i).resetFrom(sharedVehiclePositions.get(i));
+		}
+	}
+
+	int getSidingCount() {
+		return sidings.size();
+	}
+
+	void addSidings(ObjectArrayList<Siding> newSidings) {
+		sidings.addAll(newSidings);
+	}
+
+	void simulate(long millisElapsed) {
+		sidings.forEach(siding -> siding.simulateVehicles(millisElapsed, vehiclePositions.get(siding.getTransportModeOrdinal()), this));
+	}
+
+	void merge(Simulator simulator, ObjectImmutableList<VehiclePositionIndex> sharedVehiclePositions) {
+		// Workers never share rail positions, so segments can be moved across as-is
+		for (int i = 0; i < vehiclePositions.size(); i++) {
+			vehiclePositions.get(i).mergeInto(sharedVehiclePositions.get(i));
+		}
+
+		jammedRouteIds.forEach(simulator::markRouteJammed);
+		clientVehicleUpdates.forEach(clientVehicleUpdate -> clientVehicleUpdate.client.applyVehicleFrame(clientVehicleUpdate.vehicleId, clientVehicleUpdate.vehicleFrame));
+	}
+
+	private record ClientVehicleUpdate(Client client, long vehicleId, @Nullable Client.VehicleFrame vehicleFrame) {
+	}
+}
@@ -1,14 +1,19 @@
 package org.mtr.core.data;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mtr.core.operation.DynamicDataResponse;
+import org.mtr.core.operation.VehicleDelta;
+import org.mtr.core.operation.VehicleUpdate;
+import org.mtr.core.servlet.OperationProcessor;
 import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Angle;
 
 import java.nio.file.Paths;
 import java.util.UUID;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 public final class ClientTests {
 
@@ -61,4 +66,93 @@ public final class ClientTests {
 		client.update(passenger, true);
 		client.update(passenger, false);
 	}
+
+	@Test
+	public void testVehicleDeltas() {
+		final Client client = new Client(UUID.randomUUID());
+		client.setSupportsVehicleDeltas(true);
+		final Vehicle vehicle = createVehicle();
+
+		client.update(vehicle, true, 0);
+		final DynamicDataResponse dynamicDataResponse1 = sendUpdates(client);
+		final ObjectArrayList<VehicleUpdate> vehicleUpdates = new ObjectArrayList<>();
+		dynamicDataResponse1.iterateVehiclesToUpdate(vehicleUpdates::add);
+		assertEquals(1, vehicleUpdates.size(), "A new vehicle should be sent in full");
+		assertEquals(1, vehicleUpdates.getFirst().getVehicleExtraData().immutablePath.size());
+
+		client.update(vehicle, true, 2);
+		final DynamicDataResponse dynamicDataResponse2 = sendUpdates(client);
+		final ObjectArrayList<VehicleDelta> vehicleDeltas = new ObjectArrayList<>();
+		dynamicDataResponse2.iterateVehiclesToUpdate(vehicleUpdate -> fail("An existing vehicle should only be sent a delta"));
+		dynamicDataResponse2.iterateVehicleDeltas(vehicleDeltas::add);
+		assertEquals(1, vehicleDeltas.size());
+		assertEquals(vehicle.getId(), vehicleDeltas.getFirst().getVehicleId());
+
+		final VehicleUpdate vehicleUpdate = vehicleDeltas.getFirst().apply(vehicleUpdates.getFirst());
+		assertEquals(vehicle.getId(), vehicleUpdate.getVehicle().getId());
+		assertEquals(3, vehicleUpdate.getVehicleExtraData().immutablePath.size(), "The delta should add the path segments the client doesn't have");
+		assertEquals(20, vehicleUpdate.getVehicleExtraData().immutablePath.get(2).getStartDistance());
+	}
+
+	@Test
+	public void testNoVehicleDeltasWithoutSupport() {
+		final Client client = new Client(UUID.randomUUID());
+		final Vehicle vehicle = createVehicle();
+
+		client.update(vehicle, true, 0);
+		sendUpdates(client);
+		client.update(vehicle, true, 2);
+		assertFullUpdate(sendUpdates(client), "Clients that didn't declare support for deltas should only be sent full updates");
+	}
+
+	@Test
+	public void testFullUpdateAfterDroppedMessage() {
+		final Client client = new Client(UUID.randomUUID());
+		client.setSupportsVehicleDeltas(true);
+		final Vehicle vehicle = createVehicle();
+
+		client.update(vehicle, true, 0);
+		sendUpdates(client);
+
+		// Fill the queue so that the next update is dropped
+		while (simulator.sendMessageS2C(OperationProcessor.VEHICLES_LIFTS, new DynamicDataResponse(client.uuid, simulator), null, null)) {
+		}
+		client.update(vehicle, true, 1);
+		client.sendUpdates(simulator);
+		simulator.processMessagesS2C(queueObject -> {
+		});
+
+		client.update(vehicle, true, 2);
+		assertFullUpdate(sendUpdates(client), "The client never got the dropped update, so it shouldn't be sent a delta");
+	}
+
+	private Vehicle createVehicle() {
+		final ObjectArrayList<VehicleCar> vehicleCars = ObjectArrayList.of(new VehicleCar("car_1", 10, 2, 100, 0, 5, 0.5, 0.5));
+		return new Vehicle(VehicleExtraData.create(
+			0, 0, 10, vehicleCars, createPath(0, 1), createPath(1, 4), createPath(4, 5), createPath(0, 1).getFirst(), false, 0.1, 0.1, false, 0, 0
+		), null, TransportMode.TRAIN, simulator);
+	}
+
+	private DynamicDataResponse sendUpdates(Client client) {
+		client.sendUpdates(simulator);
+		final ObjectArrayList<DynamicDataResponse> dynamicDataResponses = new ObjectArrayList<>();
+		simulator.processMessagesS2C(queueObject -> dynamicDataResponses.add((DynamicDataResponse) queueObject.data));
+		assertEquals(1, dynamicDataResponses.size());
+		return dynamicDataResponses.getFirst();
+	}
+
+	private static void assertFullUpdate(DynamicDataResponse dynamicDataResponse, String message) {
+		final int[] vehicleUpdateCount = {0};
+		dynamicDataResponse.iterateVehiclesToUpdate(vehicleUpdate -> vehicleUpdateCount[0]++);
+		dynamicDataResponse.iterateVehicleDeltas(vehicleDelta -> fail(message));
+		assertEquals(1, vehicleUpdateCount[0], message);
+	}
+
+	private static ObjectArrayList<PathData> createPath(int startIndex, int endIndex) {
+		final ObjectArrayList<PathData> path = new ObjectArrayList<>();
+		for (int i = startIndex; i < endIndex; i++) {
+			path.add(new PathData(null, 0, 0, 0, i * 10, (i + 1) * 10, new Position(i * 10, 0, 0), Angle.E, new Position((i + 1) * 10, 0, 0), Angle.E));
+		}
+		return path;
+	}
 }
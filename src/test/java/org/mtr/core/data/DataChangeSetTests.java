@@ -0,0 +1,95 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Angle;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class DataChangeSetTests {
+
+	@Test
+	public void testRails() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-data-change-set-rails"), false);
+		final Rail rail1 = createRail(new Position(0, 0, 0), new Position(100, 0, 0), false);
+		final Rail rail2 = createRail(new Position(100, 0, 0), new Position(200, 0, 0), true);
+
+		simulator.rails.add(rail1);
+		simulator.sync(new DataChangeSet().update(rail1));
+		assertTrue(simulator.syncAndCheckConsistency());
+
+		simulator.rails.add(rail2);
+		final Platform platform = new Platform(new Position(100, 0, 0), new Position(200, 0, 0), TransportMode.TRAIN, simulator);
+		simulator.platforms.add(platform);
+		simulator.sync(new DataChangeSet().update(rail2).update(platform));
+		assertEquals(2, simulator.positionsToRail.get(new Position(100, 0, 0)).size());
+		assertSame(platform, simulator.platformIdMap.get(platform.getId()));
+		assertTrue(simulator.syncAndCheckConsistency());
+
+		simulator.rails.remove(rail2);
+		simulator.sync(new DataChangeSet().remove(rail2));
+		assertNull(simulator.positionsToRail.get(new Position(200, 0, 0)));
+		assertFalse(simulator.platforms.contains(platform), "A platform without a rail should be removed");
+		assertNull(simulator.platformIdMap.get(platform.getId()));
+		assertTrue(simulator.syncAndCheckConsistency());
+	}
+
+	@Test
+	public void testStations() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-data-change-set-stations"), false);
+		final Rail rail = createRail(new Position(15, 0, 10), new Position(15, 0, 20), true);
+		final Platform platform = new Platform(new Position(15, 0, 10), new Position(15, 0, 20), TransportMode.TRAIN, simulator);
+		simulator.rails.add(rail);
+		simulator.platforms.add(platform);
+		simulator.sync();
+
+		final Station station1 = createStation(simulator, "Station 1", new Position(0, -100, 0), new Position(30, 100, 30));
+		final Station station2 = createStation(simulator, "Station 2", new Position(20, -100, 20), new Position(50, 100, 50));
+		simulator.stations.add(station1);
+		simulator.stations.add(station2);
+		simulator.sync(new DataChangeSet().update(station1).update(station2));
+		assertTrue(station1.connectedStations.contains(station2));
+		assertTrue(station2.connectedStations.contains(station1));
+		assertSame(station1, platform.area);
+		assertTrue(simulator.syncAndCheckConsistency());
+
+		station2.setCorners(new Position(100, -100, 100), new Position(130, 100, 130));
+		simulator.sync(new DataChangeSet().update(station2));
+		assertTrue(station1.connectedStations.isEmpty());
+		assertTrue(station2.connectedStations.isEmpty());
+		assertTrue(simulator.syncAndCheckConsistency());
+
+		simulator.stations.remove(station1);
+		simulator.sync(new DataChangeSet().remove(station1));
+		assertNull(platform.area);
+		assertNull(simulator.stationIdMap.get(station1.getId()));
+		assertTrue(simulator.syncAndCheckConsistency());
+	}
+
+	private static Rail createRail(Position position1, Position position2, boolean isPlatform) {
+		final Angle angle = position1.getX() == position2.getX() ? Angle.S : Angle.E;
+		return isPlatform ? Rail.newPlatformRail(
+				position1, angle,
+				position2, angle,
+				Rail.Shape.QUADRATIC, 0, 0,
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+				new ObjectArrayList<>(), TransportMode.TRAIN
+		) : Rail.newRail(
+				position1, angle,
+				position2, angle,
+				Rail.Shape.QUADRATIC, 0, 0,
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+				new ObjectArrayList<>(), 80, 80, false, false, true, false, true, TransportMode.TRAIN
+		);
+	}
+
+	private static Station createStation(Simulator simulator, String name, Position corner1, Position corner2) {
+		final Station station = new Station(simulator);
+		station.setName(name);
+		station.setCorners(corner1, corner2);
+		return station;
+	}
+}
@@ -0,0 +1,101 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.Main;
+import org.mtr.core.operation.ArrivalResponse;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Angle;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The route to sidings, vehicle to siding and vehicles at platforms caches should always match a scan over every siding.
+ */
+public final class SimulatorIndexTests {
+
+	private static final int LINE_COUNT = 4;
+	private static final int TICKS = 100;
+
+	@Test
+	public void testIndexesMatchScan() throws InterruptedException {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-simulator-indexes"), false);
+		final ObjectArrayList<Depot> depots = new ObjectArrayList<>();
+		for (int i = 0; i < LINE_COUNT; i++) {
+			depots.add(TestUtilities.addLine(simulator, "Line " + i, i * 100L, 2));
+		}
+		simulator.sync();
+		TestUtilities.generateAndDeployDepots(simulator, depots);
+		assertRouteIdToSidings(simulator);
+
+		for (int i = 0; i < TICKS; i++) {
+			Thread.sleep(Main.MILLISECONDS_PER_TICK);
+			simulator.tick();
+			assertVehicleIdToSiding(simulator);
+			assertVehiclesAtPlatforms(simulator);
+		}
+		assertFalse(simulator.vehicleIdToSiding.isEmpty(), "Vehicles should have been deployed");
+
+		// Add a second siding to the first depot
+		final Rail rail = Rail.newSidingRail(new Position(0, 0, 5), Angle.E, new Position(100, 0, 5), Angle.E, Rail.Shape.QUADRATIC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new ObjectArrayList<>(), TransportMode.TRAIN);
+		final Siding siding = new Siding(new Position(0, 0, 5), new Position(100, 0, 5), 100, TransportMode.TRAIN, simulator);
+		simulator.rails.add(rail);
+		simulator.sidings.add(siding);
+		simulator.sync(new DataChangeSet().update(rail).update(siding));
+		assertSame(depots.getFirst(), siding.area);
+		assertRouteIdToSidings(simulator);
+
+		// Remove the siding of the last depot along with its vehicles
+		final Siding removedSiding = depots.getLast().savedRails.iterator().next();
+		simulator.sidings.remove(removedSiding);
+		simulator.sync(new DataChangeSet().remove(removedSiding));
+		assertRouteIdToSidings(simulator);
+		simulator.tick();
+		assertVehicleIdToSiding(simulator);
+		assertFalse(simulator.vehicleIdToSiding.containsValue(removedSiding));
+	}
+
+	private static void assertRouteIdToSidings(Simulator simulator) {
+		final Long2ObjectOpenHashMap<ObjectOpenHashSet<Siding>> routeIdToSidings = new Long2ObjectOpenHashMap<>();
+		simulator.sidings.forEach(siding -> {
+			if (siding.area != null) {
+				siding.area.routes.forEach(route -> routeIdToSidings.computeIfAbsent(route.getId(), key -> new ObjectOpenHashSet<>()).add(siding));
+			}
+		});
+
+		assertEquals(routeIdToSidings.keySet(), simulator.routeIdToSidings.keySet());
+		simulator.routeIdToSidings.forEach((routeId, sidings) -> {
+			assertEquals(routeIdToSidings.get(routeId.longValue()), new ObjectOpenHashSet<>(sidings));
+			assertEquals(sidings.size(), new ObjectOpenHashSet<>(sidings).size(), "A siding should only be listed once per route");
+		});
+	}
+
+	private static void assertVehicleIdToSiding(Simulator simulator) {
+		final Long2ObjectOpenHashMap<Siding> vehicleIdToSiding = new Long2ObjectOpenHashMap<>();
+		simulator.sidings.forEach(siding -> siding.iterateVehicles(vehicle -> vehicleIdToSiding.put(vehicle.getId(), siding)));
+		assertEquals(vehicleIdToSiding, simulator.vehicleIdToSiding);
+	}
+
+	/**
+	 * A vehicle is at a platform if an arrival for the route is in progress right now.
+	 */
+	private static void assertVehiclesAtPlatforms(Simulator simulator) {
+		final long currentMillis = simulator.getCurrentMillis();
+		simulator.sidings.forEach(siding -> simulator.platforms.forEach(platform -> {
+			final ObjectArrayList<ArrivalResponse> arrivalResponses = new ObjectArrayList<>();
+			siding.getArrivals(currentMillis, platform, Integer.MAX_VALUE, arrivalResponses);
+			simulator.routes.forEach(route -> {
+				final boolean expected = arrivalResponses.stream().anyMatch(arrivalResponse -> arrivalResponse.getRouteId() == route.getId() && arrivalResponse.getArrival() <= currentMillis && arrivalResponse.getDeparture() >= currentMillis);
+				// Query twice so that the second lookup is answered from the cache
+				for (int i = 0; i < 2; i++) {
+					assertEquals(expected, siding.getVehicleDetailsAtPlatform(route.getId(), platform.getId()).rightBoolean(), String.format("%s at %s on %s", siding.getName(), Utilities.numberToPaddedHexString(platform.getId()), route.getName()));
+				}
+			});
+		}));
+	}
+}
@@ -1,6 +1,7 @@
 package org.mtr.core.data;
 
 import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -13,21 +14,86 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jspecify.annotations.Nullable;
 import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Angle;
 import org.mtr.core.tool.Utilities;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 public interface TestUtilities {
 
 	Path TEST_DIRECTORY = Paths.get("build/test-data");
 	int PORT = 8889; // We don't want to conflict with Minecraft Transit Railway using port 8888 by default
 	Logger LOGGER = LogManager.getLogger(TestUtilities.class);
+	int MAX_GENERATION_TICKS = 10000;
 
 	static Simulator getDefaultSimulator() {
 		return new Simulator("test", new String[]{"test"}, TEST_DIRECTORY, false);
 	}
 
+	/**
+	 * Lay out a straight line along the x-axis at {@code z}: a siding in its own depot, followed by two platforms served by one route. Vehicles
+	 * turn back at the second platform. Lines at least 100 blocks apart form separate rail networks.
+	 */
+	static Depot addLine(Simulator simulator, String name, long z, int maxVehicles) {
+		final Position sidingPosition1 = new Position(0, 0, z);
+		final Position sidingPosition2 = new Position(100, 0, z);
+		final Position platform1Position1 = new Position(200, 0, z);
+		final Position platform1Position2 = new Position(300, 0, z);
+		final Position platform2Position1 = new Position(400, 0, z);
+		final Position platform2Position2 = new Position(500, 0, z);
+		simulator.rails.add(Rail.newSidingRail(sidingPosition1, Angle.E, sidingPosition2, Angle.E, Rail.Shape.QUADRATIC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new ObjectArrayList<>(), TransportMode.TRAIN));
+		simulator.rails.add(createLineRail(sidingPosition2, platform1Position1));
+		simulator.rails.add(Rail.newPlatformRail(platform1Position1, Angle.E, platform1Position2, Angle.E, Rail.Shape.QUADRATIC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new ObjectArrayList<>(), TransportMode.TRAIN));
+		simulator.rails.add(createLineRail(platform1Position2, platform2Position1));
+		simulator.rails.add(Rail.newPlatformRail(platform2Position1, Angle.E, platform2Position2, Angle.E, Rail.Shape.QUADRATIC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new ObjectArrayList<>(), TransportMode.TRAIN));
+
+		final Siding siding = new Siding(sidingPosition1, sidingPosition2, 100, TransportMode.TRAIN, simulator);
+		siding.setName(name);
+		siding.setMaxVehicles(maxVehicles);
+		siding.setVehicleCars(ObjectArrayList.of(new VehicleCar("test", 20, 2, 100, -5, 5, 0, 0)));
+		// Tests may not advance the clock, so vehicles mustn't wait at platforms for their scheduled departure
+		siding.setEarlyVehicleIncreaseDwellTime(false);
+		simulator.sidings.add(siding);
+
+		final Platform platform1 = new Platform(platform1Position1, platform1Position2, TransportMode.TRAIN, simulator);
+		final Platform platform2 = new Platform(platform2Position1, platform2Position2, TransportMode.TRAIN, simulator);
+		simulator.platforms.add(platform1);
+		simulator.platforms.add(platform2);
+
+		final Route route = new Route(TransportMode.TRAIN, simulator);
+		route.setName(name);
+		route.getRoutePlatforms().add(new RoutePlatformData(platform1.getId()));
+		route.getRoutePlatforms().add(new RoutePlatformData(platform2.getId()));
+		simulator.routes.add(route);
+
+		final Depot depot = new Depot(TransportMode.TRAIN, simulator);
+		depot.setName(name);
+		depot.setCorners(new Position(-10, -10, z - 10), new Position(110, 10, z + 10));
+		depot.getRouteIds().add(route.getId());
+		for (int i = 0; i < Utilities.HOURS_PER_DAY; i++) {
+			depot.setFrequency(i, 8);
+		}
+		simulator.depots.add(depot);
+		return depot;
+	}
+
+	/**
+	 * Generate the paths of the depots and deploy a day of departures, so that vehicles are already running afterwards. The simulator must
+	 * have been synced.
+	 */
+	static void generateAndDeployDepots(Simulator simulator, ObjectArrayList<Depot> depots) {
+		Depot.generateDepots(simulator, depots);
+		for (int i = 0; i < MAX_GENERATION_TICKS && depots.stream().anyMatch(depot -> depot.getLastGeneratedStatus() != Depot.GeneratedStatus.SUCCESSFUL); i++) {
+			simulator.depots.forEach(Depot::tick);
+			simulator.sidings.forEach(Siding::tick);
+		}
+		depots.forEach(depot -> assertEquals(Depot.GeneratedStatus.SUCCESSFUL, depot.getLastGeneratedStatus(), "Paths should be generated for " + depot.getName()));
+		simulator.instantDeployDepots(depots);
+	}
+
 	static JsonObject sendHttpDataRequest(String endpoint, JsonObject bodyObject) {
 		return sendHttpRequest(String.format("http://localhost:%s/mtr/api/data/%s", PORT, endpoint), bodyObject);
 	}
@@ -55,4 +121,8 @@ public interface TestUtilities {
 
 		return responseObject;
 	}
+
+	private static Rail createLineRail(Position position1, Position position2) {
+		return Rail.newRail(position1, Angle.E, position2, Angle.E, Rail.Shape.QUADRATIC, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new ObjectArrayList<>(), 80, 80, false, false, true, false, true, TransportMode.TRAIN);
+	}
 }
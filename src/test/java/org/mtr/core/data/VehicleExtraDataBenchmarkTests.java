@@ -0,0 +1,71 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.tool.Angle;
+import org.mtr.core.tool.Utilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Copying vehicle extra data directly against the serialisation round trip it replaced. Only run with
+ * {@code ./gradlew test -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public final class VehicleExtraDataBenchmarkTests {
+
+	private static final int PATH_LENGTH = 200;
+	private static final int COPY_COUNT = 10_000;
+
+	@Test
+	public void benchmarkCopy() {
+		final ObjectArrayList<VehicleCar> vehicleCars = ObjectArrayList.of(new VehicleCar("car_1", 10, 2, 100, 0, 5, 0.5, 0.5));
+		final VehicleExtraData vehicleExtraData = VehicleExtraData.create(0, 0, 10, vehicleCars, createPath(0, 1), createPath(1, PATH_LENGTH - 1), createPath(PATH_LENGTH - 1, PATH_LENGTH), createPath(0, 1).getFirst(), false, 0.1, 0.1, false, 0, 0);
+
+		// Warm up both implementations before measuring
+		runRoundTrip(vehicleExtraData);
+		runCopy(vehicleExtraData);
+
+		final long roundTripMillis = Utilities.measureDuration(() -> {
+			assertEquals(COPY_COUNT, runRoundTrip(vehicleExtraData));
+		});
+		final long copyMillis = Utilities.measureDuration(() -> {
+			assertEquals(COPY_COUNT, runCopy(vehicleExtraData));
+		});
+		TestUtilities.LOGGER.info("{} copies with {} path segments: serialisation round trip in {} ms, direct copy in {} ms", COPY_COUNT, PATH_LENGTH, roundTripMillis, copyMillis);
+	}
+
+	/**
+	 * The previous implementation serialised the whole object to JSON and read it back. Trimming the path afterwards is left out, since it
+	 * cost about the same as building the trimmed path of the direct copy.
+	 */
+	private static int runRoundTrip(VehicleExtraData vehicleExtraData) {
+		int count = 0;
+		for (int i = 0; i < COPY_COUNT; i++) {
+			if (new VehicleExtraData(new JsonReader(Utilities.getJsonObjectFromData(vehicleExtraData))) != vehicleExtraData) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static int runCopy(VehicleExtraData vehicleExtraData) {
+		int count = 0;
+		for (int i = 0; i < COPY_COUNT; i++) {
+			if (vehicleExtraData.copy(i % PATH_LENGTH) != vehicleExtraData) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static ObjectArrayList<PathData> createPath(int startIndex, int endIndex) {
+		final ObjectArrayList<PathData> path = new ObjectArrayList<>();
+		for (int i = startIndex; i < endIndex; i++) {
+			path.add(new PathData(null, 0, 0, 0, i * 10, (i + 1) * 10, new Position(i * 10, 0, 0), Angle.E, new Position((i + 1) * 10, 0, 0), Angle.E));
+		}
+		return path;
+	}
+}
@@ -0,0 +1,65 @@
+package org.mtr.core.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Angle;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class VehicleExtraDataTests {
+
+	@Test
+	public void testCopy() {
+		final VehicleExtraData vehicleExtraData = createVehicleExtraData();
+		final JsonObject expectedObject = Utilities.getJsonObjectFromData(vehicleExtraData);
+		final JsonArray pathArray = expectedObject.getAsJsonArray("path");
+
+		// A copy should serialise exactly as the original apart from the path
+		final JsonObject copyObject1 = Utilities.getJsonObjectFromData(vehicleExtraData.copy(1));
+		final JsonArray expectedPathArray1 = new JsonArray();
+		expectedPathArray1.add(pathArray.get(1));
+		expectedObject.add("path", expectedPathArray1);
+		assertEquals(expectedObject, copyObject1);
+
+		// If the path reaches the end, the first path segment is sent again at the start
+		final JsonObject copyObject2 = Utilities.getJsonObjectFromData(vehicleExtraData.copy(4));
+		final JsonArray expectedPathArray2 = new JsonArray();
+		expectedPathArray2.add(pathArray.get(0));
+		expectedPathArray2.add(pathArray.get(4));
+		expectedObject.add("path", expectedPathArray2);
+		assertEquals(expectedObject, copyObject2);
+
+		assertEquals(expectedObject, Utilities.getJsonObjectFromData(new VehicleExtraData(new JsonReader(copyObject2))), "The copy should survive serialisation");
+	}
+
+	@Test
+	public void testSnapshotIsShared() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-vehicle-extra-data"), false);
+		final Vehicle vehicle = new Vehicle(createVehicleExtraData(), null, TransportMode.TRAIN, simulator);
+		final VehicleExtraData snapshot = vehicle.getVehicleExtraDataSnapshot(1);
+		assertSame(snapshot, vehicle.getVehicleExtraDataSnapshot(1), "Clients updated in the same tick should share one copy");
+		assertNotSame(snapshot, vehicle.getVehicleExtraDataSnapshot(2));
+		vehicle.simulate(0, null, null);
+		assertNotSame(snapshot, vehicle.getVehicleExtraDataSnapshot(1), "Simulating the vehicle should clear the copy");
+	}
+
+	private static VehicleExtraData createVehicleExtraData() {
+		final ObjectArrayList<VehicleCar> vehicleCars = ObjectArrayList.of(new VehicleCar("car_1", 10, 2, 100, 0, 5, 0.5, 0.5));
+		return VehicleExtraData.create(0, 0, 10, vehicleCars, createPath(0, 1), createPath(1, 4), createPath(4, 5), createPath(0, 1).getFirst(), false, 0.1, 0.1, false, 0, 0);
+	}
+
+	private static ObjectArrayList<PathData> createPath(int startIndex, int endIndex) {
+		final ObjectArrayList<PathData> path = new ObjectArrayList<>();
+		for (int i = startIndex; i < endIndex; i++) {
+			path.add(new PathData(null, 0, 0, 0, i * 10, (i + 1) * 10, new Position(i * 10, 0, 0), Angle.E, new Position((i + 1) * 10, 0, 0), Angle.E));
+		}
+		return path;
+	}
+}
@@ -0,0 +1,81 @@
+package org.mtr.core.data;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mtr.core.tool.Utilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Vehicle position writes and lookups of the occupancy index against the nested tree maps it replaced. Only run with
+ * {@code ./gradlew test -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public final class VehiclePositionIndexBenchmarkTests {
+
+	private static final int SEGMENT_COUNT = 50_000;
+	private static final int TICKS = 200;
+
+	@Test
+	public void benchmarkVehiclePositions() {
+		final ObjectArrayList<Position> positions = new ObjectArrayList<>();
+		for (int i = 0; i <= SEGMENT_COUNT; i++) {
+			positions.add(new Position(i * 16L, 64, (i % 100) * 16L));
+		}
+
+		// Warm up both implementations before measuring
+		runTreeMaps(positions);
+		runIndex(positions);
+
+		final long treeMapsMillis = Utilities.measureDuration(() -> {
+			assertEquals(SEGMENT_COUNT, runTreeMaps(positions));
+		});
+		final long indexMillis = Utilities.measureDuration(() -> {
+			assertEquals(SEGMENT_COUNT, runIndex(positions));
+		});
+		TestUtilities.LOGGER.info("{} segments for {} ticks: nested tree maps in {} ms, occupancy index in {} ms", SEGMENT_COUNT, TICKS, treeMapsMillis, indexMillis);
+	}
+
+	/**
+	 * The previous implementation: a new pair of nested tree maps every tick.
+	 */
+	private static int runTreeMaps(ObjectArrayList<Position> positions) {
+		Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>> previousPositions = new Object2ObjectAVLTreeMap<>();
+		int found = 0;
+		for (int tick = 0; tick < TICKS; tick++) {
+			final Object2ObjectAVLTreeMap<Position, Object2ObjectAVLTreeMap<Position, VehiclePosition>> currentPositions = new Object2ObjectAVLTreeMap<>();
+			found = 0;
+			for (int i = 0; i < SEGMENT_COUNT; i++) {
+				if (Data.tryGet(previousPositions, positions.get(i), positions.get(i + 1)) != null) {
+					found++;
+				}
+				final long id = i;
+				Data.put(currentPositions, positions.get(i), positions.get(i + 1), vehiclePosition -> {
+					final VehiclePosition newVehiclePosition = vehiclePosition == null ? new VehiclePosition() : vehiclePosition;
+					newVehiclePosition.addSegment(0, 1, id);
+					return newVehiclePosition;
+				}, Object2ObjectAVLTreeMap::new);
+			}
+			previousPositions = currentPositions;
+		}
+		return found;
+	}
+
+	private static int runIndex(ObjectArrayList<Position> positions) {
+		final VehiclePositionIndex vehiclePositionIndex = new VehiclePositionIndex();
+		int found = 0;
+		for (int tick = 0; tick < TICKS; tick++) {
+			vehiclePositionIndex.rotate();
+			found = 0;
+			for (int i = 0; i < SEGMENT_COUNT; i++) {
+				if (vehiclePositionIndex.getPrevious(positions.get(i), positions.get(i + 1)) != null) {
+					found++;
+				}
+				vehiclePositionIndex.getOrCreateCurrent(positions.get(i), positions.get(i + 1)).addSegment(0, 1, i);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,62 @@
+package org.mtr.core.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class VehiclePositionIndexTests {
+
+	@Test
+	public void testLookupIsExact() {
+		final VehiclePositionIndex vehiclePositionIndex = new VehiclePositionIndex();
+		vehiclePositionIndex.getOrCreateCurrent(new Position(0, 0, 0), new Position(10, 0, 0)).addSegment(0, 5, 1);
+
+		assertNotNull(vehiclePositionIndex.getCurrent(new Position(0, 0, 0), new Position(10, 0, 0)));
+		assertNull(vehiclePositionIndex.getCurrent(new Position(10, 0, 0), new Position(0, 0, 0)), "Position order should matter");
+		// Same packed key as (0, 0, 0) since only the low 26 bits of x are packed
+		assertNull(vehiclePositionIndex.getCurrent(new Position(1L << 26, 0, 0), new Position(10, 0, 0)), "Positions outside the packed range should not alias");
+		assertNull(vehiclePositionIndex.getPrevious(new Position(0, 0, 0), new Position(10, 0, 0)));
+	}
+
+	@Test
+	public void testRotate() {
+		final VehiclePositionIndex vehiclePositionIndex = new VehiclePositionIndex();
+		final Position position1 = new Position(0, 64, 0);
+		final Position position2 = new Position(0, 64, 10);
+		vehiclePositionIndex.getOrCreateCurrent(position1, position2).addSegment(2, 4, 1);
+
+		vehiclePositionIndex.rotate();
+		final VehiclePosition previousVehiclePosition = vehiclePositionIndex.getPrevious(position1, position2);
+		assertNotNull(previousVehiclePosition);
+		assertEquals(1, previousVehiclePosition.getClosestOverlap(1, 5, false, 2), 1e-10);
+		assertNull(vehiclePositionIndex.getCurrent(position1, position2));
+
+		vehiclePositionIndex.rotate();
+		assertNull(vehiclePositionIndex.getPrevious(position1, position2));
+		assertNull(vehiclePositionIndex.getCurrent(position1, position2));
+		assertEquals(-1, vehiclePositionIndex.getOrCreateCurrent(position1, position2).getClosestOverlap(0, 10, false, 2), 1e-10, "Reused vehicle positions should be cleared");
+	}
+
+	@Test
+	public void testGrowAndMerge() {
+		final VehiclePositionIndex vehiclePositionIndex1 = new VehiclePositionIndex();
+		final VehiclePositionIndex vehiclePositionIndex2 = new VehiclePositionIndex();
+		final int segmentCount = 10000;
+
+		for (int i = 0; i < segmentCount; i++) {
+			vehiclePositionIndex1.getOrCreateCurrent(new Position(i, 0, -i), new Position(i + 1, 0, -i)).addSegment(0, 1, i);
+		}
+
+		vehiclePositionIndex1.mergeInto(vehiclePositionIndex2);
+		final int[] count = {0};
+		vehiclePositionIndex2.iterateCurrent((position1, position2) -> count[0]++);
+		assertEquals(segmentCount, count[0]);
+
+		for (int i = 0; i < segmentCount; i++) {
+			final VehiclePosition vehiclePosition = vehiclePositionIndex2.getCurrent(new Position(i, 0, -i), new Position(i + 1, 0, -i));
+			assertNotNull(vehiclePosition);
+			assertEquals(0, vehiclePosition.getClosestOverlap(0, 1, false, -1), 1e-10);
+			assertEquals(-1, vehiclePosition.getClosestOverlap(0, 1, false, i), 1e-10, "A vehicle should not be blocked by itself");
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.PassengerDirection;
+import org.mtr.core.data.Platform;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ConnectionScanAlgorithmProcessorTests {
+
+	private static final int GRID_SIZE = 20;
+	private static final int GRID_SPACING = 100;
+	private static final int REQUEST_COUNT = 200;
+	private static final long OFFSET = 100;
+	private static final long DURATION = 1000;
+
+	@Test
+	public void testShardedMatchesSerial() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-connection-scan-algorithm"), false);
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int z = 0; z < GRID_SIZE; z++) {
+				final Platform platform = new Platform(new Position((long) x * GRID_SPACING, 0, (long) z * GRID_SPACING), new Position((long) x * GRID_SPACING + 10, 0, (long) z * GRID_SPACING), TransportMode.TRAIN, simulator);
+				simulator.platforms.add(platform);
+				simulator.platformIdMap.put(platform.getId(), platform);
+			}
+		}
+
+		final DirectionsSnapshot directionsSnapshot = DirectionsSnapshot.create(simulator);
+		final Graph graph = new Graph(directionsSnapshot);
+		final Timetable timetable = Timetable.create(directionsSnapshot);
+
+		final ObjectArrayList<String> serialDirections = findDirections(new ConnectionScanAlgorithmProcessor(directionsSnapshot, graph, timetable, ForkJoinPool.commonPool(), Integer.MAX_VALUE));
+		final ObjectArrayList<String> shardedDirections = findDirections(new ConnectionScanAlgorithmProcessor(directionsSnapshot, graph, timetable, ForkJoinPool.commonPool(), 1));
+		assertEquals(REQUEST_COUNT, serialDirections.size());
+		assertTrue(serialDirections.stream().anyMatch(directions -> !directions.isEmpty()), "Some requests should be within walking distance");
+		assertEquals(serialDirections, shardedDirections);
+	}
+
+	@Test
+	public void testRouteConnections() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-connection-scan-algorithm-route"), false);
+		final Route route = new Route(TransportMode.TRAIN, simulator);
+		final long millis = System.currentTimeMillis() + Utilities.MILLIS_PER_HOUR;
+		final Position startPosition = new Position(0, 0, 0);
+		// Too far to walk, so the route has to be taken
+		final Position endPosition = new Position(2000, 0, 0);
+		final long firstDeparture = millis + Utilities.MILLIS_PER_HOUR;
+		final long secondDeparture = millis + 2 * Utilities.MILLIS_PER_HOUR;
+
+		final DirectionsSnapshot directionsSnapshot = new DirectionsSnapshot(
+			millis,
+			new long[]{1, 2},
+			new Position[]{startPosition, endPosition},
+			new String[]{"A", "B"},
+			new String[]{"", ""},
+			new ObjectImmutableList<>(ObjectArrayList.of(new DirectionsSnapshot.RouteSnapshot(route, false, new long[]{OFFSET}, new long[]{DURATION}, new int[]{0}, new int[]{1}, new long[]{firstDeparture, secondDeparture}))),
+			new LongOpenHashSet()
+		);
+
+		// The first request catches the first departure and the second request is too late for it
+		final long[] requestStartTimes = {millis, firstDeparture};
+		final long[] expectedRideStartTimes = {firstDeparture - OFFSET, secondDeparture - OFFSET};
+		final ObjectArrayList<ObjectArrayList<PassengerDirection>> passengerDirectionsForRequests = new ObjectArrayList<>();
+		passengerDirectionsForRequests.size(requestStartTimes.length);
+		final ObjectArrayList<QueuedRequest> queuedRequests = new ObjectArrayList<>();
+		for (int i = 0; i < requestStartTimes.length; i++) {
+			final int requestIndex = i;
+			queuedRequests.add(new QueuedRequest(startPosition, endPosition, requestStartTimes[i], null, passengerDirections -> passengerDirectionsForRequests.set(requestIndex, passengerDirections)));
+		}
+		new ConnectionScanAlgorithmProcessor(directionsSnapshot, new Graph(directionsSnapshot), Timetable.create(directionsSnapshot), ForkJoinPool.commonPool()).process(queuedRequests, 0, 0).forEach(Runnable::run);
+
+		for (int i = 0; i < requestStartTimes.length; i++) {
+			assertNotNull(passengerDirectionsForRequests.get(i));
+			final long expectedRideStartTime = expectedRideStartTimes[i];
+			assertTrue(passengerDirectionsForRequests.get(i).stream().anyMatch(passengerDirection -> passengerDirection.getRouteId() == route.getId()
+				&& passengerDirection.getStartPlatformId() == 1
+				&& passengerDirection.getEndPlatformId() == 2
+				&& passengerDirection.getStartTime() == expectedRideStartTime
+				&& passengerDirection.getEndTime() == expectedRideStartTime + DURATION
+			), String.format("Request %s should ride the route from the first platform to the second", i));
+		}
+	}
+
+	private static ObjectArrayList<String> findDirections(ConnectionScanAlgorithmProcessor connectionScanAlgorithmProcessor) {
+		// Far enough in the future that the current time is never used instead
+		final long startTime = System.currentTimeMillis() + Utilities.MILLIS_PER_DAY;
+		final String[] directionsForRequests = new String[REQUEST_COUNT];
+		final ObjectArrayList<QueuedRequest> queuedRequests = new ObjectArrayList<>();
+
+		for (int i = 0; i < REQUEST_COUNT; i++) {
+			final int requestIndex = i;
+			final Position startPosition = new Position((i * 37L) % (GRID_SIZE * GRID_SPACING), 0, (i * 53L) % (GRID_SIZE * GRID_SPACING));
+			final Position endPosition = new Position(startPosition.getX() + (i % 7) * 60L, 0, startPosition.getZ() + (i % 5) * 60L);
+			queuedRequests.add(new QueuedRequest(startPosition, endPosition, startTime, null, passengerDirections -> {
+				final StringBuilder stringBuilder = new StringBuilder();
+				for (final PassengerDirection passengerDirection : passengerDirections) {
+					stringBuilder.append(String.format("%s %s %s %s %s;", passengerDirection.getRouteId(), passengerDirection.getStartPlatformId(), passengerDirection.getEndPlatformId(), passengerDirection.getStartTime() - startTime, passengerDirection.getEndTime() - startTime));
+				}
+				directionsForRequests[requestIndex] = stringBuilder.toString();
+			}));
+		}
+
+		final ObjectArrayList<Runnable> callbacks = connectionScanAlgorithmProcessor.process(queuedRequests, 0, 0);
+		assertEquals(REQUEST_COUNT, callbacks.size());
+		callbacks.forEach(Runnable::run);
+
+		final ObjectArrayList<String> directions = new ObjectArrayList<>();
+		for (final String directionsForRequest : directionsForRequests) {
+			assertNotNull(directionsForRequest);
+			directions.add(directionsForRequest);
+		}
+		return directions;
+	}
+}
@@ -0,0 +1,82 @@
+package org.mtr.core.directions;
+
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Platform;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.map.DirectionsRequest;
+import org.mtr.core.simulation.Simulator;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class DirectionsFinderTests {
+
+	@Test
+	public void testCache() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-directions-finder"), false);
+		final Platform platform = new Platform(new Position(0, 0, 0), new Position(10, 0, 0), TransportMode.TRAIN, simulator);
+		simulator.platforms.add(platform);
+		simulator.platformIdMap.put(platform.getId(), platform);
+		final DirectionsFinder directionsFinder = simulator.directionsFinder;
+		final long startTime = simulator.getCurrentMillis();
+
+		// The first request takes the snapshot that later requests are keyed with
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+		}));
+		directionsFinder.tick();
+		assertEquals(0, directionsFinder.getCacheHitCount() + directionsFinder.getCacheMissCount(), "Requests before the first snapshot should bypass the cache");
+
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+		}));
+		directionsFinder.addRequest(new DirectionsRequest(new Position(5, 0, 0), new Position(10, 0, 5), startTime, null, passengerDirections -> {
+		}));
+		assertEquals(1, directionsFinder.getCacheMissCount());
+		assertEquals(1, directionsFinder.getCacheHitCount(), "Requests near the same platforms should share one in-flight request");
+
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, directionsResponse -> {
+		}, null));
+		assertEquals(2, directionsFinder.getCacheHitCount() + directionsFinder.getCacheMissCount(), "Requests for full responses should bypass the cache");
+
+		directionsFinder.invalidateGraph();
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+		}));
+		assertEquals(2, directionsFinder.getCacheMissCount(), "Requests queued before invalidating shouldn't be shared");
+		directionsFinder.stop();
+	}
+
+	@Test
+	public void testFailedBatch() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-directions-finder-failed"), false);
+		final Platform platform = new Platform(new Position(0, 0, 0), new Position(10, 0, 0), TransportMode.TRAIN, simulator);
+		simulator.platforms.add(platform);
+		simulator.platformIdMap.put(platform.getId(), platform);
+		final DirectionsFinder directionsFinder = simulator.directionsFinder;
+		final long startTime = simulator.getCurrentMillis();
+		final int[] answeredCount = new int[1];
+
+		// Once stopped, every batch is rejected
+		directionsFinder.stop();
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+			assertTrue(passengerDirections.isEmpty());
+			answeredCount[0]++;
+		}));
+		directionsFinder.tick();
+		assertEquals(1, answeredCount[0], "Rejected requests should be answered");
+
+		for (int i = 0; i < 2; i++) {
+			directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+				assertTrue(passengerDirections.isEmpty());
+				answeredCount[0]++;
+			}));
+		}
+		assertEquals(1, directionsFinder.getCacheHitCount());
+		directionsFinder.tick();
+		assertEquals(3, answeredCount[0], "Requests sharing a rejected request should be answered");
+
+		directionsFinder.addRequest(new DirectionsRequest(new Position(0, 0, 0), new Position(10, 0, 0), startTime, null, passengerDirections -> {
+		}));
+		assertEquals(2, directionsFinder.getCacheMissCount(), "Failed requests should neither be cached nor shared");
+	}
+}
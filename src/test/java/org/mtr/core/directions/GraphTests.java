@@ -0,0 +1,59 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.simulation.Simulator;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class GraphTests {
+
+	@Test
+	public void testConnections() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-graph"), false);
+		final Route route = new Route(TransportMode.CABLE_CAR, simulator);
+
+		final Graph graph1 = new Graph(createDirectionsSnapshot(ObjectArrayList.of()));
+		assertEquals(2, graph1.getConnectionCount(), "Only the two nearby platforms should be connected by walking");
+		assertArrayEquals(new int[]{0, 1, 2, 2}, graph1.offsets);
+		assertArrayEquals(new int[]{1, 0}, graph1.endPlatformIndices);
+		assertArrayEquals(new long[]{100, 100}, graph1.walkingDistances);
+		assertNull(graph1.routes[0]);
+
+		final Graph graph2 = new Graph(createDirectionsSnapshot(ObjectArrayList.of(new DirectionsSnapshot.RouteSnapshot(
+			route,
+			true,
+			new long[]{0},
+			new long[]{60000},
+			new int[]{0},
+			new int[]{2},
+			new long[0]
+		))), graph1);
+		assertEquals(3, graph2.getConnectionCount());
+		assertArrayEquals(new int[]{0, 2, 3, 3}, graph2.offsets);
+		assertArrayEquals(new int[]{1, 2, 0}, graph2.endPlatformIndices);
+		assertEquals(60000, graph2.durations[1]);
+		assertEquals(0, graph2.walkingDistances[1]);
+		assertSame(route, graph2.routes[1]);
+		assertTrue(graph2.matches(createDirectionsSnapshot(ObjectArrayList.of())));
+	}
+
+	private static DirectionsSnapshot createDirectionsSnapshot(ObjectArrayList<DirectionsSnapshot.RouteSnapshot> routes) {
+		return new DirectionsSnapshot(
+			0,
+			new long[]{1, 2, 3},
+			new Position[]{new Position(0, 0, 0), new Position(100, 0, 0), new Position(5000, 0, 0)},
+			new String[]{"A", "B", "C"},
+			new String[]{"", "", ""},
+			new ObjectImmutableList<>(routes),
+			new LongOpenHashSet()
+		);
+	}
+}
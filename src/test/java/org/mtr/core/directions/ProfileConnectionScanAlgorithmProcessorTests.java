@@ -0,0 +1,150 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.map.DirectionsConnection;
+import org.mtr.core.map.DirectionsJourney;
+import org.mtr.core.map.DirectionsProfileResponse;
+import org.mtr.core.map.DirectionsResponse;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ProfileConnectionScanAlgorithmProcessorTests {
+
+	private static final long OFFSET = 100;
+	private static final long FAST_DURATION = 1000;
+	private static final long SLOW_DURATION = 2 * Utilities.MILLIS_PER_HOUR;
+
+	@Test
+	public void testParetoJourneys() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-profile-connection-scan-algorithm"), false);
+		final Route fastRoute = new Route(TransportMode.TRAIN, simulator);
+		final Route slowRoute = new Route(TransportMode.TRAIN, simulator);
+		final long millis = System.currentTimeMillis() + Utilities.MILLIS_PER_HOUR;
+		final Position startPosition = new Position(0, 0, 0);
+		final Position endPosition = new Position(2000, 0, 0);
+
+		// The slow route departs between the two fast departures but arrives after the second one
+		final DirectionsSnapshot directionsSnapshot = new DirectionsSnapshot(
+			millis,
+			new long[]{1, 2},
+			new Position[]{startPosition, endPosition},
+			new String[]{"A", "B"},
+			new String[]{"", ""},
+			new ObjectImmutableList<>(ObjectArrayList.of(
+				createRouteSnapshot(fastRoute, FAST_DURATION, millis + Utilities.MILLIS_PER_HOUR, millis + 2 * Utilities.MILLIS_PER_HOUR, millis + 3 * Utilities.MILLIS_PER_HOUR),
+				createRouteSnapshot(slowRoute, SLOW_DURATION, millis + Utilities.MILLIS_PER_HOUR + Utilities.MILLIS_PER_HOUR / 2)
+			)),
+			new LongOpenHashSet()
+		);
+
+		final DirectionsProfileResponse[] directionsProfileResponse = new DirectionsProfileResponse[1];
+		new ProfileConnectionScanAlgorithmProcessor(directionsSnapshot, new Graph(directionsSnapshot), Timetable.create(directionsSnapshot), ForkJoinPool.commonPool()).process(ObjectArrayList.of(new QueuedProfileRequest(
+			startPosition,
+			endPosition,
+			millis,
+			millis + 2 * Utilities.MILLIS_PER_HOUR + Utilities.MILLIS_PER_HOUR / 2,
+			response -> directionsProfileResponse[0] = response
+		)), 0, 0).forEach(Runnable::run);
+
+		assertNotNull(directionsProfileResponse[0]);
+		final ObjectArrayList<DirectionsJourney> directionsJourneys = directionsProfileResponse[0].getDirectionsJourneys();
+		assertEquals(2, directionsJourneys.size(), "The slow journey is dominated and the last fast journey departs too late");
+
+		for (int i = 0; i < directionsJourneys.size(); i++) {
+			final DirectionsJourney directionsJourney = directionsJourneys.get(i);
+			final long departureTime = millis + (i + 1) * Utilities.MILLIS_PER_HOUR - OFFSET;
+			assertEquals(3, directionsJourney.getDirectionsConnections().size(), "Walk to the platform, ride and walk to the end position");
+			assertEquals(departureTime, directionsJourney.getDirectionsConnections().getFirst().getStartTime());
+			assertEquals(fastRoute.getHexId(), directionsJourney.getDirectionsConnections().get(1).getRouteId());
+			assertEquals(departureTime + FAST_DURATION, directionsJourney.getDirectionsConnections().getLast().getEndTime());
+		}
+	}
+
+	/**
+	 * Riding a continuous route for several stops, walking between platforms and ending with a continuous ride should all be found, as
+	 * quickly as the single journey scan finds them.
+	 */
+	@Test
+	public void testMatchesSingleJourneyScan() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-profile-connection-scan-algorithm-graph"), false);
+		final Route trainRoute1 = new Route(TransportMode.TRAIN, simulator);
+		final Route cableCarRoute = new Route(TransportMode.CABLE_CAR, simulator);
+		final Route trainRoute2 = new Route(TransportMode.TRAIN, simulator);
+		final long millis = System.currentTimeMillis() + Utilities.MILLIS_PER_HOUR;
+
+		// Platforms are too far apart to walk between, except for D and E
+		final Position[] platformPositions = {
+			new Position(0, 0, 0),
+			new Position(1000, 0, 0),
+			new Position(2000, 0, 0),
+			new Position(3000, 0, 0),
+			new Position(3300, 0, 0),
+			new Position(5000, 0, 0),
+		};
+		final DirectionsSnapshot directionsSnapshot = new DirectionsSnapshot(
+			millis,
+			new long[]{1, 2, 3, 4, 5, 6},
+			platformPositions,
+			new String[]{"A", "B", "C", "D", "E", "F"},
+			new String[]{"", "", "", "", "", ""},
+			new ObjectImmutableList<>(ObjectArrayList.of(
+				// A to B
+				new DirectionsSnapshot.RouteSnapshot(trainRoute1, false, new long[]{OFFSET}, new long[]{FAST_DURATION}, new int[]{0}, new int[]{1}, new long[]{millis + Utilities.MILLIS_PER_HOUR, millis + 2 * Utilities.MILLIS_PER_HOUR}),
+				// B to C to D
+				new DirectionsSnapshot.RouteSnapshot(cableCarRoute, true, new long[]{OFFSET, OFFSET + FAST_DURATION}, new long[]{FAST_DURATION, FAST_DURATION}, new int[]{2, 1}, new int[]{3, 2}, new long[0]),
+				// E to F
+				new DirectionsSnapshot.RouteSnapshot(trainRoute2, false, new long[]{OFFSET}, new long[]{FAST_DURATION}, new int[]{4}, new int[]{5}, new long[]{millis + 3 * Utilities.MILLIS_PER_HOUR})
+			)),
+			new LongOpenHashSet()
+		);
+		final Graph graph = new Graph(directionsSnapshot);
+		final Timetable timetable = Timetable.create(directionsSnapshot);
+
+		// Train, cable car and walk, then train; train then cable car to the end; cable car and walk, then train
+		final int[][] requests = {{0, 5}, {0, 3}, {1, 5}};
+		for (final int[] request : requests) {
+			final Position startPosition = platformPositions[request[0]];
+			final Position endPosition = platformPositions[request[1]];
+
+			final DirectionsResponse[] directionsResponse = new DirectionsResponse[1];
+			new ConnectionScanAlgorithmProcessor(directionsSnapshot, graph, timetable, ForkJoinPool.commonPool()).process(ObjectArrayList.of(new QueuedRequest(startPosition, endPosition, millis, response -> directionsResponse[0] = response, null)), 0, 0).forEach(Runnable::run);
+			assertNotNull(directionsResponse[0]);
+			assertFalse(directionsResponse[0].getDirectionsConnections().isEmpty(), "The single journey scan should find a journey");
+
+			final DirectionsProfileResponse[] directionsProfileResponse = new DirectionsProfileResponse[1];
+			new ProfileConnectionScanAlgorithmProcessor(directionsSnapshot, graph, timetable, ForkJoinPool.commonPool()).process(ObjectArrayList.of(new QueuedProfileRequest(
+				startPosition,
+				endPosition,
+				millis,
+				millis + 4 * Utilities.MILLIS_PER_HOUR,
+				response -> directionsProfileResponse[0] = response
+			)), 0, 0).forEach(Runnable::run);
+			assertNotNull(directionsProfileResponse[0]);
+			final ObjectArrayList<DirectionsJourney> directionsJourneys = directionsProfileResponse[0].getDirectionsJourneys();
+			assertFalse(directionsJourneys.isEmpty(), String.format("The profile scan should find a journey from %s to %s", request[0], request[1]));
+
+			// The earliest departure of a Pareto set also arrives the earliest
+			final ObjectArrayList<DirectionsConnection> profileConnections = directionsJourneys.getFirst().getDirectionsConnections();
+			assertEquals(directionsResponse[0].getDirectionsConnections().getLast().getEndTime(), profileConnections.getLast().getEndTime(), String.format("Journey from %s to %s", request[0], request[1]));
+			assertEquals(2, profileConnections.stream().filter(directionsConnection -> directionsConnection.getRouteId().equals(cableCarRoute.getHexId())).count(), "The cable car should be ridden for two stops");
+			for (int i = 1; i < profileConnections.size(); i++) {
+				assertTrue(profileConnections.get(i - 1).getEndTime() <= profileConnections.get(i).getStartTime(), "Connections should follow on from each other");
+			}
+		}
+	}
+
+	private static DirectionsSnapshot.RouteSnapshot createRouteSnapshot(Route route, long duration, long... departures) {
+		return new DirectionsSnapshot.RouteSnapshot(route, false, new long[]{OFFSET}, new long[]{duration}, new int[]{0}, new int[]{1}, departures);
+	}
+}
@@ -0,0 +1,195 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.data.TestUtilities;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retained heap and build time of the parallel array timetable against the list of connection records it replaced. Only run with
+ * {@code ./gradlew test -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public final class TimetableBenchmarkTests {
+
+	private static final int ROUTE_COUNT = 200;
+	private static final int HOPS_PER_ROUTE = 20;
+	private static final int DEPARTURES_PER_ROUTE = 500;
+	private static final int CONNECTION_COUNT = ROUTE_COUNT * HOPS_PER_ROUTE * DEPARTURES_PER_ROUTE;
+	private static final int CREATE_ROUTE_COUNT = 10000;
+	private static final int CREATE_HOPS_PER_ROUTE = 10;
+	/**
+	 * One departure every ten minutes for eight hours, so that the connections are spread over several hourly buckets
+	 */
+	private static final int CREATE_DEPARTURES_PER_ROUTE = 48;
+	private static final int CREATE_CONNECTION_COUNT = CREATE_ROUTE_COUNT * CREATE_HOPS_PER_ROUTE * CREATE_DEPARTURES_PER_ROUTE;
+	private static final int CREATE_ROUNDS = 5;
+
+	@Test
+	public void benchmarkTimetableMemory() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-timetable-benchmark"), false);
+		final Route[] routes = new Route[ROUTE_COUNT];
+		for (int i = 0; i < ROUTE_COUNT; i++) {
+			routes[i] = new Route(TransportMode.TRAIN, simulator);
+		}
+		final long millis = 1000000;
+
+		final long connectionsBytes = measureRetainedBytes(() -> {
+			final ObjectArrayList<Connection> connections = new ObjectArrayList<>();
+			iterateConnections(millis, (routeIndex, hop, startTime) -> connections.add(new Connection(routes[routeIndex], hop, hop + 1, startTime, startTime + Utilities.MILLIS_PER_MINUTE, 0)));
+			assertEquals(CONNECTION_COUNT, connections.size());
+			return connections;
+		});
+
+		final long timetableBytes = measureRetainedBytes(() -> {
+			final Timetable.Builder builder = new Timetable.Builder(millis);
+			for (final Route route : routes) {
+				builder.addRoute(route);
+			}
+			iterateConnections(millis, (routeIndex, hop, startTime) -> builder.add(routeIndex, hop, hop + 1, startTime, startTime + Utilities.MILLIS_PER_MINUTE));
+			builder.group();
+			for (int i = 0; i < builder.getHourCount(); i++) {
+				builder.sortHour(i);
+			}
+			final Timetable timetable = builder.build();
+			assertEquals(CONNECTION_COUNT, timetable.getConnectionCount());
+			return timetable;
+		});
+
+		TestUtilities.LOGGER.info("{} connections: connection records retain {} MB, timetable retains {} MB", CONNECTION_COUNT, connectionsBytes >> 20, timetableBytes >> 20);
+	}
+
+	@Test
+	public void benchmarkTimetableCreate() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-timetable-benchmark"), false);
+		final long millis = 1000000;
+		final DirectionsSnapshot directionsSnapshot = createDirectionsSnapshot(simulator, millis);
+
+		long connectionsNanos = Long.MAX_VALUE;
+		long timetableNanos = Long.MAX_VALUE;
+		// The first rounds warm up the JIT, so only the fastest round of each is reported
+		for (int round = 0; round < CREATE_ROUNDS; round++) {
+			final long startNanos1 = System.nanoTime();
+			final ObjectArrayList<ObjectArrayList<Connection>> connectionsLists = createConnectionsLists(directionsSnapshot);
+			connectionsNanos = Math.min(connectionsNanos, System.nanoTime() - startNanos1);
+			assertEquals(CREATE_CONNECTION_COUNT, connectionsLists.stream().mapToInt(ObjectArrayList::size).sum());
+
+			final long startNanos2 = System.nanoTime();
+			final Timetable timetable = Timetable.create(directionsSnapshot);
+			timetableNanos = Math.min(timetableNanos, System.nanoTime() - startNanos2);
+			assertEquals(CREATE_CONNECTION_COUNT, timetable.getConnectionCount());
+		}
+
+		TestUtilities.LOGGER.info("{} connections from {} routes: connection record lists take {} ms, timetable takes {} ms", CREATE_CONNECTION_COUNT, CREATE_ROUTE_COUNT, connectionsNanos / 1000000, timetableNanos / 1000000);
+	}
+
+	/**
+	 * Every route stops at the same platforms, with its departures offset by a second from the previous route, so that the hourly buckets
+	 * interleave the routes and have to be sorted.
+	 */
+	private static DirectionsSnapshot createDirectionsSnapshot(Simulator simulator, long millis) {
+		final int platformCount = CREATE_HOPS_PER_ROUTE + 1;
+		final long[] platformIds = new long[platformCount];
+		final Position[] platformPositions = new Position[platformCount];
+		final String[] platformNames = new String[platformCount];
+		final String[] platformStationHexIds = new String[platformCount];
+		for (int i = 0; i < platformCount; i++) {
+			platformIds[i] = i + 1;
+			platformPositions[i] = new Position(i * 100L, 0, 0);
+			platformNames[i] = String.valueOf(i);
+			platformStationHexIds[i] = "";
+		}
+
+		final long[] offsets = new long[CREATE_HOPS_PER_ROUTE];
+		final long[] durations = new long[CREATE_HOPS_PER_ROUTE];
+		final int[] startPlatformIndices = new int[CREATE_HOPS_PER_ROUTE];
+		final int[] endPlatformIndices = new int[CREATE_HOPS_PER_ROUTE];
+		for (int hop = 0; hop < CREATE_HOPS_PER_ROUTE; hop++) {
+			offsets[hop] = (CREATE_HOPS_PER_ROUTE - hop) * 2 * Utilities.MILLIS_PER_MINUTE;
+			durations[hop] = Utilities.MILLIS_PER_MINUTE;
+			startPlatformIndices[hop] = hop;
+			endPlatformIndices[hop] = hop + 1;
+		}
+
+		final ObjectArrayList<DirectionsSnapshot.RouteSnapshot> routeSnapshots = new ObjectArrayList<>();
+		for (int routeIndex = 0; routeIndex < CREATE_ROUTE_COUNT; routeIndex++) {
+			final long[] departures = new long[CREATE_DEPARTURES_PER_ROUTE];
+			for (int departure = 0; departure < CREATE_DEPARTURES_PER_ROUTE; departure++) {
+				departures[departure] = millis + offsets[0] + departure * 10 * Utilities.MILLIS_PER_MINUTE + (long) routeIndex * Utilities.MILLIS_PER_SECOND % (10 * Utilities.MILLIS_PER_MINUTE);
+			}
+			routeSnapshots.add(new DirectionsSnapshot.RouteSnapshot(new Route(TransportMode.TRAIN, simulator), false, offsets, durations, startPlatformIndices, endPlatformIndices, departures));
+		}
+
+		return new DirectionsSnapshot(millis, platformIds, platformPositions, platformNames, platformStationHexIds, new ObjectImmutableList<>(routeSnapshots), new LongOpenHashSet());
+	}
+
+	/**
+	 * How the timetable used to be built: one connection record per departure and hop in hourly lists, each sorted by start time.
+	 */
+	private static ObjectArrayList<ObjectArrayList<Connection>> createConnectionsLists(DirectionsSnapshot directionsSnapshot) {
+		final ObjectArrayList<ObjectArrayList<Connection>> connectionsLists = new ObjectArrayList<>();
+		for (final DirectionsSnapshot.RouteSnapshot routeSnapshot : directionsSnapshot.routes) {
+			for (int i = 0; i < routeSnapshot.offsets().length; i++) {
+				for (final long departure : routeSnapshot.departures()) {
+					final long startTime = departure - routeSnapshot.offsets()[i];
+					if (startTime >= directionsSnapshot.millis) {
+						final int hour = (int) ((startTime - directionsSnapshot.millis) / Utilities.MILLIS_PER_HOUR);
+						while (connectionsLists.size() <= hour) {
+							connectionsLists.add(new ObjectArrayList<>());
+						}
+						connectionsLists.get(hour).add(new Connection(routeSnapshot.route(), routeSnapshot.startPlatformIndices()[i], routeSnapshot.endPlatformIndices()[i], startTime, startTime + routeSnapshot.durations()[i], 0));
+					}
+				}
+			}
+		}
+		connectionsLists.forEach(connections -> connections.sort(Comparator.comparingLong(Connection::startTime)));
+		return connectionsLists;
+	}
+
+	private static void iterateConnections(long millis, ConnectionConsumer connectionConsumer) {
+		for (int routeIndex = 0; routeIndex < ROUTE_COUNT; routeIndex++) {
+			for (int hop = 0; hop < HOPS_PER_ROUTE; hop++) {
+				for (int departure = 0; departure < DEPARTURES_PER_ROUTE; departure++) {
+					connectionConsumer.accept(routeIndex, hop, millis + (long) departure * Utilities.MILLIS_PER_MINUTE + (long) hop * Utilities.MILLIS_PER_SECOND);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only approximate, since the collector may not have freed everything, but good enough to compare representations this large.
+	 */
+	private static long measureRetainedBytes(Supplier<Object> supplier) {
+		final long usedBytesBefore = getUsedBytes();
+		final Object object = supplier.get();
+		final long usedBytesAfter = getUsedBytes();
+		assertNotNull(object);
+		return usedBytesAfter - usedBytesBefore;
+	}
+
+	private static long getUsedBytes() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@FunctionalInterface
+	private interface ConnectionConsumer {
+		void accept(int routeIndex, int hop, long startTime);
+	}
+}
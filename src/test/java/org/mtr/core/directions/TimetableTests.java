@@ -0,0 +1,84 @@
+package org.mtr.core.directions;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.data.Route;
+import org.mtr.core.data.TransportMode;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class TimetableTests {
+
+	@Test
+	public void testBuild() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-timetable"), false);
+		final Route route1 = new Route(TransportMode.TRAIN, simulator);
+		final Route route2 = new Route(TransportMode.TRAIN, simulator);
+		final long millis = 1000000;
+
+		final Timetable.Builder builder = new Timetable.Builder(millis);
+		final int routeIndex1 = builder.addRoute(route1);
+		final int routeIndex2 = builder.addRoute(route2);
+		builder.add(routeIndex1, 0, 1, millis + 2 * Utilities.MILLIS_PER_HOUR + 5, millis + 3 * Utilities.MILLIS_PER_HOUR);
+		builder.add(routeIndex1, 0, 1, millis + 300, millis + 400);
+		builder.add(routeIndex2, 1, 0, millis + 100, millis + 500);
+		builder.add(routeIndex2, 1, 0, millis + 300, millis + 350);
+		builder.add(routeIndex1, 0, 1, millis - 1, millis + 10);
+		builder.group();
+		for (int i = 0; i < builder.getHourCount(); i++) {
+			builder.sortHour(i);
+		}
+		final Timetable timetable = builder.build();
+
+		assertEquals(3, timetable.getHourCount());
+		assertEquals(4, timetable.getConnectionCount(), "Past connections should be dropped");
+		assertArrayEquals(new int[]{0, 3, 3, 4}, timetable.hourOffsets);
+		assertArrayEquals(new long[]{millis + 100, millis + 300, millis + 300, millis + 2 * Utilities.MILLIS_PER_HOUR + 5}, timetable.startTimes);
+		assertArrayEquals(new long[]{millis + 500, millis + 400, millis + 350, millis + 3 * Utilities.MILLIS_PER_HOUR}, timetable.endTimes, "Sorting should be stable");
+		assertSame(route2, timetable.routes[timetable.routeIndices[0]]);
+		assertSame(route1, timetable.routes[timetable.routeIndices[1]]);
+		assertEquals(1, timetable.startPlatformIndices[0]);
+		assertEquals(0, timetable.endPlatformIndices[0]);
+	}
+
+	@Test
+	public void testCreateFromSnapshot() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-timetable"), false);
+		final Route route = new Route(TransportMode.TRAIN, simulator);
+		final long millis = 1000000;
+
+		// Two hops ending at the last platform, departing from it at two times
+		final DirectionsSnapshot directionsSnapshot = new DirectionsSnapshot(
+			millis,
+			new long[]{1, 2, 3},
+			new Position[]{new Position(0, 0, 0), new Position(100, 0, 0), new Position(200, 0, 0)},
+			new String[]{"A", "B", "C"},
+			new String[]{"", "", ""},
+			new ObjectImmutableList<>(ObjectArrayList.of(new DirectionsSnapshot.RouteSnapshot(
+				route,
+				false,
+				new long[]{100, 300},
+				new long[]{80, 150},
+				new int[]{1, 0},
+				new int[]{2, 1},
+				new long[]{millis + 1000, millis + 200}
+			))),
+			new LongOpenHashSet()
+		);
+		final Timetable timetable = Timetable.create(directionsSnapshot);
+
+		assertEquals(1, directionsSnapshot.getPlatformIndex(2));
+		assertEquals(-1, directionsSnapshot.getPlatformIndex(4));
+		assertEquals(3, timetable.getConnectionCount(), "Connections starting before the snapshot should be dropped");
+		assertArrayEquals(new long[]{millis + 100, millis + 700, millis + 900}, timetable.startTimes);
+		assertArrayEquals(new long[]{millis + 180, millis + 850, millis + 980}, timetable.endTimes);
+		assertArrayEquals(new int[]{1, 0, 1}, timetable.startPlatformIndices);
+	}
+}
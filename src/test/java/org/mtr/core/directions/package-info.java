@@ -0,0 +1,4 @@
+@NullMarked
+package org.mtr.core.directions;
+
+import org.jspecify.annotations.NullMarked;
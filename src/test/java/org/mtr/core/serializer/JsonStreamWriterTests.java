@@ -0,0 +1,86 @@
+package org.mtr.core.serializer;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.integration.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class JsonStreamWriterTests {
+
+	@Test
+	public void testMatchesJsonWriter() {
+		final SerializedDataBase data = new SerializedDataBase() {
+			@Override
+			public void updateData(ReaderBase readerBase) {
+			}
+
+			@Override
+			public void serializeData(WriterBase writerBase) {
+				writerBase.writeBoolean("boolean", true);
+				writerBase.writeInt("int", -1);
+				writerBase.writeLong("long", Long.MAX_VALUE);
+				writerBase.writeDouble("double", 0.5);
+				writerBase.writeString("string", "\"quoted\" é ☃");
+				final WriterBase.Array array = writerBase.writeArray("array");
+				array.writeInt(1);
+				array.writeString("two");
+				new Position(1, 2, 3).serializeData(array.writeChild());
+				array.writeDouble(4);
+				writerBase.writeArray("emptyArray");
+				writerBase.writeChild("emptyChild");
+				new Position(4, 5, 6).serializeData(writerBase.writeChild("child").writeChild("grandchild"));
+				writerBase.writeString("last", "");
+			}
+		};
+
+		assertEquals(toJsonString(data), toStreamedString(data));
+
+		final Response response = new Response(200, "OK", data);
+		assertEquals(toJsonString(response), toStreamedString(response));
+	}
+
+	@Test
+	public void testFinishedWritesAreDropped() {
+		final SerializedDataBase data = new SerializedDataBase() {
+			@Override
+			public void updateData(ReaderBase readerBase) {
+			}
+
+			@Override
+			public void serializeData(WriterBase writerBase) {
+				final WriterBase child1 = writerBase.writeChild("child1");
+				child1.writeInt("value", 1);
+				writerBase.writeChild("child2").writeInt("value", 2);
+				child1.writeInt("dropped", 3);
+			}
+		};
+
+		final JsonObject expectedObject = new JsonObject();
+		final JsonObject childObject1 = new JsonObject();
+		childObject1.addProperty("value", 1);
+		final JsonObject childObject2 = new JsonObject();
+		childObject2.addProperty("value", 2);
+		expectedObject.add("child1", childObject1);
+		expectedObject.add("child2", childObject2);
+		assertEquals(expectedObject.toString(), toStreamedString(data));
+	}
+
+	private static String toJsonString(SerializedDataBase data) {
+		final JsonObject jsonObject = new JsonObject();
+		data.serializeData(new JsonWriter(jsonObject));
+		return jsonObject.toString();
+	}
+
+	private static String toStreamedString(SerializedDataBase data) {
+		final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		final JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(byteArrayOutputStream);
+		data.serializeData(jsonStreamWriter);
+		jsonStreamWriter.serialize();
+		return byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+	}
+}
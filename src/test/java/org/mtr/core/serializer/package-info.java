@@ -0,0 +1,4 @@
+@NullMarked
+package org.mtr.core.serializer;
+
+import org.jspecify.annotations.NullMarked;
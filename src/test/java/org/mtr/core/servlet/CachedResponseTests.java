@@ -0,0 +1,78 @@
+package org.mtr.core.servlet;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.simulation.Simulator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class CachedResponseTests {
+
+	@Test
+	public void testContent() throws Exception {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-cached-response"), false);
+		final long[] x = {0};
+		// A negative lifespan rebuilds the content on every call
+		final CachedResponse cachedResponse = new CachedResponse(currentSimulator -> new Position(x[0], 0, 0), -1, simulator);
+
+		final CachedResponse.Content content1 = cachedResponse.update();
+		assertSame(content1, cachedResponse.update(), "Unchanged data should keep the same content and ETag");
+		x[0] = 1;
+		final CachedResponse.Content content2 = cachedResponse.update();
+		assertNotSame(content1, content2);
+		assertNotEquals(content1.eTag, content2.eTag);
+
+		final CachedResponse.Content[] publishedContent = {null};
+		cachedResponse.get(content -> publishedContent[0] = content);
+		assertSame(content2, publishedContent[0], "Published content should be sent without waiting for the simulator");
+
+		final long startMillis = System.currentTimeMillis();
+		final JsonObject bodyObject = parseBody(content2.getBody("OK", false));
+		assertEquals("OK", bodyObject.get("text").getAsString());
+		assertEquals(1, bodyObject.getAsJsonObject("data").get("x").getAsLong());
+		assertTrue(bodyObject.get("currentTime").getAsLong() >= startMillis);
+
+		final JsonObject gzipBodyObject;
+		try (final GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(content2.getBody("OK", true)))) {
+			gzipBodyObject = parseBody(gzipInputStream.readAllBytes());
+		}
+		assertTrue(gzipBodyObject.get("currentTime").getAsLong() >= bodyObject.get("currentTime").getAsLong());
+		gzipBodyObject.add("currentTime", bodyObject.get("currentTime"));
+		assertEquals(bodyObject, gzipBodyObject, "The compressed body should hold the same response");
+
+		// The data is cached, but the current time should always be fresh
+		Thread.sleep(2);
+		assertTrue(parseBody(content2.getBody("OK", false)).get("currentTime").getAsLong() > bodyObject.get("currentTime").getAsLong());
+
+		assertEquals("OK - test", parseBody(content2.getBody("OK - test", false)).get("text").getAsString());
+	}
+
+	@Test
+	public void testETag() {
+		final CachedResponse.Content content1 = new CachedResponse.Content(new Position(0, 0, 0));
+		final CachedResponse.Content content2 = new CachedResponse.Content(new Position(1, 0, 0));
+		assertTrue(content1.eTag.startsWith("W/\""), "One ETag covers both bodies and the envelope changes, so it should be weak");
+		assertEquals(content1.eTag, new CachedResponse.Content(new Position(0, 0, 0)).eTag);
+
+		// A client that was sent the gzip body sends back the same tag, which should get a 304 whether or not it asks for gzip again
+		assertFalse(Arrays.equals(content1.getBody("OK", true), content1.getBody("OK", false)));
+		assertTrue(content1.matches(content1.eTag));
+		assertTrue(content1.matches(content2.eTag + ", " + content1.eTag));
+		assertTrue(content1.matches(content1.eTag.substring(2)), "Tags should be compared weakly");
+		assertTrue(content1.matches("*"));
+		assertFalse(content1.matches(content2.eTag));
+		assertFalse(content1.matches(""));
+	}
+
+	private static JsonObject parseBody(byte[] body) {
+		return JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+	}
+}
@@ -0,0 +1,61 @@
+package org.mtr.core.servlet;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Position;
+import org.mtr.core.serializer.SerializedDataBase;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class InFlightRequestsTests {
+
+	@Test
+	public void testCoalescing() {
+		final InFlightRequests inFlightRequests = new InFlightRequests();
+		final ObjectArrayList<@Nullable SerializedDataBase> responses = new ObjectArrayList<>();
+
+		final InFlightRequests.InFlightRequest inFlightRequest1 = inFlightRequests.add("key1", responses::add, () -> {
+		});
+		assertNotNull(inFlightRequest1);
+		assertNull(inFlightRequests.add("key1", responses::add, () -> {
+		}), "Identical requests should attach to the in-flight request");
+		final InFlightRequests.InFlightRequest inFlightRequest2 = inFlightRequests.add("key2", responses::add, () -> {
+		});
+		assertNotNull(inFlightRequest2);
+
+		inFlightRequest1.complete(new Position(1, 2, 3));
+		assertEquals(2, responses.size());
+		assertInstanceOf(CachedResponse.Content.class, responses.getFirst(), "Shared responses should be encoded once");
+		assertSame(responses.get(0), responses.get(1));
+		assertSame(((CachedResponse.Content) responses.get(0)).getBody("OK", false), ((CachedResponse.Content) responses.get(1)).getBody("OK", false));
+
+		assertNotNull(inFlightRequests.add("key1", responses::add, () -> {
+		}), "Completed requests shouldn't be attached to");
+
+		inFlightRequest2.complete(new Position(4, 5, 6));
+		assertInstanceOf(CachedResponse.Content.class, responses.get(2), "A single request should get the same kind of response as shared ones");
+
+		final InFlightRequests.InFlightRequest inFlightRequest3 = inFlightRequests.add("key3", responses::add, () -> {
+		});
+		assertNotNull(inFlightRequest3);
+		inFlightRequest3.complete(null);
+		assertNull(responses.get(3), "A missing response should still be sent as a 404");
+	}
+
+	@Test
+	public void testReject() {
+		final InFlightRequests inFlightRequests = new InFlightRequests();
+		final ObjectArrayList<@Nullable SerializedDataBase> responses = new ObjectArrayList<>();
+		final int[] rejectedCount = {0};
+
+		final InFlightRequests.InFlightRequest inFlightRequest = inFlightRequests.add("key", responses::add, () -> rejectedCount[0]++);
+		assertNotNull(inFlightRequest);
+		assertNull(inFlightRequests.add("key", responses::add, () -> rejectedCount[0]++));
+
+		inFlightRequest.reject();
+		assertEquals(2, rejectedCount[0], "Every attached request should be rejected");
+		assertTrue(responses.isEmpty());
+		assertNotNull(inFlightRequests.add("key", responses::add, () -> rejectedCount[0]++), "Rejected requests shouldn't be attached to");
+	}
+}
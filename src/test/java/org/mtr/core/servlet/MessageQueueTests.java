@@ -0,0 +1,54 @@
+package org.mtr.core.servlet;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MessageQueueTests {
+
+	@Test
+	public void testPriority() {
+		final MessageQueue<Integer> messageQueue = new MessageQueue<>();
+		messageQueue.put(1, MessageQueue.Priority.BULK);
+		messageQueue.put(2, MessageQueue.Priority.DASHBOARD);
+		messageQueue.put(3);
+		messageQueue.put(4, MessageQueue.Priority.DASHBOARD);
+		assertEquals(4, messageQueue.size());
+		assertEquals(2, messageQueue.size(MessageQueue.Priority.DASHBOARD));
+
+		final IntArrayList processed = new IntArrayList();
+		messageQueue.process(processed::add);
+		assertEquals(IntArrayList.of(3, 2, 4, 1), processed, "Higher priorities should be processed first, in arrival order");
+		assertEquals(0, messageQueue.size());
+		assertEquals(4, messageQueue.getStatistics().processedCount);
+	}
+
+	@Test
+	public void testCapacity() {
+		final MessageQueue<Integer> messageQueue = new MessageQueue<>(2);
+		assertTrue(messageQueue.put(1));
+		assertTrue(messageQueue.put(2));
+		assertFalse(messageQueue.put(3), "A full priority class should drop new elements");
+		assertTrue(messageQueue.put(4, MessageQueue.Priority.BULK), "Each priority class should have its own capacity");
+
+		final MessageQueue.Statistics statistics = messageQueue.getStatistics();
+		assertEquals(1, statistics.droppedCount);
+		assertEquals(2, statistics.sizes[MessageQueue.Priority.PLAYER.ordinal()]);
+		assertEquals(1, statistics.sizes[MessageQueue.Priority.BULK.ordinal()]);
+	}
+
+	@Test
+	public void testBudget() {
+		final MessageQueue<Integer> messageQueue = new MessageQueue<>();
+		for (int i = 0; i < 5; i++) {
+			messageQueue.put(i);
+			messageQueue.put(i, MessageQueue.Priority.BULK);
+		}
+
+		final IntArrayList processed = new IntArrayList();
+		messageQueue.process(processed::add, 0);
+		assertEquals(IntArrayList.of(0, 0), processed, "Each non-empty priority class should get one element even without a budget");
+		assertEquals(8, messageQueue.size());
+	}
+}
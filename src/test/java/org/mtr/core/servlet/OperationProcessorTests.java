@@ -0,0 +1,57 @@
+package org.mtr.core.servlet;
+
+import org.junit.jupiter.api.Test;
+import org.mtr.core.operation.SetTime;
+import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.serializer.MessagePackData;
+import org.mtr.core.serializer.ReaderBase;
+import org.mtr.core.serializer.SerializedDataBase;
+import org.mtr.core.serializer.WriterBase;
+import org.mtr.core.simulation.Simulator;
+import org.mtr.core.tool.Utilities;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class OperationProcessorTests {
+
+	private static final long MILLIS_PER_DAY = 24000;
+	private static final long MILLIS_PER_HOUR = MILLIS_PER_DAY / 24;
+
+	@Test
+	public void testDispatch() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-operation-processor"), false);
+
+		// Typed requests are used directly
+		assertNull(OperationProcessor.process(OperationProcessor.SET_TIME, new SetTime(6 * MILLIS_PER_HOUR, MILLIS_PER_DAY, false), simulator));
+		assertEquals(6, simulator.getGameHour());
+
+		// Packed requests are read straight from the bytes
+		assertNull(OperationProcessor.process(OperationProcessor.SET_TIME, MessagePackData.create(new SetTime(12 * MILLIS_PER_HOUR, MILLIS_PER_DAY, false)), simulator));
+		assertEquals(12, simulator.getGameHour());
+
+		// Anything else is packed first
+		final SetTime setTime = new SetTime(18 * MILLIS_PER_HOUR, MILLIS_PER_DAY, false);
+		assertNull(OperationProcessor.process(OperationProcessor.SET_TIME, new SerializedDataBase() {
+			@Override
+			public void updateData(ReaderBase readerBase) {
+			}
+
+			@Override
+			public void serializeData(WriterBase writerBase) {
+				setTime.serializeData(writerBase);
+			}
+		}, simulator));
+		assertEquals(18, simulator.getGameHour());
+	}
+
+	@Test
+	public void testMessagePackData() {
+		final SetTime setTime = new SetTime(6 * MILLIS_PER_HOUR, MILLIS_PER_DAY, true);
+		final MessagePackData messagePackData = MessagePackData.create(setTime);
+		assertEquals(Utilities.getJsonObjectFromData(setTime), Utilities.getJsonObjectFromData(messagePackData));
+		assertEquals(Utilities.getJsonObjectFromData(setTime), Utilities.getJsonObjectFromData(new SetTime(messagePackData.createReader())));
+		assertEquals(Utilities.getJsonObjectFromData(setTime), Utilities.getJsonObjectFromData(new SetTime(new JsonReader(Utilities.getJsonObjectFromData(messagePackData)))));
+	}
+}
@@ -0,0 +1,4 @@
+@NullMarked
+package org.mtr.core.servlet;
+
+import org.jspecify.annotations.NullMarked;
@@ -0,0 +1,60 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArraySet;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Client;
+import org.mtr.core.data.Position;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ClientGridTests {
+
+	@Test
+	public void testIterateClients() {
+		final Client client1 = createClient(0, 0, 100);
+		final Client client2 = createClient(1000, 1000, 600);
+		final Client client3 = createClient(-5000, 0, 1000000);
+		final ObjectArraySet<Client> clients = new ObjectArraySet<>();
+		clients.add(client1);
+		clients.add(client2);
+		clients.add(client3);
+
+		final ClientGrid clientGrid = new ClientGrid();
+		assertTrue(clientGrid.update(clients));
+		assertFalse(clientGrid.update(clients), "Nothing has moved, so the grid shouldn't be rebuilt");
+
+		final ObjectArrayList<Client> nearOrigin = getClients(clientGrid, 50, 50, 60, 60);
+		assertEquals(ObjectArrayList.of(client1, client3), nearOrigin);
+
+		final ObjectArrayList<Client> spanningClients = getClients(clientGrid, -200, -200, 900, 900);
+		assertEquals(3, spanningClients.size(), "Clients overlapping many cells of the box should only be returned once");
+		assertTrue(spanningClients.containsAll(ObjectArrayList.of(client1, client2, client3)));
+
+		final ObjectArrayList<Client> farClients = getClients(clientGrid, 3000, 3000, 3010, 3010);
+		assertEquals(ObjectArrayList.of(client3), farClients);
+
+		client1.setPositionAndUpdateRadius(new Position(3000, 0, 3000), 100);
+		assertTrue(clientGrid.update(clients));
+		assertEquals(2, getClients(clientGrid, 3000, 3000, 3010, 3010).size());
+		assertSame(client1, clientGrid.getClient(client1.uuid));
+
+		clients.remove(client2);
+		assertTrue(clientGrid.update(clients));
+		assertNull(clientGrid.getClient(client2.uuid));
+	}
+
+	private static Client createClient(long x, long z, long updateRadius) {
+		final Client client = new Client(UUID.randomUUID());
+		client.setPositionAndUpdateRadius(new Position(x, 0, z), updateRadius);
+		return client;
+	}
+
+	private static ObjectArrayList<Client> getClients(ClientGrid clientGrid, double x1, double z1, double x2, double z2) {
+		final ObjectArrayList<Client> clients = new ObjectArrayList<>();
+		clientGrid.iterateClients(x1, z1, x2, z2, clients::add);
+		return clients;
+	}
+}
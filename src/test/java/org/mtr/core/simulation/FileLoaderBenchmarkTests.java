@@ -0,0 +1,64 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mtr.core.data.*;
+import org.mtr.core.tool.Angle;
+import org.mtr.core.tool.Utilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cold start time of loading 500k rails. Slow and disk heavy, so only run with {@code ./gradlew test -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public final class FileLoaderBenchmarkTests {
+
+	private static final int RAIL_COUNT = 500_000;
+
+	@Test
+	public void benchmarkDirectoryStorage() throws IOException {
+		benchmark(Paths.get("build/test-data-benchmark-directory"), false);
+	}
+
+	@Test
+	public void benchmarkSegmentStorage() throws IOException {
+		benchmark(Paths.get("build/test-data-benchmark-segments"), true);
+	}
+
+	private static void benchmark(Path rootPath, boolean segmentStorage) throws IOException {
+		FileUtils.deleteDirectory(rootPath.toFile());
+		final ObjectOpenHashSet<Rail> rails = new ObjectOpenHashSet<>();
+		final FileLoader<Rail> fileLoader = new FileLoader<>(rails, Rail::new, rootPath, "rails", true, segmentStorage);
+		for (int i = 0; i < RAIL_COUNT; i++) {
+			rails.add(Rail.newRail(
+					new Position(i, 0, 0), Angle.E,
+					new Position(i + 1, 0, 0), Angle.E,
+					Rail.Shape.QUADRATIC, 0, 0,
+					0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+					new ObjectArrayList<>(), 80, 80, false, false, true, false, true, TransportMode.TRAIN
+			));
+		}
+		final long saveMillis = Utilities.measureDuration(() -> {
+			fileLoader.save(false);
+		});
+
+		for (final boolean threadedFileLoading : new boolean[]{false, true}) {
+			final ObjectOpenHashSet<Rail> loadedRails = new ObjectOpenHashSet<>();
+			final long loadMillis = Utilities.measureDuration(() -> {
+				new FileLoader<>(loadedRails, Rail::new, rootPath, "rails", threadedFileLoading, segmentStorage);
+			});
+			assertEquals(RAIL_COUNT, loadedRails.size());
+			TestUtilities.LOGGER.info("{} rails, {} storage, threaded loading {}: saved in {} ms, loaded in {} ms", RAIL_COUNT, segmentStorage ? "segment" : "directory", threadedFileLoading, saveMillis, loadMillis);
+		}
+
+		FileUtils.deleteDirectory(rootPath.toFile());
+	}
+}
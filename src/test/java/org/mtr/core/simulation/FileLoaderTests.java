@@ -0,0 +1,132 @@
+package org.mtr.core.simulation;
+
+import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.ints.IntIntImmutablePair;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Station;
+import org.mtr.core.serializer.JsonReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class FileLoaderTests {
+
+	@Test
+	public void testDirtySave() {
+		final Path rootPath = Paths.get("build/test-data-file-loader");
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, rootPath, false);
+		final ObjectOpenHashSet<Station> stations = new ObjectOpenHashSet<>();
+		final FileLoader<Station> fileLoader = new FileLoader<>(stations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false);
+		// Start from an empty directory in case an earlier run left files behind
+		stations.clear();
+		fileLoader.save(true);
+
+		final Station station1 = createStation(1, simulator);
+		final Station station2 = createStation(2, simulator);
+		stations.add(station1);
+		stations.add(station2);
+		assertEquals(new IntIntImmutablePair(2, 0), fileLoader.save(true, true), "New entities should be written without being marked");
+		assertEquals(new IntIntImmutablePair(0, 0), fileLoader.save(true, true));
+
+		station1.setZone1(10);
+		assertEquals(new IntIntImmutablePair(0, 0), fileLoader.save(true, true), "Unmarked changes should be skipped by a dirty save");
+		fileLoader.markDirty(station1);
+		fileLoader.markDirty(station2);
+		assertEquals(new IntIntImmutablePair(1, 0), fileLoader.save(true, true), "Only marked entities that have changed should be written");
+
+		station2.setZone1(20);
+		assertEquals(new IntIntImmutablePair(1, 0), fileLoader.save(true), "A full save should catch unmarked changes");
+
+		stations.remove(station1);
+		assertEquals(new IntIntImmutablePair(0, 1), fileLoader.save(true, true), "Removed entities should be deleted by a dirty save");
+
+		stations.clear();
+		fileLoader.save(true);
+	}
+
+	@Test
+	public void testSaveSnapshot() {
+		final Path rootPath = Paths.get("build/test-data-file-loader-snapshot");
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, rootPath, false);
+		final ObjectOpenHashSet<Station> stations = new ObjectOpenHashSet<>();
+		final FileLoader<Station> fileLoader = new FileLoader<>(stations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false);
+		stations.clear();
+		fileLoader.save(true);
+
+		final Station station = createStation(1, simulator);
+		stations.add(station);
+		final FileLoader<Station>.SaveSnapshot saveSnapshot = fileLoader.createSaveSnapshot(true, true);
+		// Changes made while the snapshot is being written belong to the next save
+		station.setZone1(10);
+		fileLoader.markDirty(station);
+		saveSnapshot.write();
+		assertEquals(new IntIntImmutablePair(1, 0), saveSnapshot.finish());
+
+		final ObjectOpenHashSet<Station> loadedStations = new ObjectOpenHashSet<>();
+		new FileLoader<>(loadedStations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false);
+		assertEquals(1, loadedStations.size());
+		assertEquals(0, loadedStations.iterator().next().getZone1(), "The snapshot should hold the data from when it was taken");
+		assertEquals(new IntIntImmutablePair(1, 0), fileLoader.save(true, true));
+
+		stations.clear();
+		fileLoader.save(true);
+	}
+
+	@Test
+	public void testSegmentStorageMigration() throws IOException {
+		final Path rootPath = Paths.get("build/test-data-file-loader-segments");
+		final Path path = rootPath.resolve("test_stations");
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, rootPath, false);
+		final ObjectOpenHashSet<Station> stations = new ObjectOpenHashSet<>();
+		final FileLoader<Station> fileLoader = new FileLoader<>(stations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false, true);
+		stations.clear();
+		fileLoader.save(true);
+
+		final FileLoader<Station> directoryFileLoader = new FileLoader<>(stations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false);
+		stations.add(createStation(1, simulator));
+		stations.add(createStation(2, simulator));
+		assertEquals(new IntIntImmutablePair(2, 0), directoryFileLoader.save(true));
+
+		final ObjectOpenHashSet<Station> migratedStations = new ObjectOpenHashSet<>();
+		final FileLoader<Station> segmentFileLoader = new FileLoader<>(migratedStations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false, true);
+		assertEquals(2, migratedStations.size(), "Per-entity files should be loaded into segment storage");
+		assertEquals(new IntIntImmutablePair(0, 0), segmentFileLoader.save(true), "Migrated entities shouldn't be written again");
+		assertEquals(0, getFileCount(path, false), "Per-entity files should be deleted once migrated");
+
+		migratedStations.remove(migratedStations.iterator().next());
+		assertEquals(new IntIntImmutablePair(0, 1), segmentFileLoader.save(true, true));
+		final ObjectOpenHashSet<Station> loadedStations = new ObjectOpenHashSet<>();
+		new FileLoader<>(loadedStations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false, true);
+		assertEquals(1, loadedStations.size());
+
+		// Turning segment storage off should move the entities back into per-entity files
+		final ObjectOpenHashSet<Station> directoryStations = new ObjectOpenHashSet<>();
+		final FileLoader<Station> migratedBackFileLoader = new FileLoader<>(directoryStations, readerBase -> new Station(readerBase, simulator), rootPath, "test_stations", false);
+		assertEquals(1, directoryStations.size(), "Entities in segments should be loaded without segment storage");
+		assertEquals(1, getFileCount(path, false));
+		assertEquals(0, getFileCount(path, true), "Segments should be deleted once migrated back");
+		assertEquals(new IntIntImmutablePair(0, 0), migratedBackFileLoader.save(true), "Migrated entities shouldn't be written again");
+
+		directoryStations.clear();
+		migratedBackFileLoader.save(true);
+	}
+
+	private static long getFileCount(Path path, boolean segments) throws IOException {
+		try (final Stream<Path> pathStream = Files.walk(path)) {
+			return pathStream.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".segment") == segments).count();
+		}
+	}
+
+	private static Station createStation(long id, Simulator simulator) {
+		final JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty("id", id);
+		jsonObject.addProperty("name", "Station " + id);
+		return new Station(new JsonReader(jsonObject), simulator);
+	}
+}
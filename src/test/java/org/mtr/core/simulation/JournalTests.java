@@ -0,0 +1,90 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.serializer.MessagePackData;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class JournalTests {
+
+	@Test
+	public void testReplay() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-journal");
+		final Journal journal1 = new Journal(path);
+		journal1.append("update_data", new MessagePackData(new byte[]{1}));
+		journal1.rotate();
+		journal1.append("delete_data", new MessagePackData(new byte[]{2, 2}));
+		journal1.close();
+		assertEquals(2, getJournalFiles(path).length);
+
+		final ObjectArrayList<String> keys = new ObjectArrayList<>();
+		final ObjectArrayList<byte[]> data = new ObjectArrayList<>();
+		final Journal journal2 = new Journal(path);
+		assertEquals(2, journal2.replay((key, messagePackData) -> {
+			keys.add(key);
+			data.add(messagePackData.getBytes());
+		}));
+		journal2.close();
+		assertEquals(ObjectArrayList.of("update_data", "delete_data"), keys, "Operations should be replayed oldest first");
+		assertArrayEquals(new byte[]{1}, data.get(0));
+		assertArrayEquals(new byte[]{2, 2}, data.get(1));
+	}
+
+	@Test
+	public void testCutShortRecord() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-journal-cut-short");
+		final Journal journal = new Journal(path);
+		journal.append("update_data", new MessagePackData(new byte[]{1}));
+		journal.append("update_data", new MessagePackData(new byte[]{2}));
+		journal.close();
+		final Path journalFile = getJournalFiles(path)[0];
+		final byte[] bytes = Files.readAllBytes(journalFile);
+		Files.write(journalFile, Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertEquals(1, new Journal(path).replay((key, messagePackData) -> {
+		}), "A record cut short by a crash should be ignored");
+
+		bytes[bytes.length - 1]++;
+		Files.write(journalFile, bytes);
+		assertEquals(1, new Journal(path).replay((key, messagePackData) -> {
+		}), "A record failing its checksum should be ignored");
+	}
+
+	@Test
+	public void testDelete() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-journal-delete");
+		final Journal journal = new Journal(path);
+		journal.append("update_data", new MessagePackData(new byte[]{1}));
+		final int lastGeneration = journal.rotate();
+		journal.append("update_data", new MessagePackData(new byte[]{2}));
+		journal.rotate();
+		journal.delete(lastGeneration);
+		journal.close();
+
+		final Path[] journalFiles = getJournalFiles(path);
+		assertEquals(1, journalFiles.length, "Only generations covered by the save should be deleted");
+		assertEquals(1, new Journal(path).replay((key, messagePackData) -> assertArrayEquals(new byte[]{2}, messagePackData.getBytes())));
+	}
+
+	private static Path[] getJournalFiles(Path path) throws Exception {
+		try (final Stream<Path> pathStream = Files.list(path)) {
+			return pathStream.sorted().toArray(Path[]::new);
+		}
+	}
+
+	private static Path createEmptyDirectory(String directory) throws Exception {
+		final Path path = Paths.get(directory);
+		Files.createDirectories(path);
+		for (final Path journalFile : getJournalFiles(path)) {
+			Files.delete(journalFile);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,118 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SegmentStorageTests {
+
+	@Test
+	public void testReload() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-segment-storage");
+		final SegmentStorage segmentStorage = new SegmentStorage(path);
+		segmentStorage.write("01", new byte[]{1});
+		segmentStorage.write("02", new byte[]{2});
+		segmentStorage.write("01", new byte[]{3, 4});
+		assertTrue(segmentStorage.delete("02"));
+		assertFalse(segmentStorage.delete("03"), "Deleting a missing entity shouldn't write a tombstone");
+		segmentStorage.write("03", new byte[0]);
+		segmentStorage.flush(hexId -> fail(hexId));
+
+		final Object2ObjectOpenHashMap<String, byte[]> entities = read(new SegmentStorage(path));
+		assertEquals(2, entities.size());
+		assertArrayEquals(new byte[]{3, 4}, entities.get("01"), "The latest record should win");
+		assertArrayEquals(new byte[0], entities.get("03"));
+	}
+
+	@Test
+	public void testCutShortRecord() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-segment-storage-cut-short");
+		final SegmentStorage segmentStorage1 = new SegmentStorage(path);
+		segmentStorage1.write("01", new byte[]{1});
+		segmentStorage1.write("02", new byte[]{2, 2});
+		segmentStorage1.flush(hexId -> fail(hexId));
+		final Path segmentFile = getSegmentFiles(path)[0];
+		final byte[] bytes = Files.readAllBytes(segmentFile);
+		Files.write(segmentFile, Arrays.copyOf(bytes, bytes.length - 1));
+
+		final SegmentStorage segmentStorage2 = new SegmentStorage(path);
+		assertEquals(1, read(segmentStorage2).size(), "A record cut short by a crash should be ignored");
+		segmentStorage2.write("02", new byte[]{2});
+		segmentStorage2.flush(hexId -> fail(hexId));
+		assertEquals(2, getSegmentFiles(path).length, "New records shouldn't be written after a cut-short record");
+		assertEquals(2, read(new SegmentStorage(path)).size());
+	}
+
+	@Test
+	public void testCorruptRecord() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-segment-storage-corrupt");
+		final SegmentStorage segmentStorage1 = new SegmentStorage(path);
+		segmentStorage1.write("01", new byte[]{1});
+		segmentStorage1.write("01", new byte[]{2});
+		segmentStorage1.write("02", new byte[]{3});
+		segmentStorage1.flush(hexId -> fail(hexId));
+		final Path segmentFile = getSegmentFiles(path)[0];
+		final byte[] bytes = Files.readAllBytes(segmentFile);
+		// All three records have the same length, so this flips the data of the second one
+		final int recordLength = bytes.length / 3;
+		bytes[2 * recordLength - 1] ^= 0x7F;
+		Files.write(segmentFile, bytes);
+
+		final Object2ObjectOpenHashMap<String, byte[]> entities = read(new SegmentStorage(path));
+		assertEquals(1, entities.size(), "Records after a corrupt record should be ignored");
+		assertArrayEquals(new byte[]{1}, entities.get("01"), "A corrupt record shouldn't replace the last intact one");
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		final Path path = createEmptyDirectory("build/test-data-segment-storage-compaction");
+		final SegmentStorage segmentStorage = new SegmentStorage(path);
+		final byte[] bytes = new byte[64 * 1024];
+		for (int i = 0; i < 20; i++) {
+			bytes[0] = (byte) i;
+			segmentStorage.write("01", bytes);
+		}
+		segmentStorage.write("02", new byte[]{2});
+		segmentStorage.flush(hexId -> fail(hexId));
+
+		assertEquals(1, getSegmentFiles(path).length, "Old segments should be deleted once compacted");
+		assertTrue(segmentStorage.getTotalBytes() < 2 * bytes.length, "Only the latest records should be kept");
+		final Object2ObjectOpenHashMap<String, byte[]> entities = read(new SegmentStorage(path));
+		assertEquals(2, entities.size());
+		assertEquals(19, entities.get("01")[0]);
+	}
+
+	private static Object2ObjectOpenHashMap<String, byte[]> read(SegmentStorage segmentStorage) {
+		final Object2ObjectOpenHashMap<String, byte[]> entities = new Object2ObjectOpenHashMap<>();
+		segmentStorage.forEach((hexId, readBytes) -> assertDoesNotThrow(() -> {
+			final ByteBuffer byteBuffer = readBytes.call().duplicate();
+			final byte[] bytes = new byte[byteBuffer.remaining()];
+			byteBuffer.get(bytes);
+			entities.put(hexId, bytes);
+		}));
+		return entities;
+	}
+
+	private static Path[] getSegmentFiles(Path path) throws Exception {
+		try (final Stream<Path> pathStream = Files.list(path)) {
+			return pathStream.sorted().toArray(Path[]::new);
+		}
+	}
+
+	private static Path createEmptyDirectory(String directory) throws Exception {
+		final Path path = Paths.get(directory);
+		Files.createDirectories(path);
+		for (final Path segmentFile : getSegmentFiles(path)) {
+			Files.delete(segmentFile);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,92 @@
+package org.mtr.core.simulation;
+
+import com.google.gson.JsonObject;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.data.Station;
+import org.mtr.core.operation.DepotOperationByIds;
+import org.mtr.core.operation.UpdateDataRequest;
+import org.mtr.core.serializer.JsonReader;
+import org.mtr.core.servlet.MessageQueue;
+import org.mtr.core.servlet.OperationProcessor;
+import org.mtr.core.servlet.QueueObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SimulatorTests {
+
+	private static final long STATION_ID = 0x1234;
+	private static final long JOURNAL_TIMEOUT_MILLIS = 10_000;
+
+	@Test
+	public void testInternalRunsAreNeverDropped() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-simulator-runs"), false);
+		while (simulator.run(() -> {
+		})) {
+			assertTrue(simulator.getQueuedRunCount() <= 1 << 20, "The queue should be bounded");
+		}
+
+		final boolean[] ran = new boolean[1];
+		simulator.runInternal(() -> ran[0] = true);
+		simulator.tick();
+		assertTrue(ran[0], "Internal runs should be run even when the queue is full");
+	}
+
+	@Test
+	public void testChangesStayBehindBulkOperations() {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get("build/test-data-simulator-order"), false);
+		assertTrue(simulator.sendMessageC2S(new QueueObject(OperationProcessor.UPDATE_DATA, new UpdateDataRequest(simulator), null, null)));
+		assertEquals(1, simulator.getMessageStatisticsC2S().sizes[MessageQueue.Priority.PLAYER.ordinal()], "Changes should be queued as player actions");
+
+		assertTrue(simulator.sendMessageC2S(new QueueObject(OperationProcessor.GENERATE_BY_DEPOT_IDS, new DepotOperationByIds(), null, null)));
+		assertTrue(simulator.sendMessageC2S(new QueueObject(OperationProcessor.UPDATE_DATA, new UpdateDataRequest(simulator), null, null)));
+		assertTrue(simulator.sendMessageC2S(new QueueObject(OperationProcessor.GET_DATA, new UpdateDataRequest(simulator), null, null)));
+		final MessageQueue.Statistics statistics = simulator.getMessageStatisticsC2S();
+		assertEquals(1, statistics.sizes[MessageQueue.Priority.PLAYER.ordinal()]);
+		assertEquals(1, statistics.sizes[MessageQueue.Priority.DASHBOARD.ordinal()], "Reads don't change anything, so they can overtake");
+		assertEquals(2, statistics.sizes[MessageQueue.Priority.BULK.ordinal()], "A change sent after a depot operation shouldn't overtake it");
+	}
+
+	/**
+	 * An update that was journaled but never saved, such as after a crash, should be back after a restart.
+	 */
+	@Test
+	public void testJournalIsReplayedOnRestart() throws IOException, InterruptedException {
+		final Path rootPath = Paths.get("build/test-data-simulator-journal");
+		FileUtils.deleteDirectory(rootPath.toFile());
+
+		final Simulator simulator1 = new Simulator("test", new String[]{"test"}, rootPath, false);
+		final JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty("id", STATION_ID);
+		jsonObject.addProperty("name", "Journaled Station");
+		assertTrue(simulator1.sendMessageC2S(new QueueObject(OperationProcessor.UPDATE_DATA, new UpdateDataRequest(simulator1).addStation(new Station(new JsonReader(jsonObject), simulator1)), null, null)));
+		simulator1.tick();
+		assertTrue(simulator1.stations.stream().anyMatch(station -> station.getId() == STATION_ID));
+
+		// Stop without saving, once the journal thread has written the update
+		final Path journalPath = rootPath.resolve("test").resolve("journal");
+		final long deadline = System.currentTimeMillis() + JOURNAL_TIMEOUT_MILLIS;
+		while (getJournalBytes(journalPath) == 0) {
+			assertTrue(System.currentTimeMillis() < deadline, "The update should have been journaled");
+			Thread.sleep(10);
+		}
+
+		final Simulator simulator2 = new Simulator("test", new String[]{"test"}, rootPath, false);
+		assertTrue(simulator2.stations.stream().anyMatch(station -> station.getId() == STATION_ID && station.getName().equals("Journaled Station")), "The journaled update should have been replayed");
+	}
+
+	private static long getJournalBytes(Path journalPath) throws IOException {
+		if (!Files.isDirectory(journalPath)) {
+			return 0;
+		}
+		try (final Stream<Path> pathStream = Files.list(journalPath)) {
+			return pathStream.mapToLong(journalFile -> journalFile.toFile().length()).sum();
+		}
+	}
+}
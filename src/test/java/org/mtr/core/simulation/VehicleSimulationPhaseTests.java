@@ -0,0 +1,85 @@
+package org.mtr.core.simulation;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectImmutableList;
+import org.junit.jupiter.api.Test;
+import org.mtr.core.Main;
+import org.mtr.core.data.*;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class VehicleSimulationPhaseTests {
+
+	private static final int NETWORK_COUNT = 16;
+	private static final int TICKS = 200;
+	private static final long START_MILLIS = 1_000_000_000_000L;
+
+	@Test
+	public void testParallelMatchesSerial() {
+		final Simulator serialSimulator = createSimulator("build/test-data-vehicle-simulation-serial");
+		final Simulator parallelSimulator = createSimulator("build/test-data-vehicle-simulation-parallel");
+		final VehicleSimulationPhase serialPhase = new VehicleSimulationPhase(serialSimulator, false);
+		final VehicleSimulationPhase parallelPhase = new VehicleSimulationPhase(parallelSimulator, true);
+		final ObjectImmutableList<VehiclePositionIndex> serialVehiclePositions = createVehiclePositions();
+		final ObjectImmutableList<VehiclePositionIndex> parallelVehiclePositions = createVehiclePositions();
+		final ObjectArrayList<String> initialVehicleStates = getVehicleStates(serialSimulator);
+		assertFalse(initialVehicleStates.isEmpty(), "Vehicles should have been deployed");
+
+		for (int i = 0; i < TICKS; i++) {
+			serialVehiclePositions.forEach(VehiclePositionIndex::rotate);
+			parallelVehiclePositions.forEach(VehiclePositionIndex::rotate);
+			serialPhase.simulate(Main.MILLISECONDS_PER_TICK, serialVehiclePositions);
+			parallelPhase.simulate(Main.MILLISECONDS_PER_TICK, parallelVehiclePositions);
+			assertEquals(getVehicleStates(serialSimulator), getVehicleStates(parallelSimulator), "Vehicle state should match after tick " + i);
+			assertEquals(getOccupiedPositions(serialVehiclePositions), getOccupiedPositions(parallelVehiclePositions), "Vehicle positions should match after tick " + i);
+		}
+
+		assertNotEquals(initialVehicleStates, getVehicleStates(serialSimulator), "Vehicles should have moved along their routes");
+	}
+
+	/**
+	 * Lay out independent lines, each far enough apart to form its own network, and deploy vehicles on them.
+	 */
+	private static Simulator createSimulator(String path) {
+		final Simulator simulator = new Simulator("test", new String[]{"test"}, Paths.get(path), false) {
+			{
+				// Departures depend on the current time, so both simulators have to start at the same time
+				setCurrentMillis(START_MILLIS);
+			}
+		};
+		final ObjectArrayList<Depot> depots = new ObjectArrayList<>();
+		for (int i = 0; i < NETWORK_COUNT; i++) {
+			depots.add(TestUtilities.addLine(simulator, "Siding " + i, i * 100L, i % 4 + 1));
+		}
+		simulator.sync();
+		TestUtilities.generateAndDeployDepots(simulator, depots);
+		return simulator;
+	}
+
+	private static ObjectImmutableList<VehiclePositionIndex> createVehiclePositions() {
+		final ObjectArrayList<VehiclePositionIndex> vehiclePositions = new ObjectArrayList<>();
+		for (int i = 0; i < TransportMode.values().length; i++) {
+			vehiclePositions.add(new VehiclePositionIndex());
+		}
+		return new ObjectImmutableList<>(vehiclePositions);
+	}
+
+	/**
+	 * Vehicle ids are random, so vehicles are compared by siding order and their simulated state only.
+	 */
+	private static ObjectArrayList<String> getVehicleStates(Simulator simulator) {
+		final ObjectArrayList<String> vehicleStates = new ObjectArrayList<>();
+		simulator.sidings.forEach(siding -> siding.iterateVehicles(vehicle -> vehicleStates.add(String.format("%s %s %s %s %s %s", siding.getName(), vehicle.getDepartureIndex(), vehicle.getIsOnRoute(), vehicle.getReversed(), vehicle.isMoving(), vehicle.getHeadPositionAndTiltAngle()))));
+		return vehicleStates;
+	}
+
+	private static ObjectArrayList<String> getOccupiedPositions(ObjectImmutableList<VehiclePositionIndex> vehiclePositions) {
+		final ObjectArrayList<String> occupiedPositions = new ObjectArrayList<>();
+		vehiclePositions.forEach(vehiclePositionIndex -> vehiclePositionIndex.iterateCurrent((position1, position2) -> occupiedPositions.add(String.format("%s %s %s %s %s %s", position1.getX(), position1.getY(), position1.getZ(), position2.getX(), position2.getY(), position2.getZ()))));
+		// Segments may be inserted in a different order when worker frames are merged
+		occupiedPositions.sort(String::compareTo);
+		return occupiedPositions;
+	}
+}
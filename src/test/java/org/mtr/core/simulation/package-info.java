@@ -0,0 +1,4 @@
+@NullMarked
+package org.mtr.core.simulation;
+
+import org.jspecify.annotations.NullMarked;